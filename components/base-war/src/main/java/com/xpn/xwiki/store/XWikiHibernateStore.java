@@ -17,6 +17,8 @@
  */
 package com.xpn.xwiki.store;
 
+import org.phenotips.entities.internal.BulkDocumentStore;
+
 import org.xwiki.bridge.event.ActionExecutingEvent;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.InitializationException;
@@ -35,6 +37,7 @@
 import org.xwiki.store.UnexpectedException;
 
 import java.io.Serializable;
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.sql.Connection;
 import java.sql.SQLException;
@@ -52,6 +55,8 @@
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -110,8 +115,15 @@
 @Component
 @Named("hibernate")
 @Singleton
-public class XWikiHibernateStore extends XWikiHibernateBaseStore implements XWikiStoreInterface
+public class XWikiHibernateStore extends XWikiHibernateBaseStore implements XWikiStoreInterface, BulkDocumentStore
 {
+    /** The maximum number of values passed in a single {@code in} clause, Oracle allows at most 1000. */
+    private static final int MAX_IN_LIST_SIZE = 500;
+
+    /** The no-argument constructors of the property types, indexed by class name. */
+    private static final ConcurrentMap<String, Constructor<? extends BaseProperty>> PROPERTY_CONSTRUCTORS =
+        new ConcurrentHashMap<>();
+
     @Inject
     private Logger logger;
 
@@ -754,6 +766,7 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throw
                     localGroupEntityReference.getParent().getName(), localGroupEntityReference.getName());
 
                 boolean hasGroups = false;
+                List<BaseObject> objects = new ArrayList<BaseObject>();
                 while (it.hasNext()) {
                     BaseObject object = it.next();
                     DocumentReference classReference = object.getXClassReference();
@@ -787,10 +800,11 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throw
                         // Groups objects are handled differently.
                         hasGroups = true;
                     } else {
-                        loadXWikiCollectionInternal(object, doc, context, false, true);
+                        objects.add(object);
                     }
                     doc.setXObject(object.getNumber(), object);
                 }
+                loadXWikiCollectionsInternal(objects, doc, context);
 
                 // AFAICT this was added as an emergency patch because loading of objects has proven
                 // too slow and the objects which cause the most overhead are the XWikiGroups objects
@@ -850,6 +864,147 @@ public XWikiDocument loadXWikiDoc(XWikiDocument doc, XWikiContext context) throw
         return doc;
     }
 
+    /**
+     * Loads several documents of the current wiki at once, with a few queries for all of them: one for the documents,
+     * one for their objects, and the ones of {@link #loadXWikiCollectionsInternal} for the objects' properties. This is
+     * meant for walking through many documents, which would otherwise be loaded one by one. The loaded documents are
+     * not placed in the document cache. Only the default translation is loaded, and documents holding an XClass
+     * definition or group members are left out, since they need the extra processing of
+     * {@link #loadXWikiDoc(XWikiDocument, XWikiContext)}.
+     *
+     * @param fullNames the local names of the documents to load
+     * @param context the current request context
+     * @return the loaded documents, in no particular order; documents that don't exist or that were left out are
+     *         missing
+     * @throws XWikiException if loading fails
+     */
+    @Override
+    public List<XWikiDocument> loadXWikiDocs(List<String> fullNames, XWikiContext context) throws XWikiException
+    {
+        List<XWikiDocument> result = new ArrayList<XWikiDocument>(fullNames.size());
+        boolean bTransaction = true;
+        MonitorPlugin monitor = Util.getMonitorPlugin(context);
+        try {
+            // Start monitoring timer
+            if (monitor != null) {
+                monitor.startTimer("hibernate");
+            }
+            checkHibernate(context);
+            bTransaction = bTransaction && beginTransaction(false, context);
+            Session session = getSession(context);
+            session.setFlushMode(FlushMode.MANUAL);
+
+            for (List<String> chunk : partition(fullNames)) {
+                result.addAll(loadXWikiDocsInternal(chunk, session, context));
+            }
+        } catch (Exception e) {
+            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_READING_DOC, "Exception while reading documents", e);
+        } finally {
+            try {
+                if (bTransaction) {
+                    endTransaction(context, false, false);
+                }
+            } catch (Exception e) {
+            }
+
+            // End monitoring timer
+            if (monitor != null) {
+                monitor.endTimer("hibernate");
+            }
+        }
+
+        return result;
+    }
+
+    private List<XWikiDocument> loadXWikiDocsInternal(List<String> fullNames, Session session, XWikiContext context)
+        throws XWikiException
+    {
+        Query query = session.createQuery("from XWikiDocument as doc where doc.fullName in (:names)"
+            + " and (doc.language = '' or doc.language is null)");
+        query.setParameterList("names", fullNames);
+        Set<String> requested = new HashSet<String>(fullNames);
+        Map<String, XWikiDocument> documents = new HashMap<String, XWikiDocument>();
+        for (Object row : query.list()) {
+            XWikiDocument doc = (XWikiDocument) row;
+            session.evict(doc);
+            // The name search may be case insensitive, and class definitions need loadXWikiDoc
+            if (!requested.contains(doc.getFullName()) || StringUtils.isNotBlank(doc.getXClassXML())) {
+                continue;
+            }
+            doc.setStore(this);
+            doc.setDatabase(context.getWikiId());
+            doc.setNew(false);
+            doc.setMostRecent(true);
+            // Fix for XWIKI-1651
+            doc.setDate(new Date(doc.getDate().getTime()));
+            doc.setCreationDate(new Date(doc.getCreationDate().getTime()));
+            doc.setContentUpdateDate(new Date(doc.getContentUpdateDate().getTime()));
+            if (doc.hasElement(XWikiDocument.HAS_ATTACHMENTS)) {
+                loadAttachmentList(doc, context, false);
+            }
+            documents.put(doc.getFullName(), doc);
+        }
+        if (documents.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Query objectsQuery = session.createQuery("from BaseObject as bobject where bobject.name in (:names)"
+            + " order by bobject.name, bobject.number");
+        objectsQuery.setParameterList("names", new ArrayList<String>(documents.keySet()));
+        Set<String> skipped = new HashSet<String>();
+        List<BaseObject> objects = new ArrayList<BaseObject>();
+        for (Object row : objectsQuery.list()) {
+            BaseObject object = (BaseObject) row;
+            session.evict(object);
+            XWikiDocument doc = documents.get(object.getName());
+            DocumentReference classReference = object.getXClassReference();
+            if (doc == null || classReference == null
+                || !object.getDocumentReference().equals(doc.getDocumentReference())) {
+                continue;
+            }
+            // Group members are loaded by loadXWikiDoc with a dedicated query
+            if ("XWiki.XWikiGroups".equals(object.getClassName())) {
+                skipped.add(object.getName());
+                continue;
+            }
+
+            BaseObject newobject = BaseClass.newCustomClassInstance(classReference, context);
+            if (newobject != null) {
+                newobject.setId(object.getId());
+                newobject.setXClassReference(object.getRelativeXClassReference());
+                newobject.setDocumentReference(object.getDocumentReference());
+                newobject.setNumber(object.getNumber());
+                newobject.setGuid(object.getGuid());
+                object = newobject;
+            }
+            doc.setXObject(object.getNumber(), object);
+            objects.add(object);
+        }
+
+        List<BaseObject> loadable = new ArrayList<BaseObject>(objects.size());
+        for (BaseObject object : objects) {
+            if (!skipped.contains(object.getName())) {
+                loadable.add(object);
+            }
+        }
+        // None of these documents defines a class, so there's no need to pass the document holding the objects
+        loadXWikiCollectionsInternal(loadable, null, context);
+
+        List<XWikiDocument> result = new ArrayList<XWikiDocument>(documents.size());
+        for (XWikiDocument doc : documents.values()) {
+            if (skipped.contains(doc.getFullName())) {
+                continue;
+            }
+            doc.setContentDirty(false);
+            doc.setMetaDataDirty(false);
+            // We need to ensure that the loaded document becomes the original document
+            doc.setOriginalDocument(doc.clone());
+            result.add(doc);
+        }
+        return result;
+    }
+
     @Override
     public void deleteXWikiDoc(XWikiDocument doc, XWikiContext context) throws XWikiException
     {
@@ -1097,39 +1252,10 @@ private void loadXWikiCollectionInternal(BaseCollection object1, XWikiDocument d
                 }
             }
 
-            DocumentReference classReference = object.getXClassReference();
-
             // If the class reference is null in the loaded object then skip loading properties
-            if (classReference != null) {
-
-                BaseClass bclass = null;
-                if (!classReference.equals(object.getDocumentReference())) {
-                    // Let's check if the class has a custom mapping
-                    bclass = object.getXClass(context);
-                } else {
-                    // We need to get it from the document otherwise
-                    // we will go in an endless loop
-                    if (doc != null) {
-                        bclass = doc.getXClass();
-                    }
-                }
-
-                List<String> handledProps = new ArrayList<String>();
-                try {
-                    if ((bclass != null) && (bclass.hasCustomMapping()) && context.getWiki().hasCustomMappings()) {
-                        Session dynamicSession = session.getSession(EntityMode.MAP);
-                        Object map = dynamicSession.load(bclass.getName(), object.getId());
-                        // Let's make sure to look for null fields in the dynamic mapping
-                        bclass.fromValueMap((Map) map, object);
-                        handledProps = bclass.getCustomMappingPropertyList(context);
-                        for (String prop : handledProps) {
-                            if (((Map) map).get(prop) == null) {
-                                handledProps.remove(prop);
-                            }
-                        }
-                    }
-                } catch (Exception e) {
-                }
+            if (object.getXClassReference() != null) {
+                BaseClass bclass = getXClass(object, doc, context);
+                List<String> handledProps = loadCustomMappedProperties(object, bclass, session, context);
 
                 // Load strings, integers, dates all at once
 
@@ -1143,56 +1269,7 @@ private void loadXWikiCollectionInternal(BaseCollection object1, XWikiDocument d
                     if (handledProps.contains(name)) {
                         continue;
                     }
-                    String classType = (String) result[1];
-                    BaseProperty property = null;
-
-                    try {
-                        property = (BaseProperty) Class.forName(classType).newInstance();
-                        property.setObject(object);
-                        property.setName(name);
-                        loadXWikiProperty(property, context, false);
-                    } catch (Exception e) {
-                        // WORKAROUND IN CASE OF MIXMATCH BETWEEN STRING AND LARGESTRING
-                        try {
-                            if (property instanceof StringProperty) {
-                                LargeStringProperty property2 = new LargeStringProperty();
-                                property2.setObject(object);
-                                property2.setName(name);
-                                loadXWikiProperty(property2, context, false);
-                                property.setValue(property2.getValue());
-
-                                if (bclass != null) {
-                                    if (bclass.get(name) instanceof TextAreaClass) {
-                                        property = property2;
-                                    }
-                                }
-
-                            } else if (property instanceof LargeStringProperty) {
-                                StringProperty property2 = new StringProperty();
-                                property2.setObject(object);
-                                property2.setName(name);
-                                loadXWikiProperty(property2, context, false);
-                                property.setValue(property2.getValue());
-
-                                if (bclass != null) {
-                                    if (bclass.get(name) instanceof StringClass) {
-                                        property = property2;
-                                    }
-                                }
-                            } else {
-                                throw e;
-                            }
-                        } catch (Throwable e2) {
-                            Object[] args =
-                                { object.getName(), object.getClass(), Integer.valueOf(object.getNumber() + ""), name };
-                            throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
-                                XWikiException.ERROR_XWIKI_STORE_HIBERNATE_LOADING_OBJECT,
-                                "Exception while loading object '{0}' of class '{1}', number '{2}' and property '{3}'",
-                                e, args);
-                        }
-                    }
-
-                    object.addField(name, property);
+                    object.addField(name, loadXWikiProperty(object, bclass, name, (String) result[1], context));
                 }
             }
 
@@ -1216,6 +1293,231 @@ private void loadXWikiCollectionInternal(BaseCollection object1, XWikiDocument d
 
     }
 
+    /**
+     * Loads the properties of several objects, from one or more documents, already loaded themselves. Instead of
+     * listing the properties of each object and then loading each property separately, this lists the properties of all
+     * the objects with one query, and then loads their values with one query per property type. Properties that cannot
+     * be found this way, for example because their value is stored in the table of a different type, are loaded one by
+     * one.
+     *
+     * @param objects the objects whose properties must be loaded
+     * @param doc the document holding the objects, needed only if it also defines their class, may be {@code null}
+     * @param context the current request context
+     * @throws XWikiException if loading fails
+     */
+    private void loadXWikiCollectionsInternal(List<BaseObject> objects, XWikiDocument doc, XWikiContext context)
+        throws XWikiException
+    {
+        if (objects.isEmpty()) {
+            return;
+        }
+        Session session = getSession(context);
+
+        Map<Long, BaseObject> objectsById = new HashMap<Long, BaseObject>();
+        Map<Long, BaseClass> classesById = new HashMap<Long, BaseClass>();
+        Map<Long, List<String>> handledPropsById = new HashMap<Long, List<String>>();
+        for (BaseObject object : objects) {
+            if (object.getXClassReference() == null) {
+                continue;
+            }
+            BaseClass bclass = getXClass(object, doc, context);
+            objectsById.put(object.getId(), object);
+            classesById.put(object.getId(), bclass);
+            handledPropsById.put(object.getId(), loadCustomMappedProperties(object, bclass, session, context));
+        }
+        List<Long> ids = new ArrayList<Long>(objectsById.keySet());
+
+        // Object id -> property name -> property type, for the properties that still need to be loaded
+        Map<Long, Map<String, String>> pending = new HashMap<Long, Map<String, String>>();
+        // Property type -> ids of the objects having such properties
+        Map<String, Set<Long>> idsByType = new HashMap<String, Set<Long>>();
+        for (List<Long> chunk : partition(ids)) {
+            Query query = session.createQuery(
+                "select prop.id.id, prop.name, prop.classType from BaseProperty as prop where prop.id.id in (:ids)");
+            query.setParameterList("ids", chunk);
+            for (Object[] result : (List<Object[]>) query.list()) {
+                Long id = (Long) result[0];
+                String name = (String) result[1];
+                String classType = (String) result[2];
+                // No need to load fields already loaded from custom mapping
+                if (handledPropsById.get(id).contains(name)) {
+                    continue;
+                }
+                Map<String, String> properties = pending.get(id);
+                if (properties == null) {
+                    properties = new HashMap<String, String>();
+                    pending.put(id, properties);
+                }
+                properties.put(name, classType);
+                Set<Long> typeIds = idsByType.get(classType);
+                if (typeIds == null) {
+                    typeIds = new HashSet<Long>();
+                    idsByType.put(classType, typeIds);
+                }
+                typeIds.add(id);
+            }
+        }
+
+        for (Map.Entry<String, Set<Long>> type : idsByType.entrySet()) {
+            String classType = type.getKey();
+            for (List<Long> chunk : partition(new ArrayList<Long>(type.getValue()))) {
+                Query query =
+                    session.createQuery("select prop from " + classType + " as prop where prop.id.id in (:ids)");
+                query.setParameterList("ids", chunk);
+                for (Object result : query.list()) {
+                    BaseProperty property = (BaseProperty) result;
+                    Map<String, String> properties = pending.get(property.getId());
+                    // Polymorphic queries also return subtypes, which are loaded by their own query
+                    if (properties == null || !classType.equals(property.getClass().getName())
+                        || !classType.equals(properties.get(property.getName()))) {
+                        continue;
+                    }
+                    properties.remove(property.getName());
+                    BaseObject object = objectsById.get(property.getId());
+                    property.setObject(object);
+                    initializeLoadedProperty(property);
+                    object.addField(property.getName(), property);
+                }
+            }
+        }
+
+        for (Map.Entry<Long, Map<String, String>> remaining : pending.entrySet()) {
+            BaseObject object = objectsById.get(remaining.getKey());
+            BaseClass bclass = classesById.get(remaining.getKey());
+            for (Map.Entry<String, String> property : remaining.getValue().entrySet()) {
+                object.addField(property.getKey(),
+                    loadXWikiProperty(object, bclass, property.getKey(), property.getValue(), context));
+            }
+        }
+    }
+
+    private static <T> List<List<T>> partition(List<T> values)
+    {
+        List<List<T>> result = new ArrayList<List<T>>();
+        for (int start = 0; start < values.size(); start += MAX_IN_LIST_SIZE) {
+            result.add(values.subList(start, Math.min(start + MAX_IN_LIST_SIZE, values.size())));
+        }
+        return result;
+    }
+
+    private BaseClass getXClass(BaseCollection object, XWikiDocument doc, XWikiContext context)
+    {
+        if (!object.getXClassReference().equals(object.getDocumentReference())) {
+            // Let's check if the class has a custom mapping
+            return object.getXClass(context);
+        }
+        // We need to get it from the document otherwise we will go in an endless loop
+        return doc != null ? doc.getXClass() : null;
+    }
+
+    /**
+     * Loads the properties of an object stored in a custom mapped table, if its class uses a custom mapping.
+     *
+     * @return the names of the loaded properties, which must not be loaded again from the generic property tables
+     */
+    private List<String> loadCustomMappedProperties(BaseCollection object, BaseClass bclass, Session session,
+        XWikiContext context)
+    {
+        List<String> handledProps = new ArrayList<String>();
+        try {
+            if ((bclass != null) && (bclass.hasCustomMapping()) && context.getWiki().hasCustomMappings()) {
+                Session dynamicSession = session.getSession(EntityMode.MAP);
+                Object map = dynamicSession.load(bclass.getName(), object.getId());
+                // Let's make sure to look for null fields in the dynamic mapping
+                bclass.fromValueMap((Map) map, object);
+                handledProps = bclass.getCustomMappingPropertyList(context);
+                for (String prop : handledProps) {
+                    if (((Map) map).get(prop) == null) {
+                        handledProps.remove(prop);
+                    }
+                }
+            }
+        } catch (Exception e) {
+        }
+        return handledProps;
+    }
+
+    /**
+     * Loads a single property of an object.
+     *
+     * @param object the object holding the property
+     * @param bclass the class of the object, may be {@code null}
+     * @param name the name of the property
+     * @param classType the name of the property type, as stored in the database
+     * @param context the current request context
+     * @return the loaded property
+     * @throws XWikiException if loading fails
+     */
+    private BaseProperty loadXWikiProperty(BaseCollection object, BaseClass bclass, String name, String classType,
+        XWikiContext context) throws XWikiException
+    {
+        BaseProperty property = null;
+
+        try {
+            property = newProperty(classType);
+            property.setObject(object);
+            property.setName(name);
+            loadXWikiProperty(property, context, false);
+        } catch (Exception e) {
+            // WORKAROUND IN CASE OF MIXMATCH BETWEEN STRING AND LARGESTRING
+            try {
+                if (property instanceof StringProperty) {
+                    LargeStringProperty property2 = new LargeStringProperty();
+                    property2.setObject(object);
+                    property2.setName(name);
+                    loadXWikiProperty(property2, context, false);
+                    property.setValue(property2.getValue());
+
+                    if (bclass != null) {
+                        if (bclass.get(name) instanceof TextAreaClass) {
+                            property = property2;
+                        }
+                    }
+
+                } else if (property instanceof LargeStringProperty) {
+                    StringProperty property2 = new StringProperty();
+                    property2.setObject(object);
+                    property2.setName(name);
+                    loadXWikiProperty(property2, context, false);
+                    property.setValue(property2.getValue());
+
+                    if (bclass != null) {
+                        if (bclass.get(name) instanceof StringClass) {
+                            property = property2;
+                        }
+                    }
+                } else {
+                    throw e;
+                }
+            } catch (Throwable e2) {
+                Object[] args =
+                    { object.getName(), object.getClass(), Integer.valueOf(object.getNumber() + ""), name };
+                throw new XWikiException(XWikiException.MODULE_XWIKI_STORE,
+                    XWikiException.ERROR_XWIKI_STORE_HIBERNATE_LOADING_OBJECT,
+                    "Exception while loading object '{0}' of class '{1}', number '{2}' and property '{3}'",
+                    e, args);
+            }
+        }
+        return property;
+    }
+
+    /**
+     * Creates an empty property of the given type, reusing the type's constructor instead of looking it up each time.
+     *
+     * @param classType the fully qualified name of the property type
+     * @return a new property instance
+     * @throws ReflectiveOperationException if the type cannot be instantiated
+     */
+    private static BaseProperty newProperty(String classType) throws ReflectiveOperationException
+    {
+        Constructor<? extends BaseProperty> constructor = PROPERTY_CONSTRUCTORS.get(classType);
+        if (constructor == null) {
+            constructor = Class.forName(classType).asSubclass(BaseProperty.class).getConstructor();
+            PROPERTY_CONSTRUCTORS.putIfAbsent(classType, constructor);
+        }
+        return constructor.newInstance();
+    }
+
     /**
      * @deprecated This is internal to XWikiHibernateStore and may be removed in the future.
      */
@@ -1312,26 +1614,11 @@ private void loadXWikiProperty(PropertyInterface property, XWikiContext context,
 
             try {
                 session.load(property, (Serializable) property);
-                // In Oracle, empty string are converted to NULL. Since an undefined property is not found at all, it is
-                // safe to assume that a retrieved NULL value should actually be an empty string.
-                if (property instanceof BaseStringProperty) {
-                    BaseStringProperty stringProperty = (BaseStringProperty) property;
-                    if (stringProperty.getValue() == null) {
-                        stringProperty.setValue("");
-                    }
-                }
-                ((BaseProperty) property).setValueDirty(false);
+                initializeLoadedProperty((BaseProperty) property);
             } catch (ObjectNotFoundException e) {
                 // Let's accept that there is no data in property tables but log it
                 this.logger.error("No data for property [{}] of object id [{}]", property.getName(), property.getId());
-            }
-
-            // TODO: understand why collections are lazy loaded
-            // Let's force reading lists if there is a list
-            // This seems to be an issue since Hibernate 3.0
-            // Without this test ViewEditTest.testUpdateAdvanceObjectProp fails
-            if (property instanceof ListProperty) {
-                ((ListProperty) property).getList();
+                forceListLoading(property);
             }
 
             if (bTransaction) {
@@ -1354,6 +1641,31 @@ private void loadXWikiProperty(PropertyInterface property, XWikiContext context,
         }
     }
 
+    private void initializeLoadedProperty(BaseProperty property)
+    {
+        // In Oracle, empty string are converted to NULL. Since an undefined property is not found at all, it is
+        // safe to assume that a retrieved NULL value should actually be an empty string.
+        if (property instanceof BaseStringProperty) {
+            BaseStringProperty stringProperty = (BaseStringProperty) property;
+            if (stringProperty.getValue() == null) {
+                stringProperty.setValue("");
+            }
+        }
+        property.setValueDirty(false);
+        forceListLoading(property);
+    }
+
+    private void forceListLoading(PropertyInterface property)
+    {
+        // TODO: understand why collections are lazy loaded
+        // Let's force reading lists if there is a list
+        // This seems to be an issue since Hibernate 3.0
+        // Without this test ViewEditTest.testUpdateAdvanceObjectProp fails
+        if (property instanceof ListProperty) {
+            ((ListProperty) property).getList();
+        }
+    }
+
     private void saveXWikiPropertyInternal(final PropertyInterface property,
         final XWikiContext context, final boolean runInOwnTransaction) throws XWikiException
     {
@@ -23,7 +23,10 @@
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.stability.Unstable;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 /**
  * API that provides access for a specific type of entity, with support for simple CRUD operations. No access rights are
@@ -81,6 +84,24 @@
      */
     E get(DocumentReference reference);
 
+    /**
+     * Retrieves several {@link PrimaryEntity entities} at once. Implementations may load the entities more efficiently
+     * than with separate calls to {@link #get(String)}.
+     *
+     * @param ids the {@link PrimaryEntity#getId() entity identifiers}, i.e. the serialized document references
+     * @return the requested entities, in the same order as the identifiers, with {@code null} in place of the entities
+     *         that don't exist or cannot be loaded
+     * @since 1.4
+     */
+    default List<E> get(Collection<String> ids)
+    {
+        List<E> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            result.add(get(id));
+        }
+        return result;
+    }
+
     /**
      * Retrieves an {@link PrimaryEntity entity} by its {@link PrimaryEntity#getName() name}.
      *
@@ -97,6 +118,19 @@
      */
     Iterator<E> getAll();
 
+    /**
+     * Retrieves all entities of the managed type, in a random order, loading them in pages of the requested size.
+     * Only the current page is kept in memory, so this is suited for walking through all the entities.
+     *
+     * @param pageSize how many entities to load at once
+     * @return an iterator over all entities, may be empty if no entities exist
+     * @since 1.4
+     */
+    default Iterator<E> getAll(int pageSize)
+    {
+        return getAll();
+    }
+
     /**
      * Deletes an entity.
      *
@@ -23,6 +23,7 @@
 
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.model.EntityType;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
@@ -37,9 +38,12 @@
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -62,7 +66,7 @@
  * <li>the class used for {@code <E>} must have a constructor that takes as an argument a {@link DocumentModelBridge} or
  * a {@link XWikiDocument} argument</li>
  * <li>all documents {@link #create() created} by this manager will have the name in the format
- * {@code <PREFIX><7 digit sequential number>}, unless {@link #getNextDocument()} is overridden, where:
+ * {@code <PREFIX><7 digit sequential number>}, where:
  * <ul>
  * <li>the prefix is computed from the uppercase letters of the XClass name, excluding {@code Class}, e.g. for
  * {@code PhenoTips.DiseaseStudyClass} the prefix will be {@code DS}; override {@link #getIdPrefix()} to change this
@@ -80,6 +84,9 @@
 @Unstable("New class and interface added in 1.3")
 public abstract class AbstractPrimaryEntityManager<E extends PrimaryEntity> implements PrimaryEntityManager<E>
 {
+    /** The default number of entities loaded at once by {@link #getAll()}. */
+    private static final int DEFAULT_PAGE_SIZE = 200;
+
     /** Logging helper object. */
     @Inject
     protected Logger logger;
@@ -111,6 +118,19 @@
     @Named("local")
     protected EntityReferenceSerializer<String> localSerializer;
 
+    /** Loads the documents of many entities at once. */
+    @Inject
+    protected BulkDocumentLoader documentLoader;
+
+    /** Hands out identifiers for new entities. */
+    @Inject
+    protected EntityIdSequence idSequence;
+
+    /** Provides the configured page size for iterating over all the entities. */
+    @Inject
+    @Named("xwikiproperties")
+    protected ConfigurationSource configuration;
+
     /** The concrete {@link PrimaryEntity} instance class being managed. */
     private Class<? extends E> eclass;
 
@@ -123,12 +143,36 @@ public E create()
         return create(this.bridge.getCurrentUserReference());
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Identifiers are taken from a {@link EntityIdSequence persistent sequence}, so entities can be created in
+     * parallel. Only when the sequence is not available at all, creation falls back to
+     * {@link #getNextDocument() looking for the largest identifier in use}, and is serialized. If the sequence is
+     * available but fails to hand out an identifier, creation fails, since identifiers looked up after the largest one
+     * in use may already be reserved by the sequence, in this or in another cluster node.
+     * </p>
+     */
     @Override
-    public synchronized E create(DocumentReference creator)
+    public E create(DocumentReference creator)
+    {
+        if (!this.idSequence.isAvailable()) {
+            synchronized (this) {
+                return createEntity(getNextDocument(), creator);
+            }
+        }
+        DocumentReference newDoc = getSequenceDocument();
+        if (newDoc == null) {
+            this.logger.warn("Failed to create entity: no identifier could be reserved");
+            return null;
+        }
+        return createEntity(newDoc, creator);
+    }
+
+    private E createEntity(DocumentReference newDoc, DocumentReference creator)
     {
         try {
             XWikiContext context = this.xcontextProvider.get();
-            DocumentReference newDoc = getNextDocument();
             XWikiDocument doc = (XWikiDocument) this.bridge.getDocument(newDoc);
 
             DocumentReference template = getEntityXClassReference();
@@ -175,6 +219,29 @@ public E get(DocumentReference reference)
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The documents are loaded with a few queries for all the requested entities, instead of separately.
+     * </p>
+     */
+    @Override
+    public List<E> get(Collection<String> ids)
+    {
+        List<DocumentReference> references = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            references.add(this.stringResolver.resolve(id, getDataSpace()));
+        }
+        Map<DocumentReference, XWikiDocument> documents = this.documentLoader.load(references);
+        List<E> result = new ArrayList<>(references.size());
+        for (DocumentReference reference : references) {
+            XWikiDocument document = documents == null ? null : documents.get(reference);
+            // Documents that couldn't be loaded in bulk are loaded separately
+            result.add(document != null ? load(document) : get(reference));
+        }
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      * <p>
@@ -200,8 +267,22 @@ public E getByName(String name)
         return null;
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The entities are loaded in pages, of the size configured by the {@code phenotips.entities.getAll.pageSize}
+     * property of {@code xwiki.properties}, by default {@value #DEFAULT_PAGE_SIZE}.
+     * </p>
+     */
     @Override
     public Iterator<E> getAll()
+    {
+        Integer pageSize = this.configuration.getProperty("phenotips.entities.getAll.pageSize", Integer.class);
+        return getAll(pageSize != null && pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE);
+    }
+
+    @Override
+    public Iterator<E> getAll(int pageSize)
     {
         try {
             Query q = this.qm.createQuery(
@@ -212,7 +293,7 @@ public Iterator<E> getAll()
                 .bindValue("template2",
                     StringUtils.removeEnd(this.getEntityXClassReference().getName(), "Class") + "Template");
             List<String> docNames = q.execute();
-            return new LazyPrimaryEntityIterator<>(docNames, this);
+            return new LazyPrimaryEntityIterator<>(docNames, this, pageSize);
         } catch (QueryException ex) {
             this.logger.warn("Failed to query all entities of type [{}]: {}", getEntityXClassReference(),
                 ex.getMessage());
@@ -250,9 +331,12 @@ public E load(DocumentModelBridge document) throws IllegalArgumentException
     }
 
     /**
-     * Gets a reference to the next document that can be used for a newly created entity. It uses {@link #getIdPrefix()
-     * a short prefix} and {@link #getLastUsedId() a sequence number} for the document name, and {@link #getDataSpace()
-     * a space that can be configured by subclases}.
+     * Gets a reference to the next document that can be used for a newly created entity, when the
+     * {@link EntityIdSequence identifier sequence} is not available, and thus never reserved any identifiers. It uses
+     * {@link #getIdPrefix() a short prefix} and the number following {@link #getLastUsedId() the last used identifier}
+     * for the document name, and {@link #getDataSpace() a space that can be configured by subclases}. This is called
+     * while holding the lock of this manager, so that concurrent calls don't return the same document before it is
+     * saved.
      *
      * @return a reference for a new document
      */
@@ -262,12 +346,40 @@ protected DocumentReference getNextDocument()
         long id = getLastUsedId();
         DocumentReference newDoc;
         do {
-            newDoc = this.referenceResolver.resolve(new EntityReference(
-                prefix + String.format("%07d", ++id), EntityType.DOCUMENT, getDataSpace()));
+            newDoc = getDocument(prefix, ++id);
         } while (this.bridge.exists(newDoc));
         return newDoc;
     }
 
+    /**
+     * Gets a reference to the next document that can be used for a newly created entity, using the
+     * {@link EntityIdSequence identifier sequence}. The sequence starts after {@link #getLastUsedId() the last used
+     * identifier}.
+     *
+     * @return a reference for a new document, or {@code null} if the sequence failed to hand out an identifier
+     */
+    private DocumentReference getSequenceDocument()
+    {
+        String prefix = getIdPrefix();
+        String sequence = this.localSerializer.serialize(getEntityXClassReference());
+        long id = this.idSequence.next(sequence, this::getLastUsedId);
+        while (id > 0) {
+            DocumentReference newDoc = getDocument(prefix, id);
+            // Skip identifiers already taken, for example by entities created before the sequence existed
+            if (!this.bridge.exists(newDoc)) {
+                return newDoc;
+            }
+            id = this.idSequence.next(sequence, this::getLastUsedId);
+        }
+        return null;
+    }
+
+    private DocumentReference getDocument(String prefix, long id)
+    {
+        return this.referenceResolver.resolve(new EntityReference(
+            prefix + String.format("%07d", id), EntityType.DOCUMENT, getDataSpace()));
+    }
+
     @Override
     public String getIdPrefix()
     {
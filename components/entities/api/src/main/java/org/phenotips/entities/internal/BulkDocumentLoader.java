@@ -0,0 +1,155 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.store.XWikiCacheStore;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+
+/**
+ * Loads many documents at once, directly from the database, with a few set-based queries instead of separate queries
+ * for each document. This is meant for jobs walking through many entities, such as exports or migrations.
+ * <p>
+ * Documents already in the document cache are taken from there, and only the missing ones are loaded from the
+ * database, and then placed in the cache, so that callers get the same instances as from {@code XWiki#getDocument}.
+ * The actual loading is done by the PhenoTips {@link XWikiHibernateStore}, which implements {@link BulkDocumentStore}
+ * and shares the property loading code with the regular document loading. If the store cannot load documents in bulk,
+ * only cached documents are returned, and callers fall back to loading the other documents the usual way. Documents
+ * that hold an XClass definition, group members, or that are translations are not handled by the store either.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component(roles = BulkDocumentLoader.class)
+@Singleton
+public class BulkDocumentLoader
+{
+    /** Logging helper object. */
+    @Inject
+    private Logger logger;
+
+    /** Provides access to the current execution context. */
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    /** Serializes references without the wiki prefix. */
+    @Inject
+    @Named("local")
+    private EntityReferenceSerializer<String> localSerializer;
+
+    /**
+     * Loads the requested documents. Documents that don't exist, that are not in the current wiki, or that cannot be
+     * loaded in bulk are missing from the result.
+     *
+     * @param references the documents to load
+     * @return the loaded documents, indexed by their reference; may be empty, but not {@code null}
+     */
+    public Map<DocumentReference, XWikiDocument> load(Collection<DocumentReference> references)
+    {
+        Map<DocumentReference, XWikiDocument> result = new HashMap<>();
+        XWikiContext xcontext = this.xcontextProvider.get();
+        if (xcontext == null || xcontext.getWiki() == null) {
+            return result;
+        }
+        XWikiCacheStore cacheStore = xcontext.getWiki().getStore() instanceof XWikiCacheStore
+            ? (XWikiCacheStore) xcontext.getWiki().getStore() : null;
+        Cache<XWikiDocument> cache = cacheStore == null ? null : cacheStore.getCache();
+
+        // Take the cached documents from the cache, and collect the others
+        Map<String, String> missing = new HashMap<>();
+        for (DocumentReference reference : references) {
+            if (reference == null || !reference.getWikiReference().getName().equals(xcontext.getWikiId())) {
+                continue;
+            }
+            String name = this.localSerializer.serialize(reference);
+            String key = cache == null ? null : cacheStore.getKey(name, "", xcontext);
+            XWikiDocument cached = key == null ? null : cache.get(key);
+            if (cached == null) {
+                missing.put(name, key);
+            } else if (!cached.isNew()) {
+                result.put(reference, cached);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            for (XWikiDocument document : loadFromStore(new ArrayList<>(missing.keySet()), xcontext)) {
+                result.put(document.getDocumentReference(), cache(document, missing, cache));
+            }
+        }
+        return result;
+    }
+
+    private List<XWikiDocument> loadFromStore(List<String> names, XWikiContext xcontext)
+    {
+        XWikiHibernateStore store = xcontext.getWiki().getHibernateStore();
+        if (!(store instanceof BulkDocumentStore)) {
+            this.logger.debug("The document store cannot load documents in bulk, loading them one by one");
+            return new ArrayList<>();
+        }
+        try {
+            return ((BulkDocumentStore) store).loadXWikiDocs(names, xcontext);
+        } catch (XWikiException | RuntimeException ex) {
+            this.logger.warn("Failed to load documents in bulk: {}", ex.getMessage());
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Places a freshly loaded document in the document cache, unless another thread already cached it meanwhile, in
+     * which case the cached instance is used instead.
+     *
+     * @param document the loaded document
+     * @param keys the cache keys of the loaded documents, indexed by their local name
+     * @param cache the document cache, may be {@code null}
+     * @return the instance to return for the document
+     */
+    private XWikiDocument cache(XWikiDocument document, Map<String, String> keys, Cache<XWikiDocument> cache)
+    {
+        String key = keys.get(this.localSerializer.serialize(document.getDocumentReference()));
+        if (cache == null || key == null) {
+            return document;
+        }
+        XWikiDocument cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        cache.set(key, document);
+        return document;
+    }
+}
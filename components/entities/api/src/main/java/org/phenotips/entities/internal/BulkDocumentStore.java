@@ -0,0 +1,47 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import java.util.List;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * A document store able to load many documents at once, with a few set-based queries instead of separate queries for
+ * each document. This is implemented by the PhenoTips {@code XWikiHibernateStore}, which replaces the platform one in
+ * the webapp.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public interface BulkDocumentStore
+{
+    /**
+     * Loads several documents of the current wiki at once. The loaded documents are not placed in the document cache.
+     * Only the default translation is loaded, and documents holding an XClass definition or group members are left out.
+     *
+     * @param fullNames the local names of the documents to load
+     * @param context the current request context
+     * @return the loaded documents, in no particular order; documents that don't exist or that were left out are
+     *         missing
+     * @throws XWikiException if loading fails
+     */
+    List<XWikiDocument> loadXWikiDocs(List<String> fullNames, XWikiContext context) throws XWikiException;
+}
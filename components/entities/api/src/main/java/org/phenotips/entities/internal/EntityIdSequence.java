@@ -0,0 +1,246 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.phenotips.Constants;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.LongSupplier;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+
+/**
+ * Hands out sequential identifiers for new entities, without a global lock or a query for the largest identifier in
+ * use. The next free identifier of each sequence is stored in the database, in a {@code PhenoTips.EntitySequenceClass}
+ * object, and blocks of identifiers are reserved by atomically incrementing it, so that several cluster nodes can share
+ * a sequence. Identifiers are then given out from the reserved block in memory. Identifiers left in a block when the
+ * server stops are never used.
+ * <p>
+ * Since blocks are reserved directly in the database, cached copies of the documents holding the sequences are out of
+ * date as soon as a block is reserved, and saving them would move the sequences back. That's why each sequence has its
+ * own hidden document, {@code PhenoTips.EntitySequence_<sequence name>}, saved only once, when the sequence is created.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component(roles = EntityIdSequence.class)
+@Singleton
+public class EntityIdSequence
+{
+    /** The XClass holding a sequence. */
+    public static final EntityReference CLASS_REFERENCE =
+        new EntityReference("EntitySequenceClass", EntityType.DOCUMENT, Constants.CODE_SPACE_REFERENCE);
+
+    /** The prefix of the names of the documents holding the sequences, followed by the name of the sequence. */
+    public static final String DOCUMENT_PREFIX = "EntitySequence_";
+
+    private static final String SEQUENCE_NAME = "sequence";
+
+    private static final String NEXT = "next";
+
+    private static final String ID = "id";
+
+    private static final String NAME = "name";
+
+    private static final int DEFAULT_BLOCK_SIZE = 20;
+
+    /** How many times to try reserving a block when other nodes keep reserving blocks concurrently. */
+    private static final int MAX_ATTEMPTS = 10;
+
+    /** Logging helper object. */
+    @Inject
+    private Logger logger;
+
+    /** Provides access to the current execution context. */
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    /** Provides the configured block size. */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /** The reserved blocks of identifiers, one per sequence. */
+    private final ConcurrentMap<String, Block> blocks = new ConcurrentHashMap<>();
+
+    /**
+     * Checks if the sequences can be used in the current environment, which requires a database store.
+     *
+     * @return {@code true} if {@link #next(String, LongSupplier)} can be used
+     */
+    public boolean isAvailable()
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+        return xcontext != null && xcontext.getWiki() != null && xcontext.getWiki().getHibernateStore() != null;
+    }
+
+    /**
+     * Gets the next identifier of a sequence.
+     *
+     * @param sequence the name of the sequence, for example the serialized reference of the entities' XClass
+     * @param lastUsed provides the largest identifier already used, called only when the sequence doesn't exist yet
+     * @return a positive identifier never returned before for this sequence, or {@code -1} if the sequence is not
+     *         available
+     */
+    public long next(String sequence, LongSupplier lastUsed)
+    {
+        Block block = this.blocks.computeIfAbsent(sequence, k -> new Block());
+        synchronized (block) {
+            if (block.next >= block.end) {
+                int size = getBlockSize();
+                long start = reserve(sequence, size, lastUsed);
+                if (start < 0) {
+                    return -1;
+                }
+                block.next = start;
+                block.end = start + size;
+            }
+            return block.next++;
+        }
+    }
+
+    private long reserve(String sequence, int size, LongSupplier lastUsed)
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+        try {
+            DocumentReference document = getSequenceDocument(sequence, xcontext);
+            Long objectId = findSequence(sequence, document, xcontext);
+            if (objectId == null) {
+                createSequence(sequence, document, lastUsed.getAsLong() + 1, xcontext);
+                objectId = findSequence(sequence, document, xcontext);
+            }
+            if (objectId == null) {
+                return -1;
+            }
+            for (int attempt = 0; attempt < MAX_ATTEMPTS; ++attempt) {
+                // Each attempt runs in its own transaction, so that it sees the changes made by other nodes
+                long start = tryReserve(objectId, size, xcontext);
+                if (start > 0) {
+                    return start;
+                }
+            }
+            this.logger.warn("Failed to reserve identifiers for [{}] after {} attempts", sequence, MAX_ATTEMPTS);
+        } catch (XWikiException | RuntimeException ex) {
+            this.logger.warn("Failed to reserve identifiers for [{}]: {}", sequence, ex.getMessage());
+        }
+        return -1;
+    }
+
+    /**
+     * Looks for the object holding a sequence. If several nodes created it at the same time, the first one is used.
+     *
+     * @return the identifier of the object, or {@code null} if the sequence doesn't exist yet
+     */
+    private Long findSequence(String sequence, DocumentReference document, XWikiContext xcontext)
+        throws XWikiException
+    {
+        XWikiHibernateStore store = xcontext.getWiki().getHibernateStore();
+        return store.executeRead(xcontext, session -> {
+            List<?> ids = session.createQuery("select obj.id from BaseObject obj, StringProperty seq "
+                + "where obj.name = :doc and obj.className = :class and seq.id.id = obj.id "
+                + "and seq.id.name = :seq and seq.value = :sequence order by obj.number")
+                .setString("doc", Constants.CODE_SPACE + '.' + document.getName())
+                .setString("class", Constants.CODE_SPACE + '.' + CLASS_REFERENCE.getName())
+                .setString("seq", SEQUENCE_NAME)
+                .setString(SEQUENCE_NAME, sequence)
+                .setMaxResults(1)
+                .list();
+            return ids.isEmpty() ? null : (Long) ids.get(0);
+        });
+    }
+
+    private synchronized void createSequence(String sequence, DocumentReference document, long next,
+        XWikiContext xcontext) throws XWikiException
+    {
+        if (findSequence(sequence, document, xcontext) != null) {
+            // Created by another thread in the meantime
+            return;
+        }
+        // Read the document from the database and not from the cache, which doesn't see the reserved blocks
+        XWikiDocument doc =
+            xcontext.getWiki().getHibernateStore().loadXWikiDoc(new XWikiDocument(document), xcontext);
+        BaseObject object = doc.newXObject(CLASS_REFERENCE, xcontext);
+        object.setStringValue(SEQUENCE_NAME, sequence);
+        object.setLongValue(NEXT, next);
+        doc.setHidden(true);
+        xcontext.getWiki().saveDocument(doc, "Added identifier sequence " + sequence, true, xcontext);
+    }
+
+    /**
+     * Advances the stored sequence by a block, if no other node changed it since it was read.
+     *
+     * @return the first identifier of the reserved block, or {@code -1} if the sequence was changed concurrently
+     */
+    private long tryReserve(long objectId, int size, XWikiContext xcontext) throws XWikiException
+    {
+        XWikiHibernateStore store = xcontext.getWiki().getHibernateStore();
+        return store.executeWrite(xcontext, session -> {
+            Number current = (Number) session
+                .createSQLQuery("select XWL_VALUE from xwikilongs where XWL_ID = :id and XWL_NAME = :name")
+                .setLong(ID, objectId).setString(NAME, NEXT).uniqueResult();
+            if (current == null) {
+                return -1L;
+            }
+            int updated = session.createSQLQuery("update xwikilongs set XWL_VALUE = :next "
+                + "where XWL_ID = :id and XWL_NAME = :name and XWL_VALUE = :current")
+                .setLong(NEXT, current.longValue() + size).setLong(ID, objectId).setString(NAME, NEXT)
+                .setLong("current", current.longValue()).executeUpdate();
+            return updated == 1 ? current.longValue() : -1L;
+        });
+    }
+
+    private DocumentReference getSequenceDocument(String sequence, XWikiContext xcontext)
+    {
+        return new DocumentReference(xcontext.getWikiId(), Constants.CODE_SPACE,
+            DOCUMENT_PREFIX + sequence.replaceAll("\\W", "_"));
+    }
+
+    private int getBlockSize()
+    {
+        Integer configured = this.configuration.getProperty("phenotips.entities.idBlockSize", Integer.class);
+        return configured != null && configured > 0 ? configured : DEFAULT_BLOCK_SIZE;
+    }
+
+    /** A block of reserved identifiers, from {@code next} inclusive to {@code end} exclusive. */
+    private static final class Block
+    {
+        private long next;
+
+        private long end;
+    }
+}
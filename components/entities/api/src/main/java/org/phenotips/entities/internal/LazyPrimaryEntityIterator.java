@@ -20,12 +20,16 @@
 import org.phenotips.entities.PrimaryEntity;
 import org.phenotips.entities.PrimaryEntityManager;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * A lazy iterator on an immutable collection of primary entities, which only loads an entity when it is actually
- * requested out of the iterator.
+ * requested out of the iterator. Entities can also be loaded in pages, in which case only the current page of entities
+ * is kept in memory.
  *
  * @param <E> the type of entities handled by this iterator
  * @version $Id$
@@ -35,31 +39,63 @@
 {
     private final PrimaryEntityManager<E> entityManager;
 
+    private final int pageSize;
+
     private Iterator<String> iterator;
 
+    /** The loaded entities not yet returned. */
+    private Iterator<E> page = Collections.emptyIterator();
+
     /**
-     * Default constructor.
+     * Default constructor, loading one entity at a time.
      *
      * @param identifiers the identifiers of the entities to be contained in the lazy collection
      * @param entityManager the entity manager responsible for actually loading the entities
      */
     public LazyPrimaryEntityIterator(List<String> identifiers, PrimaryEntityManager<E> entityManager)
+    {
+        this(identifiers, entityManager, 1);
+    }
+
+    /**
+     * Constructor loading the entities in pages, with {@link PrimaryEntityManager#get(java.util.Collection)}.
+     *
+     * @param identifiers the identifiers of the entities to be contained in the lazy collection
+     * @param entityManager the entity manager responsible for actually loading the entities
+     * @param pageSize how many entities to load at once
+     * @since 1.4
+     */
+    public LazyPrimaryEntityIterator(List<String> identifiers, PrimaryEntityManager<E> entityManager, int pageSize)
     {
         this.iterator = identifiers.iterator();
         this.entityManager = entityManager;
+        this.pageSize = pageSize;
     }
 
     @Override
     public boolean hasNext()
     {
-        return this.iterator.hasNext();
+        return this.page.hasNext() || this.iterator.hasNext();
     }
 
     @Override
     public E next()
     {
-        String id = this.iterator.next();
-        return this.entityManager.get(id);
+        if (this.pageSize <= 1) {
+            String id = this.iterator.next();
+            return this.entityManager.get(id);
+        }
+        if (!this.page.hasNext()) {
+            List<String> ids = new ArrayList<>(this.pageSize);
+            while (ids.size() < this.pageSize && this.iterator.hasNext()) {
+                ids.add(this.iterator.next());
+            }
+            if (ids.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            this.page = this.entityManager.get(ids).iterator();
+        }
+        return this.page.next();
     }
 
     @Override
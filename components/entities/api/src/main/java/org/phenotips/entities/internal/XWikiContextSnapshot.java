@@ -0,0 +1,56 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Utility class for handing the XWiki context of a request to other threads, which can't share it with the request
+ * thread. Translations, permission checks and other components rely on the XWiki context, so work moved to other
+ * threads needs a copy of it, without the request, the response, or the database session of the request thread, which
+ * must not be used from other threads.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public final class XWikiContextSnapshot
+{
+    /** Context entries bound to the request thread, which are left out of the snapshot. */
+    private static final String[] REQUEST_BOUND_ENTRIES = { "request", "response", "hibsession", "hibtransaction" };
+
+    /** Private default constructor, so that this utility class can't be instantiated. */
+    private XWikiContextSnapshot()
+    {
+        // Nothing to do
+    }
+
+    /**
+     * Copies an XWiki context for use in another thread. The original context is not changed.
+     *
+     * @param xcontext the context to copy, usually the context of the current request
+     * @return a copy of the context, without the entries bound to the request thread
+     */
+    public static XWikiContext copy(XWikiContext xcontext)
+    {
+        XWikiContext copy = xcontext.clone();
+        for (String entry : REQUEST_BOUND_ENTRIES) {
+            copy.remove(entry);
+        }
+        return copy;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.phenotips.entities.PrimaryEntity;
+
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.bridge.DocumentModelBridge;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link AbstractPrimaryEntityManager} base implementation.
+ */
+public class AbstractPrimaryEntityManagerTest
+{
+    private static final EntityReference SPACE = new EntityReference("data", EntityType.SPACE);
+
+    private static final DocumentReference CLASS = new DocumentReference("xwiki", "PhenoTips", "EntityClass");
+
+    private final DocumentReference ref1 = new DocumentReference("xwiki", "data", "E0000001");
+
+    private final DocumentReference ref2 = new DocumentReference("xwiki", "data", "E0000002");
+
+    private final DocumentReference ref3 = new DocumentReference("xwiki", "data", "E0000003");
+
+    @Mock
+    private DocumentAccessBridge bridge;
+
+    @Mock
+    private DocumentReferenceResolver<String> stringResolver;
+
+    @Mock
+    private BulkDocumentLoader documentLoader;
+
+    @Mock
+    private EntityIdSequence idSequence;
+
+    @Mock
+    private EntityReferenceSerializer<String> localSerializer;
+
+    @Mock
+    private XWikiDocument doc1;
+
+    @Mock
+    private XWikiDocument doc2;
+
+    @Mock
+    private XWikiDocument doc3;
+
+    @Mock
+    private PrimaryEntity entity1;
+
+    @Mock
+    private PrimaryEntity entity2;
+
+    private final Map<DocumentModelBridge, PrimaryEntity> entities = new HashMap<>();
+
+    private AbstractPrimaryEntityManager<PrimaryEntity> manager;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+        this.manager = new AbstractPrimaryEntityManager<PrimaryEntity>()
+        {
+            @Override
+            public EntityReference getDataSpace()
+            {
+                return SPACE;
+            }
+
+            @Override
+            public PrimaryEntity load(DocumentModelBridge document)
+            {
+                return AbstractPrimaryEntityManagerTest.this.entities.get(document);
+            }
+
+            @Override
+            protected DocumentReference getEntityXClassReference()
+            {
+                return CLASS;
+            }
+        };
+        ReflectionUtils.setFieldValue(this.manager, "bridge", this.bridge);
+        ReflectionUtils.setFieldValue(this.manager, "stringResolver", this.stringResolver);
+        ReflectionUtils.setFieldValue(this.manager, "documentLoader", this.documentLoader);
+        ReflectionUtils.setFieldValue(this.manager, "idSequence", this.idSequence);
+        ReflectionUtils.setFieldValue(this.manager, "localSerializer", this.localSerializer);
+        ReflectionUtils.setFieldValue(this.manager, "logger", mock(Logger.class));
+
+        when(this.stringResolver.resolve("E0000001", SPACE)).thenReturn(this.ref1);
+        when(this.stringResolver.resolve("E0000002", SPACE)).thenReturn(this.ref2);
+        when(this.stringResolver.resolve("E0000003", SPACE)).thenReturn(this.ref3);
+        this.entities.put(this.doc1, this.entity1);
+        this.entities.put(this.doc2, this.entity2);
+    }
+
+    @Test
+    public void bulkLoadedDocumentsAreNotLoadedAgain() throws Exception
+    {
+        Map<DocumentReference, XWikiDocument> documents = new HashMap<>();
+        documents.put(this.ref1, this.doc1);
+        documents.put(this.ref2, this.doc2);
+        when(this.documentLoader.load(Arrays.asList(this.ref1, this.ref2))).thenReturn(documents);
+
+        List<PrimaryEntity> result = this.manager.get(Arrays.asList("E0000002", "E0000001"));
+
+        Assert.assertEquals(Arrays.asList(this.entity2, this.entity1), result);
+        verify(this.bridge, never()).getDocument(any(DocumentReference.class));
+    }
+
+    @Test
+    public void documentsNotLoadedInBulkAreLoadedSeparately() throws Exception
+    {
+        when(this.documentLoader.load(Arrays.asList(this.ref1, this.ref2, this.ref3)))
+            .thenReturn(Collections.singletonMap(this.ref1, this.doc1));
+        when(this.bridge.getDocument(this.ref2)).thenReturn(this.doc2);
+        // The third entity doesn't exist
+        when(this.bridge.getDocument(this.ref3)).thenReturn(this.doc3);
+        when(this.doc3.isNew()).thenReturn(true);
+
+        List<PrimaryEntity> result = this.manager.get(Arrays.asList("E0000001", "E0000002", "E0000003"));
+
+        Assert.assertEquals(Arrays.asList(this.entity1, this.entity2, null), result);
+        verify(this.bridge, never()).getDocument(this.ref1);
+    }
+
+    @Test
+    public void creationFailsWhenTheSequenceCannotReserveIdentifiers() throws Exception
+    {
+        when(this.idSequence.isAvailable()).thenReturn(true);
+        when(this.localSerializer.serialize(CLASS)).thenReturn("PhenoTips.EntityClass");
+        when(this.idSequence.next(eq("PhenoTips.EntityClass"), any(LongSupplier.class))).thenReturn(-1L);
+
+        Assert.assertNull(this.manager.create(this.ref1));
+        verify(this.bridge, never()).getDocument(any(DocumentReference.class));
+        verify(this.bridge, never()).exists(any(DocumentReference.class));
+    }
+
+    @Test
+    public void emptyInputGivesEmptyResult()
+    {
+        when(this.documentLoader.load(Collections.<DocumentReference>emptyList()))
+            .thenReturn(Collections.<DocumentReference, XWikiDocument>emptyMap());
+
+        Assert.assertTrue(this.manager.get(Collections.<String>emptyList()).isEmpty());
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.store.XWikiCacheStore;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link BulkDocumentLoader} component.
+ */
+public class BulkDocumentLoaderTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<BulkDocumentLoader> mocker =
+        new MockitoComponentMockingRule<>(BulkDocumentLoader.class);
+
+    private final DocumentReference ref1 = new DocumentReference("xwiki", "data", "P0000001");
+
+    private final DocumentReference ref2 = new DocumentReference("xwiki", "data", "P0000002");
+
+    @Mock
+    private XWikiContext xcontext;
+
+    @Mock
+    private XWiki xwiki;
+
+    @Mock
+    private BulkStore store;
+
+    @Mock
+    private XWikiCacheStore cacheStore;
+
+    @Mock
+    private Cache<XWikiDocument> cache;
+
+    @Mock
+    private XWikiDocument doc1;
+
+    @Mock
+    private XWikiDocument doc2;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+        Provider<XWikiContext> xcontextProvider =
+            this.mocker.getInstance(new DefaultParameterizedType(null, Provider.class, XWikiContext.class));
+        when(xcontextProvider.get()).thenReturn(this.xcontext);
+        when(this.xcontext.getWiki()).thenReturn(this.xwiki);
+        when(this.xcontext.getWikiId()).thenReturn("xwiki");
+        when(this.xwiki.getHibernateStore()).thenReturn(this.store);
+        when(this.xwiki.getStore()).thenReturn(this.cacheStore);
+        when(this.cacheStore.getCache()).thenReturn(this.cache);
+        when(this.cacheStore.getKey(anyString(), eq(""), same(this.xcontext))).thenAnswer(
+            invocation -> "xwiki:" + invocation.getArguments()[0]);
+
+        EntityReferenceSerializer<String> serializer =
+            this.mocker.getInstance(EntityReferenceSerializer.TYPE_STRING, "local");
+        when(serializer.serialize(this.ref1)).thenReturn("data.P0000001");
+        when(serializer.serialize(this.ref2)).thenReturn("data.P0000002");
+        when(this.doc1.getDocumentReference()).thenReturn(this.ref1);
+        when(this.doc2.getDocumentReference()).thenReturn(this.ref2);
+    }
+
+    @Test
+    public void documentsAreLoadedByTheStore() throws Exception
+    {
+        when(this.store.loadXWikiDocs(Arrays.asList("data.P0000001", "data.P0000002"), this.xcontext))
+            .thenReturn(Arrays.asList(this.doc2, this.doc1));
+
+        Map<DocumentReference, XWikiDocument> result =
+            this.mocker.getComponentUnderTest().load(Arrays.asList(this.ref1, this.ref2));
+
+        Assert.assertEquals(2, result.size());
+        Assert.assertSame(this.doc1, result.get(this.ref1));
+        Assert.assertSame(this.doc2, result.get(this.ref2));
+    }
+
+    @Test
+    public void loadedDocumentsArePlacedInTheCache() throws Exception
+    {
+        when(this.store.loadXWikiDocs(Arrays.asList("data.P0000001", "data.P0000002"), this.xcontext))
+            .thenReturn(Arrays.asList(this.doc2, this.doc1));
+
+        this.mocker.getComponentUnderTest().load(Arrays.asList(this.ref1, this.ref2));
+
+        verify(this.cache).set("xwiki:data.P0000001", this.doc1);
+        verify(this.cache).set("xwiki:data.P0000002", this.doc2);
+    }
+
+    @Test
+    public void onlyDocumentsMissingFromTheCacheAreLoaded() throws Exception
+    {
+        XWikiDocument cached = mock(XWikiDocument.class);
+        when(this.cache.get("xwiki:data.P0000001")).thenReturn(cached);
+        when(this.store.loadXWikiDocs(Collections.singletonList("data.P0000002"), this.xcontext))
+            .thenReturn(Collections.singletonList(this.doc2));
+
+        Map<DocumentReference, XWikiDocument> result =
+            this.mocker.getComponentUnderTest().load(Arrays.asList(this.ref1, this.ref2));
+
+        Assert.assertEquals(2, result.size());
+        Assert.assertSame(cached, result.get(this.ref1));
+        Assert.assertSame(this.doc2, result.get(this.ref2));
+        verify(this.cache, never()).set(eq("xwiki:data.P0000001"), any(XWikiDocument.class));
+    }
+
+    @Test
+    public void cachedMissingDocumentsAreSkipped() throws Exception
+    {
+        XWikiDocument cached = mock(XWikiDocument.class);
+        when(cached.isNew()).thenReturn(true);
+        when(this.cache.get("xwiki:data.P0000001")).thenReturn(cached);
+        when(this.cache.get("xwiki:data.P0000002")).thenReturn(cached);
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest().load(Arrays.asList(this.ref1, this.ref2)).isEmpty());
+        verify(this.store, never()).loadXWikiDocs(anyListOf(String.class), any(XWikiContext.class));
+    }
+
+    @Test
+    public void documentsCachedMeanwhileAreTakenFromTheCache() throws Exception
+    {
+        XWikiDocument cached = mock(XWikiDocument.class);
+        when(this.cache.get("xwiki:data.P0000001")).thenReturn(null, cached);
+        when(this.store.loadXWikiDocs(Collections.singletonList("data.P0000001"), this.xcontext))
+            .thenReturn(Collections.singletonList(this.doc1));
+
+        Map<DocumentReference, XWikiDocument> result =
+            this.mocker.getComponentUnderTest().load(Collections.singletonList(this.ref1));
+
+        Assert.assertSame(cached, result.get(this.ref1));
+        verify(this.cache, never()).set(anyString(), any(XWikiDocument.class));
+    }
+
+    @Test
+    public void documentsAreLoadedWithoutACache() throws Exception
+    {
+        when(this.xwiki.getStore()).thenReturn(this.store);
+        when(this.store.loadXWikiDocs(Collections.singletonList("data.P0000001"), this.xcontext))
+            .thenReturn(Collections.singletonList(this.doc1));
+
+        Map<DocumentReference, XWikiDocument> result =
+            this.mocker.getComponentUnderTest().load(Collections.singletonList(this.ref1));
+
+        Assert.assertSame(this.doc1, result.get(this.ref1));
+    }
+
+    @Test
+    public void documentsFromOtherWikisAreSkipped() throws Exception
+    {
+        DocumentReference other = new DocumentReference("other", "data", "P0000001");
+        when(this.store.loadXWikiDocs(Collections.singletonList("data.P0000001"), this.xcontext))
+            .thenReturn(Collections.singletonList(this.doc1));
+
+        Map<DocumentReference, XWikiDocument> result =
+            this.mocker.getComponentUnderTest().load(Arrays.asList(this.ref1, other));
+
+        Assert.assertEquals(1, result.size());
+        Assert.assertSame(this.doc1, result.get(this.ref1));
+    }
+
+    @Test
+    public void nothingIsLoadedWithoutReferencesFromTheCurrentWiki() throws Exception
+    {
+        DocumentReference other = new DocumentReference("other", "data", "P0000001");
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest().load(Collections.singletonList(other)).isEmpty());
+        verify(this.store, never()).loadXWikiDocs(anyListOf(String.class), any(XWikiContext.class));
+    }
+
+    @Test
+    public void nothingIsLoadedWhenTheStoreCannotLoadInBulk() throws Exception
+    {
+        when(this.xwiki.getHibernateStore()).thenReturn(mock(XWikiHibernateStore.class));
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest().load(Arrays.asList(this.ref1, this.ref2)).isEmpty());
+    }
+
+    @Test
+    public void nothingIsLoadedWithoutAStore() throws Exception
+    {
+        when(this.xwiki.getHibernateStore()).thenReturn(null);
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest().load(Arrays.asList(this.ref1, this.ref2)).isEmpty());
+    }
+
+    @Test
+    public void failuresAreReportedAsNothingLoaded() throws Exception
+    {
+        when(this.store.loadXWikiDocs(Arrays.asList("data.P0000001", "data.P0000002"), this.xcontext))
+            .thenThrow(new XWikiException());
+
+        Assert.assertTrue(this.mocker.getComponentUnderTest().load(Arrays.asList(this.ref1, this.ref2)).isEmpty());
+        verify(this.mocker.getMockedLogger()).warn(eq("Failed to load documents in bulk: {}"), anyString());
+    }
+
+    /** Stands for the store of the webapp, which can load documents in bulk. */
+    public static class BulkStore extends XWikiHibernateStore implements BulkDocumentStore
+    {
+        @Override
+        public List<XWikiDocument> loadXWikiDocs(List<String> fullNames, XWikiContext context) throws XWikiException
+        {
+            return Collections.emptyList();
+        }
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+import javax.inject.Provider;
+
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+import com.xpn.xwiki.store.XWikiHibernateBaseStore.HibernateCallback;
+import com.xpn.xwiki.store.XWikiHibernateStore;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.same;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link EntityIdSequence} component.
+ */
+public class EntityIdSequenceTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<EntityIdSequence> mocker =
+        new MockitoComponentMockingRule<>(EntityIdSequence.class);
+
+    @Mock
+    private XWikiContext xcontext;
+
+    @Mock
+    private XWiki xwiki;
+
+    @Mock
+    private XWikiHibernateStore store;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private SQLQuery select;
+
+    @Mock
+    private SQLQuery update;
+
+    private EntityIdSequence sequence;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+        Provider<XWikiContext> xcontextProvider =
+            this.mocker.getInstance(new DefaultParameterizedType(null, Provider.class, XWikiContext.class));
+        when(xcontextProvider.get()).thenReturn(this.xcontext);
+        when(this.xcontext.getWiki()).thenReturn(this.xwiki);
+        when(this.xcontext.getWikiId()).thenReturn("xwiki");
+        when(this.xwiki.getHibernateStore()).thenReturn(this.store);
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty("phenotips.entities.idBlockSize", Integer.class)).thenReturn(3);
+        // The sequence object already exists
+        doReturn(7L).when(this.store).executeRead(same(this.xcontext), any(HibernateCallback.class));
+
+        this.sequence = this.mocker.getComponentUnderTest();
+    }
+
+    @Test
+    public void isAvailableRequiresDatabaseStore()
+    {
+        Assert.assertTrue(this.sequence.isAvailable());
+        when(this.xwiki.getHibernateStore()).thenReturn(null);
+        Assert.assertFalse(this.sequence.isAvailable());
+    }
+
+    @Test
+    public void identifiersAreHandedOutFromReservedBlocks() throws Exception
+    {
+        doReturn(10L, 20L).when(this.store).executeWrite(same(this.xcontext), any(HibernateCallback.class));
+
+        Assert.assertEquals(10, this.sequence.next("PhenoTips.PatientClass", () -> 0));
+        Assert.assertEquals(11, this.sequence.next("PhenoTips.PatientClass", () -> 0));
+        Assert.assertEquals(12, this.sequence.next("PhenoTips.PatientClass", () -> 0));
+        verify(this.store, times(1)).executeWrite(same(this.xcontext), any(HibernateCallback.class));
+
+        Assert.assertEquals(20, this.sequence.next("PhenoTips.PatientClass", () -> 0));
+        verify(this.store, times(2)).executeWrite(same(this.xcontext), any(HibernateCallback.class));
+    }
+
+    @Test
+    public void concurrentReservationsAreRetried() throws Exception
+    {
+        doReturn(-1L, -1L, 30L).when(this.store).executeWrite(same(this.xcontext), any(HibernateCallback.class));
+
+        Assert.assertEquals(30, this.sequence.next("PhenoTips.FamilyClass", () -> 0));
+        verify(this.store, times(3)).executeWrite(same(this.xcontext), any(HibernateCallback.class));
+    }
+
+    @Test
+    public void unavailableSequenceReturnsNegativeValue() throws Exception
+    {
+        doReturn(-1L).when(this.store).executeWrite(same(this.xcontext), any(HibernateCallback.class));
+
+        Assert.assertEquals(-1, this.sequence.next("PhenoTips.FamilyClass", () -> 0));
+        // A new block is requested again on the next call
+        Assert.assertEquals(-1, this.sequence.next("PhenoTips.FamilyClass", () -> 0));
+    }
+
+    @Test
+    public void blocksAreReservedWithAConditionalUpdate() throws Exception
+    {
+        mockReservationQueries();
+        when(this.select.uniqueResult()).thenReturn(BigInteger.valueOf(10));
+        when(this.update.executeUpdate()).thenReturn(1);
+
+        Assert.assertEquals(10, this.sequence.next("PhenoTips.PatientClass", () -> 0));
+        verify(this.select).setLong("id", 7L);
+        verify(this.update).setLong("next", 13L);
+        verify(this.update).setLong("current", 10L);
+        verify(this.update).setLong("id", 7L);
+    }
+
+    @Test
+    public void concurrentUpdatesAreDetectedAndRetried() throws Exception
+    {
+        mockReservationQueries();
+        when(this.select.uniqueResult()).thenReturn(BigInteger.valueOf(10), BigInteger.valueOf(13));
+        // Another node reserved the 10-12 block between the select and the update
+        when(this.update.executeUpdate()).thenReturn(0, 1);
+
+        Assert.assertEquals(13, this.sequence.next("PhenoTips.PatientClass", () -> 0));
+        verify(this.update).setLong("current", 10L);
+        verify(this.update).setLong("current", 13L);
+    }
+
+    @Test
+    public void missingSequenceValueFailsReservation() throws Exception
+    {
+        mockReservationQueries();
+        when(this.select.uniqueResult()).thenReturn(null);
+
+        Assert.assertEquals(-1, this.sequence.next("PhenoTips.PatientClass", () -> 0));
+        verify(this.update, never()).executeUpdate();
+    }
+
+    @Test
+    public void newSequencesAreCreatedInTheirOwnDocumentReadFromTheDatabase() throws Exception
+    {
+        doReturn(null, null, 8L).when(this.store).executeRead(same(this.xcontext), any(HibernateCallback.class));
+        doReturn(5L).when(this.store).executeWrite(same(this.xcontext), any(HibernateCallback.class));
+        XWikiDocument doc = mock(XWikiDocument.class);
+        BaseObject object = mock(BaseObject.class);
+        when(this.store.loadXWikiDoc(any(XWikiDocument.class), same(this.xcontext))).thenReturn(doc);
+        when(doc.newXObject(EntityIdSequence.CLASS_REFERENCE, this.xcontext)).thenReturn(object);
+
+        Assert.assertEquals(5, this.sequence.next("PhenoTips.FamilyClass", () -> 4));
+
+        ArgumentCaptor<XWikiDocument> loaded = ArgumentCaptor.forClass(XWikiDocument.class);
+        verify(this.store).loadXWikiDoc(loaded.capture(), same(this.xcontext));
+        Assert.assertEquals(new DocumentReference("xwiki", "PhenoTips", "EntitySequence_PhenoTips_FamilyClass"),
+            loaded.getValue().getDocumentReference());
+        verify(object).setStringValue("sequence", "PhenoTips.FamilyClass");
+        verify(object).setLongValue("next", 5L);
+        verify(this.xwiki).saveDocument(doc, "Added identifier sequence PhenoTips.FamilyClass", true, this.xcontext);
+        verify(this.xwiki, never()).getDocument(any(EntityReference.class), same(this.xcontext));
+    }
+
+    private void mockReservationQueries() throws Exception
+    {
+        doAnswer(invocation -> ((HibernateCallback<?>) invocation.getArguments()[1]).doInHibernate(this.session))
+            .when(this.store).executeWrite(same(this.xcontext), any(HibernateCallback.class));
+        when(this.session.createSQLQuery(startsWith("select"))).thenReturn(this.select);
+        when(this.session.createSQLQuery(startsWith("update"))).thenReturn(this.update);
+        for (SQLQuery query : Arrays.asList(this.select, this.update)) {
+            when(query.setLong(anyString(), anyLong())).thenReturn(query);
+            when(query.setString(anyString(), anyString())).thenReturn(query);
+        }
+    }
+}
@@ -22,6 +22,8 @@
 
 import org.xwiki.component.manager.ComponentLookupException;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.NoSuchElementException;
@@ -32,6 +34,8 @@
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class LazyPrimaryEntityIteratorTest
@@ -79,6 +83,33 @@ public void basicFunctionalityTests() throws NoSuchElementException
         Assert.assertFalse(iterator.hasNext());
     }
 
+    @Test
+    public void pagedIteratorLoadsOnePageAtATime() throws NoSuchElementException
+    {
+        List<String> input = Arrays.asList("Entity01", "Entity02", "Entity03");
+        when(this.manager.get(Arrays.asList("Entity01", "Entity02"))).thenReturn(Arrays.asList(this.e1, this.e2));
+        when(this.manager.get(Arrays.asList("Entity03"))).thenReturn(Collections.<PrimaryEntity>singletonList(null));
+
+        LazyPrimaryEntityIterator<PrimaryEntity> iterator = new LazyPrimaryEntityIterator<>(input, this.manager, 2);
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals(this.e1, iterator.next());
+        verify(this.manager, never()).get(Arrays.asList("Entity03"));
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertEquals(this.e2, iterator.next());
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertNull(iterator.next());
+        Assert.assertFalse(iterator.hasNext());
+        verify(this.manager, never()).get("Entity01");
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void pagedIteratorThrowsWhenExhausted() throws NoSuchElementException
+    {
+        List<String> input = new LinkedList<>();
+        LazyPrimaryEntityIterator<PrimaryEntity> iterator = new LazyPrimaryEntityIterator<>(input, this.manager, 2);
+        iterator.next();
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void removeThrowsUnsupportedOperationException() throws UnsupportedOperationException
     {
@@ -0,0 +1,52 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.entities.internal;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Tests for the {@link XWikiContextSnapshot} utility class.
+ */
+public class XWikiContextSnapshotTest
+{
+    @Test
+    public void requestBoundEntriesAreLeftOut()
+    {
+        XWikiContext xcontext = new XWikiContext();
+        xcontext.put("request", new Object());
+        xcontext.put("response", new Object());
+        xcontext.put("hibsession", new Object());
+        xcontext.put("hibtransaction", new Object());
+        xcontext.put("locale", "fr");
+
+        XWikiContext copy = XWikiContextSnapshot.copy(xcontext);
+
+        Assert.assertNotSame(xcontext, copy);
+        Assert.assertEquals("fr", copy.get("locale"));
+        Assert.assertFalse(copy.containsKey("request"));
+        Assert.assertFalse(copy.containsKey("response"));
+        Assert.assertFalse(copy.containsKey("hibsession"));
+        Assert.assertFalse(copy.containsKey("hibtransaction"));
+        // The original context is still usable by the request thread
+        Assert.assertTrue(xcontext.containsKey("request"));
+        Assert.assertTrue(xcontext.containsKey("hibsession"));
+    }
+}
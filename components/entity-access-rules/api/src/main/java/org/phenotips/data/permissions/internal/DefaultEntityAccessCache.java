@@ -0,0 +1,134 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.permissions.internal;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.EntityReferenceSerializer;
+
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Default implementation of the {@link EntityAccessCache}, using two LRU caches. Group closures are keyed by the
+ * user or group, and are invalidated all at once whenever a group changes. Entity snapshots are keyed by the entity
+ * document and its version, so saving a new version of the document implicitly discards the old snapshot. Documents
+ * with unsaved changes are never cached, since their content no longer matches their version.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Singleton
+public class DefaultEntityAccessCache implements EntityAccessCache, Initializable
+{
+    private static final char VERSION_SEPARATOR = '@';
+
+    @Inject
+    private CacheManager cacheManager;
+
+    @Inject
+    private EntityReferenceSerializer<String> serializer;
+
+    private Cache<Set<DocumentReference>> groups;
+
+    private Cache<EntityAccessSnapshot> snapshots;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.groups = this.cacheManager.createNewCache(new LRUCacheConfiguration("entityAccessGroups", 1000, 3600));
+            this.snapshots =
+                this.cacheManager.createNewCache(new LRUCacheConfiguration("entityAccessSnapshots", 10000, 3600));
+        } catch (CacheException ex) {
+            throw new InitializationException("Failed to create the entity access caches", ex);
+        }
+    }
+
+    @Nullable
+    @Override
+    public Set<DocumentReference> getGroups(@Nonnull DocumentReference userOrGroup)
+    {
+        return this.groups.get(this.serializer.serialize(userOrGroup));
+    }
+
+    @Override
+    public void setGroups(@Nonnull DocumentReference userOrGroup, @Nonnull Set<DocumentReference> closure)
+    {
+        this.groups.set(this.serializer.serialize(userOrGroup), closure);
+    }
+
+    @Override
+    public void invalidateGroups()
+    {
+        this.groups.removeAll();
+    }
+
+    @Nullable
+    @Override
+    public EntityAccessSnapshot getSnapshot(@Nonnull XWikiDocument entityDocument)
+    {
+        String key = isCacheable(entityDocument) ? getSnapshotKey(entityDocument) : null;
+        return key == null ? null : this.snapshots.get(key);
+    }
+
+    @Override
+    public void setSnapshot(@Nonnull XWikiDocument entityDocument, @Nonnull EntityAccessSnapshot snapshot)
+    {
+        String key = isCacheable(entityDocument) ? getSnapshotKey(entityDocument) : null;
+        if (key != null) {
+            this.snapshots.set(key, snapshot);
+        }
+    }
+
+    @Override
+    public void invalidateSnapshot(@Nonnull XWikiDocument entityDocument)
+    {
+        String key = getSnapshotKey(entityDocument);
+        if (key != null) {
+            this.snapshots.remove(key);
+        }
+    }
+
+    private boolean isCacheable(XWikiDocument entityDocument)
+    {
+        return !entityDocument.isNew() && !entityDocument.isMetaDataDirty() && !entityDocument.isContentDirty();
+    }
+
+    private String getSnapshotKey(XWikiDocument entityDocument)
+    {
+        if (entityDocument.getDocumentReference() == null) {
+            return null;
+        }
+        return this.serializer.serialize(entityDocument.getDocumentReference()) + VERSION_SEPARATOR
+            + entityDocument.getVersion();
+    }
+}
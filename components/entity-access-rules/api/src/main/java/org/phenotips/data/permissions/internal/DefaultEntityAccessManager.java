@@ -113,6 +113,9 @@ public class DefaultEntityAccessManager implements EntityAccessManager
     @Named("none")
     private AccessLevel noAccess;
 
+    @Inject
+    private EntityAccessCache cache;
+
     @Nonnull
     @Override
     public Collection<AccessLevel> listAccessLevels()
@@ -158,29 +161,15 @@ public AccessLevel getAccessLevel(@Nullable final PrimaryEntity entity, @Nullabl
             return result;
         }
         try {
-            final Owner ownerObj = getOwner(entity);
-            final EntityReference owner = ownerObj == null ? null : ownerObj.getUser();
-            final Collection<Collaborator> collaborators = getCollaborators(entity);
-            final Set<DocumentReference> processedEntities = new HashSet<>();
-
-            final Queue<DocumentReference> entitiesToCheck = new LinkedList<>();
-            entitiesToCheck.add((DocumentReference) userOrGroup);
-
-            AccessLevel currentItemAccess;
-            DocumentReference currentItem;
-            final XWikiContext context = this.xcontextProvider.get();
-            final XWikiGroupService groupService = context.getWiki().getGroupService(context);
-            while (!entitiesToCheck.isEmpty()) {
-                currentItem = entitiesToCheck.poll();
-                currentItemAccess = getAccessLevel(currentItem, owner, collaborators);
-                if (currentItemAccess.compareTo(result) > 0) {
-                    result = currentItemAccess;
+            final Set<DocumentReference> groups = getGroups((DocumentReference) userOrGroup);
+            final EntityAccessSnapshot snapshot = getSnapshot(entity);
+            if (snapshot.getOwner() != null && groups.contains(snapshot.getOwner())) {
+                result = resolveAccessLevel(OWNER);
+            }
+            for (final Map.Entry<EntityReference, AccessLevel> collaborator : snapshot.getCollaborators().entrySet()) {
+                if (groups.contains(collaborator.getKey()) && collaborator.getValue().compareTo(result) > 0) {
+                    result = collaborator.getValue();
                 }
-                processedEntities.add(currentItem);
-                final Collection<DocumentReference> groups =
-                    groupService.getAllGroupsReferencesForMember(currentItem, 0, 0, context);
-                groups.removeAll(processedEntities);
-                entitiesToCheck.addAll(groups);
             }
         } catch (final XWikiException ex) {
             this.logger.warn("Failed to compute access level for [{}] on [{}]: {}", userOrGroup, entity.getId(),
@@ -190,30 +179,62 @@ public AccessLevel getAccessLevel(@Nullable final PrimaryEntity entity, @Nullabl
     }
 
     /**
-     * Gets the access level for the {@code userOrGroup}.
+     * Gets the {@code userOrGroup} itself, along with all the groups that it belongs to, directly or through nested
+     * groups. The result is cached until group memberships change.
+     *
+     * @param userOrGroup the {@link DocumentReference} to the user or group of interest
+     * @return an unmodifiable set of references
+     * @throws XWikiException if the groups cannot be retrieved
+     */
+    private Set<DocumentReference> getGroups(@Nonnull final DocumentReference userOrGroup) throws XWikiException
+    {
+        Set<DocumentReference> result = this.cache.getGroups(userOrGroup);
+        if (result != null) {
+            return result;
+        }
+
+        final Set<DocumentReference> processedEntities = new HashSet<>();
+        final Queue<DocumentReference> entitiesToCheck = new LinkedList<>();
+        entitiesToCheck.add(userOrGroup);
+
+        final XWikiContext context = this.xcontextProvider.get();
+        final XWikiGroupService groupService = context.getWiki().getGroupService(context);
+        while (!entitiesToCheck.isEmpty()) {
+            final DocumentReference currentItem = entitiesToCheck.poll();
+            if (!processedEntities.add(currentItem)) {
+                continue;
+            }
+            for (final DocumentReference group
+                : groupService.getAllGroupsReferencesForMember(currentItem, 0, 0, context)) {
+                if (!processedEntities.contains(group)) {
+                    entitiesToCheck.add(group);
+                }
+            }
+        }
+        result = Collections.unmodifiableSet(processedEntities);
+        this.cache.setGroups(userOrGroup, result);
+        return result;
+    }
+
+    /**
+     * Gets the owner and collaborators of the {@code entity}, reusing a cached snapshot if the entity document hasn't
+     * changed since it was computed.
      *
-     * @param userOrGroup the {@link EntityReference} to the user or group of interest
-     * @param owner the {@link EntityReference} to the owner of the entity
-     * @param collaborators the {@link Collaborator}s associated with the entity
-     * @return the {@link AccessLevel} for the {@code userOrGroup}
+     * @param entity the {@link PrimaryEntity} of interest
+     * @return the owner and collaborators of the entity
      */
-    private AccessLevel getAccessLevel(
-        @Nonnull final EntityReference userOrGroup,
-        @Nullable final EntityReference owner,
-        @Nonnull final Collection<Collaborator> collaborators)
+    private EntityAccessSnapshot getSnapshot(@Nonnull final PrimaryEntity entity)
     {
-        if (userOrGroup.equals(owner)) {
-            return resolveAccessLevel(OWNER);
+        final XWikiDocument entityDoc = entity.getXDocument();
+        EntityAccessSnapshot result = entityDoc == null ? null : this.cache.getSnapshot(entityDoc);
+        if (result == null) {
+            final Owner owner = getOwner(entity);
+            result = new EntityAccessSnapshot(owner == null ? null : owner.getUser(), getCollaborators(entity));
+            if (entityDoc != null) {
+                this.cache.setSnapshot(entityDoc, result);
+            }
         }
-        return collaborators.stream()
-            // Find collaborator user that is the same as userOrGroup.
-            .filter(collaborator -> collaborator.getUser().equals(userOrGroup))
-            // Get the access level.
-            .map(Collaborator::getAccessLevel)
-            // Only interested in the first such occurrence.
-            .findFirst()
-            // If there are no such occurrences, access level is "none".
-            .orElseGet(() -> resolveAccessLevel(NONE));
+        return result;
     }
 
     @Override
@@ -285,6 +306,8 @@ private boolean changeOwnership(
                 : StringUtils.EMPTY;
 
         final XWikiDocument entityXDoc = entity.getXDocument();
+        // Mark the document as changed first, so that its unsaved owner and collaborators are never cached
+        entityXDoc.setMetaDataDirty(true);
         this.helper.setProperty(entityXDoc, classReference, OWNER, owner);
         // If there was a distinct previous owner, make them a collaborator.
         if (previousOwner != null && !previousOwner.equals(newOwner)) {
@@ -369,6 +392,7 @@ public boolean setCollaborators(
             final DocumentReference classReference = this.partialEntityResolver.resolve(Collaborator.CLASS_REFERENCE,
                 entity.getDocumentReference());
             final XWikiContext context = this.xcontextProvider.get();
+            patientDoc.setMetaDataDirty(true);
             patientDoc.removeXObjects(classReference);
             if (newCollaborators != null) {
                 newCollaborators.stream()
@@ -380,7 +404,6 @@ public boolean setCollaborators(
                     .forEach(collaborator -> saveCollaboratorData(collaborator, patientDoc, classReference, context));
             }
             patientDoc.setAuthorReference(this.helper.getCurrentUser());
-            patientDoc.setMetaDataDirty(true);
             context.getWiki().saveDocument(patientDoc, "Updated collaborators", true, context);
             return true;
         } catch (Exception e) {
@@ -450,6 +473,7 @@ private boolean addCollaborator(
                 ? this.entitySerializer.serialize(absoluteUserOrGroup)
                 : StringUtils.EMPTY;
 
+            entityDoc.setMetaDataDirty(true);
             final BaseObject o = getOrCreateCollaboratorObj(entity.getDocumentReference(), entityDoc, user, context);
 
             o.setStringValue(COLLABORATOR, StringUtils.defaultString(user));
@@ -457,7 +481,6 @@ private boolean addCollaborator(
 
             if (saveDocument) {
                 entityDoc.setAuthorReference(this.helper.getCurrentUser());
-                entityDoc.setMetaDataDirty(true);
                 context.getWiki().saveDocument(entityDoc, "Added collaborator: " + user, true, context);
             }
             return true;
@@ -526,6 +549,7 @@ private boolean removeCollaborator(
 
             final BaseObject o = patientDoc.getXObject(classReference, COLLABORATOR, user, false);
             if (o != null) {
+                patientDoc.setMetaDataDirty(true);
                 patientDoc.removeXObject(o);
                 if (saveDocument) {
                     context.getWiki().saveDocument(patientDoc, "Removed collaborator: " + user, true, context);
@@ -0,0 +1,87 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.permissions.internal;
+
+import org.xwiki.component.annotation.Role;
+import org.xwiki.model.reference.DocumentReference;
+
+import java.util.Set;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Caches the data needed for computing access levels, so that repeated access checks for the same user, for example
+ * when listing many entities, don't have to recompute it every time.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Role
+public interface EntityAccessCache
+{
+    /**
+     * Retrieves the cached group closure of a user or group: the user or group itself, along with all the groups that
+     * it belongs to, directly or through nested groups.
+     *
+     * @param userOrGroup a {@link DocumentReference} to a user or a group
+     * @return the cached closure, or {@code null} if it is not in the cache
+     */
+    @Nullable
+    Set<DocumentReference> getGroups(@Nonnull DocumentReference userOrGroup);
+
+    /**
+     * Stores the group closure of a user or group.
+     *
+     * @param userOrGroup a {@link DocumentReference} to a user or a group
+     * @param groups the closure, as described in {@link #getGroups(DocumentReference)}
+     */
+    void setGroups(@Nonnull DocumentReference userOrGroup, @Nonnull Set<DocumentReference> groups);
+
+    /** Forgets all the cached group closures, to be called whenever group memberships change. */
+    void invalidateGroups();
+
+    /**
+     * Retrieves the cached owner and collaborators of an entity, as stored in the given version of its document.
+     *
+     * @param entityDocument the document of the entity
+     * @return the cached snapshot, or {@code null} if it is not in the cache, or if the document cannot be cached
+     */
+    @Nullable
+    EntityAccessSnapshot getSnapshot(@Nonnull XWikiDocument entityDocument);
+
+    /**
+     * Stores the owner and collaborators of an entity, as stored in the current version of its document. Documents not
+     * yet saved, or with unsaved changes, are not cached, since their content may still change without changing the
+     * version.
+     *
+     * @param entityDocument the document of the entity
+     * @param snapshot the owner and collaborators found in the document
+     */
+    void setSnapshot(@Nonnull XWikiDocument entityDocument, @Nonnull EntityAccessSnapshot snapshot);
+
+    /**
+     * Forgets the cached owner and collaborators of an entity, as stored in the given version of its document, to be
+     * called when that version is replaced or deleted.
+     *
+     * @param entityDocument the document of the entity
+     */
+    void invalidateSnapshot(@Nonnull XWikiDocument entityDocument);
+}
@@ -0,0 +1,80 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.permissions.internal;
+
+import org.phenotips.Constants;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+
+/**
+ * Clears the cached group closures whenever a group document is created, modified or deleted, since this may change
+ * the groups that a user belongs to. The cached owner and collaborators of the affected document are also discarded,
+ * both for the replaced version, and for the new version, in case a deleted document is created again.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Named("phenotips-entity-access-cache-invalidator")
+@Singleton
+public class EntityAccessCacheInvalidator extends AbstractEventListener
+{
+    private static final EntityReference GROUP_CLASS =
+        new EntityReference("XWikiGroups", EntityType.DOCUMENT, Constants.XWIKI_SPACE_REFERENCE);
+
+    @Inject
+    private EntityAccessCache cache;
+
+    /** Default constructor, sets up the listener name and the list of events to subscribe to. */
+    public EntityAccessCacheInvalidator()
+    {
+        super("phenotips-entity-access-cache-invalidator", new DocumentCreatedEvent(), new DocumentUpdatedEvent(),
+            new DocumentDeletedEvent());
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        XWikiDocument doc = (XWikiDocument) source;
+        if (isGroup(doc) || isGroup(doc.getOriginalDocument())) {
+            this.cache.invalidateGroups();
+        }
+        this.cache.invalidateSnapshot(doc);
+        if (doc.getOriginalDocument() != null) {
+            this.cache.invalidateSnapshot(doc.getOriginalDocument());
+        }
+    }
+
+    private boolean isGroup(XWikiDocument doc)
+    {
+        return doc != null && doc.getXObject(GROUP_CLASS) != null;
+    }
+}
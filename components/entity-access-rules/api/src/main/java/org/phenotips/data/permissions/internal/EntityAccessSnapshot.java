@@ -0,0 +1,83 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.permissions.internal;
+
+import org.phenotips.data.permissions.AccessLevel;
+import org.phenotips.data.permissions.Collaborator;
+
+import org.xwiki.model.reference.EntityReference;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+/**
+ * An immutable view of the owner and collaborators of an entity, used for computing access levels without parsing
+ * the entity document again.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public final class EntityAccessSnapshot
+{
+    private final EntityReference owner;
+
+    private final Map<EntityReference, AccessLevel> collaborators;
+
+    /**
+     * Simple constructor.
+     *
+     * @param owner the owner of the entity, may be {@code null}
+     * @param collaborators the collaborators of the entity
+     */
+    public EntityAccessSnapshot(@Nullable EntityReference owner, @Nonnull Collection<Collaborator> collaborators)
+    {
+        this.owner = owner;
+        Map<EntityReference, AccessLevel> levels = new LinkedHashMap<>();
+        for (Collaborator collaborator : collaborators) {
+            levels.put(collaborator.getUser(), collaborator.getAccessLevel());
+        }
+        this.collaborators = Collections.unmodifiableMap(levels);
+    }
+
+    /**
+     * The owner of the entity.
+     *
+     * @return a reference to the owner, may be {@code null}
+     */
+    @Nullable
+    public EntityReference getOwner()
+    {
+        return this.owner;
+    }
+
+    /**
+     * The collaborators of the entity, along with their access level.
+     *
+     * @return an unmodifiable map, may be empty
+     */
+    @Nonnull
+    public Map<EntityReference, AccessLevel> getCollaborators()
+    {
+        return this.collaborators;
+    }
+}
@@ -41,6 +41,7 @@
 
 import java.lang.reflect.ParameterizedType;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -54,6 +55,7 @@
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.slf4j.Logger;
@@ -69,7 +71,9 @@
 import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -991,6 +995,64 @@ public void getAccessLevelWithExceptions() throws ComponentLookupException, XWik
         Assert.assertSame(NO_ACCESS, this.mocker.getComponentUnderTest().getAccessLevel(this.entity, OTHER_USER));
     }
 
+    /**
+     * {@link EntityAccessManager#getAccessLevel(PrimaryEntity, EntityReference)} computes the group closure and the
+     * entity snapshot once, and stores them in the cache.
+     */
+    @Test
+    public void getAccessLevelStoresGroupsAndSnapshotInCache() throws ComponentLookupException, XWikiException
+    {
+        when(this.xwiki.getGroupService(this.context)).thenReturn(this.groupService);
+        when(this.groupService.getAllGroupsReferencesForMember(COLLABORATOR, 0, 0, this.context))
+            .thenReturn(Collections.singletonList(GROUP));
+        EntityAccessCache cache = this.mocker.getInstance(EntityAccessCache.class);
+
+        Assert.assertSame(NO_ACCESS, this.component.getAccessLevel(this.entity, COLLABORATOR));
+
+        verify(cache).setGroups(COLLABORATOR, new HashSet<>(Arrays.asList(COLLABORATOR, GROUP)));
+        verify(cache).setSnapshot(same(this.entityDoc), any(EntityAccessSnapshot.class));
+    }
+
+    /**
+     * {@link EntityAccessManager#getAccessLevel(PrimaryEntity, EntityReference)} uses the cached group closure and
+     * entity snapshot, without querying groups or parsing the entity document.
+     */
+    @Test
+    public void getAccessLevelUsesCachedGroupsAndSnapshot() throws ComponentLookupException, XWikiException
+    {
+        EntityAccessCache cache = this.mocker.getInstance(EntityAccessCache.class);
+        when(cache.getGroups(COLLABORATOR)).thenReturn(new HashSet<>(Arrays.asList(COLLABORATOR, GROUP)));
+        Collaborator groupCollaborator = new DefaultCollaborator(GROUP, MANAGE_ACCESS, this.helper);
+        Collaborator otherCollaborator = new DefaultCollaborator(OTHER_USER, EDIT_ACCESS, this.helper);
+        when(cache.getSnapshot(this.entityDoc))
+            .thenReturn(new EntityAccessSnapshot(OWNER, Arrays.asList(otherCollaborator, groupCollaborator)));
+
+        Assert.assertSame(MANAGE_ACCESS, this.component.getAccessLevel(this.entity, COLLABORATOR));
+
+        verify(this.xwiki, never()).getGroupService(this.context);
+        verify(this.entityDoc, never()).getXObjects(COLLABORATOR_CLASS);
+    }
+
+    /**
+     * Changing the collaborators of an entity marks its document as changed before touching it, so that the unsaved
+     * collaborators are never cached under the saved version; the cached snapshot is discarded once the new version is
+     * saved.
+     */
+    @Test
+    public void setCollaboratorsMarksTheDocumentAsChangedBeforeModifyingIt() throws ComponentLookupException
+    {
+        EntityAccessCache cache = this.mocker.getInstance(EntityAccessCache.class);
+        when(this.partialEntityResolver.resolve(Collaborator.CLASS_REFERENCE, PATIENT_REFERENCE))
+            .thenReturn(COLLABORATOR_CLASS);
+
+        this.component.setCollaborators(this.entity, Collections.emptyList());
+
+        InOrder order = inOrder(this.entityDoc);
+        order.verify(this.entityDoc).setMetaDataDirty(true);
+        order.verify(this.entityDoc).removeXObjects(COLLABORATOR_CLASS);
+        verify(cache, never()).invalidateSnapshot(this.entityDoc);
+    }
+
     /** Basic tests for {@link EntityAccessManager#listAccessLevels()}. */
     @Test
     public void listAccessLevels() throws ComponentLookupException
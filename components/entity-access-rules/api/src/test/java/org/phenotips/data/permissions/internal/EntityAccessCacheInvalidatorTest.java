@@ -0,0 +1,119 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.permissions.internal;
+
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link EntityAccessCacheInvalidator} component.
+ *
+ * @version $Id$
+ */
+public class EntityAccessCacheInvalidatorTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<EventListener> mocker =
+        new MockitoComponentMockingRule<>(EntityAccessCacheInvalidator.class);
+
+    @Mock
+    private XWikiDocument doc;
+
+    @Mock
+    private XWikiDocument originalDoc;
+
+    private EntityAccessCache cache;
+
+    @Before
+    public void setUp() throws ComponentLookupException
+    {
+        MockitoAnnotations.initMocks(this);
+        this.cache = this.mocker.getInstance(EntityAccessCache.class);
+        when(this.doc.getOriginalDocument()).thenReturn(this.originalDoc);
+    }
+
+    @Test
+    public void listensToDocumentChanges() throws ComponentLookupException
+    {
+        EventListener listener = this.mocker.getComponentUnderTest();
+        Assert.assertEquals("phenotips-entity-access-cache-invalidator", listener.getName());
+        Assert.assertEquals(3, listener.getEvents().size());
+        Assert.assertTrue(listener.getEvents().get(0).matches(new DocumentCreatedEvent()));
+        Assert.assertTrue(listener.getEvents().get(1).matches(new DocumentUpdatedEvent()));
+        Assert.assertTrue(listener.getEvents().get(2).matches(new DocumentDeletedEvent()));
+    }
+
+    @Test
+    public void groupChangesInvalidateGroups() throws ComponentLookupException
+    {
+        when(this.doc.getXObject(any(EntityReference.class))).thenReturn(mock(BaseObject.class));
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(), this.doc, null);
+        verify(this.cache).invalidateGroups();
+    }
+
+    @Test
+    public void deletedGroupsInvalidateGroups() throws ComponentLookupException
+    {
+        when(this.originalDoc.getXObject(any(EntityReference.class))).thenReturn(mock(BaseObject.class));
+        this.mocker.getComponentUnderTest().onEvent(new DocumentDeletedEvent(), this.doc, null);
+        verify(this.cache).invalidateGroups();
+    }
+
+    @Test
+    public void otherDocumentsDontInvalidateGroups() throws ComponentLookupException
+    {
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(), this.doc, null);
+        verify(this.cache, never()).invalidateGroups();
+    }
+
+    @Test
+    public void savedDocumentsInvalidateTheirSnapshots() throws ComponentLookupException
+    {
+        this.mocker.getComponentUnderTest().onEvent(new DocumentUpdatedEvent(), this.doc, null);
+        verify(this.cache).invalidateSnapshot(this.doc);
+        verify(this.cache).invalidateSnapshot(this.originalDoc);
+    }
+
+    @Test
+    public void deletedDocumentsInvalidateTheirSnapshots() throws ComponentLookupException
+    {
+        this.mocker.getComponentUnderTest().onEvent(new DocumentDeletedEvent(), this.doc, null);
+        verify(this.cache).invalidateSnapshot(this.originalDoc);
+    }
+}
@@ -65,8 +65,11 @@
     /** The titles of phenotypic categories mapped to a list of HPO ids which represent that category. */
     private Map<String, List<String>> categoryMapping;
 
-    /** Phenotypic feature to phenotypic category section map. Used for sorting features by category. */
-    private Map<String, String> sectionFeatureTree;
+    /**
+     * Phenotypic feature to phenotypic category section map. Used for sorting features by category. Kept per thread,
+     * since several patients may be sorted at the same time.
+     */
+    private final ThreadLocal<Map<String, String>> sectionFeatureTree = new ThreadLocal<>();
 
     static {
         try {
@@ -172,7 +175,7 @@ public List<Feature> sortFeaturesSimple(@Nonnull Set<? extends Feature> features
      */
     public List<Feature> sortFeaturesWithSections(Set<? extends Feature> features)
     {
-        this.sectionFeatureTree = new HashMap<>();
+        this.sectionFeatureTree.set(new HashMap<String, String>());
         List<Feature> positiveList = sortFeaturesBySection(filterFeaturesByPresentStatus(features, true));
         List<Feature> negativeList = sortFeaturesBySection(filterFeaturesByPresentStatus(features, false));
 
@@ -204,7 +207,7 @@ private List<Feature> sortFeaturesBySection(List<Feature> features)
                 while (iter.hasNext()) {
                     Feature feature = iter.next();
                     if (getCategoriesFromOntology(feature.getId()).contains(category)) {
-                        this.sectionFeatureTree.put(feature.getId(), section);
+                        this.sectionFeatureTree.get().put(feature.getId(), section);
                         sortedFeatures.add(feature);
                         iter.remove();
                     }
@@ -212,7 +215,7 @@ private List<Feature> sortFeaturesBySection(List<Feature> features)
             }
         }
         for (Feature feature : features) {
-            this.sectionFeatureTree.put(feature.getId(), "No category");
+            this.sectionFeatureTree.get().put(feature.getId(), "No category");
         }
         sortedFeatures.addAll(features);
         return sortedFeatures;
@@ -266,11 +269,12 @@ public Map<String, List<String>> getCategoryMapping()
     }
 
     /**
-     * @return mappings of HPO id to the title of the category the id belongs to
+     * @return mappings of HPO id to the title of the category the id belongs to, for the features last sorted by
+     *         {@link #sortFeaturesWithSections(Set)} in the current thread
      */
     public Map<String, String> getSectionFeatureTree()
     {
-        return this.sectionFeatureTree;
+        return this.sectionFeatureTree.get();
     }
 
     /**
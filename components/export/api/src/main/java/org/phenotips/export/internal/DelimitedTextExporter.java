@@ -0,0 +1,154 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.data.Patient;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Exports patients as delimited text, such as CSV or TSV, meant to be consumed by other programs. The columns are the
+ * same as in the spreadsheet export, but without any styling or merged cells. Each patient is written as soon as it is
+ * converted, with one record for each row the patient would occupy in the spreadsheet. The identifiers of the patient,
+ * if exported, are repeated on every record, so that each record can be processed on its own.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class DelimitedTextExporter implements PatientExporter
+{
+    /** Comma separated values, as described in RFC 4180. */
+    public static final CSVFormat CSV = CSVFormat.RFC4180;
+
+    /** Tab separated values. */
+    public static final CSVFormat TSV = CSVFormat.TDF;
+
+    private static final String LABEL_SEPARATOR = ": ";
+
+    private final CSVFormat format;
+
+    /**
+     * Simple constructor.
+     *
+     * @param format the format of the output, for example {@link #CSV} or {@link #TSV}
+     */
+    public DelimitedTextExporter(CSVFormat format)
+    {
+        this.format = format;
+    }
+
+    @Override
+    public void export(String[] enabledFieldsArray, List<Patient> patients, OutputStream outputStream)
+        throws Exception
+    {
+        if (enabledFieldsArray == null || outputStream == null) {
+            return;
+        }
+        Set<String> enabledFields = new HashSet<>(Arrays.asList(enabledFieldsArray));
+        boolean hasIdentifiers = enabledFields.contains("doc.name") || enabledFields.contains("external_id");
+
+        DataToCellConverter converter = SheetAssembler.createConverter(enabledFields);
+        List<DataSection> headers = SheetAssembler.generateHeader(converter, enabledFields);
+        int[] offsets = new int[headers.size() + 1];
+        for (int i = 0; i < headers.size(); i++) {
+            offsets[i + 1] = offsets[i] + headers.get(i).getMaxX() + 1;
+        }
+        // The identifiers are always the first section
+        int identifierColumns = hasIdentifiers && !headers.isEmpty() ? offsets[1] : 0;
+
+        try (CSVPrinter printer = new CSVPrinter(
+            new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)), this.format)) {
+            printer.printRecord(Arrays.asList(getColumnLabels(headers, offsets)));
+            for (Patient patient : patients) {
+                if (patient == null) {
+                    continue;
+                }
+                List<DataSection> sections = SheetAssembler.generateBody(converter, patient);
+                for (String[] line : getLines(sections, offsets, identifierColumns)) {
+                    printer.printRecord(Arrays.asList(line));
+                }
+            }
+            printer.flush();
+        }
+    }
+
+    /**
+     * Builds one label for each column. Labels of columns which are part of a larger section are prefixed with the
+     * name of the section, so that labels are unique.
+     */
+    private String[] getColumnLabels(List<DataSection> headers, int[] offsets)
+    {
+        String[] labels = new String[offsets[headers.size()]];
+        for (int i = 0; i < headers.size(); i++) {
+            DataSection header = headers.get(i);
+            String sectionName = "";
+            for (DataCell cell : header.getCellList()) {
+                if (cell.getX() == 0 && cell.getY() == 0) {
+                    sectionName = cell.getValue();
+                }
+                if (cell.getY().equals(header.getMaxY())) {
+                    labels[offsets[i] + cell.getX()] = cell.getValue();
+                }
+            }
+            for (int x = offsets[i]; x < offsets[i + 1]; x++) {
+                if (labels[x] == null) {
+                    labels[x] = sectionName;
+                } else if (header.getMaxY() > 0) {
+                    labels[x] = sectionName + LABEL_SEPARATOR + labels[x];
+                }
+            }
+        }
+        return labels;
+    }
+
+    /** Lays out the cells of one patient into lines, placing each section in its columns. */
+    private List<String[]> getLines(List<DataSection> sections, int[] offsets, int identifierColumns)
+    {
+        int columns = offsets[offsets.length - 1];
+        List<String[]> lines = new ArrayList<>();
+        for (int i = 0; i < sections.size() && i < offsets.length - 1; i++) {
+            int width = offsets[i + 1] - offsets[i];
+            for (DataCell cell : sections.get(i).getCellList()) {
+                if (cell.getX() >= width) {
+                    continue;
+                }
+                while (lines.size() <= cell.getY()) {
+                    String[] line = new String[columns];
+                    Arrays.fill(line, "");
+                    lines.add(line);
+                }
+                lines.get(cell.getY())[offsets[i] + cell.getX()] = cell.getValue();
+            }
+        }
+        for (int y = 1; y < lines.size(); y++) {
+            System.arraycopy(lines.get(0), 0, lines.get(y), 0, identifierColumns);
+        }
+        return lines;
+    }
+}
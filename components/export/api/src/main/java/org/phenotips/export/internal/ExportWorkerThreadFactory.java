@@ -0,0 +1,91 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.entities.internal.XWikiContextSnapshot;
+
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Creates worker threads which can convert patients outside of the request thread. Translations and other components
+ * used while converting rely on the XWiki context, so each worker starts with its own copy of a snapshot of the context
+ * of the request that started the export. The snapshot is taken once, when the factory is created, and doesn't hold the
+ * request, the response, or the database session of the request thread, which must not be used from other threads.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class ExportWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory
+{
+    private final Execution execution;
+
+    private final XWikiContext xcontext;
+
+    /**
+     * Simple constructor passing all the needed components. This must be called on the request thread, before any
+     * worker is started.
+     *
+     * @param execution used for setting up the execution context of each worker
+     * @param xcontext the context of the request which started the export, of which a snapshot is copied into each
+     *            worker
+     */
+    public ExportWorkerThreadFactory(Execution execution, XWikiContext xcontext)
+    {
+        this.execution = execution;
+        this.xcontext = XWikiContextSnapshot.copy(xcontext);
+    }
+
+    @Override
+    public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+    {
+        ForkJoinWorkerThread worker = new ContextAwareWorker(pool);
+        worker.setName("Spreadsheet export worker " + worker.getPoolIndex());
+        return worker;
+    }
+
+    private final class ContextAwareWorker extends ForkJoinWorkerThread
+    {
+        ContextAwareWorker(ForkJoinPool pool)
+        {
+            super(pool);
+        }
+
+        @Override
+        protected void onStart()
+        {
+            super.onStart();
+            ExecutionContext context = new ExecutionContext();
+            context.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY,
+                ExportWorkerThreadFactory.this.xcontext.clone());
+            ExportWorkerThreadFactory.this.execution.setContext(context);
+        }
+
+        @Override
+        protected void onTermination(Throwable exception)
+        {
+            ExportWorkerThreadFactory.this.execution.removeContext();
+            super.onTermination(exception);
+        }
+    }
+}
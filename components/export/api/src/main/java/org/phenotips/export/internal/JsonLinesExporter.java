@@ -0,0 +1,65 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.data.Patient;
+
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Exports patients as JSON Lines, one {@link Patient#toJSON(java.util.Collection) JSON object} per line, limited to
+ * the enabled fields. Each patient is written as soon as it is serialized.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class JsonLinesExporter implements PatientExporter
+{
+    /** The JSON key holding the patient identifier, always exported so that lines can be told apart. */
+    private static final String ID_FIELD = "id";
+
+    @Override
+    public void export(String[] enabledFieldsArray, List<Patient> patients, OutputStream outputStream)
+        throws Exception
+    {
+        if (enabledFieldsArray == null || outputStream == null) {
+            return;
+        }
+        Set<String> selectedFields = new HashSet<>(Arrays.asList(enabledFieldsArray));
+        selectedFields.add(ID_FIELD);
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            for (Patient patient : patients) {
+                if (patient == null) {
+                    continue;
+                }
+                patient.toJSON(selectedFields).write(writer);
+                writer.write('\n');
+            }
+            writer.flush();
+        }
+    }
+}
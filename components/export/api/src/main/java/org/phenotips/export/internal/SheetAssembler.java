@@ -39,6 +39,9 @@
     /** The number of rows the header occupies. */
     private Integer headerHeight = 0;
 
+    /** Generates the actual cells; it holds the set up done for the enabled fields, so it is kept around. */
+    private DataToCellConverter converter;
+
     /**
      * Generates {@link org.phenotips.export.internal.DataCell} containing the data to export, combines them together
      * into one big matrix ({@link #oneSection}), and styles them.
@@ -49,31 +52,38 @@
      */
     public SheetAssembler(Set<String> enabledFields, List<Patient> patients) throws Exception
     {
-        DataToCellConverter converter = new DataToCellConverter();
-
-        /* Some sections require setup, which need to be run here. */
-        converter.phenotypeSetup(enabledFields);
-        converter.prenatalPhenotypeSetup(enabledFields);
-        converter.genesSetup(enabledFields);
-        converter.variantsSetup(enabledFields);
-
-        /* Headers MUST be generated first. Some of them contain setup code for the body */
-        List<DataSection> headers = generateHeader(converter, enabledFields);
-        List<List<DataSection>> bodySections = generateBody(converter, patients);
+        this(enabledFields);
+        DataSection headerCombined = this.oneSection;
 
         List<DataSection> patientsCombined = new LinkedList<>();
-        for (List<DataSection> patientSections : bodySections) {
-            for (DataSection section : patientSections) {
-                section.finalizeToMatrix();
-                Styler.disallowBodyStyles(section);
-                Styler.extendStyleHorizontally(section, StyleOption.FEATURE_SEPARATOR, StyleOption.YES_NO_SEPARATOR);
-                Styler.styleSectionBorder(section, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
+        for (Patient patient : patients) {
+            if (patient == null) {
+                continue;
             }
-
-            DataSection assembled = assembleSectionsX(patientSections, true);
-            Styler.styleSectionBottom(assembled, StyleOption.PATIENT_BORDER);
-            patientsCombined.add(assembled);
+            patientsCombined.add(combinePatient(patient));
         }
+        DataSection bodyCombined = assembleSectionsY(patientsCombined, false);
+
+        this.oneSection = assembleSectionsY(Arrays.asList(headerCombined, bodyCombined), true);
+
+        /* Extend the section borders all the way to the bottom of the sheet */
+        Styler
+            .extendStyleVertically(this.oneSection, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
+    }
+
+    /**
+     * Only sets up the export and generates the header, leaving the patients to be assembled one at a time through
+     * {@link #assemblePatient(Patient)}. Until then, {@link #getAssembled()} only contains the header.
+     *
+     * @param enabledFields set of fields for which data should be exported
+     * @throws java.lang.Exception half of the functions used throw exceptions
+     */
+    public SheetAssembler(Set<String> enabledFields) throws Exception
+    {
+        this.converter = createConverter(enabledFields);
+
+        /* Headers MUST be generated first. Some of them contain setup code for the body */
+        List<DataSection> headers = generateHeader(this.converter, enabledFields);
 
         /* Inserting styling calls here is fairly unavoidable. Also don't forget to merge BEFORE styling. */
         for (DataSection header : headers) {
@@ -82,70 +92,109 @@ public SheetAssembler(Set<String> enabledFields, List<Patient> patients) throws
             Styler.styleSectionBorder(header, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
         }
 
-        DataSection bodyCombined = assembleSectionsY(patientsCombined, false);
         DataSection headerCombined = assembleSectionsX(headers, true);
 
         /* Add style through functions. Use only with finalized sections. */
         Styler.styleSectionBottom(headerCombined, StyleOption.HEADER_BOTTOM);
 
         this.headerHeight = headerCombined.getMaxY() + 1;
-        this.oneSection = assembleSectionsY(Arrays.asList(headerCombined, bodyCombined), true);
+        this.oneSection = headerCombined;
+    }
 
-        /* Extend the section borders all the way to the bottom of the sheet */
-        Styler
-            .extendStyleVertically(this.oneSection, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
+    /**
+     * Generates and styles all the cells of one patient, as a section starting at the top-left corner of the sheet
+     * body. The result is independent from the other patients, so it can be committed as soon as it is assembled.
+     * Must only be used with an assembler created through {@link #SheetAssembler(Set)}.
+     *
+     * @param patient the patient whose data should be exported, must not be null
+     * @return a finalized section holding all the cells of the patient
+     * @throws java.lang.Exception half of the functions used throw exceptions
+     */
+    public DataSection assemblePatient(Patient patient) throws Exception
+    {
+        DataSection assembled = combinePatient(patient);
+        /* Each patient spans all the columns of the header, so the borders can be extended one patient at a time */
+        Styler.extendStyleVertically(assembled, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
+        return assembled;
+    }
+
+    /** Combines all the sections of one patient side by side, and marks the bottom of the patient's row. */
+    private DataSection combinePatient(Patient patient) throws Exception
+    {
+        List<DataSection> patientSections = generateBody(this.converter, patient);
+        for (DataSection section : patientSections) {
+            section.finalizeToMatrix();
+            Styler.disallowBodyStyles(section);
+            Styler.extendStyleHorizontally(section, StyleOption.FEATURE_SEPARATOR, StyleOption.YES_NO_SEPARATOR);
+            Styler.styleSectionBorder(section, StyleOption.SECTION_BORDER_LEFT, StyleOption.SECTION_BORDER_RIGHT);
+        }
+        DataSection assembled = assembleSectionsX(patientSections, true);
+        Styler.styleSectionBottom(assembled, StyleOption.PATIENT_BORDER);
+        return assembled;
+    }
+
+    /**
+     * Creates a converter and runs the setup required by some of the sections.
+     *
+     * @param enabledFields set of fields for which data should be exported
+     * @return a converter ready for generating the header
+     * @throws java.lang.Exception if setting up a section fails
+     */
+    static DataToCellConverter createConverter(Set<String> enabledFields) throws Exception
+    {
+        DataToCellConverter converter = new DataToCellConverter();
+
+        /* Some sections require setup, which need to be run here. */
+        converter.phenotypeSetup(enabledFields);
+        converter.prenatalPhenotypeSetup(enabledFields);
+        converter.genesSetup(enabledFields);
+        converter.variantsSetup(enabledFields);
+        return converter;
     }
 
     /**
      * Instruction list of which {@link org.phenotips.export.internal.DataToCellConverter}'s functions to call with a
-     * null {@link org.phenotips.export.internal.DataSection} filter.
+     * null {@link org.phenotips.export.internal.DataSection} filter. The sections are in the same order as the ones
+     * from {@link #generateHeader(DataToCellConverter, Set)}, and are neither finalized nor styled.
      *
      * @return list of generated, not null {@link org.phenotips.export.internal.DataSection}s
      */
-    private List<List<DataSection>> generateBody(DataToCellConverter converter, List<Patient> patients)
-        throws Exception
+    static List<DataSection> generateBody(DataToCellConverter converter, Patient patient) throws Exception
     {
-        List<List<DataSection>> allSections = new LinkedList<>();
-        for (Patient patient : patients) {
-            if (patient == null) {
-                continue;
-            }
-            List<DataSection> patientSections = new LinkedList<>();
-            patientSections.add(converter.idBody(patient));
-            patientSections.add(converter.documentInfoBody(patient));
-            patientSections.add(converter.patientInfoBody(patient));
-            patientSections.add(converter.familyHistoryBody(patient));
-            patientSections.add(converter.prenatalPerinatalHistoryBody(patient));
-            patientSections.add(converter.prenatalPhenotypeBody(patient));
-            patientSections.add(converter.medicalHistoryBody(patient));
-            patientSections.add(converter.isNormalBody(patient));
-            patientSections.add(converter.phenotypeBody(patient));
-            patientSections.add(converter.genesBody(patient));
-            patientSections.add(converter.variantsBody(patient));
-            patientSections.add(converter.geneticNotesBody(patient));
-            patientSections.add(converter.clinicalDiagnosisBody(patient));
-            patientSections.add(converter.disordersBody(patient));
-            patientSections.add(converter.diagnosisNotesBody(patient));
-            patientSections.add(converter.isSolvedBody(patient));
-
-            /* Null section filter */
-            Iterator<DataSection> it = patientSections.iterator();
-            while (it.hasNext()) {
-                DataSection i = it.next();
-                if (i == null) {
-                    it.remove();
-                }
+        List<DataSection> patientSections = new LinkedList<>();
+        patientSections.add(converter.idBody(patient));
+        patientSections.add(converter.documentInfoBody(patient));
+        patientSections.add(converter.patientInfoBody(patient));
+        patientSections.add(converter.familyHistoryBody(patient));
+        patientSections.add(converter.prenatalPerinatalHistoryBody(patient));
+        patientSections.add(converter.prenatalPhenotypeBody(patient));
+        patientSections.add(converter.medicalHistoryBody(patient));
+        patientSections.add(converter.isNormalBody(patient));
+        patientSections.add(converter.phenotypeBody(patient));
+        patientSections.add(converter.genesBody(patient));
+        patientSections.add(converter.variantsBody(patient));
+        patientSections.add(converter.geneticNotesBody(patient));
+        patientSections.add(converter.clinicalDiagnosisBody(patient));
+        patientSections.add(converter.disordersBody(patient));
+        patientSections.add(converter.diagnosisNotesBody(patient));
+        patientSections.add(converter.isSolvedBody(patient));
+
+        /* Null section filter */
+        Iterator<DataSection> it = patientSections.iterator();
+        while (it.hasNext()) {
+            DataSection i = it.next();
+            if (i == null) {
+                it.remove();
             }
-            allSections.add(patientSections);
         }
-        return allSections;
+        return patientSections;
     }
 
     /**
-     * Same as {@link #generateBody(DataToCellConverter, java.util.List)} but for header sections. Most of header
+     * Same as {@link #generateBody(DataToCellConverter, Patient)} but for header sections. Most of header
      * functions from {@link org.phenotips.export.internal.DataToCellConverter} contain some set up code.
      */
-    private List<DataSection> generateHeader(DataToCellConverter converter, Set<String> enabledFields) throws Exception
+    static List<DataSection> generateHeader(DataToCellConverter converter, Set<String> enabledFields) throws Exception
     {
         List<DataSection> headerSections = new LinkedList<>();
         headerSections.add(converter.idHeader(enabledFields));
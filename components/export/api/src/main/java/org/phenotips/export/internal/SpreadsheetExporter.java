@@ -42,8 +42,11 @@
  * @version $Id$
  * @since 1.0RC1
  */
-public class SpreadsheetExporter
+public class SpreadsheetExporter implements PatientExporter
 {
+    /** The maximum width of a column, in the units used by {@link Sheet#setColumnWidth(int, int)}. */
+    protected static final int MAX_COLUMN_WIDTH = DataToCellConverter.MAX_CHARACTERS_PER_LINE * 210;
+
     protected Workbook wBook;
 
     /**
@@ -61,6 +64,7 @@
      * @param outputStream stream to which the export will be written to
      * @throws Exception an attempt to close outputStream will be made, but the exception will not be handled
      */
+    @Override
     public void export(String[] enabledFieldsArray, List<Patient> patients, OutputStream outputStream)
         throws Exception
     {
@@ -121,25 +125,37 @@ protected SheetAssembler runAssembler(Set<String> enabledFields, List<Patient> p
      */
     protected void commit(DataSection section, Sheet sheet)
     {
-        DataCell[][] cells = section.getMatrix();
         Styler styler = new Styler();
 
         commitRows(section, sheet, styler);
 
         for (int col = 0; section.getMaxX() >= col; col++) {
             sheet.autoSizeColumn(col);
-            int correctWidth = DataToCellConverter.MAX_CHARACTERS_PER_LINE * 210;
-            if (sheet.getColumnWidth(col) > correctWidth) {
-                sheet.setColumnWidth(col, correctWidth);
+            if (sheet.getColumnWidth(col) > MAX_COLUMN_WIDTH) {
+                sheet.setColumnWidth(col, MAX_COLUMN_WIDTH);
             }
         }
 
         /* Merging has to be done after autosizing because otherwise autosizing breaks */
+        commitMergedRegions(section, sheet, 0);
+    }
+
+    /**
+     * Merges the cells of a section which should span several columns.
+     *
+     * @param section a finalized section
+     * @param sheet a workbook sheet to which the cells from the section were written
+     * @param offset the row of the sheet where the section starts
+     */
+    protected void commitMergedRegions(DataSection section, Sheet sheet, int offset)
+    {
+        DataCell[][] cells = section.getMatrix();
         for (Integer y = 0; y <= section.getMaxY(); y++) {
             for (Integer x = 0; x <= section.getMaxX(); x++) {
                 DataCell dataCell = cells[x][y];
                 if (dataCell != null && dataCell.getMergeX() != null) {
-                    sheet.addMergedRegion(new CellRangeAddress(y, y, x, x + dataCell.getMergeX()));
+                    sheet.addMergedRegion(
+                        new CellRangeAddress(offset + y, offset + y, x, x + dataCell.getMergeX()));
                 }
                 /*
                  * No longer will be merging cells on the Y axis, but keep this code for future reference.
@@ -151,11 +167,24 @@ protected void commit(DataSection section, Sheet sheet)
     }
 
     protected void commitRows(DataSection section, Sheet sheet, Styler styler)
+    {
+        commitRows(section, sheet, styler, 0);
+    }
+
+    /**
+     * Writes the cells of a section into the sheet, starting at the given row, and sets the height of each row.
+     *
+     * @param section a finalized section
+     * @param sheet a workbook sheet to which the cells from the section will be written
+     * @param styler applies the styles of each cell
+     * @param offset the row of the sheet where the section starts
+     */
+    protected void commitRows(DataSection section, Sheet sheet, Styler styler, int offset)
     {
         DataCell[][] cells = section.getMatrix();
         Row row;
         for (Integer y = 0; y <= section.getMaxY(); y++) {
-            row = sheet.createRow(y);
+            row = sheet.createRow(offset + y);
             Integer maxLines = 0;
 
             for (Integer x = 0; x <= section.getMaxX(); x++) {
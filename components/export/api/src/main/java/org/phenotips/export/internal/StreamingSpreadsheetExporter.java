@@ -0,0 +1,253 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.data.Patient;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+
+/**
+ * Exports patients into a spreadsheet while keeping the memory usage bounded, regardless of the number of exported
+ * patients. Instead of assembling the whole sheet into one big {@link DataSection}, patients are converted and
+ * committed one batch at a time into a {@link SXSSFWorkbook}, which only keeps a sliding window of rows in memory and
+ * flushes older rows to a temporary file. Since flushed rows can no longer be inspected, column widths are computed
+ * from the longest value written in each column, instead of using {@link Sheet#autoSizeColumn(int)}. When an executor
+ * is provided, the patients of a batch are converted in parallel, and written in their original order once the whole
+ * batch is converted.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class StreamingSpreadsheetExporter extends SpreadsheetExporter
+{
+    /** How many rows are kept in memory before being flushed to the temporary file. */
+    public static final int ROW_ACCESS_WINDOW = 200;
+
+    /** How many patients are converted before their rows are committed to the sheet. */
+    public static final int BATCH_SIZE = 50;
+
+    /** The width of one character, in the units used by {@link Sheet#setColumnWidth(int, int)}. */
+    private static final int CHARACTER_WIDTH = 256;
+
+    /** The length of the longest line written so far in each column, in characters. */
+    private int[] columnLengths = new int[0];
+
+    /** Converts the patients of a batch in parallel; if missing, patients are converted on the calling thread. */
+    private final ExecutorService converters;
+
+    /** Creates an exporter which converts patients on the calling thread. */
+    public StreamingSpreadsheetExporter()
+    {
+        this(null);
+    }
+
+    /**
+     * Creates an exporter which converts the patients of each batch in parallel. The executor is not shut down by the
+     * exporter.
+     *
+     * @param converters the executor running the conversion of each patient, may be {@code null}
+     */
+    public StreamingSpreadsheetExporter(ExecutorService converters)
+    {
+        this.converters = converters;
+    }
+
+    @Override
+    public void export(String[] enabledFieldsArray, List<Patient> patients, OutputStream outputStream)
+        throws Exception
+    {
+        try {
+            super.export(enabledFieldsArray, patients, outputStream);
+        } finally {
+            if (this.wBook instanceof SXSSFWorkbook) {
+                // Removes the temporary files backing the flushed rows
+                ((SXSSFWorkbook) this.wBook).dispose();
+            }
+        }
+    }
+
+    @Override
+    protected Workbook createNewWorkbook()
+    {
+        SXSSFWorkbook workbook = new SXSSFWorkbook(ROW_ACCESS_WINDOW);
+        workbook.setCompressTempFiles(true);
+        return workbook;
+    }
+
+    /**
+     * Creates the main sheet in the workbook, writes the header, and then converts and writes the patients one batch
+     * at a time, so that only the cells of the current batch are kept in memory.
+     */
+    @Override
+    protected void processMainSheet(Set<String> enabledFields, List<Patient> patients) throws Exception
+    {
+        String sheetName = "main";
+        Sheet sheet = this.wBook.createSheet("Patient Sheet");
+        this.sheets.put(sheetName, sheet);
+        Styler styler = new Styler();
+
+        SheetAssembler assembler = createAssembler(enabledFields);
+        DataSection header = assembler.getAssembled();
+        commitRows(header, sheet, styler, 0);
+        commitMergedRegions(header, sheet, 0);
+        trackColumnLengths(header);
+
+        int offset = assembler.getHeaderHeight();
+        List<Patient> batch = new ArrayList<>(BATCH_SIZE);
+        for (Patient patient : patients) {
+            if (patient == null) {
+                continue;
+            }
+            batch.add(patient);
+            if (batch.size() >= BATCH_SIZE) {
+                offset = commitBatch(assembler, batch, sheet, styler, offset);
+                batch.clear();
+            }
+        }
+        commitBatch(assembler, batch, sheet, styler, offset);
+
+        commitColumnWidths(sheet);
+        freezeHeader(assembler.getHeaderHeight().shortValue(), sheet);
+    }
+
+    protected SheetAssembler createAssembler(Set<String> enabledFields) throws Exception
+    {
+        return new SheetAssembler(enabledFields);
+    }
+
+    /**
+     * Converts a batch of patients and writes their rows into the sheet, one patient below the other.
+     *
+     * @param assembler the assembler which generates the cells of each patient
+     * @param batch the patients to write, in the order they should appear in the sheet
+     * @param sheet the sheet where the rows will be written
+     * @param styler applies the styles of each cell
+     * @param offset the first row available for writing
+     * @return the first row available for writing after this batch
+     * @throws Exception if converting a patient fails
+     */
+    protected int commitBatch(SheetAssembler assembler, List<Patient> batch, Sheet sheet, Styler styler,
+        int offset) throws Exception
+    {
+        int nextRow = offset;
+        for (DataSection section : assembleBatch(assembler, batch)) {
+            commitRows(section, sheet, styler, nextRow);
+            trackColumnLengths(section);
+            nextRow += section.getMaxY() + 1;
+        }
+        return nextRow;
+    }
+
+    /**
+     * Converts a batch of patients, in parallel if an executor is available.
+     *
+     * @param assembler the assembler which generates the cells of each patient
+     * @param batch the patients to convert
+     * @return the sections of each patient, in the same order as the patients in the batch
+     * @throws Exception if converting a patient fails
+     */
+    protected List<DataSection> assembleBatch(SheetAssembler assembler, List<Patient> batch) throws Exception
+    {
+        List<DataSection> sections = new ArrayList<>(batch.size());
+        if (this.converters == null) {
+            for (Patient patient : batch) {
+                sections.add(assembler.assemblePatient(patient));
+            }
+            return sections;
+        }
+
+        List<Future<DataSection>> pending = new ArrayList<>(batch.size());
+        for (Patient patient : batch) {
+            pending.add(this.converters.submit(() -> assembler.assemblePatient(patient)));
+        }
+        try {
+            for (Future<DataSection> section : pending) {
+                sections.add(section.get());
+            }
+        } catch (ExecutionException ex) {
+            for (Future<DataSection> section : pending) {
+                section.cancel(true);
+            }
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        }
+        return sections;
+    }
+
+    /**
+     * Remembers the longest line from each column of a section. Cells spanning several columns are not taken into
+     * account, since they don't have to fit into a single column.
+     *
+     * @param section a finalized section
+     */
+    protected void trackColumnLengths(DataSection section)
+    {
+        if (section.getMaxX() >= this.columnLengths.length) {
+            this.columnLengths = Arrays.copyOf(this.columnLengths, section.getMaxX() + 1);
+        }
+        for (DataCell cell : section.getCellList()) {
+            if (cell.getMergeX() != null || cell.getValue() == null) {
+                continue;
+            }
+            int length = getLongestLineLength(cell.getValue());
+            if (length > this.columnLengths[cell.getX()]) {
+                this.columnLengths[cell.getX()] = length;
+            }
+        }
+    }
+
+    /**
+     * Sets the width of each column to fit its longest line, without exceeding {@link #MAX_COLUMN_WIDTH}.
+     *
+     * @param sheet the sheet where all the rows were written
+     */
+    protected void commitColumnWidths(Sheet sheet)
+    {
+        for (int col = 0; col < this.columnLengths.length; col++) {
+            if (this.columnLengths[col] == 0) {
+                continue;
+            }
+            // Leave a bit of padding around the text
+            int width = (this.columnLengths[col] + 2) * CHARACTER_WIDTH;
+            sheet.setColumnWidth(col, Math.min(width, MAX_COLUMN_WIDTH));
+        }
+    }
+
+    private int getLongestLineLength(String value)
+    {
+        int longest = 0;
+        int start = 0;
+        int end = value.indexOf('\n');
+        while (end >= 0) {
+            longest = Math.max(longest, end - start);
+            start = end + 1;
+            end = value.indexOf('\n', start);
+        }
+        return Math.max(longest, value.length() - start);
+    }
+}
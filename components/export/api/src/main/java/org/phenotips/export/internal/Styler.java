@@ -259,6 +259,12 @@ public static void extendStyleVertically(DataSection section, StyleOption... sty
     public void style(DataCell dataCell, Cell cell, Workbook wBook)
     {
         Set<StyleOption> styles = dataCell.getStyles();
+        /* Workbooks only support a limited number of styles, so don't create a new one if it is already cached. */
+        CellStyle cached = this.styleCache.get(styles == null ? Collections.<StyleOption>emptySet() : styles);
+        if (cached != null) {
+            cell.setCellStyle(cached);
+            return;
+        }
         CellStyle cellStyle = wBook.createCellStyle();
         /* For \n to work properly set to true */
         cellStyle.setWrapText(true);
@@ -19,28 +19,45 @@
 
 import org.phenotips.data.Patient;
 import org.phenotips.data.PatientRepository;
+import org.phenotips.export.internal.DelimitedTextExporter;
+import org.phenotips.export.internal.ExportWorkerThreadFactory;
+import org.phenotips.export.internal.JsonLinesExporter;
+import org.phenotips.export.internal.PatientExporter;
 import org.phenotips.export.internal.SpreadsheetExporter;
+import org.phenotips.export.internal.StreamingSpreadsheetExporter;
 import org.phenotips.security.authorization.AuthorizationService;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
 import org.xwiki.script.service.ScriptService;
 import org.xwiki.security.authorization.Right;
 import org.xwiki.stability.Unstable;
+import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
 import java.io.OutputStream;
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.slf4j.Logger;
 
+import com.xpn.xwiki.XWikiContext;
+
 /**
- * Service for exporting a list of patients into an {@code .xlsx} Excel file.
+ * Service for exporting a list of patients into an {@code .xlsx} Excel file, or into flat text formats meant for other
+ * programs.
  *
  * @version $Id$
  * @since 1.0RC1
@@ -51,6 +68,12 @@
 @Singleton
 public class SpreadsheetExportService implements ScriptService
 {
+    private static final String STREAMING_CONFIGURATION_KEY = "phenotips.export.spreadsheet.streaming";
+
+    private static final String THREADS_CONFIGURATION_KEY = "phenotips.export.spreadsheet.threads";
+
+    private static final String XLSX_FORMAT = "xlsx";
+
     @Inject
     private Logger logger;
 
@@ -69,6 +92,18 @@ public class SpreadsheetExportService implements ScriptService
     @Inject
     private AuthorizationService access;
 
+    /** Used for choosing between the streaming and the in-memory exporter. */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /** Used for setting up the context of the threads converting patients. */
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
     /**
      * Export the provided list of patients into an Excel file, containing the specified columns. The resulting binary
      * filled will be sent through the provided output stream, usually the {@code $response}'s output stream.
@@ -80,27 +115,148 @@ public class SpreadsheetExportService implements ScriptService
      */
     public void export(List<String> patientIds, String[] enabledFields, OutputStream outputStream)
     {
-        SpreadsheetExporter exporter = new SpreadsheetExporter();
+        export(patientIds, enabledFields, XLSX_FORMAT, outputStream);
+    }
+
+    /**
+     * Export the provided list of patients in the requested format, containing the specified columns. Besides the
+     * {@code xlsx} Excel format, the {@code csv} and {@code tsv} formats contain the same columns as the spreadsheet,
+     * without any styling, and the {@code jsonl} format contains the JSON of each patient on a separate line. The text
+     * formats are written patient by patient, as soon as each patient is converted.
+     *
+     * @param patientIds list of patient IDs of the the patients to export
+     * @param enabledFields a list of field names to export; these are internal names, which will be turned into human
+     *            readable labels
+     * @param format one of {@code xlsx}, {@code csv}, {@code tsv}, or {@code jsonl}
+     * @param outputStream the output stream where the resulting file will be sent
+     * @since 1.4
+     */
+    public void export(List<String> patientIds, String[] enabledFields, String format, OutputStream outputStream)
+    {
+        ForkJoinPool converters = null;
         try {
+            PatientExporter exporter;
+            switch (format == null ? XLSX_FORMAT : format) {
+                case XLSX_FORMAT:
+                    if (isStreaming()) {
+                        converters = createConverters();
+                        exporter = new StreamingSpreadsheetExporter(converters);
+                    } else {
+                        exporter = new SpreadsheetExporter();
+                    }
+                    break;
+                case "csv":
+                    exporter = new DelimitedTextExporter(DelimitedTextExporter.CSV);
+                    break;
+                case "tsv":
+                    exporter = new DelimitedTextExporter(DelimitedTextExporter.TSV);
+                    break;
+                case "jsonl":
+                    exporter = new JsonLinesExporter();
+                    break;
+                default:
+                    this.logger.warn("Unknown export format requested: [{}]", format);
+                    return;
+            }
+
             // since scripts do not have access to a non-secure versionof the patient, need to
             // get the actual Patient objects here, and check access rights here
             //
             // FIXME: once new version of entities is in, need to refactor PrimaryEntityManager and incorporate
             //        security features into the entities framework to avoid doing permission checks in client code
             //        that requires non-secure versions of the Patient object
-            List<Patient> patients = new LinkedList<>();
-            for (String patientId : patientIds) {
-                Patient patient = this.patientRepository.get(patientId);
-                if (patient == null || !this.access.hasAccess(
-                        this.userManager.getCurrentUser(), Right.VIEW, patient.getDocumentReference())) {
-                    continue;
-                }
-                patients.add(patient);
+            List<String> accessible = getAccessiblePatients(patientIds);
+            exporter.export(enabledFields, new BatchLoadedPatients(accessible), outputStream);
+        } catch (Exception ex) {
+            this.logger.error("Error caught while generating an export", ex);
+        } finally {
+            if (converters != null) {
+                converters.shutdownNow();
             }
+        }
+    }
 
-            exporter.export(enabledFields, patients, outputStream);
-        } catch (Exception ex) {
-            this.logger.error("Error caught while generating an export spreadsheet", ex);
+    /**
+     * Checks the access rights for all the requested patients before anything is loaded, using only their document
+     * references, so that patients which cannot be exported are never loaded.
+     *
+     * @param patientIds the requested patient IDs
+     * @return the IDs of the patients that the current user can view, in the requested order
+     */
+    private List<String> getAccessiblePatients(List<String> patientIds)
+    {
+        User currentUser = this.userManager.getCurrentUser();
+        EntityReference dataSpace = this.patientRepository.getDataSpace();
+        List<String> result = new ArrayList<>(patientIds.size());
+        for (String patientId : patientIds) {
+            DocumentReference reference = this.referenceResolver.resolve(patientId, dataSpace);
+            if (this.access.hasAccess(currentUser, Right.VIEW, reference)) {
+                result.add(patientId);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Large exports don't fit in memory when the whole workbook is built before being written, so by default the
+     * streaming exporter is used. The in-memory exporter, which sizes columns more precisely, can still be selected by
+     * setting {@code phenotips.export.spreadsheet.streaming} to {@code false}.
+     */
+    private boolean isStreaming()
+    {
+        return !Boolean.FALSE.equals(this.configuration.getProperty(STREAMING_CONFIGURATION_KEY, Boolean.TRUE));
+    }
+
+    /**
+     * The streaming exporter converts patients on a bounded pool of workers. The number of workers defaults to the
+     * number of available processors, and can be changed with {@code phenotips.export.spreadsheet.threads}.
+     *
+     * @return a new pool, or {@code null} if patients should be converted on the request thread
+     */
+    private ForkJoinPool createConverters()
+    {
+        int threads = this.configuration.getProperty(THREADS_CONFIGURATION_KEY,
+            Runtime.getRuntime().availableProcessors());
+        if (threads <= 1) {
+            return null;
+        }
+        return new ForkJoinPool(threads, new ExportWorkerThreadFactory(this.execution, this.xcontextProvider.get()),
+            null, false);
+    }
+
+    /**
+     * Read-only view of the exported patients, which loads them in batches as they are accessed in order, so that
+     * only one batch of patients is kept in memory at a time.
+     */
+    private final class BatchLoadedPatients extends AbstractList<Patient>
+    {
+        private final List<String> ids;
+
+        private int batchStart = -1;
+
+        private List<Patient> batch = Collections.emptyList();
+
+        BatchLoadedPatients(List<String> ids)
+        {
+            this.ids = ids;
+        }
+
+        @Override
+        public Patient get(int index)
+        {
+            if (index < this.batchStart || index >= this.batchStart + this.batch.size()) {
+                this.batchStart = index - index % StreamingSpreadsheetExporter.BATCH_SIZE;
+                int batchEnd = Math.min(this.batchStart + StreamingSpreadsheetExporter.BATCH_SIZE, this.ids.size());
+                this.batch = SpreadsheetExportService.this.patientRepository
+                    .get(this.ids.subList(this.batchStart, batchEnd));
+            }
+            return this.batch.get(index - this.batchStart);
+        }
+
+        @Override
+        public int size()
+        {
+            return this.ids.size();
         }
     }
 }
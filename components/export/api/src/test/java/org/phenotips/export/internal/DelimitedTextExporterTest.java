@@ -0,0 +1,130 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.components.ComponentManagerRegistry;
+import org.phenotips.data.Feature;
+import org.phenotips.data.Patient;
+import org.phenotips.translation.TranslationManager;
+
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DelimitedTextExporter}.
+ *
+ * @version $Id$
+ */
+public class DelimitedTextExporterTest
+{
+    @Before
+    public void setup() throws Exception
+    {
+        final ComponentManager cm = mock(ComponentManager.class);
+        final TranslationManager tm = mock(TranslationManager.class);
+        doReturn(tm).when(cm).getInstance(TranslationManager.class);
+        // Labels are the translation keys themselves
+        when(tm.translate(anyString())).thenAnswer(invocation -> invocation.getArguments()[0]);
+        Field cmp = ReflectionUtils.getField(ComponentManagerRegistry.class, "cmProvider");
+        cmp.setAccessible(true);
+        cmp.set(null, new Provider<ComponentManager>()
+        {
+            @Override
+            public ComponentManager get()
+            {
+                return cm;
+            }
+        });
+    }
+
+    @Test
+    public void exportsOneRecordPerRowWithRepeatedIdentifiers() throws Exception
+    {
+        Patient patient = mock(Patient.class);
+        when(patient.getId()).thenReturn("P0000001");
+        Feature present = mockFeature("HP:0000001", "Present, \"quoted\"", true);
+        Feature absent = mockFeature("HP:0000002", "Absent", false);
+        Set<Feature> features = new LinkedHashSet<>(Arrays.asList(present, absent));
+        doReturn(features).when(patient).getFeatures();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DelimitedTextExporter(DelimitedTextExporter.CSV).export(new String[] { "doc.name", "phenotype" },
+            Arrays.asList(patient, null), out);
+
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\r\n");
+        Assert.assertEquals(3, lines.length);
+        Assert.assertEquals("phenotips.export.excel.label.identifiers: "
+            + "phenotips.export.excel.label.identifiers.internal,"
+            + "phenotips.export.excel.label.phenotype: phenotips.export.excel.label.phenotype.present,"
+            + "phenotips.export.excel.label.phenotype: phenotips.export.excel.label.phenotype.name,"
+            + "phenotips.export.excel.label.phenotype: phenotips.export.excel.label.phenotype.id", lines[0]);
+        Assert.assertEquals("P0000001,yes,\"Present, \"\"quoted\"\"\",HP:0000001", lines[1]);
+        Assert.assertEquals("P0000001,no,Absent,HP:0000002", lines[2]);
+    }
+
+    @Test
+    public void tsvUsesTabs() throws Exception
+    {
+        Patient patient = mock(Patient.class);
+        when(patient.getId()).thenReturn("P0000001");
+        when(patient.getExternalId()).thenReturn("Family 1");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DelimitedTextExporter(DelimitedTextExporter.TSV).export(new String[] { "doc.name", "external_id" },
+            Arrays.asList(patient), out);
+
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\r\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals("P0000001\tFamily 1", lines[1]);
+    }
+
+    @Test
+    public void missingParametersExportNothing() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DelimitedTextExporter(DelimitedTextExporter.CSV).export(null, null, out);
+        Assert.assertEquals(0, out.size());
+    }
+
+    private Feature mockFeature(String id, String name, boolean present)
+    {
+        Feature feature = mock(Feature.class);
+        when(feature.getId()).thenReturn(id);
+        when(feature.getName()).thenReturn(name);
+        when(feature.isPresent()).thenReturn(present);
+        return feature;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.web.XWikiRequest;
+import com.xpn.xwiki.web.XWikiResponse;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for the {@link ExportWorkerThreadFactory} component.
+ *
+ * @version $Id$
+ */
+public class ExportWorkerThreadFactoryTest
+{
+    @Test
+    public void workersGetASnapshotWithoutRequestBoundEntries() throws Exception
+    {
+        XWikiContext xcontext = new XWikiContext();
+        xcontext.setWikiId("xwiki");
+        xcontext.setRequest(mock(XWikiRequest.class));
+        xcontext.setResponse(mock(XWikiResponse.class));
+        xcontext.put("hibsession", new Object());
+        xcontext.put("hibtransaction", new Object());
+        Execution execution = mock(Execution.class);
+
+        ExportWorkerThreadFactory factory = new ExportWorkerThreadFactory(execution, xcontext);
+        // Changes made by the request thread once the export started must not reach the workers
+        xcontext.setWikiId("other");
+        ForkJoinPool pool = new ForkJoinPool(1, factory, null, false);
+        try {
+            pool.submit(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    // Nothing to do, the worker just has to be started
+                }
+            }).get();
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+
+        ArgumentCaptor<ExecutionContext> context = ArgumentCaptor.forClass(ExecutionContext.class);
+        verify(execution, timeout(10000)).setContext(context.capture());
+        XWikiContext workerContext =
+            (XWikiContext) context.getValue().getProperty(XWikiContext.EXECUTIONCONTEXT_KEY);
+        Assert.assertNotSame(xcontext, workerContext);
+        Assert.assertEquals("xwiki", workerContext.getWikiId());
+        Assert.assertNull(workerContext.getRequest());
+        Assert.assertNull(workerContext.getResponse());
+        Assert.assertFalse(workerContext.containsKey("hibsession"));
+        Assert.assertFalse(workerContext.containsKey("hibtransaction"));
+        Assert.assertEquals("other", xcontext.getWikiId());
+        Assert.assertNotNull(xcontext.getRequest());
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.data.Patient;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link JsonLinesExporter}.
+ *
+ * @version $Id$
+ */
+public class JsonLinesExporterTest
+{
+    @Test
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public void writesOnePatientPerLineWithTheSelectedFields() throws Exception
+    {
+        Patient p1 = mock(Patient.class);
+        Patient p2 = mock(Patient.class);
+        when(p1.toJSON(anyCollectionOf(String.class)))
+            .thenReturn(new JSONObject("{\"id\":\"P0000001\",\"sex\":\"F\"}"));
+        when(p2.toJSON(anyCollectionOf(String.class)))
+            .thenReturn(new JSONObject("{\"id\":\"P0000002\",\"notes\":\"one\\ntwo\"}"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonLinesExporter().export(new String[] { "sex", "notes" }, Arrays.asList(p1, null, p2), out);
+
+        String[] lines = new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertEquals("P0000001", new JSONObject(lines[0]).getString("id"));
+        Assert.assertEquals("one\ntwo", new JSONObject(lines[1]).getString("notes"));
+
+        ArgumentCaptor<Collection> fields = ArgumentCaptor.forClass(Collection.class);
+        verify(p1).toJSON(fields.capture());
+        Assert.assertEquals(new HashSet<>(Arrays.asList("id", "sex", "notes")), new HashSet<>(fields.getValue()));
+    }
+}
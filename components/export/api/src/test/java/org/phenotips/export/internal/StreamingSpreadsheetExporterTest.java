@@ -0,0 +1,186 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.internal;
+
+import org.phenotips.data.Patient;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.Assert;
+import org.junit.Test;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link StreamingSpreadsheetExporter}.
+ *
+ * @version $Id$
+ */
+public class StreamingSpreadsheetExporterTest
+{
+    @Test
+    public void usesStreamingWorkbook()
+    {
+        Workbook workbook = new StreamingSpreadsheetExporter().createNewWorkbook();
+        Assert.assertTrue(workbook instanceof SXSSFWorkbook);
+        ((SXSSFWorkbook) workbook).dispose();
+    }
+
+    @Test
+    public void patientsAreWrittenBelowTheHeaderInOrder() throws Exception
+    {
+        int patientCount = StreamingSpreadsheetExporter.BATCH_SIZE + 10;
+        StreamingSpreadsheetExporter exporter = spy(new StreamingSpreadsheetExporter());
+        SheetAssembler assembler = mockAssembler(patientCount);
+        doReturn(assembler).when(exporter).createAssembler(anySetOf(String.class));
+
+        List<Patient> patients = new LinkedList<>();
+        for (int i = 0; i < patientCount; i++) {
+            patients.add(mock(Patient.class));
+        }
+        // Missing patients are skipped
+        patients.add(5, null);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exporter.export(new String[] { "id" }, patients, out);
+
+        verify(assembler, times(patientCount)).assemblePatient(any(Patient.class));
+        verify(exporter, times(2)).commitBatch(any(SheetAssembler.class), anyListOf(Patient.class), any(Sheet.class),
+            any(Styler.class), anyInt());
+
+        try (XSSFWorkbook result = new XSSFWorkbook(new ByteArrayInputStream(out.toByteArray()))) {
+            Sheet sheet = result.getSheetAt(0);
+            Assert.assertEquals("Identifier", sheet.getRow(0).getCell(0).getStringCellValue());
+            for (int i = 0; i < patientCount; i++) {
+                Assert.assertEquals("P" + i, sheet.getRow(i + 1).getCell(0).getStringCellValue());
+            }
+            Assert.assertEquals(patientCount, sheet.getLastRowNum());
+        }
+    }
+
+    @Test
+    public void columnWidthsFollowTheLongestLine() throws Exception
+    {
+        StreamingSpreadsheetExporter exporter = new StreamingSpreadsheetExporter();
+        Sheet sheet = mock(Sheet.class);
+        StringBuilder longValue = new StringBuilder();
+        for (int i = 0; i < 2 * DataToCellConverter.MAX_CHARACTERS_PER_LINE; i++) {
+            longValue.append('a');
+        }
+
+        exporter.trackColumnLengths(section("short", "two\nlines long", ""));
+        exporter.trackColumnLengths(section("longer", "x", longValue.toString()));
+        exporter.commitColumnWidths(sheet);
+
+        verify(sheet).setColumnWidth(0, 8 * 256);
+        verify(sheet).setColumnWidth(1, 12 * 256);
+        verify(sheet).setColumnWidth(2, SpreadsheetExporter.MAX_COLUMN_WIDTH);
+    }
+
+    @Test
+    public void parallelConversionKeepsThePatientOrder() throws Exception
+    {
+        ExecutorService converters = Executors.newFixedThreadPool(4);
+        try {
+            StreamingSpreadsheetExporter exporter = new StreamingSpreadsheetExporter(converters);
+            SheetAssembler assembler = mock(SheetAssembler.class);
+            List<Patient> batch = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                Patient patient = mock(Patient.class);
+                final int index = i;
+                doAnswer(invocation -> {
+                    // Earlier patients take longer, so they finish last
+                    Thread.sleep(2 * (20 - index));
+                    return section("P" + index);
+                }).when(assembler).assemblePatient(patient);
+                batch.add(patient);
+            }
+
+            List<DataSection> sections = exporter.assembleBatch(assembler, batch);
+
+            Assert.assertEquals(20, sections.size());
+            for (int i = 0; i < 20; i++) {
+                Assert.assertEquals("P" + i, sections.get(i).getMatrix()[0][0].getValue());
+            }
+        } finally {
+            converters.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void parallelConversionFailuresAreRethrown() throws Exception
+    {
+        ExecutorService converters = Executors.newFixedThreadPool(2);
+        try {
+            StreamingSpreadsheetExporter exporter = new StreamingSpreadsheetExporter(converters);
+            SheetAssembler assembler = mock(SheetAssembler.class);
+            Patient patient = mock(Patient.class);
+            doThrow(new IllegalStateException()).when(assembler).assemblePatient(patient);
+
+            exporter.assembleBatch(assembler, Collections.singletonList(patient));
+        } finally {
+            converters.shutdownNow();
+        }
+    }
+
+    private SheetAssembler mockAssembler(int patientCount) throws Exception
+    {
+        SheetAssembler assembler = mock(SheetAssembler.class);
+        when(assembler.getAssembled()).thenReturn(section("Identifier"));
+        when(assembler.getHeaderHeight()).thenReturn(1);
+        DataSection first = section("P0");
+        DataSection[] others = new DataSection[patientCount - 1];
+        for (int i = 1; i < patientCount; i++) {
+            others[i - 1] = section("P" + i);
+        }
+        when(assembler.assemblePatient(any(Patient.class))).thenReturn(first, others);
+        return assembler;
+    }
+
+    private DataSection section(String... values) throws Exception
+    {
+        DataSection section = new DataSection();
+        for (int x = 0; x < values.length; x++) {
+            section.addCell(new DataCell(values[x], x, 0));
+        }
+        section.finalizeToMatrix();
+        return section;
+    }
+}
@@ -234,6 +234,28 @@ public void styleNoStyles()
         verifyNoMoreInteractions(dataCell);
     }
 
+    @Test
+    public void styleReusesCachedStyles()
+    {
+        Styler styler = new Styler();
+        DataCell dataCell = mock(DataCell.class);
+        Cell cell = mock(Cell.class);
+        Workbook workbook = mock(Workbook.class);
+        CellStyle style = mock(CellStyle.class);
+        Font font = mock(Font.class);
+
+        doReturn(null).when(dataCell).getStyles();
+        doReturn(style).when(workbook).createCellStyle();
+        doReturn(font).when(workbook).createFont();
+
+        styler.style(dataCell, cell, workbook);
+        styler.style(dataCell, cell, workbook);
+        styler.style(dataCell, cell, workbook);
+
+        verify(workbook, times(1)).createCellStyle();
+        verify(cell, times(3)).setCellStyle(style);
+    }
+
     @Test(expected = Exception.class)
     public void styleBottomNullMatrix() throws Exception
     {
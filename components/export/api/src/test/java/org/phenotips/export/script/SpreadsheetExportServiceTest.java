@@ -0,0 +1,175 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.export.script;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.export.internal.StreamingSpreadsheetExporter;
+import org.phenotips.security.authorization.AuthorizationService;
+
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link SpreadsheetExportService} component.
+ *
+ * @version $Id$
+ */
+public class SpreadsheetExportServiceTest
+{
+    private static final EntityReference DATA_SPACE = new EntityReference("data", EntityType.SPACE);
+
+    private static final String[] FIELDS = new String[] { "sex" };
+
+    @Rule
+    public final MockitoComponentMockingRule<ScriptService> mocker =
+        new MockitoComponentMockingRule<ScriptService>(SpreadsheetExportService.class);
+
+    private SpreadsheetExportService service;
+
+    private PatientRepository repository;
+
+    private AuthorizationService access;
+
+    private User user;
+
+    @Before
+    public void setup() throws Exception
+    {
+        this.service = (SpreadsheetExportService) this.mocker.getComponentUnderTest();
+
+        this.repository = this.mocker.getInstance(PatientRepository.class);
+        when(this.repository.getDataSpace()).thenReturn(DATA_SPACE);
+        when(this.repository.get(anyCollectionOf(String.class))).thenAnswer(new Answer<List<Patient>>()
+        {
+            @Override
+            public List<Patient> answer(InvocationOnMock invocation) throws Throwable
+            {
+                List<Patient> result = new ArrayList<>();
+                for (Object id : (Collection<?>) invocation.getArguments()[0]) {
+                    result.add(((String) id).startsWith("Missing") ? null : mockPatient((String) id));
+                }
+                return result;
+            }
+        });
+
+        DocumentReferenceResolver<String> resolver =
+            this.mocker.getInstance(DocumentReferenceResolver.TYPE_STRING, "current");
+        when(resolver.resolve(any(String.class), eq(DATA_SPACE))).thenAnswer(new Answer<DocumentReference>()
+        {
+            @Override
+            public DocumentReference answer(InvocationOnMock invocation) throws Throwable
+            {
+                return new DocumentReference("xwiki", "data", (String) invocation.getArguments()[0]);
+            }
+        });
+
+        this.user = mock(User.class);
+        UserManager users = this.mocker.getInstance(UserManager.class);
+        when(users.getCurrentUser()).thenReturn(this.user);
+
+        this.access = this.mocker.getInstance(AuthorizationService.class);
+        when(this.access.hasAccess(eq(this.user), eq(Right.VIEW), any(DocumentReference.class))).thenReturn(true);
+    }
+
+    @Test
+    public void deniedPatientsAreNeitherLoadedNorExported() throws Exception
+    {
+        when(this.access.hasAccess(this.user, Right.VIEW, new DocumentReference("xwiki", "data", "P0000002")))
+            .thenReturn(false);
+
+        List<String> exported = export(Arrays.asList("P0000001", "P0000002", "P0000003"));
+
+        Assert.assertEquals(Arrays.asList("P0000001", "P0000003"), exported);
+        verify(this.repository).get(Arrays.asList("P0000001", "P0000003"));
+        verify(this.repository, never()).get("P0000002");
+    }
+
+    @Test
+    public void missingPatientsAreSkipped() throws Exception
+    {
+        List<String> exported = export(Arrays.asList("P0000001", "Missing1", "P0000003"));
+
+        Assert.assertEquals(Arrays.asList("P0000001", "P0000003"), exported);
+    }
+
+    @Test
+    public void patientsAreLoadedInBatches() throws Exception
+    {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i <= StreamingSpreadsheetExporter.BATCH_SIZE; i++) {
+            ids.add(String.format("P%07d", i));
+        }
+
+        List<String> exported = export(ids);
+
+        Assert.assertEquals(ids, exported);
+        verify(this.repository).get(ids.subList(0, StreamingSpreadsheetExporter.BATCH_SIZE));
+        verify(this.repository).get(ids.subList(StreamingSpreadsheetExporter.BATCH_SIZE, ids.size()));
+    }
+
+    private List<String> export(List<String> ids)
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.service.export(ids, FIELDS, "jsonl", out);
+        List<String> result = new ArrayList<>();
+        for (String line : new String(out.toByteArray(), StandardCharsets.UTF_8).split("\n")) {
+            if (!line.isEmpty()) {
+                result.add(new JSONObject(line).getString("id"));
+            }
+        }
+        return result;
+    }
+
+    private Patient mockPatient(String id)
+    {
+        Patient patient = mock(Patient.class);
+        when(patient.toJSON(anyCollectionOf(String.class))).thenReturn(new JSONObject().put("id", id));
+        return patient;
+    }
+}
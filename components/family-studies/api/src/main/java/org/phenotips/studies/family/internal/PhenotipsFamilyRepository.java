@@ -45,6 +45,9 @@
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -76,6 +79,13 @@ public class PhenotipsFamilyRepository extends FamilyEntityManager implements Fa
 
     private static final String IDENTIFIER = "identifier";
 
+    /**
+     * Families and patients are guarded by per-identifier locks instead of a repository-wide monitor, so that changes
+     * to unrelated families don't wait for each other, while concurrent changes to the same family, or to the same
+     * patient from two different families, are still serialized.
+     */
+    private final StripedLocks locks = new StripedLocks(256);
+
     @Inject
     private PatientRepository patientRepository;
 
@@ -99,7 +109,7 @@ public Family createFamily(User creator)
     }
 
     @Override
-    public synchronized Family create(final DocumentReference creator)
+    public Family create(final DocumentReference creator)
     {
         try {
             final XWikiContext context = this.xcontextProvider.get();
@@ -121,19 +131,29 @@ public synchronized Family create(final DocumentReference creator)
     }
 
     @Override
-    public synchronized boolean deleteFamily(Family family, User updatingUser, boolean deleteAllMembers)
+    public boolean deleteFamily(Family family, User updatingUser, boolean deleteAllMembers)
     {
         return delete(family, deleteAllMembers);
     }
 
     @Override
-    public synchronized boolean delete(final Family family)
+    public boolean delete(final Family family)
     {
         return delete(family, false);
     }
 
     @Override
-    public synchronized boolean delete(final Family family, boolean deleteAllMembers)
+    public boolean delete(final Family family, boolean deleteAllMembers)
+    {
+        if (family == null) {
+            return false;
+        }
+        try (StripedLocks.Held held = lockFamily(family, family.getMembersIds())) {
+            return deleteLocked(family, deleteAllMembers);
+        }
+    }
+
+    private boolean deleteLocked(final Family family, boolean deleteAllMembers)
     {
         // TODO: Should there be a SecureFamilyRepository to perform these checks (similar to SecurePatientRepository)?
         final User currentUser = this.userManager.getCurrentUser();
@@ -216,9 +236,15 @@ public Family getFamilyForPatient(Patient patient)
     }
 
     @Override
-    public synchronized void addMember(Family family, Patient patient, User updatingUser) throws PTException
+    public void addMember(Family family, Patient patient, User updatingUser) throws PTException
     {
-        this.addMember(family, patient, updatingUser, false);
+        if (family == null || patient == null) {
+            this.addMember(family, patient, updatingUser, false);
+            return;
+        }
+        try (StripedLocks.Held held = lockFamily(family, Arrays.asList(patient.getId()))) {
+            this.addMember(family, patient, updatingUser, false);
+        }
     }
 
     /**
@@ -274,9 +300,15 @@ private void addMember(Family family, Patient patient, User updatingUser, boolea
     }
 
     @Override
-    public synchronized void removeMember(Family family, Patient patient, User updatingUser) throws PTException
+    public void removeMember(Family family, Patient patient, User updatingUser) throws PTException
     {
-        this.removeMember(family, patient, updatingUser, false);
+        if (family == null || patient == null) {
+            this.removeMember(family, patient, updatingUser, false);
+            return;
+        }
+        try (StripedLocks.Held held = lockFamily(family, Arrays.asList(patient.getId()))) {
+            this.removeMember(family, patient, updatingUser, false);
+        }
     }
 
     private void removeMember(Family family, Patient patient, User updatingUser, boolean batchUpdate)
@@ -435,7 +467,17 @@ private void checkIfPatientCanBeRemovedFromFamily(Family family, Patient patient
     }
 
     @Override
-    public synchronized void setPedigree(Family family, Pedigree pedigree, User updatingUser) throws PTException
+    public void setPedigree(Family family, Pedigree pedigree, User updatingUser) throws PTException
+    {
+        // lock both the old members and the new ones, since all of them may be updated
+        List<String> affectedMembers = new ArrayList<>(family.getMembersIds());
+        affectedMembers.addAll(pedigree.extractIds());
+        try (StripedLocks.Held held = lockFamily(family, affectedMembers)) {
+            setPedigreeLocked(family, pedigree, updatingUser);
+        }
+    }
+
+    private void setPedigreeLocked(Family family, Pedigree pedigree, User updatingUser) throws PTException
     {
         // note: whenever available, internal versions of helper methods are used which modify the
         // family document but do not save it to disk
@@ -595,7 +637,7 @@ private boolean savePatientDocument(XWikiDocument patientDocument, String docume
         return true;
     }
 
-    private synchronized boolean saveFamilyDocument(Family family, String documentHistoryComment, XWikiContext context)
+    private boolean saveFamilyDocument(Family family, String documentHistoryComment, XWikiContext context)
     {
         try {
             family.getXDocument().setAuthorReference(context.getUserReference());
@@ -608,6 +650,22 @@ private synchronized boolean saveFamilyDocument(Family family, String documentHi
         return true;
     }
 
+    /**
+     * Locks a family together with some of its (current or future) members. All the locks are acquired at once, in a
+     * deterministic order, and must be released by closing the returned handle.
+     *
+     * @param family the family being modified
+     * @param patientIds identifiers of the patients that may be modified along with the family
+     * @return the held locks
+     */
+    private StripedLocks.Held lockFamily(Family family, Collection<String> patientIds)
+    {
+        List<String> keys = new ArrayList<>(patientIds.size() + 1);
+        keys.add(family.getId());
+        keys.addAll(patientIds);
+        return this.locks.lock(keys);
+    }
+
     /*
      * returns a reference to a family document from an XWiki patient document.
      */
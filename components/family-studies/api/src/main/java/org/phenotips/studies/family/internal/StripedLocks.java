@@ -0,0 +1,104 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import java.util.Collection;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A fixed set of reentrant locks shared by an unbounded set of keys, such as family and patient identifiers. Each key
+ * is mapped to one of the stripes, and a group of keys is always locked in increasing stripe order, so that two
+ * threads locking overlapping groups can never deadlock. Operations on keys mapped to different stripes can proceed in
+ * parallel.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class StripedLocks
+{
+    private final ReentrantLock[] stripes;
+
+    /**
+     * Simple constructor.
+     *
+     * @param size the number of stripes to use, must be positive
+     */
+    StripedLocks(int size)
+    {
+        this.stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; ++i) {
+            this.stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Locks all the stripes corresponding to the given keys, waiting until they are all available. {@code null} keys
+     * are ignored.
+     *
+     * @param keys the keys to lock, in any order, may contain duplicates
+     * @return a handle that must be closed in order to release the locks
+     */
+    Held lock(Collection<String> keys)
+    {
+        TreeSet<Integer> indexes = new TreeSet<>();
+        for (String key : keys) {
+            if (key != null) {
+                indexes.add(Math.floorMod(key.hashCode(), this.stripes.length));
+            }
+        }
+        ReentrantLock[] locks = new ReentrantLock[indexes.size()];
+        int count = 0;
+        try {
+            for (Integer index : indexes) {
+                ReentrantLock lock = this.stripes[index];
+                lock.lock();
+                locks[count++] = lock;
+            }
+        } catch (RuntimeException | Error ex) {
+            new Held(locks, count).close();
+            throw ex;
+        }
+        return new Held(locks, count);
+    }
+
+    /**
+     * A group of stripes currently locked by the calling thread.
+     */
+    static final class Held implements AutoCloseable
+    {
+        private final ReentrantLock[] locks;
+
+        private final int count;
+
+        private Held(ReentrantLock[] locks, int count)
+        {
+            this.locks = locks;
+            this.count = count;
+        }
+
+        /** Releases the locks in the reverse order of their acquisition. */
+        @Override
+        public void close()
+        {
+            for (int i = this.count - 1; i >= 0; --i) {
+                this.locks[i].unlock();
+            }
+        }
+    }
+}
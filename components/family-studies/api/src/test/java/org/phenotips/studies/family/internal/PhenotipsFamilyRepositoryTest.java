@@ -0,0 +1,209 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.security.authorization.AuthorizationService;
+import org.phenotips.studies.family.Family;
+import org.phenotips.studies.family.FamilyRepository;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.users.User;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.inject.Provider;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.stubbing.Answer;
+
+import com.xpn.xwiki.XWiki;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.XWikiException;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the locking behavior of the {@link PhenotipsFamilyRepository} component.
+ *
+ * @version $Id$
+ */
+public class PhenotipsFamilyRepositoryTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<FamilyRepository> mocker =
+        new MockitoComponentMockingRule<>(PhenotipsFamilyRepository.class);
+
+    @Mock
+    private XWikiContext context;
+
+    @Mock
+    private XWiki xwiki;
+
+    @Mock
+    private User user;
+
+    private FamilyRepository repository;
+
+    private ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @Before
+    public void setup() throws ComponentLookupException
+    {
+        MockitoAnnotations.initMocks(this);
+        this.repository = this.mocker.getComponentUnderTest();
+
+        Provider<XWikiContext> contextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        when(contextProvider.get()).thenReturn(this.context);
+        when(this.context.getWiki()).thenReturn(this.xwiki);
+
+        AuthorizationService authorizationService = this.mocker.getInstance(AuthorizationService.class);
+        when(authorizationService.hasAccess(same(this.user), eq(Right.EDIT), any(DocumentReference.class)))
+            .thenReturn(true);
+    }
+
+    @After
+    public void tearDown()
+    {
+        this.executor.shutdownNow();
+    }
+
+    @Test(timeout = 30000)
+    public void unrelatedFamiliesAreUpdatedInParallel() throws Exception
+    {
+        Family family1 = mockFamily("FAM0000001");
+        Family family2 = mockFamily("FAM0000002");
+        Patient patient1 = mockPatient("P0000001");
+        Patient patient2 = mockPatient("P0000002");
+
+        // each save waits until the other family is being saved as well, which only happens if they run in parallel
+        final CountDownLatch bothSaving = new CountDownLatch(2);
+        final AtomicBoolean serialized = new AtomicBoolean();
+        Answer<Void> waitForOther = invocation -> {
+            bothSaving.countDown();
+            if (!bothSaving.await(5, TimeUnit.SECONDS)) {
+                serialized.set(true);
+            }
+            return null;
+        };
+        doAnswer(waitForOther).when(this.xwiki).saveDocument(same(family1.getXDocument()), anyString(),
+            same(this.context));
+        doAnswer(waitForOther).when(this.xwiki).saveDocument(same(family2.getXDocument()), anyString(),
+            same(this.context));
+
+        runInParallel(() -> this.repository.addMember(family1, patient1, this.user),
+            () -> this.repository.addMember(family2, patient2, this.user));
+
+        Assert.assertFalse(serialized.get());
+    }
+
+    @Test(timeout = 30000)
+    public void updatesOfTheSameFamilyAreSerialized() throws Exception
+    {
+        Family family = mockFamily("FAM0000001");
+        Patient patient1 = mockPatient("P0000001");
+        Patient patient2 = mockPatient("P0000002");
+
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        doAnswer(invocation -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Thread.sleep(500);
+            active.decrementAndGet();
+            return null;
+        }).when(this.xwiki).saveDocument(same(family.getXDocument()), anyString(), same(this.context));
+
+        runInParallel(() -> this.repository.addMember(family, patient1, this.user),
+            () -> this.repository.addMember(family, patient2, this.user));
+
+        Assert.assertEquals(1, maxActive.get());
+    }
+
+    private void runInParallel(FamilyAction... actions) throws Exception
+    {
+        List<Future<Void>> results = new ArrayList<>();
+        for (FamilyAction action : actions) {
+            results.add(this.executor.submit(() -> {
+                action.run();
+                return null;
+            }));
+        }
+        for (Future<Void> result : results) {
+            result.get();
+        }
+    }
+
+    private Family mockFamily(String id)
+    {
+        Family family = mock(Family.class);
+        XWikiDocument doc = mock(XWikiDocument.class);
+        DocumentReference reference = new DocumentReference("xwiki", "Families", id);
+        when(family.getId()).thenReturn(id);
+        when(family.getDocumentReference()).thenReturn(reference);
+        when(family.getXDocument()).thenReturn(doc);
+        when(family.getMembersIds()).thenAnswer(invocation -> new LinkedList<String>());
+        when(doc.getDocumentReference()).thenReturn(reference);
+        BaseObject familyObject = mock(BaseObject.class);
+        when(doc.getXObject(Family.CLASS_REFERENCE)).thenReturn(familyObject);
+        return family;
+    }
+
+    private Patient mockPatient(String id) throws XWikiException
+    {
+        Patient patient = mock(Patient.class);
+        XWikiDocument doc = mock(XWikiDocument.class);
+        when(patient.getId()).thenReturn(id);
+        when(patient.getDocumentReference()).thenReturn(new DocumentReference("xwiki", "data", id));
+        when(patient.getXDocument()).thenReturn(doc);
+        BaseObject familyReference = mock(BaseObject.class);
+        when(doc.getXObject(Family.REFERENCE_CLASS_REFERENCE, true, this.context)).thenReturn(familyReference);
+        return patient;
+    }
+
+    @FunctionalInterface
+    private interface FamilyAction
+    {
+        void run() throws Exception;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.studies.family.internal;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for {@link StripedLocks}.
+ *
+ * @version $Id$
+ */
+public class StripedLocksTest
+{
+    private StripedLocks locks = new StripedLocks(256);
+
+    @Test(timeout = 30000)
+    public void overlappingGroupsLockedInOppositeOrderDoNotDeadlock() throws InterruptedException
+    {
+        final int iterations = 10000;
+        Thread first = new Thread(() -> {
+            for (int i = 0; i < iterations; ++i) {
+                try (StripedLocks.Held held = this.locks.lock(Arrays.asList("FAM0000001", "P0000001"))) {
+                    Thread.yield();
+                }
+            }
+        });
+        Thread second = new Thread(() -> {
+            for (int i = 0; i < iterations; ++i) {
+                try (StripedLocks.Held held = this.locks.lock(Arrays.asList("P0000001", "FAM0000001"))) {
+                    Thread.yield();
+                }
+            }
+        });
+        first.start();
+        second.start();
+        first.join();
+        second.join();
+    }
+
+    @Test(timeout = 30000)
+    public void sameKeyIsExclusive() throws InterruptedException
+    {
+        final CountDownLatch acquired = new CountDownLatch(1);
+        try (StripedLocks.Held held = this.locks.lock(Arrays.asList("FAM0000001"))) {
+            new Thread(() -> {
+                try (StripedLocks.Held other = this.locks.lock(Arrays.asList("P0000001", "FAM0000001"))) {
+                    acquired.countDown();
+                }
+            }).start();
+            Assert.assertFalse(acquired.await(500, TimeUnit.MILLISECONDS));
+        }
+        Assert.assertTrue(acquired.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void locksAreReentrantAndNullKeysAreIgnored()
+    {
+        try (StripedLocks.Held held = this.locks.lock(Arrays.asList("FAM0000001", null, "FAM0000001"))) {
+            try (StripedLocks.Held nested = this.locks.lock(Arrays.asList("FAM0000001"))) {
+                Assert.assertNotNull(nested);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.obo2solr;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the terms of an OBO file one at a time, without keeping previously read terms in memory.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+class OBOTermReader implements Closeable
+{
+    private static final String TERM_MARKER = "[Term]";
+
+    /** Not all entities are terms prompted by the presence of a {@link #TERM_MARKER} */
+    private static final Pattern ENTITY_SEPARATION_REGEX = Pattern.compile("^\\[[a-zA-Z]+\\]$");
+
+    private static final Pattern FIELD_NAME_VALUE_SEPARATOR = Pattern.compile("\\s*:\\s+");
+
+    private final BufferedReader in;
+
+    private final Map<String, Double> fieldSelection;
+
+    private TermData crtTerm = new TermData();
+
+    private int counter;
+
+    /**
+     * When encountering a separator that is not a term separator, all data should be skipped until a term separator is
+     * encountered again.
+     */
+    private boolean skip;
+
+    private boolean finished;
+
+    OBOTermReader(BufferedReader in, Map<String, Double> fieldSelection)
+    {
+        this.in = in;
+        this.fieldSelection = fieldSelection;
+    }
+
+    /**
+     * Reads the next term from the input. The header of the file is returned as a special term with the identifier
+     * {@code HEADER_INFO}, if it specifies a {@code data-version}.
+     *
+     * @return the next term, or {@code null} if the end of the input was reached
+     * @throws IOException if reading from the input fails
+     */
+    TermData next() throws IOException
+    {
+        String line;
+        while (!this.finished && (line = this.in.readLine()) != null) {
+            TermData result = null;
+            String trimmed = line.trim();
+            if (ENTITY_SEPARATION_REGEX.matcher(trimmed).matches()) {
+                if (this.counter > 0) {
+                    result = takeCrtTerm();
+                }
+                // Overridden below
+                this.skip = true;
+            }
+            if (trimmed.equalsIgnoreCase(TERM_MARKER)) {
+                ++this.counter;
+                this.skip = false;
+            } else if (!this.skip) {
+                String[] pieces = FIELD_NAME_VALUE_SEPARATOR.split(line, 2);
+                if (pieces.length == 2) {
+                    if (pieces[0].trim().equals("data-version")) {
+                        this.crtTerm.addTo("version", pieces[1]);
+                        this.crtTerm.addTo(TermData.ID_FIELD_NAME, "HEADER_INFO");
+                        this.counter++;
+                    }
+                    loadField(pieces[0], pieces[1]);
+                }
+            }
+            if (result != null) {
+                return result;
+            }
+        }
+        if (!this.finished) {
+            this.finished = true;
+            if (this.counter > 0) {
+                return takeCrtTerm();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        this.in.close();
+    }
+
+    private TermData takeCrtTerm()
+    {
+        TermData result = this.crtTerm.getId() != null ? this.crtTerm : null;
+        this.crtTerm = new TermData();
+        return result;
+    }
+
+    boolean isFieldSelected(String name)
+    {
+        return this.fieldSelection.isEmpty() || this.fieldSelection.containsKey(name);
+    }
+
+    private void loadField(String name, String value)
+    {
+        if (!(isFieldSelected(name))) {
+            return;
+        }
+        this.crtTerm.addTo(name, value.replaceFirst("^\"(.+)\"\\s*?(?:[A-Z]+|\\[).*", "$1")
+            .replaceFirst("\\s+\\{.*$", "").replaceFirst("^(HP:\\d{7}) ! .*$", "$1").replace("\\\"", "\""));
+    }
+}
@@ -19,9 +19,14 @@
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -30,21 +35,6 @@
 
 public class SolrUpdateGenerator
 {
-    private static final String TERM_MARKER = "[Term]";
-
-    /** Not all entities are terms prompted by the presence of a {@link #TERM_MARKER} */
-    private static final String ENTITY_SEPARATION_REGEX = "^\\[[a-zA-Z]+\\]$";
-
-    private static final String FIELD_NAME_VALUE_SEPARATOR = "\\s*:\\s+";
-
-    private int counter;
-
-    private TermData crtTerm = new TermData();
-
-    private Map<String, TermData> data = new LinkedHashMap<>();
-
-    private Map<String, Double> fieldSelection;
-
     private Logger logger = LoggerFactory.getLogger(this.getClass());
 
     public Map<String, TermData> transform(String ontologyUrl, Map<String, Double> fieldSelection)
@@ -60,86 +50,103 @@ public Map<String, TermData> transform(String ontologyUrl, Map<String, Double> f
 
     public Map<String, TermData> transform(URL input, Map<String, Double> fieldSelection)
     {
-        this.fieldSelection = fieldSelection;
-        try {
-            BufferedReader in = new BufferedReader(new InputStreamReader(input.openConnection().getInputStream()));
-            String line;
-            this.counter = 0;
-
-            /*
-             * When encountering a separator that is not a term separator, all data should be skipped until a term
-             * separator is encountered again
-             */
-            boolean skip = false;
-            while ((line = in.readLine()) != null) {
-                if (line.trim().matches(ENTITY_SEPARATION_REGEX)) {
-                    if (this.counter > 0) {
-                        storeCrtTerm();
-                    }
-                    // Overridden below
-                    skip = true;
-                }
-                if (line.trim().equalsIgnoreCase(TERM_MARKER)) {
-                    ++this.counter;
-                    skip = false;
-                    continue;
+        Map<String, TermData> data = new LinkedHashMap<>();
+        try (OBOTermReader reader = open(input, fieldSelection)) {
+            TermData term;
+            while ((term = reader.next()) != null) {
+                data.put(term.getId(), term);
+            }
+            if (reader.isFieldSelected(TermData.TERM_CATEGORY_FIELD_NAME)) {
+                TermHierarchy hierarchy = new TermHierarchy();
+                for (TermData item : data.values()) {
+                    hierarchy.addTerm(item.getId(), item.get(TermData.PARENT_FIELD_NAME));
                 }
-                if (!skip) {
-                    String[] pieces = line.split(FIELD_NAME_VALUE_SEPARATOR, 2);
-                    if (pieces.length != 2) {
-                        continue;
-                    }
-                    if (pieces[0].trim().equals("data-version")) {
-                        this.crtTerm.addTo("version", pieces[1]);
-                        this.crtTerm.addTo(TermData.ID_FIELD_NAME, "HEADER_INFO");
-                        this.counter++;
-                    }
-                    loadField(pieces[0], pieces[1]);
+                for (TermData item : data.values()) {
+                    item.put(TermData.TERM_CATEGORY_FIELD_NAME, hierarchy.getTermCategories(item.getId()));
                 }
             }
-            if (this.counter > 0) {
-                storeCrtTerm();
-            }
-            if (isFieldSelected(TermData.TERM_CATEGORY_FIELD_NAME)) {
-                propagateAncestors();
-            }
-        } catch (NullPointerException ex) {
-            this.logger.error("NullPointer: {}", ex.getMessage());
         } catch (IOException ex) {
             this.logger.error("IOException: {}", ex.getMessage());
-        } finally {
-            this.fieldSelection = null;
         }
-        return this.data;
+        return data;
     }
 
-    private void storeCrtTerm()
+    /**
+     * Two-pass streaming alternative to {@link #transform(URL, Map)}, which never holds the whole ontology in memory.
+     * The first pass only reads the term identifiers and their parents into a compact {@link TermHierarchy}, and the
+     * second pass returns the terms one by one, with their {@link TermData#TERM_CATEGORY_FIELD_NAME term categories}
+     * filled in from the hierarchy. Remote sources are downloaded into a temporary file first, so that they are only
+     * fetched once.
+     *
+     * @param ontologyUrl the location of the OBO file
+     * @param fieldSelection the fields to read, or an empty map to read all the fields
+     * @return a stream of terms which must be closed after use, or {@code null} if the source cannot be read
+     * @since 1.4
+     */
+    public TermDataStream stream(String ontologyUrl, Map<String, Double> fieldSelection)
     {
-        if (this.crtTerm.getId() != null) {
-            this.data.put(this.crtTerm.getId(), this.crtTerm);
+        URL url;
+        try {
+            url = new URL(ontologyUrl);
+        } catch (MalformedURLException ex) {
+            return null;
         }
-        this.crtTerm = new TermData();
+        return stream(url, fieldSelection);
     }
 
-    private boolean isFieldSelected(String name)
+    /**
+     * Two-pass streaming alternative to {@link #transform(URL, Map)}.
+     *
+     * @param input the location of the OBO file
+     * @param fieldSelection the fields to read, or an empty map to read all the fields
+     * @return a stream of terms which must be closed after use, or {@code null} if the source cannot be read
+     * @see #stream(String, Map)
+     * @since 1.4
+     */
+    public TermDataStream stream(URL input, Map<String, Double> fieldSelection)
     {
-        return this.fieldSelection.isEmpty() || this.fieldSelection.containsKey(name);
-    }
+        Path temporaryFile = null;
+        try {
+            URL source = input;
+            if (!"file".equals(input.getProtocol())) {
+                temporaryFile = Files.createTempFile("obo2solr", ".obo");
+                try (InputStream in = input.openConnection().getInputStream()) {
+                    Files.copy(in, temporaryFile, StandardCopyOption.REPLACE_EXISTING);
+                }
+                source = temporaryFile.toUri().toURL();
+            }
 
-    private void loadField(String name, String value)
-    {
-        if (!(isFieldSelected(name))) {
-            return;
+            TermHierarchy hierarchy = null;
+            if (fieldSelection.isEmpty() || fieldSelection.containsKey(TermData.TERM_CATEGORY_FIELD_NAME)) {
+                hierarchy = new TermHierarchy();
+                Map<String, Double> hierarchyFields = new LinkedHashMap<>();
+                hierarchyFields.put(TermData.ID_FIELD_NAME, 1.0);
+                hierarchyFields.put(TermData.PARENT_FIELD_NAME, 1.0);
+                try (OBOTermReader reader = open(source, hierarchyFields)) {
+                    TermData term;
+                    while ((term = reader.next()) != null) {
+                        hierarchy.addTerm(term.getId(), term.get(TermData.PARENT_FIELD_NAME));
+                    }
+                }
+            }
+            return new TermDataStream(open(source, fieldSelection), hierarchy, temporaryFile);
+        } catch (IOException ex) {
+            this.logger.error("IOException: {}", ex.getMessage());
+            if (temporaryFile != null) {
+                try {
+                    Files.deleteIfExists(temporaryFile);
+                } catch (IOException cleanupEx) {
+                    this.logger.debug("Failed to delete temporary file: {}", cleanupEx.getMessage());
+                }
+            }
         }
-        this.crtTerm.addTo(name, value.replaceFirst("^\"(.+)\"\\s*?(?:[A-Z]+|\\[).*", "$1")
-            .replaceFirst("\\s+\\{.*$", "").replaceFirst("^(HP:\\d{7}) ! .*$", "$1").replace("\\\"", "\""));
+        return null;
     }
 
-    private void propagateAncestors()
+    private OBOTermReader open(URL input, Map<String, Double> fieldSelection) throws IOException
     {
-        for (String id : this.data.keySet()) {
-            TermData term = this.data.get(id);
-            term.expandTermCategories(this.data);
-        }
+        return new OBOTermReader(
+            new BufferedReader(new InputStreamReader(input.openConnection().getInputStream())),
+            fieldSelection != null ? fieldSelection : Collections.<String, Double>emptyMap());
     }
 }
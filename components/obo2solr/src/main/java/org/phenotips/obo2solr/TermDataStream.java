@@ -0,0 +1,97 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.obo2solr;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Streams the terms of an OBO file, as produced by the second pass of
+ * {@link SolrUpdateGenerator#stream(java.net.URL, java.util.Map)}. Only the current term is held in memory, along with
+ * the compact term hierarchy used for filling in the {@link TermData#TERM_CATEGORY_FIELD_NAME term categories}. The
+ * stream must be closed after use.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class TermDataStream implements Iterator<TermData>, Closeable
+{
+    private final OBOTermReader reader;
+
+    private final TermHierarchy hierarchy;
+
+    /** A temporary local copy of a remote source, to be deleted when closing the stream; may be {@code null}. */
+    private final Path temporaryFile;
+
+    private TermData next;
+
+    TermDataStream(OBOTermReader reader, TermHierarchy hierarchy, Path temporaryFile) throws IOException
+    {
+        this.reader = reader;
+        this.hierarchy = hierarchy;
+        this.temporaryFile = temporaryFile;
+        this.next = readNext();
+    }
+
+    @Override
+    public boolean hasNext()
+    {
+        return this.next != null;
+    }
+
+    @Override
+    public TermData next()
+    {
+        if (this.next == null) {
+            throw new NoSuchElementException();
+        }
+        TermData result = this.next;
+        try {
+            this.next = readNext();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        try {
+            this.reader.close();
+        } finally {
+            if (this.temporaryFile != null) {
+                Files.deleteIfExists(this.temporaryFile);
+            }
+        }
+    }
+
+    private TermData readNext() throws IOException
+    {
+        TermData result = this.reader.next();
+        if (result != null && this.hierarchy != null) {
+            result.put(TermData.TERM_CATEGORY_FIELD_NAME, this.hierarchy.getTermCategories(result.getId()));
+        }
+        return result;
+    }
+}
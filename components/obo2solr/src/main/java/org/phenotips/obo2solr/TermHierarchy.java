@@ -0,0 +1,146 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.obo2solr;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Compact {@code is_a} graph of an ontology, holding only integer term indexes, used for computing the ancestor closure
+ * of each term. Ancestor sets are computed at most once per term, by merging the already computed sets of the parents
+ * in a bitset, and are memoised as sorted index arrays.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class TermHierarchy
+{
+    private static final int[] NONE = new int[0];
+
+    /** Marks a term whose ancestors are currently being computed, used for detecting cycles. */
+    private static final int[] IN_PROGRESS = new int[0];
+
+    /** Removes the human readable comment from a parent reference, e.g. {@code HP:0000118 ! Phenotypic abnormality}. */
+    private static final Pattern PARENT_COMMENT = Pattern.compile("\\s*!.*$");
+
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    private final List<String> ids = new ArrayList<>();
+
+    private final List<int[]> parents = new ArrayList<>();
+
+    private final List<int[]> ancestors = new ArrayList<>();
+
+    /**
+     * Registers a term and its direct parents.
+     *
+     * @param id the identifier of the term
+     * @param parentIds the values of the {@code is_a} field of the term, may be {@code null}
+     */
+    public void addTerm(String id, Collection<String> parentIds)
+    {
+        int term = indexOf(id);
+        if (parentIds == null || parentIds.isEmpty()) {
+            return;
+        }
+        int[] termParents = new int[parentIds.size()];
+        int i = 0;
+        for (String parent : parentIds) {
+            termParents[i++] = indexOf(normalize(parent));
+        }
+        this.parents.set(term, termParents);
+    }
+
+    /**
+     * Get the term itself and all its ancestors, in the format expected for the {@code term_category} field.
+     *
+     * @param id the identifier of the term
+     * @return the identifier of the term followed by the identifiers of all its ancestors
+     */
+    public Set<String> getTermCategories(String id)
+    {
+        Set<String> result = new LinkedHashSet<>();
+        result.add(id);
+        Integer term = this.indexes.get(id);
+        if (term != null) {
+            for (int ancestor : getAncestors(term)) {
+                result.add(this.ids.get(ancestor));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The number of terms known, including parents referenced but not registered themselves.
+     *
+     * @return the number of terms
+     */
+    public int size()
+    {
+        return this.ids.size();
+    }
+
+    private int[] getAncestors(int term)
+    {
+        int[] result = this.ancestors.get(term);
+        if (result == IN_PROGRESS) {
+            // Cycle, which isn't valid in an ontology; stop here
+            return NONE;
+        }
+        if (result != null) {
+            return result;
+        }
+        this.ancestors.set(term, IN_PROGRESS);
+        BitSet closure = new BitSet();
+        for (int parent : this.parents.get(term)) {
+            closure.set(parent);
+            for (int ancestor : getAncestors(parent)) {
+                closure.set(ancestor);
+            }
+        }
+        closure.clear(term);
+        result = closure.isEmpty() ? NONE : closure.stream().toArray();
+        this.ancestors.set(term, result);
+        return result;
+    }
+
+    private int indexOf(String id)
+    {
+        Integer result = this.indexes.get(id);
+        if (result == null) {
+            result = this.ids.size();
+            this.indexes.put(id, result);
+            this.ids.add(id);
+            this.parents.add(NONE);
+            this.ancestors.add(null);
+        }
+        return result;
+    }
+
+    private static String normalize(String parent)
+    {
+        return PARENT_COMMENT.matcher(parent).replaceFirst("");
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.obo2solr;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the OBO parsing done by {@link SolrUpdateGenerator}.
+ *
+ * @version $Id$
+ */
+public class SolrUpdateGeneratorTest
+{
+    private static final String HEADER = "HEADER_INFO";
+
+    private final SolrUpdateGenerator generator = new SolrUpdateGenerator();
+
+    @Test
+    public void onlyTermStanzasAreRead() throws Exception
+    {
+        List<String> ids = new ArrayList<>();
+        try (TermDataStream terms = stream(Collections.<String, Double>emptyMap())) {
+            while (terms.hasNext()) {
+                ids.add(terms.next().getId());
+            }
+        }
+        assertEquals(Arrays.asList(HEADER, "HP:0000001", "HP:0000118", "HP:0000002", "HP:0000003"), ids);
+    }
+
+    @Test
+    public void headerHoldsTheDataVersion() throws Exception
+    {
+        Map<String, TermData> data = transform(Collections.<String, Double>emptyMap());
+        assertEquals(Collections.singleton("releases/2017-04-13"), new HashSet<>(data.get(HEADER).get("version")));
+        assertEquals(Collections.singleton("1.2"), new HashSet<>(data.get(HEADER).get("format-version")));
+    }
+
+    @Test
+    public void multiValuedTagsKeepAllValues() throws Exception
+    {
+        TermData term = transform(Collections.<String, Double>emptyMap()).get("HP:0000002");
+        assertEquals(Arrays.asList("Abnormality of body height", "Height abnormality"),
+            new ArrayList<>(term.get("synonym")));
+        assertEquals(Arrays.asList("HP:0000118", "HP:0000003"), new ArrayList<>(term.get(TermData.PARENT_FIELD_NAME)));
+        assertEquals(Collections.singleton("Abnormality of body height"), new HashSet<>(term.get("name")));
+    }
+
+    @Test
+    public void parentsDefinedLaterAreResolvedWhenStreaming() throws Exception
+    {
+        Map<String, TermData> data = new LinkedHashMap<>();
+        try (TermDataStream terms = stream(Collections.<String, Double>emptyMap())) {
+            while (terms.hasNext()) {
+                TermData term = terms.next();
+                data.put(term.getId(), term);
+            }
+        }
+        assertEquals(set("HP:0000002", "HP:0000118", "HP:0000001", "HP:0000003", "HP:0000004"),
+            new HashSet<>(data.get("HP:0000002").get(TermData.TERM_CATEGORY_FIELD_NAME)));
+        // The typedef's is_a doesn't leak into the hierarchy
+        assertEquals(set("HP:0000001"), new HashSet<>(data.get("HP:0000001").get(TermData.TERM_CATEGORY_FIELD_NAME)));
+        // Parents which aren't defined in the file are still listed, without failing
+        assertEquals(set("HP:0000003", "HP:0000004"),
+            new HashSet<>(data.get("HP:0000003").get(TermData.TERM_CATEGORY_FIELD_NAME)));
+    }
+
+    @Test
+    public void streamingProducesTheSameTermsAsTransforming() throws Exception
+    {
+        Map<String, TermData> expected = transform(Collections.<String, Double>emptyMap());
+        int count = 0;
+        try (TermDataStream terms = stream(Collections.<String, Double>emptyMap())) {
+            while (terms.hasNext()) {
+                TermData term = terms.next();
+                TermData other = expected.get(term.getId());
+                assertEquals(other.keySet(), term.keySet());
+                for (String field : term.keySet()) {
+                    assertEquals(new HashSet<>(other.get(field)), new HashSet<>(term.get(field)));
+                }
+                ++count;
+            }
+        }
+        assertEquals(expected.size(), count);
+    }
+
+    @Test
+    public void onlySelectedFieldsAreRead() throws Exception
+    {
+        Map<String, Double> selection = new LinkedHashMap<>();
+        selection.put(TermData.ID_FIELD_NAME, 1.0);
+        selection.put("name", 1.0);
+        try (TermDataStream terms = stream(selection)) {
+            while (terms.hasNext()) {
+                TermData term = terms.next();
+                assertNull(term.get("synonym"));
+                assertNull(term.get(TermData.PARENT_FIELD_NAME));
+                assertNull(term.get(TermData.TERM_CATEGORY_FIELD_NAME));
+            }
+        }
+    }
+
+    @Test
+    public void termCategoriesDoNotRequireSelectingParents() throws Exception
+    {
+        Map<String, Double> selection = new LinkedHashMap<>();
+        selection.put(TermData.ID_FIELD_NAME, 1.0);
+        selection.put(TermData.TERM_CATEGORY_FIELD_NAME, 1.0);
+        boolean found = false;
+        try (TermDataStream terms = stream(selection)) {
+            while (terms.hasNext()) {
+                TermData term = terms.next();
+                assertNull(term.get(TermData.PARENT_FIELD_NAME));
+                if ("HP:0000118".equals(term.getId())) {
+                    assertEquals(set("HP:0000118", "HP:0000001"),
+                        new HashSet<>(term.get(TermData.TERM_CATEGORY_FIELD_NAME)));
+                    found = true;
+                }
+            }
+        }
+        assertTrue(found);
+    }
+
+    @Test
+    public void unreadableSourcesAreReported()
+    {
+        assertNull(this.generator.stream("not a URL", Collections.<String, Double>emptyMap()));
+        assertNull(this.generator.transform("not a URL", Collections.<String, Double>emptyMap()));
+        assertFalse(this.generator.transform(getClass().getResource("/test.obo").toString() + ".missing",
+            Collections.<String, Double>emptyMap()).containsKey(HEADER));
+    }
+
+    private Map<String, TermData> transform(Map<String, Double> selection)
+    {
+        return this.generator.transform(getClass().getResource("/test.obo"), selection);
+    }
+
+    private TermDataStream stream(Map<String, Double> selection)
+    {
+        return this.generator.stream(getClass().getResource("/test.obo"), selection);
+    }
+
+    private static Collection<String> set(String... values)
+    {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.obo2solr;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link TermHierarchy}.
+ *
+ * @version $Id$
+ */
+public class TermHierarchyTest
+{
+    @Test
+    public void termCategoriesStartWithTheTermAndContainAllAncestors()
+    {
+        TermHierarchy hierarchy = new TermHierarchy();
+        hierarchy.addTerm("C", Arrays.asList("B ! Parent", "A"));
+        hierarchy.addTerm("B", Collections.singletonList("A ! Root"));
+        hierarchy.addTerm("A", null);
+
+        Iterator<String> categories = hierarchy.getTermCategories("C").iterator();
+        assertEquals("C", categories.next());
+        assertEquals(new HashSet<>(Arrays.asList("A", "B")),
+            new HashSet<>(Arrays.asList(categories.next(), categories.next())));
+        assertEquals(Collections.singleton("A"), hierarchy.getTermCategories("A"));
+        assertEquals(3, hierarchy.size());
+    }
+
+    @Test
+    public void unknownTermsOnlyHaveThemselves()
+    {
+        TermHierarchy hierarchy = new TermHierarchy();
+        hierarchy.addTerm("B", Collections.singletonList("A"));
+        assertEquals(Collections.singleton("X"), hierarchy.getTermCategories("X"));
+        // Referenced parents are known even if they were never added
+        assertEquals(Collections.singleton("A"), hierarchy.getTermCategories("A"));
+        assertEquals(2, hierarchy.size());
+    }
+
+    @Test
+    public void cyclesDoNotLoopForever()
+    {
+        TermHierarchy hierarchy = new TermHierarchy();
+        hierarchy.addTerm("A", Collections.singletonList("B"));
+        hierarchy.addTerm("B", Collections.singletonList("A"));
+        assertEquals(new HashSet<>(Arrays.asList("A", "B")), hierarchy.getTermCategories("A"));
+    }
+}
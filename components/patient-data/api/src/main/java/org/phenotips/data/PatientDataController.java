@@ -130,6 +130,20 @@ default void save(Patient patient, PatientWritePolicy policy)
      */
     void writeJSON(Patient patient, JSONObject json, Collection<String> selectedFieldNames);
 
+    /**
+     * Lists the field names that this controller reacts to when passed in the {@code selectedFieldNames} of
+     * {@link #writeJSON(Patient, JSONObject, Collection)}. If none of them is selected, the controller would not write
+     * anything, so it can be skipped entirely, without even loading its data.
+     *
+     * @return the field names that can enable this controller's output, or {@code null} if this isn't known, in which
+     *         case the controller must always be invoked; the default implementation returns {@code null}
+     * @since 1.4
+     */
+    default Collection<String> getSelectableFieldNames()
+    {
+        return null;
+    }
+
     /**
      * Given a JSON object, extracts data from it and returns it to the patient.
      *
@@ -0,0 +1,172 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.PatientDataController;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.LRUCacheConfiguration;
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+import com.xpn.xwiki.XWikiContext;
+
+/**
+ * Default implementation of the {@link PatientDataControllerRegistry}. The controllers are looked up through the
+ * context component manager, so that controllers registered for the current wiki or user are available, just like when
+ * each patient looked them up. The controllers are looked up once for each wiki and user, and looked up again only when
+ * a patient data controller is registered or unregistered. The looked up controllers are kept in an LRU cache, so that
+ * many different users don't fill the memory.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Singleton
+public class DefaultPatientDataControllerRegistry implements PatientDataControllerRegistry, Initializable
+{
+    @Inject
+    private Logger logger;
+
+    @Inject
+    @Named("context")
+    private Provider<ComponentManager> componentManager;
+
+    /** Used for finding the current wiki and user, which determine the controllers seen by the context. */
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    @Inject
+    private ObservationManager observationManager;
+
+    @Inject
+    private CacheManager cacheManager;
+
+    /** Incremented each time the available controllers change. */
+    private final AtomicLong generation = new AtomicLong();
+
+    /**
+     * The last looked up controllers for each wiki and user, valid only if they were computed for the current
+     * {@link #generation}.
+     */
+    private Cache<Controllers> controllers;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        try {
+            this.controllers =
+                this.cacheManager.createNewCache(new LRUCacheConfiguration("patientDataControllers", 1000));
+        } catch (CacheException ex) {
+            throw new InitializationException("Failed to create the patient data controllers cache", ex);
+        }
+        this.observationManager.addListener(new AbstractEventListener("phenotips-patient-data-controllers-updater",
+            new ComponentDescriptorAddedEvent(PatientDataController.class),
+            new ComponentDescriptorRemovedEvent(PatientDataController.class))
+        {
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                DefaultPatientDataControllerRegistry.this.generation.incrementAndGet();
+                DefaultPatientDataControllerRegistry.this.controllers.removeAll();
+            }
+        });
+    }
+
+    @Override
+    public SortedMap<String, PatientDataController<?>> getControllers()
+    {
+        long currentGeneration = this.generation.get();
+        String key = getContextKey();
+        Controllers cached = this.controllers.get(key);
+        if (cached != null && cached.generation == currentGeneration) {
+            return cached.map;
+        }
+        SortedMap<String, PatientDataController<?>> result = new TreeMap<>();
+        try {
+            List<PatientDataController<?>> available =
+                this.componentManager.get().getInstanceList(PatientDataController.class);
+            for (PatientDataController<?> controller : available) {
+                if (result.containsKey(controller.getName())) {
+                    this.logger.warn("Overwriting patient data controller with the name [{}]", controller.getName());
+                }
+                result.put(controller.getName(), controller);
+            }
+        } catch (ComponentLookupException ex) {
+            this.logger.error("Failed to lookup serializers", ex);
+            // Don't remember a failed lookup, try again next time
+            return Collections.unmodifiableSortedMap(result);
+        }
+        result = Collections.unmodifiableSortedMap(result);
+        // If the controllers changed in the meantime, the generation won't match and they will be looked up again
+        this.controllers.set(key, new Controllers(currentGeneration, result));
+        return result;
+    }
+
+    /**
+     * The context component manager looks up components in the current user's and the current wiki's component
+     * managers, so the controllers are cached separately for each wiki and user.
+     *
+     * @return a key identifying the current wiki and user
+     */
+    private String getContextKey()
+    {
+        XWikiContext xcontext = this.xcontextProvider.get();
+        if (xcontext == null) {
+            return "";
+        }
+        return xcontext.getWikiId() + ':' + xcontext.getUserReference();
+    }
+
+    /** The looked up controllers, along with the generation for which they were computed. */
+    private static final class Controllers
+    {
+        private final long generation;
+
+        private final SortedMap<String, PatientDataController<?>> map;
+
+        Controllers(long generation, SortedMap<String, PatientDataController<?>> map)
+        {
+            this.generation = generation;
+            this.map = map;
+        }
+    }
+}
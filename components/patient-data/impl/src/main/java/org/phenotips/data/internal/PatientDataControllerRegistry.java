@@ -0,0 +1,43 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.PatientDataController;
+
+import org.xwiki.component.annotation.Role;
+
+import java.util.SortedMap;
+
+/**
+ * Holds the available {@link PatientDataController patient data controllers}, shared by all the patients instead of
+ * being looked up for each patient.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Role
+public interface PatientDataControllerRegistry
+{
+    /**
+     * Lists the available controllers.
+     *
+     * @return an unmodifiable map of the available controllers, keyed and ordered by their {@link
+     *         PatientDataController#getName() name}; may be empty, but not {@code null}
+     */
+    SortedMap<String, PatientDataController<?>> getControllers();
+}
@@ -35,7 +35,6 @@
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
@@ -71,8 +70,8 @@ public class PhenoTipsPatient extends AbstractPrimaryEntity implements Patient
     /** Logging helper object. */
     private Logger logger = LoggerFactory.getLogger(PhenoTipsPatient.class);
 
-    /** The list of all the initialized data holders (PatientDataSerializer). */
-    private Map<String, PatientDataController<?>> serializers = new TreeMap<>();
+    /** The list of all the initialized data holders (PatientDataSerializer), shared by all patients. */
+    private Map<String, PatientDataController<?>> serializers = Collections.emptyMap();
 
     /** Extra data that can be plugged into the patient record. */
     private Map<String, PatientData<?>> extraData = new TreeMap<>();
@@ -103,15 +102,10 @@ public EntityReference getType()
     private void loadSerializers()
     {
         try {
-            List<PatientDataController<?>> availableSerializers = ComponentManagerRegistry
+            PatientDataControllerRegistry registry = ComponentManagerRegistry
                 .getContextComponentManager()
-                .getInstanceList(PatientDataController.class);
-            for (PatientDataController<?> serializer : availableSerializers) {
-                if (this.serializers.containsKey(serializer.getName())) {
-                    this.logger.warn("Overwriting patient data controller with the name [{}]", serializer.getName());
-                }
-                this.serializers.put(serializer.getName(), serializer);
-            }
+                .getInstance(PatientDataControllerRegistry.class);
+            this.serializers = registry.getControllers();
         } catch (ComponentLookupException ex) {
             this.logger.error("Failed to lookup serializers", ex);
         }
@@ -136,6 +130,20 @@ private boolean isFieldIncluded(Collection<String> selectedFields, String fieldN
         return (selectedFields == null || selectedFields.contains(fieldName));
     }
 
+    /**
+     * Checks if a data controller may have something to write for the selected fields. Controllers that declare their
+     * {@link PatientDataController#getSelectableFieldNames() selectable fields} are skipped when none of them is
+     * selected, which also avoids loading their data.
+     */
+    private boolean isControllerIncluded(Collection<String> selectedFields, PatientDataController<?> serializer)
+    {
+        if (selectedFields == null) {
+            return true;
+        }
+        Collection<String> selectableFields = serializer.getSelectableFieldNames();
+        return (selectableFields == null || !Collections.disjoint(selectableFields, selectedFields));
+    }
+
     @Override
     public String getExternalId()
     {
@@ -212,7 +220,9 @@ public JSONObject toJSON(Collection<String> selectedFields)
         }
 
         for (PatientDataController<?> serializer : this.serializers.values()) {
-            serializer.writeJSON(this, result, selectedFields);
+            if (isControllerIncluded(selectedFields, serializer)) {
+                serializer.writeJSON(this, result, selectedFields);
+            }
         }
 
         return result;
@@ -33,7 +33,10 @@
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -97,6 +100,17 @@ public Patient get(DocumentReference reference)
         return checkAccess(patient, this.userManager.getCurrentUser());
     }
 
+    @Override
+    public List<Patient> get(Collection<String> ids)
+    {
+        User currentUser = this.userManager.getCurrentUser();
+        List<Patient> result = new ArrayList<>(ids.size());
+        for (Patient patient : this.internalService.get(ids)) {
+            result.add(checkAccess(patient, currentUser));
+        }
+        return result;
+    }
+
     @Override
     public Patient getByName(String name)
     {
@@ -111,6 +125,13 @@ public Iterator<Patient> getAll()
         return new SecurePatientIterator(patientsIterator, this.access, this.userManager.getCurrentUser());
     }
 
+    @Override
+    public Iterator<Patient> getAll(int pageSize)
+    {
+        Iterator<Patient> patientsIterator = this.internalService.getAll(pageSize);
+        return new SecurePatientIterator(patientsIterator, this.access, this.userManager.getCurrentUser());
+    }
+
     @Override
     public boolean delete(Patient patient)
     {
@@ -151,6 +151,12 @@ protected String getControllingFieldName(String field)
         return field;
     }
 
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return getProperties().stream().map(this::getControllingFieldName).collect(Collectors.toSet());
+    }
+
     /**
      * @return list of fields which should be resolved to booleans
      */
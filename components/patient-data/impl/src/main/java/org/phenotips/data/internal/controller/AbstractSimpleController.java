@@ -206,6 +206,12 @@ public void writeJSON(Patient patient, JSONObject json, Collection<String> selec
         }
     }
 
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return getProperties();
+    }
+
     @Override
     public PatientData<String> readJSON(JSONObject json)
     {
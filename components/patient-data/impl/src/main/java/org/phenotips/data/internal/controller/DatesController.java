@@ -34,6 +34,7 @@
 import java.util.Map;
 import java.util.Set;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -256,6 +257,12 @@ public void writeJSON(Patient patient, JSONObject json, Collection<String> selec
         }
     }
 
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return getPatientDocumentProperties().stream().map(this::getControllingFieldName).collect(Collectors.toSet());
+    }
+
     @Override
     public PatientData<PhenoTipsDate> readJSON(JSONObject json)
     {
@@ -28,6 +28,7 @@
 import org.xwiki.component.annotation.Component;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
@@ -92,6 +93,12 @@ protected String getJsonPropertyName()
         return CONTROLLER_NAME;
     }
 
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Arrays.asList(DISORDER_PROPERTIES);
+    }
+
     @Override
     protected List<String> getProperties()
     {
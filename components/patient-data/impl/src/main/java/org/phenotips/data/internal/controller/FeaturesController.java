@@ -120,6 +120,13 @@ protected String getJsonPropertyName()
         return CONTROLLER_NAME;
     }
 
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        // Features are selected by any field name ending with the phenotype property name, not by exact names
+        return null;
+    }
+
     @Override
     protected List<String> getProperties()
     {
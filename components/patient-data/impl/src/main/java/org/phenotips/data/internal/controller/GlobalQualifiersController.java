@@ -357,6 +357,12 @@ public String getName()
         return DATA_NAME;
     }
 
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return getProperties();
+    }
+
     protected List<String> getProperties()
     {
         return Arrays.asList("global_age_of_onset", "global_mode_of_inheritance");
@@ -203,6 +203,12 @@ protected String getJsonPropertyName()
         return CONTROLLER_NAME;
     }
 
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.singleton(VARIANTS_ENABLING_FIELD_NAME);
+    }
+
     @Override
     protected List<String> getProperties()
     {
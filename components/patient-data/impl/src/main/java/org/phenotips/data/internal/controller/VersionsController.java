@@ -136,6 +136,12 @@ public void writeJSON(Patient patient, JSONObject json, Collection<String> selec
         }
     }
 
+    @Override
+    public Collection<String> getSelectableFieldNames()
+    {
+        return Collections.singleton(getEnablingFieldName());
+    }
+
     @Override
     protected List<String> getProperties()
     {
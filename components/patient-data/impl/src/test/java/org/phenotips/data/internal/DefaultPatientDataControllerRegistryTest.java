@@ -0,0 +1,222 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.PatientDataController;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.CacheException;
+import org.xwiki.cache.CacheManager;
+import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.EntryEvictionConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.inject.Provider;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import com.xpn.xwiki.XWikiContext;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultPatientDataControllerRegistry} component.
+ *
+ * @version $Id$
+ */
+public class DefaultPatientDataControllerRegistryTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<PatientDataControllerRegistry> mocker =
+        new MockitoComponentMockingRule<>(DefaultPatientDataControllerRegistry.class);
+
+    private ComponentManager componentManager;
+
+    private XWikiContext xcontext;
+
+    private PatientDataController<?> sex;
+
+    private PatientDataController<?> features;
+
+    @Before
+    public void setup() throws ComponentLookupException, CacheException
+    {
+        Map<String, Object> cached = new HashMap<>();
+        @SuppressWarnings("unchecked")
+        Cache<Object> cache = mock(Cache.class);
+        when(cache.get(anyString())).thenAnswer(invocation -> cached.get(invocation.getArguments()[0]));
+        doAnswer(invocation -> cached.put((String) invocation.getArguments()[0], invocation.getArguments()[1]))
+            .when(cache).set(anyString(), any());
+        doAnswer(invocation -> {
+            cached.clear();
+            return null;
+        }).when(cache).removeAll();
+        CacheManager cacheManager = this.mocker.getInstance(CacheManager.class);
+        when(cacheManager.createNewCache(any(CacheConfiguration.class))).thenReturn(cache);
+
+        this.sex = mockController("sex");
+        this.features = mockController("features");
+        List<PatientDataController<?>> controllers = Arrays.asList(this.sex, this.features);
+        this.componentManager = mock(ComponentManager.class);
+        Provider<ComponentManager> cmProvider = this.mocker.getInstance(
+            new DefaultParameterizedType(null, Provider.class, ComponentManager.class), "context");
+        when(cmProvider.get()).thenReturn(this.componentManager);
+        doReturn(controllers).when(this.componentManager).getInstanceList(PatientDataController.class);
+
+        this.xcontext = mock(XWikiContext.class);
+        when(this.xcontext.getWikiId()).thenReturn("xwiki");
+        Provider<XWikiContext> xcontextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        when(xcontextProvider.get()).thenReturn(this.xcontext);
+    }
+
+    @Test
+    public void controllersAreOrderedByName() throws ComponentLookupException
+    {
+        SortedMap<String, PatientDataController<?>> result = this.mocker.getComponentUnderTest().getControllers();
+        Assert.assertEquals(Arrays.asList("features", "sex"), Arrays.asList(result.keySet().toArray()));
+        Assert.assertSame(this.features, result.get("features"));
+        Assert.assertSame(this.sex, result.get("sex"));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void controllersCannotBeModified() throws ComponentLookupException
+    {
+        this.mocker.getComponentUnderTest().getControllers().remove("sex");
+    }
+
+    @Test
+    public void controllersAreLookedUpOnce() throws ComponentLookupException
+    {
+        PatientDataControllerRegistry registry = this.mocker.getComponentUnderTest();
+        SortedMap<String, PatientDataController<?>> first = registry.getControllers();
+        Assert.assertSame(first, registry.getControllers());
+        Assert.assertSame(first, registry.getControllers());
+        verify(this.componentManager, times(1)).getInstanceList(PatientDataController.class);
+    }
+
+    @Test
+    public void controllersAreLookedUpAgainWhenComponentsChange() throws ComponentLookupException
+    {
+        PatientDataControllerRegistry registry = this.mocker.getComponentUnderTest();
+        registry.getControllers();
+
+        ArgumentCaptor<EventListener> listener = ArgumentCaptor.forClass(EventListener.class);
+        verify(this.mocker.<ObservationManager>getInstance(ObservationManager.class)).addListener(listener.capture());
+
+        PatientDataController<?> dates = mockController("dates");
+        List<PatientDataController<?>> controllers = Arrays.asList(this.sex, this.features, dates);
+        doReturn(controllers).when(this.componentManager).getInstanceList(PatientDataController.class);
+        listener.getValue().onEvent(new ComponentDescriptorAddedEvent(PatientDataController.class), null, null);
+        Assert.assertSame(dates, registry.getControllers().get("dates"));
+
+        listener.getValue().onEvent(new ComponentDescriptorRemovedEvent(PatientDataController.class), null, null);
+        registry.getControllers();
+        verify(this.componentManager, times(3)).getInstanceList(PatientDataController.class);
+    }
+
+    @Test
+    public void controllersAreLookedUpSeparatelyForEachWikiAndUser() throws ComponentLookupException
+    {
+        PatientDataControllerRegistry registry = this.mocker.getComponentUnderTest();
+        Assert.assertEquals(2, registry.getControllers().size());
+
+        PatientDataController<?> dates = mockController("dates");
+        List<PatientDataController<?>> controllers = Arrays.asList(this.sex, this.features, dates);
+        doReturn(controllers).when(this.componentManager).getInstanceList(PatientDataController.class);
+        when(this.xcontext.getWikiId()).thenReturn("other");
+        Assert.assertSame(dates, registry.getControllers().get("dates"));
+
+        when(this.xcontext.getUserReference()).thenReturn(new DocumentReference("other", "XWiki", "Admin"));
+        Assert.assertSame(dates, registry.getControllers().get("dates"));
+
+        when(this.xcontext.getWikiId()).thenReturn("xwiki");
+        when(this.xcontext.getUserReference()).thenReturn(null);
+        Assert.assertNull(registry.getControllers().get("dates"));
+        verify(this.componentManager, times(3)).getInstanceList(PatientDataController.class);
+    }
+
+    @Test
+    public void controllersAreCachedForALimitedNumberOfWikisAndUsers() throws ComponentLookupException, CacheException
+    {
+        this.mocker.getComponentUnderTest();
+
+        ArgumentCaptor<CacheConfiguration> configuration = ArgumentCaptor.forClass(CacheConfiguration.class);
+        verify(this.mocker.<CacheManager>getInstance(CacheManager.class)).createNewCache(configuration.capture());
+        LRUEvictionConfiguration eviction =
+            (LRUEvictionConfiguration) configuration.getValue().get(EntryEvictionConfiguration.CONFIGURATIONID);
+        Assert.assertTrue(eviction.getMaxEntries() > 0);
+    }
+
+    @Test(expected = InitializationException.class)
+    public void initializationFailsWhenTheCacheCannotBeCreated() throws Exception
+    {
+        Initializable registry = (Initializable) this.mocker.getComponentUnderTest();
+        CacheManager cacheManager = this.mocker.getInstance(CacheManager.class);
+        when(cacheManager.createNewCache(any(CacheConfiguration.class))).thenThrow(new CacheException("failed"));
+        registry.initialize();
+    }
+
+    @Test
+    public void failedLookupsAreRetried() throws ComponentLookupException
+    {
+        doThrow(new ComponentLookupException("test")).when(this.componentManager)
+            .getInstanceList(PatientDataController.class);
+        PatientDataControllerRegistry registry = this.mocker.getComponentUnderTest();
+        Assert.assertTrue(registry.getControllers().isEmpty());
+
+        List<PatientDataController<?>> controllers = Arrays.asList(this.sex);
+        doReturn(controllers).when(this.componentManager).getInstanceList(PatientDataController.class);
+        Assert.assertSame(this.sex, registry.getControllers().get("sex"));
+    }
+
+    private PatientDataController<?> mockController(String name)
+    {
+        PatientDataController<?> controller = mock(PatientDataController.class);
+        when(controller.getName()).thenReturn(name);
+        return controller;
+    }
+}
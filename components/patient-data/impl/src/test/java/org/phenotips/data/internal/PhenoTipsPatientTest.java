@@ -0,0 +1,145 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.components.ComponentManagerRegistry;
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientDataController;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.model.reference.DocumentReference;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.inject.Provider;
+
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.objects.BaseObject;
+
+import net.jcip.annotations.NotThreadSafe;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PhenoTipsPatient} JSON serialization.
+ *
+ * @version $Id$
+ */
+@NotThreadSafe
+public class PhenoTipsPatientTest
+{
+    @Mock
+    private ComponentManager cm;
+
+    @Mock
+    private Provider<ComponentManager> mockProvider;
+
+    @Mock
+    private PatientDataControllerRegistry registry;
+
+    @Mock
+    private XWikiDocument doc;
+
+    @Mock
+    private PatientDataController<String> sex;
+
+    @Mock
+    private PatientDataController<String> features;
+
+    @Mock
+    private PatientDataController<String> legacy;
+
+    private Patient patient;
+
+    @Before
+    public void setup() throws ComponentLookupException
+    {
+        MockitoAnnotations.initMocks(this);
+        ReflectionUtils.setFieldValue(new ComponentManagerRegistry(), "cmProvider", this.mockProvider);
+        when(this.mockProvider.get()).thenReturn(this.cm);
+        when(this.cm.getInstance(PatientDataControllerRegistry.class)).thenReturn(this.registry);
+
+        when(this.sex.getSelectableFieldNames()).thenReturn(Collections.singleton("gender"));
+        when(this.features.getSelectableFieldNames()).thenReturn(Arrays.asList("phenotype", "negative_phenotype"));
+        // The legacy controller doesn't declare its fields, and relies on the default implementation
+        when(this.legacy.getSelectableFieldNames()).thenReturn(null);
+        SortedMap<String, PatientDataController<?>> controllers = new TreeMap<>();
+        controllers.put("sex", this.sex);
+        controllers.put("features", this.features);
+        controllers.put("legacy", this.legacy);
+        when(this.registry.getControllers()).thenReturn(controllers);
+
+        when(this.doc.getXObject(Patient.CLASS_REFERENCE)).thenReturn(mock(BaseObject.class));
+        when(this.doc.getDocumentReference()).thenReturn(new DocumentReference("wiki", "data", "P0000001"));
+        this.patient = new PhenoTipsPatient(this.doc);
+    }
+
+    @Test
+    public void fullSerializationInvokesAllControllers()
+    {
+        JSONObject json = this.patient.toJSON();
+
+        Assert.assertEquals("P0000001", json.getString("id"));
+        verify(this.sex).writeJSON(this.patient, json, null);
+        verify(this.features).writeJSON(this.patient, json, null);
+        verify(this.legacy).writeJSON(this.patient, json, null);
+    }
+
+    @Test
+    public void partialSerializationSkipsControllersWithoutSelectedFields()
+    {
+        Collection<String> selectedFields = Arrays.asList("gender", "external_id");
+        JSONObject json = this.patient.toJSON(selectedFields);
+
+        Assert.assertFalse(json.has("id"));
+        verify(this.sex).writeJSON(this.patient, json, selectedFields);
+        verify(this.legacy).writeJSON(this.patient, json, selectedFields);
+        verify(this.features, never()).writeJSON(any(Patient.class), any(JSONObject.class),
+            anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void partialSerializationInvokesControllersWithAnySelectedField()
+    {
+        Collection<String> selectedFields = Arrays.asList("id", "negative_phenotype");
+        JSONObject json = this.patient.toJSON(selectedFields);
+
+        Assert.assertEquals("P0000001", json.getString("id"));
+        verify(this.features).writeJSON(this.patient, json, selectedFields);
+        verify(this.legacy).writeJSON(this.patient, json, selectedFields);
+        verify(this.sex, never()).writeJSON(any(Patient.class), any(JSONObject.class), anyCollectionOf(String.class));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.PatientRepository;
+import org.phenotips.entities.PrimaryEntityManager;
+import org.phenotips.security.authorization.AuthorizationService;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+import org.xwiki.users.User;
+import org.xwiki.users.UserManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link SecurePatientEntityManager} component.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class SecurePatientEntityManagerTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<PrimaryEntityManager<Patient>> mocker =
+        new MockitoComponentMockingRule<>(SecurePatientEntityManager.class);
+
+    @Mock
+    private Patient patient1;
+
+    @Mock
+    private Patient patient2;
+
+    @Mock
+    private SecurePatient securePatient1;
+
+    @Mock
+    private SecurePatient securePatient2;
+
+    @Mock
+    private User currentUser;
+
+    private DocumentReference reference1 = new DocumentReference("xwiki", "data", "P0000001");
+
+    private DocumentReference reference2 = new DocumentReference("xwiki", "data", "P0000002");
+
+    private AuthorizationService access;
+
+    private PatientRepository internalRepo;
+
+    private SecurePatientEntityManager componentUnderTest;
+
+    @Before
+    public void setup() throws ComponentLookupException
+    {
+        MockitoAnnotations.initMocks(this);
+        this.access = this.mocker.getInstance(AuthorizationService.class);
+        this.internalRepo = this.mocker.getInstance(PatientRepository.class);
+
+        UserManager userManager = this.mocker.getInstance(UserManager.class);
+        when(userManager.getCurrentUser()).thenReturn(this.currentUser);
+        when(this.patient1.getDocumentReference()).thenReturn(this.reference1);
+        when(this.patient2.getDocumentReference()).thenReturn(this.reference2);
+
+        this.componentUnderTest = spy((SecurePatientEntityManager) this.mocker.getComponentUnderTest());
+        doReturn(this.securePatient1).when(this.componentUnderTest).createSecurePatient(this.patient1);
+        doReturn(this.securePatient2).when(this.componentUnderTest).createSecurePatient(this.patient2);
+    }
+
+    @Test
+    public void getCollectionChecksAccessOnEachPatient()
+    {
+        List<String> ids = Arrays.asList("P0000001", "P0000002", "P0000003");
+        when(this.internalRepo.get(ids)).thenReturn(Arrays.asList(this.patient1, this.patient2, null));
+        when(this.access.hasAccess(this.currentUser, Right.VIEW, this.reference1)).thenReturn(true);
+        when(this.access.hasAccess(this.currentUser, Right.VIEW, this.reference2)).thenReturn(true);
+
+        Assert.assertEquals(Arrays.asList(this.securePatient1, this.securePatient2, null),
+            this.componentUnderTest.get(ids));
+    }
+
+    @Test(expected = SecurityException.class)
+    public void getCollectionDeniesUnauthorizedAccess()
+    {
+        List<String> ids = Arrays.asList("P0000001", "P0000002");
+        when(this.internalRepo.get(ids)).thenReturn(Arrays.asList(this.patient1, this.patient2));
+        when(this.access.hasAccess(this.currentUser, Right.VIEW, this.reference1)).thenReturn(true);
+        when(this.access.hasAccess(this.currentUser, Right.VIEW, this.reference2)).thenReturn(false);
+
+        this.componentUnderTest.get(ids);
+    }
+
+    @Test
+    public void getCollectionForwardsEmptyResults()
+    {
+        when(this.internalRepo.get(Collections.<String>emptyList())).thenReturn(Collections.<Patient>emptyList());
+
+        Assert.assertTrue(this.componentUnderTest.get(Collections.<String>emptyList()).isEmpty());
+    }
+}
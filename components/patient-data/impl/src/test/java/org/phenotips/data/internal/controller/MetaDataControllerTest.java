@@ -138,6 +138,17 @@ public void checkGetProperties() throws ComponentLookupException
         Assert.assertTrue(result.isEmpty());
     }
 
+    @Test
+    public void checkGetSelectableFieldNames() throws ComponentLookupException
+    {
+        Collection<String> result = this.mocker.getComponentUnderTest().getSelectableFieldNames();
+        Assert.assertEquals(4, result.size());
+        Assert.assertTrue(result.contains("doc.name"));
+        Assert.assertTrue(result.contains("creationDate"));
+        Assert.assertTrue(result.contains("author"));
+        Assert.assertTrue(result.contains("date"));
+    }
+
     // --------------------load() is Overridden from AbstractSimpleController--------------------
 
     @Test
@@ -27,6 +27,7 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import java.util.Collection;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -150,6 +151,18 @@ public void checkGetProperties()
         Assert.assertThat(result, Matchers.hasItem(ASSISTED_REPRODUCTION_DONOR_SPERM));
     }
 
+    @Test
+    public void checkGetSelectableFieldNamesUsesControllingFields()
+    {
+        Collection<String> result = this.component.getSelectableFieldNames();
+
+        Assert.assertEquals(9, result.size());
+        Assert.assertThat(result, Matchers.hasItem(GESTATION));
+        Assert.assertThat(result, Matchers.hasItem(MULTIPLE_GESTATION));
+        Assert.assertThat(result, Matchers.hasItem(IVF));
+        Assert.assertThat(result, Matchers.not(Matchers.hasItem(GESTATION_TWIN)));
+    }
+
     @Test
     public void checkGetBooleanFields()
     {
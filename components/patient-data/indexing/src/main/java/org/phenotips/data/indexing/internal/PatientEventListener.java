@@ -21,7 +21,6 @@
 import org.phenotips.data.events.PatientChangedEvent;
 import org.phenotips.data.events.PatientDeletedEvent;
 import org.phenotips.data.events.PatientEvent;
-import org.phenotips.data.indexing.PatientIndexer;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.observation.AbstractEventListener;
@@ -32,7 +31,8 @@
 import javax.inject.Singleton;
 
 /**
- * Monitors document changes and submits modified patients to the {@link PatientIndexer indexer}.
+ * Monitors document changes and submits modified patients to the {@link PatientIndexingQueue indexing queue}, so that
+ * the index is updated in the background instead of delaying the request that modified the patients.
  *
  * @version $Id$
  * @since 1.0M8
@@ -42,9 +42,9 @@
 @Singleton
 public class PatientEventListener extends AbstractEventListener
 {
-    /** Does the actual indexing. */
+    /** Collects the changes and passes them to the indexer in batches. */
     @Inject
-    private PatientIndexer indexer;
+    private PatientIndexingQueue queue;
 
     /** Default constructor, sets up the listener name and the list of events to subscribe to. */
     public PatientEventListener()
@@ -57,9 +57,9 @@ public void onEvent(final Event event, final Object source, final Object data)
     {
         Patient patient = ((PatientEvent) event).getPatient();
         if (event instanceof PatientDeletedEvent) {
-            this.indexer.delete(patient);
+            this.queue.delete(patient);
         } else if (patient != null) {
-            this.indexer.index(patient);
+            this.queue.index(patient);
         }
     }
 }
@@ -0,0 +1,179 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.solr.common.SolrInputDocument;
+
+/**
+ * A pending change to the patients index: either the new indexed data of a patient, or its removal from the index.
+ * Updates are created on the thread that modified the patient, since collecting the data needs the request context,
+ * while the expensive expansion of the phenotypes with their ancestors, and the actual write to Solr, can be done
+ * later, in the background. Updates are serializable so that they can be persisted until they are written to Solr.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class PatientIndexUpdate implements Serializable
+{
+    private static final long serialVersionUID = 1L;
+
+    /** The serialized reference of the patient document. */
+    private final String document;
+
+    /** The collected data, without the ancestors of the phenotypes, or {@code null} for a deletion. */
+    private final SolrInputDocument input;
+
+    /** The phenotypes whose ancestors must be added, grouped by the name of the field holding the ancestors. */
+    private final LinkedHashMap<String, ArrayList<String>> terms = new LinkedHashMap<>();
+
+    /** When the patient was first changed since it was last written to the index, in milliseconds since the epoch. */
+    private long queuedAt;
+
+    /** The position of this update among all the queued updates, used to tell which of two updates is more recent. */
+    private long sequence;
+
+    /** How many times writing this update failed, not persisted so that each restart allows new attempts. */
+    private transient int failedAttempts;
+
+    /**
+     * Constructor.
+     *
+     * @param document the serialized reference of the patient document
+     * @param input the collected data, or {@code null} if the patient must be removed from the index
+     */
+    public PatientIndexUpdate(String document, SolrInputDocument input)
+    {
+        this.document = document;
+        this.input = input;
+        this.queuedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * The patient document targeted by this update.
+     *
+     * @return the serialized reference of the patient document
+     */
+    public String getDocument()
+    {
+        return this.document;
+    }
+
+    /**
+     * The collected data, without the ancestors of the phenotypes.
+     *
+     * @return the Solr document, or {@code null} if this is a deletion
+     */
+    public SolrInputDocument getInput()
+    {
+        return this.input;
+    }
+
+    /**
+     * Whether this update removes the patient from the index.
+     *
+     * @return {@code true} for deletions, {@code false} for additions and updates
+     */
+    public boolean isDeletion()
+    {
+        return this.input == null;
+    }
+
+    /**
+     * Records a phenotype whose ancestors must be added to the indexed data.
+     *
+     * @param field the name of the field holding the ancestors
+     * @param termId the identifier of the phenotype
+     */
+    public void addTerm(String field, String termId)
+    {
+        ArrayList<String> values = this.terms.get(field);
+        if (values == null) {
+            values = new ArrayList<>();
+            this.terms.put(field, values);
+        }
+        values.add(termId);
+    }
+
+    /**
+     * The phenotypes whose ancestors must be added to the indexed data.
+     *
+     * @return an unmodifiable map with field names as keys and term identifiers as values
+     */
+    public Map<String, List<String>> getTerms()
+    {
+        return Collections.<String, List<String>>unmodifiableMap(this.terms);
+    }
+
+    /**
+     * When the patient was first changed since it was last written to the index.
+     *
+     * @return a timestamp, in milliseconds since the epoch
+     */
+    public long getQueuedAt()
+    {
+        return this.queuedAt;
+    }
+
+    /**
+     * The position of this update among all the queued updates.
+     *
+     * @return a number greater than the sequence number of all the updates queued before this one
+     */
+    public long getSequence()
+    {
+        return this.sequence;
+    }
+
+    /**
+     * Sets the position of this update among all the queued updates.
+     *
+     * @param sequence a number greater than the sequence number of all the updates queued before this one
+     */
+    public void setSequence(long sequence)
+    {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Records that writing this update failed.
+     *
+     * @return the number of failed attempts so far, including this one
+     */
+    public int recordFailedAttempt()
+    {
+        return ++this.failedAttempts;
+    }
+
+    /**
+     * Records that this update replaces an older, not yet indexed update of the same patient, so that the indexing lag
+     * is measured from the first change.
+     *
+     * @param previous the replaced update
+     */
+    public void replace(PatientIndexUpdate previous)
+    {
+        this.queuedAt = Math.min(this.queuedAt, previous.queuedAt);
+    }
+}
@@ -0,0 +1,611 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.indexing.PatientIndexer;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextException;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.environment.Environment;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+import org.slf4j.Logger;
+
+/**
+ * Queue of pending changes to the patients index, written to Solr in batches by a background thread, so that saving
+ * patients doesn't wait for the index to be updated. Repeated changes to the same patient are coalesced into a single
+ * update, and each pending update is also stored on disk until it is written to Solr, so that changes aren't lost if
+ * the server stops before the queue is drained.
+ * <p>
+ * When Solr rejects a batch, the batch is split in halves until the failing updates are isolated, so that the other
+ * patients are still indexed. A failing update is retried a few times, then it is set aside and no longer blocks the
+ * queue; updates set aside are retried once more after a restart.
+ * </p>
+ * <p>
+ * The batching is configured in {@code xwiki.properties} with {@code phenotips.indexing.patients.batchSize}, the
+ * maximum number of patients sent to Solr in one request, 100 by default,
+ * {@code phenotips.indexing.patients.commitWithin}, the maximum number of milliseconds before changes become
+ * searchable, 1000 by default, and {@code phenotips.indexing.patients.retryDelay}, how many milliseconds to wait
+ * before retrying failed updates, 5000 by default.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component(roles = { PatientIndexingQueue.class })
+@Singleton
+public class PatientIndexingQueue implements Initializable, Disposable
+{
+    private static final String CONFIGURATION_PREFIX = "phenotips.indexing.patients.";
+
+    private static final int DEFAULT_BATCH_SIZE = 100;
+
+    private static final int DEFAULT_COMMIT_WITHIN = 1000;
+
+    private static final int DEFAULT_RETRY_DELAY = 5000;
+
+    /** How many times an update is tried before it is set aside. */
+    private static final int MAX_ATTEMPTS = 5;
+
+    /** How long to wait for the worker to finish the current batch when the queue is stopped. */
+    private static final long SHUTDOWN_TIMEOUT = 5000;
+
+    private static final String JOURNAL_EXTENSION = ".update";
+
+    @Inject
+    private Logger logger;
+
+    @Inject
+    private PatientIndexer indexer;
+
+    @Inject
+    private Environment environment;
+
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private ExecutionContextManager contextManager;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when updates are added to the queue, or when the queue is stopped. */
+    private final Condition notEmpty = this.lock.newCondition();
+
+    /** Signalled when all the queued updates have been written. */
+    private final Condition drained = this.lock.newCondition();
+
+    /** The pending updates, indexed by the serialized reference of the patient document, in the order they arrived. */
+    private final Map<String, PatientIndexUpdate> pending = new LinkedHashMap<>();
+
+    /** The updates taken from the queue and currently being written. */
+    private List<PatientIndexUpdate> inFlight = Collections.emptyList();
+
+    /** Whether the worker is writing a batch, including the cleanup of the journal once the batch is written. */
+    private boolean busy;
+
+    /** The updates set aside after failing too many times, indexed by the serialized reference of the document. */
+    private final Map<String, PatientIndexUpdate> rejected = new LinkedHashMap<>();
+
+    /** The sequence number of the last queued update. */
+    private long lastSequence;
+
+    private volatile boolean running;
+
+    private Thread worker;
+
+    /** Where pending updates are stored, {@code null} if they are only kept in memory. */
+    private File journal;
+
+    /** Where the updates set aside are stored, {@code null} if they are only kept in memory. */
+    private File rejectedJournal;
+
+    private int batchSize;
+
+    private int commitWithin;
+
+    private int retryDelay;
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong batches = new AtomicLong();
+
+    private final AtomicLong failures = new AtomicLong();
+
+    /** How long the last written batch waited in the queue, in milliseconds. */
+    private volatile long lastLag;
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.batchSize = getSetting("batchSize", DEFAULT_BATCH_SIZE);
+        Integer configuredCommitWithin =
+            this.configuration.getProperty(CONFIGURATION_PREFIX + "commitWithin", Integer.class);
+        this.commitWithin = configuredCommitWithin != null ? configuredCommitWithin : DEFAULT_COMMIT_WITHIN;
+        this.retryDelay = getSetting("retryDelay", DEFAULT_RETRY_DELAY);
+
+        if (!(this.indexer instanceof SolrPatientIndexer)) {
+            // A custom indexer is used, which doesn't support batching, changes will be passed to it directly
+            return;
+        }
+        File permanentDirectory = this.environment.getPermanentDirectory();
+        if (permanentDirectory != null) {
+            this.journal = new File(permanentDirectory, "patient-indexing-queue");
+            this.rejectedJournal = new File(this.journal, "rejected");
+            if (!this.rejectedJournal.isDirectory() && !this.rejectedJournal.mkdirs()) {
+                this.logger.warn("Cannot create the patient indexing journal [{}], pending updates will be lost if"
+                    + " the server stops", this.journal.getAbsolutePath());
+                this.journal = null;
+                this.rejectedJournal = null;
+            } else {
+                replayJournal();
+            }
+        }
+
+        this.running = true;
+        this.worker = new Thread(this::processQueue, "Patient indexing");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.running = false;
+        this.lock.lock();
+        try {
+            this.notEmpty.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+        if (this.worker != null) {
+            try {
+                this.worker.join(SHUTDOWN_TIMEOUT);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Queues a patient for indexing. The data to index is collected right away, while the ancestors of the phenotypes
+     * are added, and the data is sent to Solr, in the background.
+     *
+     * @param patient the patient to index
+     */
+    public void index(Patient patient)
+    {
+        if (!(this.indexer instanceof SolrPatientIndexer)) {
+            this.indexer.index(patient);
+            return;
+        }
+        enqueue(((SolrPatientIndexer) this.indexer).prepare(patient));
+    }
+
+    /**
+     * Queues a patient for removal from the index.
+     *
+     * @param patient the patient to remove
+     */
+    public void delete(Patient patient)
+    {
+        if (!(this.indexer instanceof SolrPatientIndexer)) {
+            this.indexer.delete(patient);
+            return;
+        }
+        enqueue(((SolrPatientIndexer) this.indexer).prepareDeletion(patient));
+    }
+
+    /**
+     * Waits until all the queued updates have been written to Solr, or set aside after failing too many times. Mostly
+     * useful for tests and maintenance tasks. The written changes may still need up to {@code commitWithin}
+     * milliseconds before they become searchable.
+     *
+     * @param timeout the maximum time to wait, in milliseconds
+     * @return {@code true} if the queue was drained, {@code false} if the timeout elapsed first
+     * @throws InterruptedException if the current thread is interrupted while waiting
+     */
+    public boolean flush(long timeout) throws InterruptedException
+    {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeout);
+        this.lock.lock();
+        try {
+            while (!this.pending.isEmpty() || this.busy) {
+                if (remaining <= 0) {
+                    return false;
+                }
+                remaining = this.drained.awaitNanos(remaining);
+            }
+            return true;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Get metrics about the queue: {@code depth}, the number of patients waiting to be written to the index,
+     * {@code lag}, how long the oldest of them has been waiting, in milliseconds, {@code lastLag}, how long the last
+     * written batch waited, {@code written}, the number of patient updates written so far, {@code batches}, the number
+     * of requests sent to Solr, {@code failures}, the number of failed requests, and {@code rejected}, the number of
+     * patients set aside after failing too many times.
+     *
+     * @return a map with the current metric values
+     */
+    public Map<String, Long> getStatistics()
+    {
+        Map<String, Long> result = new LinkedHashMap<>();
+        this.lock.lock();
+        try {
+            result.put("depth", (long) this.pending.size() + this.inFlight.size());
+            long oldest = System.currentTimeMillis();
+            for (PatientIndexUpdate update : this.pending.values()) {
+                oldest = Math.min(oldest, update.getQueuedAt());
+            }
+            result.put("lag", System.currentTimeMillis() - oldest);
+            result.put("rejected", (long) this.rejected.size());
+        } finally {
+            this.lock.unlock();
+        }
+        result.put("lastLag", this.lastLag);
+        result.put("written", this.written.get());
+        result.put("batches", this.batches.get());
+        result.put("failures", this.failures.get());
+        return result;
+    }
+
+    private void enqueue(PatientIndexUpdate update)
+    {
+        PatientIndexUpdate replaced;
+        PatientIndexUpdate replacedRejected;
+        this.lock.lock();
+        try {
+            update.setSequence(++this.lastSequence);
+            replaced = this.pending.remove(update.getDocument());
+            if (replaced != null) {
+                update.replace(replaced);
+            }
+            this.pending.put(update.getDocument(), update);
+            replacedRejected = this.rejected.remove(update.getDocument());
+            this.notEmpty.signal();
+        } finally {
+            this.lock.unlock();
+        }
+        // The journal is written without holding the lock, so that saving patients doesn't wait for the disk
+        store(update);
+        forget(replaced);
+        forgetRejected(replacedRejected);
+    }
+
+    private void processQueue()
+    {
+        // The worker outlives the requests that queued the updates, but expanding the phenotypes needs a context
+        try {
+            this.contextManager.initialize(new ExecutionContext());
+        } catch (ExecutionContextException ex) {
+            this.logger.warn("Failed to initialize the patient indexing context: {}", ex.getMessage());
+        }
+        try {
+            while (this.running) {
+                List<PatientIndexUpdate> batch = takeBatch();
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                List<PatientIndexUpdate> failed = new ArrayList<>();
+                write(batch, failed);
+                finishBatch(batch, failed);
+                if (!failed.isEmpty()) {
+                    pause();
+                }
+            }
+        } finally {
+            this.execution.removeContext();
+        }
+    }
+
+    private List<PatientIndexUpdate> takeBatch()
+    {
+        List<PatientIndexUpdate> batch = new ArrayList<>();
+        this.lock.lock();
+        try {
+            while (this.running && this.pending.isEmpty()) {
+                this.notEmpty.await();
+            }
+            Iterator<PatientIndexUpdate> it = this.pending.values().iterator();
+            while (it.hasNext() && batch.size() < this.batchSize) {
+                batch.add(it.next());
+                it.remove();
+            }
+            this.inFlight = batch;
+            this.busy = !batch.isEmpty();
+        } catch (InterruptedException ex) {
+            this.running = false;
+            Thread.currentThread().interrupt();
+        } finally {
+            this.lock.unlock();
+        }
+        return batch;
+    }
+
+    /**
+     * Writes a batch of updates to Solr. If Solr rejects the batch, it is split in halves which are written separately,
+     * until the failing updates are isolated.
+     *
+     * @param batch the updates to write
+     * @param failed collects the updates that could not be written
+     */
+    private void write(List<PatientIndexUpdate> batch, List<PatientIndexUpdate> failed)
+    {
+        try {
+            ((SolrPatientIndexer) this.indexer).update(batch, this.commitWithin);
+            this.batches.incrementAndGet();
+        } catch (Exception ex) {
+            this.failures.incrementAndGet();
+            if (batch.size() > 1) {
+                int middle = batch.size() / 2;
+                write(batch.subList(0, middle), failed);
+                write(batch.subList(middle, batch.size()), failed);
+            } else {
+                this.logger.warn("Failed to index [{}], will retry: {}", batch.get(0).getDocument(), ex.getMessage());
+                failed.addAll(batch);
+            }
+        }
+    }
+
+    private void finishBatch(List<PatientIndexUpdate> batch, List<PatientIndexUpdate> failed)
+    {
+        long now = System.currentTimeMillis();
+        long lag = 0;
+        List<PatientIndexUpdate> done = new ArrayList<>(batch.size());
+        List<PatientIndexUpdate> setAside = new ArrayList<>();
+        this.lock.lock();
+        try {
+            for (PatientIndexUpdate update : batch) {
+                PatientIndexUpdate newer = this.pending.get(update.getDocument());
+                if (!failed.contains(update)) {
+                    lag = Math.max(lag, now - update.getQueuedAt());
+                    done.add(update);
+                } else if (newer != null) {
+                    // The failed update is obsolete anyway, the newer one will be tried instead
+                    newer.replace(update);
+                    done.add(update);
+                } else if (update.recordFailedAttempt() < MAX_ATTEMPTS) {
+                    this.pending.put(update.getDocument(), update);
+                } else {
+                    this.rejected.put(update.getDocument(), update);
+                    setAside.add(update);
+                }
+            }
+            this.inFlight = Collections.emptyList();
+        } finally {
+            this.lock.unlock();
+        }
+        for (PatientIndexUpdate update : done) {
+            forget(update);
+        }
+        for (PatientIndexUpdate update : setAside) {
+            this.logger.error("Failed to index [{}] after {} attempts, giving up until the next restart",
+                update.getDocument(), MAX_ATTEMPTS);
+            reject(update);
+        }
+        this.lock.lock();
+        try {
+            this.busy = false;
+            if (this.pending.isEmpty()) {
+                this.drained.signalAll();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        if (batch.size() > failed.size()) {
+            this.written.addAndGet(batch.size() - failed.size());
+            this.lastLag = lag;
+        }
+    }
+
+    private void pause()
+    {
+        this.lock.lock();
+        try {
+            if (this.running) {
+                this.notEmpty.await(this.retryDelay, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            this.running = false;
+            Thread.currentThread().interrupt();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if an update is still waiting to be written, is being written, or was set aside.
+     *
+     * @param update the update to check
+     * @return {@code false} if the update was written or replaced by a newer one, {@code true} otherwise
+     */
+    private boolean isQueued(PatientIndexUpdate update)
+    {
+        this.lock.lock();
+        try {
+            String document = update.getDocument();
+            return this.pending.get(document) == update || this.rejected.get(document) == update
+                || this.inFlight.contains(update);
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void store(PatientIndexUpdate update)
+    {
+        if (this.journal == null) {
+            return;
+        }
+        try {
+            File target = getJournalFile(this.journal, update);
+            File temp = new File(this.journal, target.getName() + ".tmp");
+            try (OutputStream out = new FileOutputStream(temp);
+                ObjectOutputStream objects = new ObjectOutputStream(out)) {
+                objects.writeObject(update);
+            }
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            this.logger.warn("Failed to store the pending index update for [{}]: {}", update.getDocument(),
+                ex.getMessage());
+        }
+        // The worker may have already written the update while it was being stored, and no longer removes its file
+        if (!isQueued(update)) {
+            forget(update);
+        }
+    }
+
+    private void forget(PatientIndexUpdate update)
+    {
+        delete(this.journal, update);
+    }
+
+    private void forgetRejected(PatientIndexUpdate update)
+    {
+        delete(this.rejectedJournal, update);
+    }
+
+    private void delete(File directory, PatientIndexUpdate update)
+    {
+        if (directory == null || update == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(getJournalFile(directory, update).toPath());
+        } catch (IOException ex) {
+            this.logger.warn("Failed to remove the pending index update for [{}]: {}", update.getDocument(),
+                ex.getMessage());
+        }
+    }
+
+    private void reject(PatientIndexUpdate update)
+    {
+        if (this.journal == null) {
+            return;
+        }
+        try {
+            Files.move(getJournalFile(this.journal, update).toPath(),
+                getJournalFile(this.rejectedJournal, update).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException ex) {
+            this.logger.warn("Failed to set aside the index update for [{}]: {}", update.getDocument(),
+                ex.getMessage());
+        }
+    }
+
+    private File getJournalFile(File directory, PatientIndexUpdate update) throws UnsupportedEncodingException
+    {
+        return new File(directory,
+            URLEncoder.encode(update.getDocument(), "UTF-8") + '.' + update.getSequence() + JOURNAL_EXTENSION);
+    }
+
+    private void replayJournal()
+    {
+        // The updates set aside before the restart get a new chance
+        File[] rejectedFiles = this.rejectedJournal.listFiles((dir, name) -> name.endsWith(JOURNAL_EXTENSION));
+        if (rejectedFiles != null) {
+            for (File file : rejectedFiles) {
+                try {
+                    Files.move(file.toPath(), new File(this.journal, file.getName()).toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                } catch (IOException ex) {
+                    this.logger.warn("Failed to resume the rejected index update [{}]: {}", file.getName(),
+                        ex.getMessage());
+                }
+            }
+        }
+        File[] files = this.journal.listFiles((dir, name) -> name.endsWith(JOURNAL_EXTENSION));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            try (InputStream in = new FileInputStream(file); ObjectInputStream objects = new ObjectInputStream(in)) {
+                replay((PatientIndexUpdate) objects.readObject());
+            } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+                this.logger.warn("Discarding unreadable pending index update [{}]: {}", file.getName(),
+                    ex.getMessage());
+                if (!file.delete()) {
+                    file.deleteOnExit();
+                }
+            }
+        }
+        if (!this.pending.isEmpty()) {
+            this.logger.info("Resuming the indexing of [{}] patients", this.pending.size());
+        }
+    }
+
+    private void replay(PatientIndexUpdate update)
+    {
+        this.lastSequence = Math.max(this.lastSequence, update.getSequence());
+        PatientIndexUpdate other = this.pending.get(update.getDocument());
+        if (other == null || other.getSequence() < update.getSequence()) {
+            this.pending.put(update.getDocument(), update);
+            forget(other);
+        } else {
+            // An older change that was being written when the server stopped, the newer one is enough
+            forget(update);
+        }
+    }
+
+    private int getSetting(String name, int defaultValue)
+    {
+        Integer configured = this.configuration.getProperty(CONFIGURATION_PREFIX + name, Integer.class);
+        return configured != null && configured > 0 ? configured : defaultValue;
+    }
+}
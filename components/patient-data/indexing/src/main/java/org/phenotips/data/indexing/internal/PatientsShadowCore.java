@@ -0,0 +1,445 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
+import org.apache.solr.client.solrj.util.ClientUtils;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.CoreDescriptor;
+
+/**
+ * A temporary Solr core used for rebuilding the patients index without disturbing searches, which continue to use the
+ * live core until the new index is complete and the two cores are swapped. The indexed patients are recorded in a
+ * checkpoint file next to the core, so that an interrupted reindex can be resumed.
+ * <p>
+ * Live changes must be passed to {@link #apply(Collection, Change)} for as long as the shadow core exists. While the
+ * reindex runs, they are written to the shadow core as well. While the reindex is suspended, the changed patients are
+ * recorded in the checkpoint as no longer indexed, so that the resumed reindex removes and indexes them again.
+ * </p>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class PatientsShadowCore
+{
+    private static final String SHADOW_SUFFIX = "_reindex_";
+
+    private static final String CHECKPOINT_EXTENSION = ".checkpoint";
+
+    /** Marks the checkpoint lines listing patients changed since they were indexed. */
+    private static final char CHANGED_MARKER = '-';
+
+    /** How many patients are removed from the shadow core in one request. */
+    private static final int PURGE_BATCH_SIZE = 500;
+
+    /**
+     * A change of the live index, to be applied to the shadow core as well.
+     */
+    @FunctionalInterface
+    public interface Change
+    {
+        /**
+         * Writes the change using the given client.
+         *
+         * @param client the client of the shadow core
+         * @throws SolrServerException if Solr fails to process the change
+         * @throws IOException if communicating with Solr fails
+         */
+        void apply(SolrClient client) throws SolrServerException, IOException;
+    }
+
+    private enum State
+    {
+        /** A reindex is writing to the shadow core. */
+        RUNNING,
+        /** The reindex was interrupted and will be resumed later. */
+        SUSPENDED,
+        /** The shadow core replaced the live core. */
+        SWAPPED
+    }
+
+    private final CoreContainer container;
+
+    private final String liveName;
+
+    private final String name;
+
+    /** Records which shadow core is being built, so that it can be found again after a restart. */
+    private final File stateFile;
+
+    /**
+     * Lists the patient documents already indexed in the shadow core, one per line, and the ones changed since they
+     * were indexed, prefixed by {@link #CHANGED_MARKER}.
+     */
+    private final File checkpointFile;
+
+    private final Set<String> completed = new HashSet<>();
+
+    /** Patients changed while the reindex was suspended, which must be removed from the shadow core. */
+    private final Set<String> changed = new HashSet<>();
+
+    /** Patients added to the shadow core since the last commit. */
+    private final List<String> uncommitted = new ArrayList<>();
+
+    private final SolrClient client;
+
+    private Writer checkpoint;
+
+    private State state = State.SUSPENDED;
+
+    private PatientsShadowCore(CoreContainer container, String liveName, String name) throws IOException
+    {
+        this.container = container;
+        this.liveName = liveName;
+        this.name = name;
+        this.stateFile = getStateFile(container, liveName);
+        this.checkpointFile = getCheckpointFile(container, name);
+        this.client = new EmbeddedSolrServer(container, name);
+        for (String line : readLines(this.checkpointFile.toPath())) {
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.charAt(0) == CHANGED_MARKER) {
+                String document = line.substring(1);
+                this.completed.remove(document);
+                this.changed.add(document);
+            } else {
+                this.completed.add(line);
+                this.changed.remove(line);
+            }
+        }
+    }
+
+    /**
+     * Opens the shadow core of a live core, resuming an interrupted reindex if one was started, or creating a new
+     * empty core with the same configuration as the live core.
+     *
+     * @param container the core container holding the live core
+     * @param liveName the name of the live core
+     * @return the opened shadow core, or {@code null} if the live core cannot be found on disk, in which case
+     *         reindexing must be done in place
+     * @throws IOException if creating the shadow core fails
+     */
+    public static PatientsShadowCore open(CoreContainer container, String liveName) throws IOException
+    {
+        if (container == null || container.getSolrHome() == null) {
+            return null;
+        }
+        CoreDescriptor live = container.getCoreDescriptor(liveName);
+        if (live == null || live.getInstanceDir() == null) {
+            return null;
+        }
+
+        PatientsShadowCore result = find(container, liveName);
+        if (result == null) {
+            String name = liveName + SHADOW_SUFFIX + System.currentTimeMillis();
+            File instanceDir = new File(container.getSolrHome(), name);
+            FileUtils.copyDirectory(live.getInstanceDir().resolve("conf").toFile(), new File(instanceDir, "conf"));
+            container.create(name, Collections.<String, String>emptyMap());
+            Files.write(getStateFile(container, liveName).toPath(), name.getBytes(StandardCharsets.UTF_8));
+            result = new PatientsShadowCore(container, liveName, name);
+        }
+        result.resume();
+        return result;
+    }
+
+    /**
+     * Finds the shadow core left by an interrupted reindex, if any.
+     *
+     * @param container the core container holding the live core
+     * @param liveName the name of the live core
+     * @return the suspended shadow core, or {@code null} if there's no reindex to resume
+     * @throws IOException if reading the checkpoint fails
+     */
+    public static PatientsShadowCore find(CoreContainer container, String liveName) throws IOException
+    {
+        if (container == null || container.getSolrHome() == null) {
+            return null;
+        }
+        File stateFile = getStateFile(container, liveName);
+        if (!stateFile.isFile()) {
+            return null;
+        }
+        String previous = new String(Files.readAllBytes(stateFile.toPath()), StandardCharsets.UTF_8).trim();
+        if (container.getCoreNames().contains(previous)) {
+            return new PatientsShadowCore(container, liveName, previous);
+        }
+        // The previous shadow core is gone, start over
+        Files.deleteIfExists(getCheckpointFile(container, previous).toPath());
+        Files.deleteIfExists(stateFile.toPath());
+        return null;
+    }
+
+    /**
+     * The client used for writing to the shadow core.
+     *
+     * @return an embedded Solr client
+     */
+    public SolrClient getClient()
+    {
+        return this.client;
+    }
+
+    /**
+     * Checks if a patient was already indexed in the shadow core by a previous, interrupted run.
+     *
+     * @param document the serialized reference of the patient document
+     * @return {@code true} if the patient can be skipped
+     */
+    public synchronized boolean isCompleted(String document)
+    {
+        return this.completed.contains(document);
+    }
+
+    /**
+     * Mirrors a change of the live index. While the reindex runs, the change is written to the shadow core. While it
+     * is suspended, or if writing the change fails, the patients are recorded as changed, so that the reindex indexes
+     * them again when it is resumed. Nothing is done once the shadow core replaced the live core.
+     *
+     * @param documents the serialized references of the changed patient documents
+     * @param change the change to write
+     * @throws IOException if recording the changed patients fails
+     */
+    public synchronized void apply(Collection<String> documents, Change change) throws IOException
+    {
+        if (this.state == State.SWAPPED) {
+            return;
+        }
+        if (this.state == State.RUNNING) {
+            try {
+                change.apply(this.client);
+                return;
+            } catch (SolrServerException | IOException | RuntimeException ex) {
+                // Fall back to indexing these patients again
+            }
+        }
+        this.completed.removeAll(documents);
+        this.uncommitted.removeAll(documents);
+        this.changed.addAll(documents);
+        if (this.checkpoint != null) {
+            writeChanged(this.checkpoint, documents);
+            this.checkpoint.flush();
+        } else {
+            try (Writer out = openCheckpoint()) {
+                writeChanged(out, documents);
+            }
+        }
+    }
+
+    /**
+     * Removes from the shadow core the patients changed since they were indexed, and the indexed patients that no
+     * longer exist. The changed patients that still exist are not {@link #isCompleted(String) completed}, and must be
+     * indexed again.
+     *
+     * @param existing the serialized references of all the existing patient documents
+     * @throws SolrServerException if Solr fails to remove the patients
+     * @throws IOException if communicating with Solr fails
+     */
+    public synchronized void purge(Collection<String> existing) throws SolrServerException, IOException
+    {
+        Set<String> obsolete = new HashSet<>(this.changed);
+        for (Iterator<String> it = this.completed.iterator(); it.hasNext();) {
+            String document = it.next();
+            if (!existing.contains(document)) {
+                obsolete.add(document);
+                it.remove();
+            }
+        }
+        List<String> batch = new ArrayList<>(PURGE_BATCH_SIZE);
+        for (String document : obsolete) {
+            batch.add(ClientUtils.escapeQueryChars(document));
+            if (batch.size() == PURGE_BATCH_SIZE) {
+                this.client.deleteByQuery("document:(" + String.join(" OR ", batch) + ')');
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            this.client.deleteByQuery("document:(" + String.join(" OR ", batch) + ')');
+        }
+        this.changed.clear();
+    }
+
+    /**
+     * Checks if some changes could not be written to the shadow core during this run, in which case the shadow core
+     * cannot replace the live core yet.
+     *
+     * @return {@code true} if some patients must be indexed again
+     */
+    public synchronized boolean hasChanges()
+    {
+        return !this.changed.isEmpty();
+    }
+
+    /**
+     * Records that some patients were added to the shadow core. They are only written to the checkpoint by the next
+     * call to {@link #checkpoint()}, once they are committed.
+     *
+     * @param documents the serialized references of the indexed patient documents
+     */
+    public synchronized void markIndexed(Collection<String> documents)
+    {
+        this.uncommitted.addAll(documents);
+    }
+
+    /**
+     * Commits the shadow core and records the patients indexed since the previous checkpoint, so that they will be
+     * skipped if the reindex is interrupted and resumed later.
+     *
+     * @throws SolrServerException if committing fails
+     * @throws IOException if committing or writing the checkpoint fails
+     */
+    public synchronized void checkpoint() throws SolrServerException, IOException
+    {
+        this.client.commit();
+        for (String document : this.uncommitted) {
+            this.checkpoint.write(document);
+            this.checkpoint.write('\n');
+        }
+        this.checkpoint.flush();
+        this.completed.addAll(this.uncommitted);
+        this.uncommitted.clear();
+    }
+
+    /**
+     * Commits the shadow core and atomically replaces the live core with it. The previous live core is then deleted.
+     *
+     * @throws SolrServerException if committing fails
+     * @throws IOException if committing fails
+     */
+    public synchronized void swap() throws SolrServerException, IOException
+    {
+        this.client.commit();
+        closeCheckpoint();
+        this.container.swap(this.liveName, this.name);
+        // Live changes are now written directly to the new core
+        this.state = State.SWAPPED;
+        // After the swap, the shadow name designates the old live core
+        this.container.unload(this.name, true, true, true);
+        cleanup();
+    }
+
+    /**
+     * Starts writing to the shadow core again after it was suspended.
+     *
+     * @throws IOException if opening the checkpoint fails
+     */
+    public synchronized void resume() throws IOException
+    {
+        if (this.checkpoint == null) {
+            this.checkpoint = openCheckpoint();
+        }
+        this.state = State.RUNNING;
+    }
+
+    /**
+     * Commits what was indexed so far and stops writing the checkpoint, leaving the shadow core in place so that the
+     * reindex can be resumed later. Until then, live changes are only recorded in the checkpoint.
+     *
+     * @throws SolrServerException if committing the documents indexed so far fails
+     * @throws IOException if closing the checkpoint fails
+     */
+    public synchronized void suspend() throws SolrServerException, IOException
+    {
+        if (this.state == State.SWAPPED) {
+            return;
+        }
+        try {
+            checkpoint();
+        } finally {
+            this.state = State.SUSPENDED;
+            this.uncommitted.clear();
+            closeCheckpoint();
+        }
+    }
+
+    /**
+     * Checks if the reindex was interrupted and must be resumed later.
+     *
+     * @return {@code true} if the shadow core is suspended, {@code false} if it is being written or replaced the live
+     *         core
+     */
+    public synchronized boolean isSuspended()
+    {
+        return this.state == State.SUSPENDED;
+    }
+
+    private Writer openCheckpoint() throws IOException
+    {
+        return Files.newBufferedWriter(this.checkpointFile.toPath(), StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private void writeChanged(Writer out, Collection<String> documents) throws IOException
+    {
+        for (String document : documents) {
+            out.write(CHANGED_MARKER);
+            out.write(document);
+            out.write('\n');
+        }
+    }
+
+    private void closeCheckpoint() throws IOException
+    {
+        if (this.checkpoint != null) {
+            this.checkpoint.close();
+            this.checkpoint = null;
+        }
+    }
+
+    private void cleanup() throws IOException
+    {
+        Files.deleteIfExists(this.checkpointFile.toPath());
+        Files.deleteIfExists(this.stateFile.toPath());
+    }
+
+    private static File getStateFile(CoreContainer container, String liveName)
+    {
+        return new File(container.getSolrHome(), liveName + ".reindex");
+    }
+
+    private static File getCheckpointFile(CoreContainer container, String name)
+    {
+        return new File(container.getSolrHome(), name + CHECKPOINT_EXTENSION);
+    }
+
+    private static Collection<String> readLines(Path file) throws IOException
+    {
+        if (!Files.isRegularFile(file)) {
+            return Collections.emptyList();
+        }
+        return Files.readAllLines(file, StandardCharsets.UTF_8);
+    }
+}
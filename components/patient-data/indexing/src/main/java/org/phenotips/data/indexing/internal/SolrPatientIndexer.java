@@ -23,6 +23,7 @@
 import org.phenotips.data.PatientData;
 import org.phenotips.data.PatientRepository;
 import org.phenotips.data.indexing.PatientIndexer;
+import org.phenotips.data.permissions.EntityAccess;
 import org.phenotips.data.permissions.EntityPermissionsManager;
 import org.phenotips.vocabulary.SolrCoreContainerHandler;
 import org.phenotips.vocabulary.Vocabulary;
@@ -31,16 +32,30 @@
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
 import org.xwiki.model.reference.EntityReferenceSerializer;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
 import javax.inject.Named;
+import javax.inject.Provider;
 import javax.inject.Singleton;
 
 import org.apache.commons.lang3.StringUtils;
@@ -51,6 +66,8 @@
 import org.apache.solr.common.SolrInputDocument;
 import org.slf4j.Logger;
 
+import com.xpn.xwiki.XWikiContext;
+
 /**
  * Indexes patients in a local Solr core.
  *
@@ -67,6 +84,14 @@ public class SolrPatientIndexer implements PatientIndexer, Initializable
 
     private static final String SOLR_GENE_STATUS_FIELD_POSTFIX = "_genes";
 
+    private static final String CORE_NAME = "patients";
+
+    private static final String CONFIGURATION_PREFIX = "phenotips.indexing.patients.reindex.";
+
+    private static final int DEFAULT_THREADS = 4;
+
+    private static final int DEFAULT_PAGE_SIZE = 500;
+
     /** Logging helper object. */
     @Inject
     private Logger logger;
@@ -96,24 +121,70 @@ public class SolrPatientIndexer implements PatientIndexer, Initializable
     @Inject
     private EntityReferenceSerializer<String> referenceSerializer;
 
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private Execution execution;
+
+    @Inject
+    private Provider<XWikiContext> xcontextProvider;
+
+    /**
+     * The core being filled by a running reindex, or left by an interrupted one, which receives all the live changes
+     * until it replaces the live core.
+     */
+    private volatile PatientsShadowCore shadow;
+
     @Override
     public void initialize() throws InitializationException
     {
-        this.server = new EmbeddedSolrServer(this.cores.getContainer(), "patients");
+        this.server = new EmbeddedSolrServer(this.cores.getContainer(), CORE_NAME);
+        try {
+            this.shadow = PatientsShadowCore.find(this.cores.getContainer(), CORE_NAME);
+        } catch (IOException ex) {
+            this.logger.warn("Failed to read the progress of the interrupted patient reindexing: {}", ex.getMessage());
+        }
     }
 
     @Override
     public void index(Patient patient)
+    {
+        PatientIndexUpdate update = prepare(patient);
+        SolrInputDocument input = expand(update);
+        try {
+            // The shadow core is updated first, so that a change written to the live core is never missed by a swap
+            mirror(Collections.singleton(update.getDocument()), client -> client.add(input));
+            this.server.add(input);
+        } catch (SolrServerException ex) {
+            this.logger.warn("Failed to perform Solr search: {}", ex.getMessage());
+        } catch (IOException ex) {
+            this.logger.warn("Error occurred while performing Solr search: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Collects the data to index for a patient, without expanding the phenotypes with their ancestors. This must be
+     * called on a thread with access to the request context, since it checks the patient's visibility.
+     *
+     * @param patient the patient to index
+     * @return the pending update, to be passed to {@link #update(Collection, int)}
+     * @since 1.4
+     */
+    public PatientIndexUpdate prepare(Patient patient)
     {
         SolrInputDocument input = new SolrInputDocument();
-        input.setField("document", this.referenceSerializer.serialize(patient.getDocumentReference()));
+        String document = this.referenceSerializer.serialize(patient.getDocumentReference());
+        input.setField("document", document);
+        PatientIndexUpdate result = new PatientIndexUpdate(document, input);
         String reporter = "";
         if (patient.getReporter() != null) {
             reporter = patient.getReporter().toString();
         }
         input.setField("reporter", reporter);
 
-        // Index direct phenotypes and extended ancestor sets
+        // Index direct phenotypes, their ancestors are added later
         for (Feature phenotype : patient.getFeatures()) {
             String presence = (phenotype.isPresent() ? "" : "negative_");
             String fieldName = presence + phenotype.getType();
@@ -122,27 +193,71 @@ public void index(Patient patient)
             String termId = phenotype.getId();
             if (StringUtils.isNotBlank(termId)) {
                 input.addField(fieldName, termId);
-                // Add ancestors of the term
-                VocabularyTerm term = this.ontologyService.getTerm(termId);
-                if (term != null) {
-                    for (VocabularyTerm ancestor : term.getAncestorsAndSelf()) {
-                        input.addField(ancestorFieldName, ancestor.getId());
-                    }
-                }
+                result.addTerm(ancestorFieldName, termId);
             }
         }
 
-        input.setField("visibility", this.permissions.getEntityAccess(patient).getVisibility().getName());
-        input.setField("accessLevel", this.permissions.getEntityAccess(patient).getVisibility().getPermissiveness());
+        EntityAccess access = this.permissions.getEntityAccess(patient);
+        input.setField("visibility", access.getVisibility().getName());
+        input.setField("accessLevel", access.getVisibility().getPermissiveness());
 
         addGenes(input, patient);
+        return result;
+    }
 
-        try {
-            this.server.add(input);
-        } catch (SolrServerException ex) {
-            this.logger.warn("Failed to perform Solr search: {}", ex.getMessage());
-        } catch (IOException ex) {
-            this.logger.warn("Error occurred while performing Solr search: {}", ex.getMessage());
+    /**
+     * Creates the update removing a patient from the index.
+     *
+     * @param patient the patient to remove
+     * @return the pending update, to be passed to {@link #update(Collection, int)}
+     * @since 1.4
+     */
+    public PatientIndexUpdate prepareDeletion(Patient patient)
+    {
+        return new PatientIndexUpdate(this.referenceSerializer.serialize(patient.getDocumentReference()), null);
+    }
+
+    /**
+     * Writes a batch of pending updates to the index, with a single {@code add} request for all the indexed patients,
+     * and a single {@code delete} request for all the removed patients. The updates are expected to target distinct
+     * patients.
+     *
+     * @param updates the updates to write, as returned by {@link #prepare(Patient)} and
+     *            {@link #prepareDeletion(Patient)}
+     * @param commitWithin the maximum number of milliseconds before the changes are committed, or {@code -1} to leave
+     *            this to the Solr configuration
+     * @throws SolrServerException if Solr fails to process the changes
+     * @throws IOException if communicating with Solr fails
+     * @since 1.4
+     */
+    public void update(Collection<PatientIndexUpdate> updates, int commitWithin) throws SolrServerException, IOException
+    {
+        List<SolrInputDocument> added = new ArrayList<>(updates.size());
+        List<String> documents = new ArrayList<>(updates.size());
+        StringBuilder deleted = new StringBuilder();
+        for (PatientIndexUpdate update : updates) {
+            documents.add(update.getDocument());
+            if (update.isDeletion()) {
+                deleted.append(deleted.length() == 0 ? "document:(" : " OR ")
+                    .append(ClientUtils.escapeQueryChars(update.getDocument()));
+            } else {
+                added.add(expand(update));
+            }
+        }
+        String query = deleted.length() > 0 ? deleted.append(')').toString() : null;
+        mirror(documents, client -> {
+            if (query != null) {
+                client.deleteByQuery(query, commitWithin);
+            }
+            if (!added.isEmpty()) {
+                client.add(added, commitWithin);
+            }
+        });
+        if (query != null) {
+            this.server.deleteByQuery(query, commitWithin);
+        }
+        if (!added.isEmpty()) {
+            this.server.add(added, commitWithin);
         }
     }
 
@@ -150,8 +265,10 @@ public void index(Patient patient)
     public void delete(Patient patient)
     {
         try {
-            this.server.deleteByQuery("document:"
-                + ClientUtils.escapeQueryChars(this.referenceSerializer.serialize(patient.getDocumentReference())));
+            String document = this.referenceSerializer.serialize(patient.getDocumentReference());
+            String query = "document:" + ClientUtils.escapeQueryChars(document);
+            mirror(Collections.singleton(document), client -> client.deleteByQuery(query));
+            this.server.deleteByQuery(query);
             this.server.commit();
         } catch (SolrServerException ex) {
             this.logger.warn("Failed to delete from Solr: {}", ex.getMessage());
@@ -160,12 +277,164 @@ public void delete(Patient patient)
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The patients are indexed in parallel in a new core, while searches continue to use the current index, and the
+     * new core replaces the current one only once all the patients were indexed. If the reindex is interrupted, the
+     * next call resumes it, skipping the patients already indexed, except the ones changed in the meantime. If a new
+     * core cannot be created, the current index is cleared and rebuilt in place instead.
+     * </p>
+     */
     @Override
-    public void reindex()
+    public synchronized void reindex()
+    {
+        PatientsShadowCore target = this.shadow;
+        try {
+            if (target != null) {
+                target.resume();
+            } else {
+                target = PatientsShadowCore.open(this.cores.getContainer(), CORE_NAME);
+            }
+        } catch (IOException | RuntimeException ex) {
+            target = null;
+            this.logger.warn("Failed to create a new patients index, reindexing in place: {}", ex.getMessage());
+        }
+        if (target == null) {
+            reindexInPlace();
+        } else {
+            reindexInto(target);
+        }
+    }
+
+    private void reindexInto(PatientsShadowCore target)
+    {
+        this.shadow = target;
+        boolean complete = false;
+        ExecutorService workers = null;
+        try {
+            List<String> patientDocs = getPatientDocuments();
+            // Patients changed or deleted while the reindex was suspended are removed, the existing ones are redone
+            target.purge(new HashSet<>(patientDocs));
+            List<String> remaining = new ArrayList<>();
+            for (String patientDoc : patientDocs) {
+                if (!target.isCompleted(patientDoc)) {
+                    remaining.add(patientDoc);
+                }
+            }
+
+            int threads = getSetting("threads", DEFAULT_THREADS);
+            int pageSize = getSetting("pageSize", DEFAULT_PAGE_SIZE);
+            XWikiContext xcontext = this.xcontextProvider.get();
+            workers = Executors.newFixedThreadPool(threads);
+            CompletionService<Boolean> pages = new ExecutorCompletionService<>(workers);
+            int pageCount = 0;
+            for (int start = 0; start < remaining.size(); start += pageSize) {
+                List<String> page = remaining.subList(start, Math.min(start + pageSize, remaining.size()));
+                pages.submit(() -> indexPage(target, page, xcontext));
+                ++pageCount;
+            }
+
+            boolean indexed = true;
+            for (int done = 1; done <= pageCount; ++done) {
+                indexed &= pages.take().get();
+                if (done % threads == 0) {
+                    target.checkpoint();
+                }
+            }
+            // Changes that couldn't be written to the new core must be redone first
+            if (indexed && !target.hasChanges()) {
+                target.swap();
+                complete = true;
+                this.logger.info("Reindexed {} patients", remaining.size());
+            }
+        } catch (SolrServerException | IOException ex) {
+            this.logger.warn("Failed to reindex patients: {}", ex.getMessage());
+        } catch (QueryException ex) {
+            this.logger.warn("Failed to search patients for reindexing: {}", ex.getMessage());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ex) {
+            this.logger.warn("Failed to reindex patients: {}", ex.getMessage());
+        } finally {
+            if (workers != null) {
+                workers.shutdownNow();
+            }
+            if (!complete) {
+                suspend(target);
+            }
+            // A suspended core keeps receiving the live changes, until the reindex is resumed
+            if (!target.isSuspended()) {
+                this.shadow = null;
+            }
+        }
+    }
+
+    /**
+     * Indexes a page of patients in the new core. This runs on a worker thread, with its own copy of the request
+     * context.
+     *
+     * @return {@code true} if all the patients were indexed, {@code false} otherwise
+     */
+    private boolean indexPage(PatientsShadowCore target, List<String> page, XWikiContext xcontext)
+    {
+        ExecutionContext context = new ExecutionContext();
+        context.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, xcontext.clone());
+        this.execution.setContext(context);
+        try {
+            List<SolrInputDocument> inputs = new ArrayList<>(page.size());
+            for (Patient patient : this.patientRepository.get(page)) {
+                if (patient != null) {
+                    inputs.add(expand(prepare(patient)));
+                }
+            }
+            if (!inputs.isEmpty()) {
+                target.getClient().add(inputs);
+            }
+            target.markIndexed(page);
+            return true;
+        } catch (SolrServerException | IOException | RuntimeException ex) {
+            this.logger.warn("Failed to reindex patients: {}", ex.getMessage());
+            return false;
+        } finally {
+            this.execution.removeContext();
+        }
+    }
+
+    private void suspend(PatientsShadowCore target)
     {
         try {
-            List<String> patientDocs =
-                this.qm.createQuery("from doc.object(PhenoTips.PatientClass) as patient", Query.XWQL).execute();
+            target.suspend();
+            this.logger.warn("Patient reindexing incomplete, it will be resumed on the next reindex");
+        } catch (SolrServerException | IOException ex) {
+            this.logger.warn("Failed to save the patient reindexing progress: {}", ex.getMessage());
+        }
+    }
+
+    /**
+     * Passes a live change to the core being rebuilt, if any.
+     *
+     * @param documents the serialized references of the changed patient documents
+     * @param change writes the change
+     */
+    private void mirror(Collection<String> documents, PatientsShadowCore.Change change)
+    {
+        PatientsShadowCore target = this.shadow;
+        if (target == null) {
+            return;
+        }
+        try {
+            target.apply(documents, change);
+        } catch (IOException ex) {
+            this.logger.warn("Failed to record the change of {} for the interrupted patient reindexing: {}",
+                documents, ex.getMessage());
+        }
+    }
+
+    private void reindexInPlace()
+    {
+        try {
+            List<String> patientDocs = getPatientDocuments();
             this.server.deleteByQuery("*:*");
             for (String patientDoc : patientDocs) {
                 this.index(this.patientRepository.get(patientDoc));
@@ -180,6 +449,39 @@ public void reindex()
         }
     }
 
+    private List<String> getPatientDocuments() throws QueryException
+    {
+        return this.qm.createQuery("from doc.object(PhenoTips.PatientClass) as patient", Query.XWQL).execute();
+    }
+
+    private int getSetting(String name, int defaultValue)
+    {
+        Integer configured = this.configuration.getProperty(CONFIGURATION_PREFIX + name, Integer.class);
+        return configured != null && configured > 0 ? configured : defaultValue;
+    }
+
+    /**
+     * Adds the ancestors of the indexed phenotypes to the collected data.
+     *
+     * @param update the collected data, left unchanged so that it can be retried
+     * @return the complete document to index
+     */
+    private SolrInputDocument expand(PatientIndexUpdate update)
+    {
+        SolrInputDocument input = update.getInput().deepCopy();
+        for (Map.Entry<String, List<String>> field : update.getTerms().entrySet()) {
+            for (String termId : field.getValue()) {
+                VocabularyTerm term = this.ontologyService.getTerm(termId);
+                if (term != null) {
+                    for (VocabularyTerm ancestor : term.getAncestorsAndSelf()) {
+                        input.addField(field.getKey(), ancestor.getId());
+                    }
+                }
+            }
+        }
+        return input;
+    }
+
     private void addGenes(SolrInputDocument input, Patient patient)
     {
         PatientData<Gene> data = patient.getData(GENES_KEY);
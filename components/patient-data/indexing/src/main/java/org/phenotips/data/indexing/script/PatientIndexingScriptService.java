@@ -0,0 +1,61 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.script;
+
+import org.phenotips.data.indexing.internal.PatientIndexingQueue;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.stability.Unstable;
+
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Service for monitoring the indexing of patients.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable
+@Component
+@Named("patientIndexing")
+@Singleton
+public class PatientIndexingScriptService implements ScriptService
+{
+    /** The queue of pending changes to the patients index. */
+    @Inject
+    private PatientIndexingQueue queue;
+
+    /**
+     * Get metrics about the patients waiting to be indexed, useful for checking that the index keeps up with the
+     * changes: {@code depth}, the number of patients waiting, {@code lag}, how long the oldest of them has been
+     * waiting, in milliseconds, {@code lastLag}, how long the last written batch waited, {@code written},
+     * {@code batches} and {@code failures}, the number of indexed patients, of requests sent to Solr and of failed
+     * requests, and {@code rejected}, the number of patients that couldn't be indexed.
+     *
+     * @return a map of metric names and their current values
+     */
+    public Map<String, Long> getStatistics()
+    {
+        return this.queue.getStatistics();
+    }
+}
@@ -0,0 +1,332 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.phenotips.data.Patient;
+import org.phenotips.data.indexing.PatientIndexer;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.environment.Environment;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PatientIndexingQueue} component.
+ *
+ * @version $Id$
+ */
+public class PatientIndexingQueueTest
+{
+    @Rule
+    public MockitoComponentMockingRule<PatientIndexingQueue> mocker =
+        new MockitoComponentMockingRule<>(PatientIndexingQueue.class);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SolrPatientIndexer indexer;
+
+    private File journal;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.indexer = mock(SolrPatientIndexer.class);
+        this.mocker.registerComponent(PatientIndexer.class, this.indexer);
+        Environment environment = this.mocker.getInstance(Environment.class);
+        when(environment.getPermanentDirectory()).thenReturn(this.folder.getRoot());
+        this.journal = new File(this.folder.getRoot(), "patient-indexing-queue");
+    }
+
+    @After
+    public void tearDown() throws ComponentLookupException
+    {
+        this.mocker.getComponentUnderTest().dispose();
+    }
+
+    @Test
+    public void repeatedChangesAreCoalesced() throws Exception
+    {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            if (blocked.getCount() > 0) {
+                blocked.countDown();
+                release.await(10, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(this.indexer).update(anyCollectionOf(PatientIndexUpdate.class), anyInt());
+
+        PatientIndexingQueue queue = this.mocker.getComponentUnderTest();
+        queue.index(mockPatient("P1", 1));
+        Assert.assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+        // While the first batch is being written, the second patient changes three times, then is deleted
+        queue.index(mockPatient("P2", 1));
+        queue.index(mockPatient("P2", 2));
+        queue.index(mockPatient("P2", 3));
+        Patient deleted = mockPatient("P3", 1);
+        queue.index(deleted);
+        queue.delete(deleted);
+        Assert.assertEquals(3L, (long) queue.getStatistics().get("depth"));
+        Assert.assertFalse(queue.flush(10));
+
+        release.countDown();
+        Assert.assertTrue(queue.flush(10000));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<PatientIndexUpdate>> batches =
+            ArgumentCaptor.forClass((Class<Collection<PatientIndexUpdate>>) (Class<?>) Collection.class);
+        verify(this.indexer, times(2)).update(batches.capture(), eq(1000));
+        List<PatientIndexUpdate> second = (List<PatientIndexUpdate>) batches.getAllValues().get(1);
+        Assert.assertEquals(2, second.size());
+        Assert.assertEquals("xwiki:data.P2", second.get(0).getDocument());
+        Assert.assertEquals(3, second.get(0).getInput().getFieldValue("version"));
+        Assert.assertTrue(second.get(1).isDeletion());
+
+        Map<String, Long> statistics = queue.getStatistics();
+        Assert.assertEquals(0L, (long) statistics.get("depth"));
+        Assert.assertEquals(3L, (long) statistics.get("written"));
+        Assert.assertEquals(2L, (long) statistics.get("batches"));
+        Assert.assertEquals(0L, (long) statistics.get("failures"));
+        Assert.assertEquals(0, countUpdates(this.journal));
+    }
+
+    @Test
+    public void pendingUpdatesAreResumedAfterRestart() throws Exception
+    {
+        Assert.assertTrue(this.journal.mkdirs());
+        storeUpdate(this.journal, "xwiki:data.P1", 2);
+        // An older change of the same patient that was being written when the server stopped
+        storeUpdate(this.journal, "xwiki:data.P1", 1);
+
+        PatientIndexingQueue queue = this.mocker.getComponentUnderTest();
+        Assert.assertTrue(queue.flush(10000));
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<PatientIndexUpdate>> batch =
+            ArgumentCaptor.forClass((Class<Collection<PatientIndexUpdate>>) (Class<?>) Collection.class);
+        verify(this.indexer).update(batch.capture(), eq(1000));
+        Assert.assertEquals(1, batch.getValue().size());
+        PatientIndexUpdate resumed = batch.getValue().iterator().next();
+        Assert.assertEquals("xwiki:data.P1", resumed.getDocument());
+        Assert.assertEquals(2L, resumed.getSequence());
+        Assert.assertEquals(0, countUpdates(this.journal));
+    }
+
+    @Test
+    public void failedBatchesAreRetried() throws Exception
+    {
+        setRetryDelay();
+        doThrow(new IOException("Unavailable")).doNothing().when(this.indexer)
+            .update(anyCollectionOf(PatientIndexUpdate.class), anyInt());
+
+        PatientIndexingQueue queue = this.mocker.getComponentUnderTest();
+        queue.index(mockPatient("P1", 1));
+        Assert.assertTrue(queue.flush(10000));
+
+        verify(this.indexer, times(2)).update(anyCollectionOf(PatientIndexUpdate.class), eq(1000));
+        Map<String, Long> statistics = queue.getStatistics();
+        Assert.assertEquals(1L, (long) statistics.get("written"));
+        Assert.assertEquals(1L, (long) statistics.get("batches"));
+        Assert.assertEquals(1L, (long) statistics.get("failures"));
+        Assert.assertEquals(0L, (long) statistics.get("rejected"));
+        Assert.assertEquals(0, countUpdates(this.journal));
+    }
+
+    @Test
+    public void failingUpdatesAreIsolatedAndSetAside() throws Exception
+    {
+        setRetryDelay();
+        final List<String> written = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger poisonAttempts = new AtomicInteger();
+        doAnswer(invocation -> {
+            @SuppressWarnings("unchecked")
+            Collection<PatientIndexUpdate> batch = (Collection<PatientIndexUpdate>) invocation.getArguments()[0];
+            for (PatientIndexUpdate update : batch) {
+                if ("xwiki:data.P2".equals(update.getDocument())) {
+                    if (batch.size() == 1) {
+                        poisonAttempts.incrementAndGet();
+                    }
+                    throw new SolrServerException("Invalid document");
+                }
+            }
+            for (PatientIndexUpdate update : batch) {
+                written.add(update.getDocument());
+            }
+            return null;
+        }).when(this.indexer).update(anyCollectionOf(PatientIndexUpdate.class), anyInt());
+
+        PatientIndexingQueue queue = this.mocker.getComponentUnderTest();
+        queue.index(mockPatient("P1", 1));
+        queue.index(mockPatient("P2", 1));
+        queue.index(mockPatient("P3", 1));
+        Assert.assertTrue(queue.flush(10000));
+
+        // The other patients are indexed even if they were sent together with the failing one
+        Assert.assertTrue(written.contains("xwiki:data.P1"));
+        Assert.assertTrue(written.contains("xwiki:data.P3"));
+        Assert.assertFalse(written.contains("xwiki:data.P2"));
+        Assert.assertEquals(5, poisonAttempts.get());
+        Map<String, Long> statistics = queue.getStatistics();
+        Assert.assertEquals(0L, (long) statistics.get("depth"));
+        Assert.assertEquals(2L, (long) statistics.get("written"));
+        Assert.assertEquals(1L, (long) statistics.get("rejected"));
+        Assert.assertEquals(0, countUpdates(this.journal));
+        Assert.assertEquals(1, countUpdates(new File(this.journal, "rejected")));
+
+        // A new change replaces the update set aside
+        doNothing().when(this.indexer).update(anyCollectionOf(PatientIndexUpdate.class), anyInt());
+        queue.index(mockPatient("P2", 2));
+        Assert.assertTrue(queue.flush(10000));
+        Assert.assertEquals(0L, (long) queue.getStatistics().get("rejected"));
+        Assert.assertEquals(0, countUpdates(this.journal));
+        Assert.assertEquals(0, countUpdates(new File(this.journal, "rejected")));
+    }
+
+    @Test
+    public void rejectedUpdatesAreRetriedAfterRestart() throws Exception
+    {
+        File rejected = new File(this.journal, "rejected");
+        Assert.assertTrue(rejected.mkdirs());
+        storeUpdate(rejected, "xwiki:data.P1", 1);
+
+        PatientIndexingQueue queue = this.mocker.getComponentUnderTest();
+        Assert.assertTrue(queue.flush(10000));
+
+        verify(this.indexer).update(anyCollectionOf(PatientIndexUpdate.class), eq(1000));
+        Assert.assertEquals(0L, (long) queue.getStatistics().get("rejected"));
+        Assert.assertEquals(0, countUpdates(this.journal));
+        Assert.assertEquals(0, countUpdates(rejected));
+    }
+
+    @Test
+    public void updatesAreWrittenInAnExecutionContext() throws Exception
+    {
+        PatientIndexingQueue queue = this.mocker.getComponentUnderTest();
+        queue.index(mockPatient("P1", 1));
+        Assert.assertTrue(queue.flush(10000));
+
+        ExecutionContextManager contextManager = this.mocker.getInstance(ExecutionContextManager.class);
+        verify(contextManager).initialize(any(ExecutionContext.class));
+    }
+
+    @Test
+    public void flushTimesOutWhileUpdatesArePending() throws Exception
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(10, TimeUnit.SECONDS)).when(this.indexer)
+            .update(anyCollectionOf(PatientIndexUpdate.class), anyInt());
+
+        PatientIndexingQueue queue = this.mocker.getComponentUnderTest();
+        Assert.assertTrue(queue.flush(0));
+        queue.index(mockPatient("P1", 1));
+        Assert.assertFalse(queue.flush(50));
+        Assert.assertEquals(1L, (long) queue.getStatistics().get("depth"));
+
+        release.countDown();
+        Assert.assertTrue(queue.flush(10000));
+        Assert.assertEquals(0L, (long) queue.getStatistics().get("depth"));
+    }
+
+    @Test
+    public void customIndexersAreCalledDirectly() throws Exception
+    {
+        PatientIndexer custom = mock(PatientIndexer.class);
+        this.mocker.registerComponent(PatientIndexer.class, custom);
+        PatientIndexingQueue queue = this.mocker.getComponentUnderTest();
+        Patient patient = mockPatient("P1", 1);
+        queue.index(patient);
+        queue.delete(patient);
+        verify(custom).index(patient);
+        verify(custom).delete(patient);
+        Assert.assertTrue(queue.flush(0));
+        Assert.assertEquals(0L, (long) queue.getStatistics().get("depth"));
+    }
+
+    private void setRetryDelay() throws ComponentLookupException
+    {
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty("phenotips.indexing.patients.retryDelay", Integer.class)).thenReturn(10);
+    }
+
+    private void storeUpdate(File directory, String document, long sequence) throws IOException
+    {
+        PatientIndexUpdate update = new PatientIndexUpdate(document, new SolrInputDocument());
+        update.setSequence(sequence);
+        File file = new File(directory, URLEncoder.encode(document, "UTF-8") + '.' + sequence + ".update");
+        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(file))) {
+            out.writeObject(update);
+        }
+    }
+
+    private int countUpdates(File directory)
+    {
+        String[] updates = directory.list((dir, name) -> name.endsWith(".update"));
+        return updates == null ? 0 : updates.length;
+    }
+
+    private Patient mockPatient(String id, int version)
+    {
+        Patient patient = mock(Patient.class);
+        SolrInputDocument input = new SolrInputDocument();
+        input.setField("version", version);
+        String document = "xwiki:data." + id;
+        when(this.indexer.prepare(patient)).thenReturn(new PatientIndexUpdate(document, input));
+        when(this.indexer.prepareDeletion(patient)).thenReturn(new PatientIndexUpdate(document, null));
+        return patient;
+    }
+}
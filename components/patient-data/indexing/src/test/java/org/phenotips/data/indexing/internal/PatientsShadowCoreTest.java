@@ -0,0 +1,240 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.data.indexing.internal;
+
+import org.xwiki.component.util.ReflectionUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.core.CoreContainer;
+import org.apache.solr.core.CoreDescriptor;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMapOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link PatientsShadowCore} class.
+ *
+ * @version $Id$
+ */
+public class PatientsShadowCoreTest
+{
+    private static final String LIVE = "patients";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private CoreContainer container;
+
+    private SolrClient client;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        File home = this.folder.getRoot();
+        File conf = new File(home, LIVE + "/conf");
+        Assert.assertTrue(conf.mkdirs());
+        Files.write(new File(conf, "schema.xml").toPath(), "<schema/>".getBytes(StandardCharsets.UTF_8));
+
+        this.container = mock(CoreContainer.class);
+        when(this.container.getSolrHome()).thenReturn(home.getAbsolutePath());
+        CoreDescriptor live = mock(CoreDescriptor.class);
+        when(live.getInstanceDir()).thenReturn(new File(home, LIVE).toPath());
+        when(this.container.getCoreDescriptor(LIVE)).thenReturn(live);
+        this.client = mock(SolrClient.class);
+    }
+
+    @Test
+    public void openCreatesANewCoreWithTheLiveConfiguration() throws IOException
+    {
+        PatientsShadowCore shadow = open();
+        String name = getShadowName();
+
+        Assert.assertTrue(name.startsWith(LIVE + "_reindex_"));
+        verify(this.container).create(eq(name), anyMapOf(String.class, String.class));
+        Assert.assertTrue(new File(this.folder.getRoot(), name + "/conf/schema.xml").isFile());
+        Assert.assertFalse(shadow.isSuspended());
+        Assert.assertFalse(shadow.isCompleted("xwiki:data.P1"));
+    }
+
+    @Test
+    public void openReturnsNullWithoutLiveCore() throws IOException
+    {
+        when(this.container.getCoreDescriptor(LIVE)).thenReturn(null);
+        Assert.assertNull(PatientsShadowCore.open(this.container, LIVE));
+        Assert.assertNull(PatientsShadowCore.find(this.container, LIVE));
+    }
+
+    @Test
+    public void checkpointedPatientsAreSkippedWhenResumed() throws Exception
+    {
+        PatientsShadowCore shadow = open();
+        shadow.markIndexed(Arrays.asList("xwiki:data.P1", "xwiki:data.P2"));
+        shadow.checkpoint();
+        verify(this.client).commit();
+        Assert.assertTrue(shadow.isCompleted("xwiki:data.P1"));
+        shadow.markIndexed(Collections.singletonList("xwiki:data.P3"));
+        doThrow(new SolrServerException("Commit failed")).when(this.client).commit();
+        try {
+            shadow.suspend();
+            Assert.fail("The failed commit should be reported");
+        } catch (SolrServerException ex) {
+            // Expected
+        }
+        Assert.assertTrue(shadow.isSuspended());
+
+        PatientsShadowCore resumed = find();
+        Assert.assertTrue(resumed.isSuspended());
+        Assert.assertTrue(resumed.isCompleted("xwiki:data.P1"));
+        Assert.assertTrue(resumed.isCompleted("xwiki:data.P2"));
+        // Not committed, so it must be indexed again
+        Assert.assertFalse(resumed.isCompleted("xwiki:data.P3"));
+    }
+
+    @Test
+    public void changesAreMirroredWhileRunning() throws Exception
+    {
+        PatientsShadowCore shadow = open();
+        PatientsShadowCore.Change change = mock(PatientsShadowCore.Change.class);
+        shadow.apply(Collections.singleton("xwiki:data.P1"), change);
+        verify(change).apply(this.client);
+        Assert.assertFalse(shadow.hasChanges());
+
+        // A change that can't be written to the shadow core is redone by the reindex
+        shadow.markIndexed(Collections.singletonList("xwiki:data.P2"));
+        doThrow(new IOException("Write failed")).when(change).apply(this.client);
+        shadow.apply(Collections.singleton("xwiki:data.P2"), change);
+        Assert.assertTrue(shadow.hasChanges());
+        shadow.checkpoint();
+        Assert.assertFalse(shadow.isCompleted("xwiki:data.P2"));
+    }
+
+    @Test
+    public void changesWhileSuspendedAreRedoneWhenResumed() throws Exception
+    {
+        PatientsShadowCore shadow = open();
+        shadow.markIndexed(Arrays.asList("xwiki:data.P1", "xwiki:data.P2", "xwiki:data.P3"));
+        shadow.suspend();
+
+        PatientsShadowCore.Change change = mock(PatientsShadowCore.Change.class);
+        shadow.apply(Collections.singleton("xwiki:data.P1"), change);
+        verify(change, never()).apply(any(SolrClient.class));
+        Assert.assertFalse(shadow.isCompleted("xwiki:data.P1"));
+
+        // The changes are remembered after a restart
+        PatientsShadowCore resumed = find();
+        Assert.assertFalse(resumed.isCompleted("xwiki:data.P1"));
+        Assert.assertTrue(resumed.isCompleted("xwiki:data.P2"));
+        resumed.resume();
+        // P1 was changed, P3 was deleted since it was indexed
+        resumed.purge(Arrays.asList("xwiki:data.P1", "xwiki:data.P2"));
+
+        ArgumentCaptor<String> query = ArgumentCaptor.forClass(String.class);
+        verify(this.client).deleteByQuery(query.capture());
+        Assert.assertTrue(query.getValue().startsWith("document:("));
+        Assert.assertTrue(query.getValue().contains("xwiki\\:data.P1"));
+        Assert.assertTrue(query.getValue().contains("xwiki\\:data.P3"));
+        Assert.assertFalse(query.getValue().contains("xwiki\\:data.P2"));
+        Assert.assertFalse(resumed.isCompleted("xwiki:data.P1"));
+        Assert.assertFalse(resumed.isCompleted("xwiki:data.P3"));
+        Assert.assertTrue(resumed.isCompleted("xwiki:data.P2"));
+        Assert.assertFalse(resumed.hasChanges());
+    }
+
+    @Test
+    public void purgeDoesNothingWithoutObsoletePatients() throws Exception
+    {
+        PatientsShadowCore shadow = open();
+        shadow.purge(Collections.singleton("xwiki:data.P1"));
+        verify(this.client, never()).deleteByQuery(anyString());
+    }
+
+    @Test
+    public void swapReplacesTheLiveCore() throws Exception
+    {
+        PatientsShadowCore shadow = open();
+        String name = getShadowName();
+        shadow.markIndexed(Collections.singletonList("xwiki:data.P1"));
+        shadow.checkpoint();
+        shadow.swap();
+
+        verify(this.container).swap(LIVE, name);
+        verify(this.container).unload(name, true, true, true);
+        Assert.assertFalse(new File(this.folder.getRoot(), LIVE + ".reindex").exists());
+        Assert.assertFalse(new File(this.folder.getRoot(), name + ".checkpoint").exists());
+        Assert.assertFalse(shadow.isSuspended());
+
+        // Live changes are no longer mirrored, and a late suspension is ignored
+        PatientsShadowCore.Change change = mock(PatientsShadowCore.Change.class);
+        shadow.apply(Collections.singleton("xwiki:data.P1"), change);
+        verify(change, never()).apply(any(SolrClient.class));
+        shadow.suspend();
+        Assert.assertFalse(shadow.isSuspended());
+    }
+
+    @Test
+    public void missingShadowCoreIsForgotten() throws Exception
+    {
+        open().suspend();
+        when(this.container.getCoreNames()).thenReturn(Collections.<String>emptyList());
+        Assert.assertNull(PatientsShadowCore.find(this.container, LIVE));
+        Assert.assertFalse(new File(this.folder.getRoot(), LIVE + ".reindex").exists());
+    }
+
+    private PatientsShadowCore open() throws IOException
+    {
+        PatientsShadowCore result = PatientsShadowCore.open(this.container, LIVE);
+        ReflectionUtils.setFieldValue(result, "client", this.client);
+        return result;
+    }
+
+    private PatientsShadowCore find() throws IOException
+    {
+        when(this.container.getCoreNames()).thenReturn(Collections.singletonList(getShadowName()));
+        PatientsShadowCore result = PatientsShadowCore.find(this.container, LIVE);
+        Assert.assertNotNull(result);
+        ReflectionUtils.setFieldValue(result, "client", this.client);
+        return result;
+    }
+
+    private String getShadowName() throws IOException
+    {
+        return new String(Files.readAllBytes(new File(this.folder.getRoot(), LIVE + ".reindex").toPath()),
+            StandardCharsets.UTF_8);
+    }
+}
@@ -80,10 +80,14 @@
 import com.xpn.xwiki.web.Utils;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -400,6 +404,30 @@ public void deleteThrowsIOException() throws IOException, SolrServerException
         verify(this.logger).warn("Error occurred while deleting Solr documents: {}", "commit failed");
     }
 
+    @Test
+    public void updateWritesBatchesWithOneRequestPerOperation() throws IOException, SolrServerException
+    {
+        SolrInputDocument input = new SolrInputDocument();
+        input.setField("document", "wiki:patient.P0000001");
+        PatientIndexUpdate added = new PatientIndexUpdate("wiki:patient.P0000001", input);
+        added.addTerm("extended_phenotype", "HP:0001367");
+        PatientIndexUpdate other = new PatientIndexUpdate("wiki:patient.P0000002", new SolrInputDocument());
+        PatientIndexUpdate deleted = new PatientIndexUpdate("wiki:patient.P0000003", null);
+        PatientIndexUpdate deleted2 = new PatientIndexUpdate("wiki:patient.P0000004", null);
+
+        CapturingMatcher<Collection<SolrInputDocument>> capturedArgument = new CapturingMatcher<>();
+        when(this.server.add(argThat(capturedArgument), eq(1000))).thenReturn(mock(UpdateResponse.class));
+
+        ((SolrPatientIndexer) this.patientIndexer).update(Arrays.asList(added, deleted, other, deleted2), 1000);
+
+        verify(this.server).deleteByQuery("document:(wiki\\:patient.P0000003 OR wiki\\:patient.P0000004)", 1000);
+        Collection<SolrInputDocument> docs = capturedArgument.getLastValue();
+        Assert.assertEquals(2, docs.size());
+        Assert.assertEquals(5, docs.iterator().next().getFieldValues("extended_phenotype").size());
+        // The pending update isn't modified, so that it can be retried
+        Assert.assertNull(input.getFieldValues("extended_phenotype"));
+    }
+
     @Test
     public void reindexDefaultBehaviour() throws QueryException, IOException, SolrServerException
     {
@@ -481,6 +509,91 @@ public void reindexQueryException() throws QueryException, IOException, SolrServ
         verify(this.logger).warn("Failed to search patients for reindexing: {}", "createQuery failed");
     }
 
+    @Test
+    public void reindexResumesTheInterruptedReindexInParallel() throws Exception
+    {
+        PatientsShadowCore shadow = mockShadow();
+        when(shadow.isCompleted("P0000001")).thenReturn(true);
+        mockPatients(Arrays.asList("P0000001", "P0000002"));
+        doReturn(Collections.singletonList(this.patient)).when(this.patientRepository)
+            .get(Collections.singletonList("P0000002"));
+
+        this.patientIndexer.reindex();
+
+        verify(shadow).resume();
+        verify(shadow).purge(new HashSet<>(Arrays.asList("P0000001", "P0000002")));
+        verify(this.patientRepository, never()).get(Collections.singletonList("P0000001"));
+        verify(shadow.getClient()).add(anyCollectionOf(SolrInputDocument.class));
+        verify(shadow).markIndexed(Collections.singletonList("P0000002"));
+        verify(shadow).swap();
+        verify(this.server, never()).deleteByQuery("*:*");
+        Assert.assertNull(ReflectionUtils.getFieldValue(this.patientIndexer, "shadow"));
+    }
+
+    @Test
+    public void interruptedReindexKeepsTrackOfLiveChanges() throws Exception
+    {
+        PatientsShadowCore shadow = mockShadow();
+        mockPatients(Collections.singletonList("P0000001"));
+        doReturn(Collections.singletonList(this.patient)).when(this.patientRepository)
+            .get(Collections.singletonList("P0000001"));
+        when(shadow.getClient().add(anyCollectionOf(SolrInputDocument.class)))
+            .thenThrow(new SolrServerException("add failed"));
+        when(shadow.isSuspended()).thenReturn(true);
+
+        this.patientIndexer.reindex();
+
+        verify(shadow, never()).swap();
+        verify(shadow).suspend();
+        Assert.assertSame(shadow, ReflectionUtils.getFieldValue(this.patientIndexer, "shadow"));
+
+        // The suspended core must learn about the patients changed before the reindex is resumed
+        this.patientIndexer.index(this.patient);
+        this.patientIndexer.delete(this.patient);
+        verify(shadow, times(2)).apply(eq(Collections.singleton("wiki:patient.P0000001")),
+            any(PatientsShadowCore.Change.class));
+    }
+
+    @Test
+    public void reindexIsNotCompletedWhileLiveChangesAreMissing() throws Exception
+    {
+        PatientsShadowCore shadow = mockShadow();
+        mockPatients(Collections.<String>emptyList());
+        when(shadow.hasChanges()).thenReturn(true);
+        when(shadow.isSuspended()).thenReturn(true);
+
+        this.patientIndexer.reindex();
+
+        verify(shadow, never()).swap();
+        verify(shadow).suspend();
+    }
+
+    private PatientsShadowCore mockShadow() throws ComponentLookupException
+    {
+        PatientsShadowCore shadow = mock(PatientsShadowCore.class);
+        when(shadow.getClient()).thenReturn(mock(SolrClient.class));
+        ReflectionUtils.setFieldValue(this.patientIndexer, "shadow", shadow);
+
+        Provider<XWikiContext> xcontextProvider = this.mocker.getInstance(XWikiContext.TYPE_PROVIDER);
+        XWikiContext xcontext = mock(XWikiContext.class);
+        when(xcontextProvider.get()).thenReturn(xcontext);
+        when(xcontext.clone()).thenReturn(xcontext);
+        return shadow;
+    }
+
+    private void mockPatients(List<String> patientDocs) throws QueryException
+    {
+        Query query = mock(Query.class);
+        doReturn(query).when(this.qm).createQuery("from doc.object(PhenoTips.PatientClass) as patient", Query.XWQL);
+        doReturn(patientDocs).when(query).execute();
+
+        EntityAccess entityAccess = mock(DefaultEntityAccess.class);
+        doReturn(entityAccess).when(this.permissions).getEntityAccess(this.patient);
+        doReturn(new PublicVisibility()).when(entityAccess).getVisibility();
+        doReturn(this.patientDocReference).when(this.patient).getDocumentReference();
+        doReturn(Collections.emptySet()).when(this.patient).getFeatures();
+    }
+
     private Gene mockGene(String name, String status)
     {
         Gene result = mock(Gene.class);
@@ -58,11 +58,18 @@
     Response add(String json);
 
     /**
-     * @param start for large result set paging, the index of the first patient to display in the returned page
+     * Lists patient records, one page at a time. Deep pages should be retrieved using the continuation token returned
+     * in the {@code next} field of the previous page, which doesn't require skipping over all the previous records.
+     *
+     * @param start for large result set paging, the index of the first patient to display in the returned page,
+     *            ignored if {@code after} is specified
      * @param number for large result set paging, how many patients to display in the returned page
      * @param orderField field used for ordering the patients, can be one of {@code id} (default) or {@code eid}
      * @param order the sorting order, can be one of {@code asc} (default) or {@code desc}
+     * @param after a continuation token, as returned in the {@code next} field of the previous page, to start listing
+     *            immediately after the last patient of that page
      * @return a list of patient records
+     * @since 1.4
      */
     @GET
     @Produces(MediaType.APPLICATION_JSON)
@@ -71,5 +78,19 @@ Patients listPatients(
         @QueryParam("start") @DefaultValue("0") Integer start,
         @QueryParam("number") @DefaultValue("30") Integer number,
         @QueryParam("orderField") @DefaultValue("id") String orderField,
-        @QueryParam("order") @DefaultValue("asc") String order);
+        @QueryParam("order") @DefaultValue("asc") String order,
+        @QueryParam("after") String after);
+
+    /**
+     * @param start for large result set paging, the index of the first patient to display in the returned page
+     * @param number for large result set paging, how many patients to display in the returned page
+     * @param orderField field used for ordering the patients, can be one of {@code id} (default) or {@code eid}
+     * @param order the sorting order, can be one of {@code asc} (default) or {@code desc}
+     * @return a list of patient records
+     * @see #listPatients(Integer, Integer, String, String, String)
+     */
+    default Patients listPatients(Integer start, Integer number, String orderField, String order)
+    {
+        return listPatients(start, number, orderField, order, null);
+    }
 }
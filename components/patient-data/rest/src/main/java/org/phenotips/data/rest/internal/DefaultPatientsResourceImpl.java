@@ -29,15 +29,21 @@
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.model.reference.EntityReferenceResolver;
 import org.xwiki.query.Query;
+import org.xwiki.query.QueryException;
 import org.xwiki.query.QueryManager;
 import org.xwiki.rest.XWikiResource;
 import org.xwiki.security.authorization.Right;
 import org.xwiki.users.User;
 import org.xwiki.users.UserManager;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -50,6 +56,7 @@
 import javax.ws.rs.core.Response.Status;
 import javax.ws.rs.core.UriBuilder;
 
+import org.apache.commons.lang3.StringUtils;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -66,6 +73,29 @@
 @Singleton
 public class DefaultPatientsResourceImpl extends XWikiResource implements PatientsResource
 {
+    /** The maximum number of records fetched from the database at once while looking for visible patients. */
+    private static final int MAX_BATCH_SIZE = 1000;
+
+    private static final String ID = "id";
+
+    private static final String EID = "eid";
+
+    private static final String ASC = "asc";
+
+    private static final String DESC = "desc";
+
+    private static final String TOKEN_ORDER_FIELD = "orderField";
+
+    private static final String TOKEN_ORDER = "order";
+
+    private static final String TOKEN_POSITION = "after";
+
+    /**
+     * The external identifier used for sorting and seeking; missing identifiers are sorted as empty strings, which is
+     * also how they are stored in continuation tokens, since comparisons with {@code NULL} never match.
+     */
+    private static final String EID_SORT_KEY = "coalesce(p.external_id, '')";
+
     @Inject
     private Logger logger;
 
@@ -86,6 +116,11 @@ public class DefaultPatientsResourceImpl extends XWikiResource implements Patien
     @Named("current")
     private EntityReferenceResolver<EntityReference> currentResolver;
 
+    /** Parses the document names returned by the listing query. */
+    @Inject
+    @Named("current")
+    private DocumentReferenceResolver<String> stringResolver;
+
     @Inject
     private DomainObjectFactory factory;
 
@@ -191,38 +226,38 @@ private Response buildCreatedResponse(final Patient patient)
     }
 
     @Override
-    public Patients listPatients(Integer start, Integer number, String orderField, String order)
+    public Patients listPatients(Integer start, Integer number, String orderField, String order, String after)
     {
         Patients result = new Patients();
+        boolean byEid = EID.equals(orderField);
+        boolean descending = DESC.equals(order);
+        String[] position = parseContinuationToken(after, byEid, descending);
         try {
-            String safeOrderField = "doc.name";
-            if ("eid".equals(orderField)) {
-                safeOrderField = "p.external_id";
-            }
-            String safeOrder = " asc";
-            if ("desc".equals(order)) {
-                safeOrder = " desc";
-            }
-            Query query = this.queries.createQuery(
-                "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
-                    + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t order by "
-                    + safeOrderField + safeOrder,
-                "xwql");
-            query.bindValue("t", "PatientTemplate");
-
-            List<Object[]> records = query.execute();
+            int toSkip = (position != null || start == null) ? 0 : Math.max(start, 0);
+            // Fetch enough records for the requested page, assuming most of them are visible; more batches are fetched
+            // only if some records are filtered out by the rights checks
+            int batchSize = Math.min(Math.max(toSkip + number, 1), MAX_BATCH_SIZE);
             int skipped = 0;
-            for (Object[] record : records) {
-                PatientSummary summary = this.factory.createPatientSummary(record, this.uriInfo);
-                // Since raw queries can't take into account access rights, we must do our own paging with rights checks
-                if (summary != null) {
-                    if (++skipped > start) {
+            boolean exhausted = false;
+            while (!exhausted && result.getPatientSummaries().size() < number) {
+                Query query = createListQuery(byEid, descending, position);
+                query.setLimit(batchSize);
+                List<Object[]> records = query.execute();
+                for (Object[] record : records) {
+                    position = getPosition(record, byEid);
+                    PatientSummary summary = this.factory.createPatientSummary(record, this.uriInfo);
+                    // Since raw queries can't take into account access rights, we must do our own paging with rights
+                    // checks; the query only seeks directly to the first candidate record
+                    if (summary != null && ++skipped > toSkip) {
                         result.getPatientSummaries().add(summary);
-                    }
-                    if (result.getPatientSummaries().size() >= number) {
-                        break;
+                        if (result.getPatientSummaries().size() >= number) {
+                            result.withNext(createContinuationToken(position, byEid, descending));
+                            break;
+                        }
                     }
                 }
+                // Fewer records than requested means that there are no more records; without a position we can't seek
+                exhausted = records.size() < batchSize || position == null;
             }
             result.withLinks(this.autolinker.get().forResource(getClass(), this.uriInfo)
                 .withGrantedRight(getGrantedRight()).build());
@@ -234,6 +269,116 @@ public Patients listPatients(Integer start, Integer number, String orderField, S
         return result;
     }
 
+    /**
+     * Creates the query listing patients, starting right after the given position, so that deep pages don't have to
+     * read all the previous records.
+     *
+     * @param byEid whether patients are ordered by their external identifier, or by their internal identifier
+     * @param descending whether the order is descending
+     * @param position the sort key of the last record already listed, or {@code null} to start from the beginning
+     * @return the query, with all its parameters bound
+     * @throws QueryException if the query cannot be created
+     */
+    private Query createListQuery(boolean byEid, boolean descending, String[] position) throws QueryException
+    {
+        String direction = descending ? " desc" : " asc";
+        String comparison = descending ? " < " : " > ";
+        StringBuilder statement = new StringBuilder(
+            "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
+                + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t");
+        if (position != null) {
+            if (byEid) {
+                statement.append(" and (").append(EID_SORT_KEY).append(comparison).append(":afterEid")
+                    .append(" or (").append(EID_SORT_KEY).append(" = :afterEid and doc.name").append(comparison)
+                    .append(":afterName))");
+            } else {
+                statement.append(" and doc.name").append(comparison).append(":afterName");
+            }
+        }
+        statement.append(" order by ");
+        if (byEid) {
+            // The document name is used for breaking ties, so that every record has a distinct position
+            statement.append(EID_SORT_KEY).append(direction).append(", ");
+        }
+        statement.append("doc.name").append(direction);
+
+        Query query = this.queries.createQuery(statement.toString(), "xwql");
+        query.bindValue("t", "PatientTemplate");
+        if (position != null) {
+            query.bindValue("afterName", position[position.length - 1]);
+            if (byEid) {
+                query.bindValue("afterEid", position[0]);
+            }
+        }
+        return query;
+    }
+
+    /**
+     * Extracts the sort key of a record returned by the listing query.
+     *
+     * @param record the raw query result
+     * @param byEid whether patients are ordered by their external identifier
+     * @return the external identifier, if needed, followed by the document name, or {@code null} if the record doesn't
+     *         hold a valid document name
+     */
+    private String[] getPosition(Object[] record, boolean byEid)
+    {
+        if (record == null || record.length < 2 || !(record[0] instanceof String)) {
+            return null;
+        }
+        DocumentReference document = this.stringResolver.resolve((String) record[0]);
+        if (document == null) {
+            return null;
+        }
+        if (byEid) {
+            return new String[] { StringUtils.defaultString((String) record[1]), document.getName() };
+        }
+        return new String[] { document.getName() };
+    }
+
+    private String createContinuationToken(String[] position, boolean byEid, boolean descending)
+    {
+        if (position == null) {
+            return null;
+        }
+        JSONObject token = new JSONObject();
+        token.put(TOKEN_ORDER_FIELD, byEid ? EID : ID);
+        token.put(TOKEN_ORDER, descending ? DESC : ASC);
+        token.put(TOKEN_POSITION, new JSONArray(Arrays.asList(position)));
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString(token.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a continuation token, making sure that it was issued for the same ordering.
+     *
+     * @return the position encoded in the token, or {@code null} if no token was specified
+     * @throws WebApplicationException with a {@code BAD_REQUEST} status if the token is not valid
+     */
+    private String[] parseContinuationToken(String token, boolean byEid, boolean descending)
+    {
+        if (StringUtils.isEmpty(token)) {
+            return null;
+        }
+        try {
+            JSONObject decoded = new JSONObject(new String(Base64.getUrlDecoder().decode(token),
+                StandardCharsets.UTF_8));
+            JSONArray position = decoded.getJSONArray(TOKEN_POSITION);
+            if (!(byEid ? EID : ID).equals(decoded.getString(TOKEN_ORDER_FIELD))
+                || !(descending ? DESC : ASC).equals(decoded.getString(TOKEN_ORDER))
+                || position.length() != (byEid ? 2 : 1)) {
+                throw new WebApplicationException(Status.BAD_REQUEST);
+            }
+            String[] result = new String[position.length()];
+            for (int i = 0; i < result.length; ++i) {
+                result[i] = position.getString(i);
+            }
+            return result;
+        } catch (IllegalArgumentException | JSONException ex) {
+            throw new WebApplicationException(Status.BAD_REQUEST);
+        }
+    }
+
     private Right getGrantedRight()
     {
         User currentUser = this.users.getCurrentUser();
@@ -28,9 +28,12 @@
 
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.DefaultParameterizedType;
 import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.context.Execution;
 import org.xwiki.context.ExecutionContext;
+import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReference;
 import org.xwiki.query.Query;
 import org.xwiki.query.QueryException;
@@ -43,8 +46,11 @@
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 
 import javax.inject.Provider;
@@ -269,7 +275,7 @@ public void listPatientsNonDefaultBehaviour() throws QueryException
         verify(this.queries).createQuery(
             "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
                 + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t order by "
-                + "p.external_id" + " desc",
+                + "coalesce(p.external_id, '') desc, doc.name desc",
             "xwql");
     }
 
@@ -361,6 +367,114 @@ public void listPatientsGetMoreRecordsThanAdded() throws QueryException
         Assert.assertEquals(15, result.getPatientSummaries().size());
     }
 
+    @Test
+    public void listPatientsReturnsContinuationTokenUsedForSeeking() throws Exception
+    {
+        List<Object[]> patientList = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            patientList.add(new Object[] { "data.P000000" + i, "eid" + i, null, new Date(), "1.1", null, new Date() });
+        }
+        DocumentReferenceResolver<String> resolver = this.mocker.getInstance(
+            new DefaultParameterizedType(null, DocumentReferenceResolver.class, String.class), "current");
+        for (int i = 1; i <= 3; i++) {
+            when(resolver.resolve("data.P000000" + i))
+                .thenReturn(new DocumentReference("xwiki", "data", "P000000" + i));
+        }
+        Query query = mock(DefaultQuery.class);
+        doReturn(query).when(this.queries).createQuery(anyString(), anyString());
+        doReturn(query).when(query).bindValue(anyString(), anyString());
+        doReturn(patientList).when(query).execute();
+        doReturn(new PatientSummary()).when(this.factory).createPatientSummary(any(Object[].class), eq(this.uriInfo));
+
+        Patients firstPage = this.patientsResource.listPatients(0, 2, "eid", "asc", null);
+        Assert.assertEquals(2, firstPage.getPatientSummaries().size());
+        Assert.assertNotNull(firstPage.getNext());
+        verify(query).setLimit(2);
+
+        this.patientsResource.listPatients(0, 2, "eid", "asc", firstPage.getNext());
+        verify(this.queries).createQuery(
+            "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
+                + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t"
+                + " and (coalesce(p.external_id, '') > :afterEid"
+                + " or (coalesce(p.external_id, '') = :afterEid and doc.name > :afterName))"
+                + " order by coalesce(p.external_id, '') asc, doc.name asc",
+            "xwql");
+        verify(query).bindValue("afterEid", "eid2");
+        verify(query).bindValue("afterName", "P0000002");
+    }
+
+    @Test
+    public void listPatientsSeeksPastRecordsWithoutExternalIdentifiers() throws Exception
+    {
+        List<Object[]> patientList = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            patientList.add(new Object[] { "data.P000000" + i, null, null, new Date(), "1.1", null, new Date() });
+        }
+        DocumentReferenceResolver<String> resolver = this.mocker.getInstance(
+            new DefaultParameterizedType(null, DocumentReferenceResolver.class, String.class), "current");
+        for (int i = 1; i <= 3; i++) {
+            when(resolver.resolve("data.P000000" + i))
+                .thenReturn(new DocumentReference("xwiki", "data", "P000000" + i));
+        }
+        Query query = mock(DefaultQuery.class);
+        doReturn(query).when(this.queries).createQuery(anyString(), anyString());
+        doReturn(query).when(query).bindValue(anyString(), anyString());
+        doReturn(patientList).when(query).execute();
+        doReturn(new PatientSummary()).when(this.factory).createPatientSummary(any(Object[].class), eq(this.uriInfo));
+
+        Patients firstPage = this.patientsResource.listPatients(0, 2, "eid", "desc", null);
+        Assert.assertEquals(2, firstPage.getPatientSummaries().size());
+        Assert.assertNotNull(firstPage.getNext());
+
+        this.patientsResource.listPatients(0, 2, "eid", "desc", firstPage.getNext());
+        verify(this.queries).createQuery(
+            "select doc.fullName, p.external_id, doc.creator, doc.creationDate, doc.version, doc.author, doc.date"
+                + " from Document doc, doc.object(PhenoTips.PatientClass) p where doc.name <> :t"
+                + " and (coalesce(p.external_id, '') < :afterEid"
+                + " or (coalesce(p.external_id, '') = :afterEid and doc.name < :afterName))"
+                + " order by coalesce(p.external_id, '') desc, doc.name desc",
+            "xwql");
+        verify(query).bindValue("afterEid", "");
+        verify(query).bindValue("afterName", "P0000002");
+    }
+
+    @Test
+    public void listPatientsLastPageHasNoContinuationToken() throws Exception
+    {
+        List<Object[]> patientList = new ArrayList<>();
+        patientList.add(new Object[] { "data.P0000001", "eid1", null, new Date(), "1.1", null, new Date() });
+        Query query = mock(DefaultQuery.class);
+        doReturn(query).when(this.queries).createQuery(anyString(), anyString());
+        doReturn(query).when(query).bindValue(anyString(), anyString());
+        doReturn(patientList).when(query).execute();
+        doReturn(new PatientSummary()).when(this.factory).createPatientSummary(any(Object[].class), eq(this.uriInfo));
+
+        Patients result = this.patientsResource.listPatients(0, 30, "id", "asc", null);
+        Assert.assertEquals(1, result.getPatientSummaries().size());
+        Assert.assertNull(result.getNext());
+    }
+
+    @Test
+    public void listPatientsRejectsInvalidContinuationTokens()
+    {
+        try {
+            this.patientsResource.listPatients(0, 30, "id", "asc", "not a token");
+            Assert.fail("Invalid tokens should be rejected");
+        } catch (WebApplicationException ex) {
+            Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), ex.getResponse().getStatus());
+        }
+
+        String eidToken = Base64.getUrlEncoder().encodeToString(
+            "{\"orderField\":\"eid\",\"order\":\"asc\",\"after\":[\"e\",\"P0000001\"]}"
+                .getBytes(StandardCharsets.UTF_8));
+        try {
+            this.patientsResource.listPatients(0, 30, "id", "asc", eidToken);
+            Assert.fail("Tokens issued for a different order should be rejected");
+        } catch (WebApplicationException ex) {
+            Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), ex.getResponse().getStatus());
+        }
+    }
+
     @Test
     public void listPatientFailureHandling() throws QueryException
     {
@@ -0,0 +1,112 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.rest.internal;
+
+import org.phenotips.rest.RequiredAccess;
+
+import org.xwiki.security.authorization.Right;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.ws.rs.HttpMethod;
+
+/**
+ * The HTTP methods declared by a REST interface, grouped by the {@link RequiredAccess required right}, read once from
+ * the method annotations. The methods allowed for each granted right are also memoized, since only a few distinct
+ * rights are ever used.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public final class AllowedMethods
+{
+    /** Key used for memoizing the methods allowed when no right is specified. */
+    private static final String NO_RIGHT = "";
+
+    /** HTTP methods that don't require a specific right. */
+    private final Set<String> unrestricted = new HashSet<>();
+
+    /** HTTP methods requiring a specific right. */
+    private final Map<Right, Set<String>> restricted = new LinkedHashMap<>();
+
+    /** All the HTTP methods, allowed when no granted right is specified. */
+    private final Set<String> all = new HashSet<>();
+
+    private final ConcurrentMap<String, Set<String>> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor reading the annotations of a REST interface.
+     *
+     * @param restInterface the interface defining the RESTful endpoint
+     */
+    AllowedMethods(Class<?> restInterface)
+    {
+        for (Method method : restInterface.getMethods()) {
+            for (Annotation annotation : method.getAnnotations()) {
+                HttpMethod httpMethod = annotation.annotationType().getAnnotation(HttpMethod.class);
+                if (httpMethod != null) {
+                    this.all.add(httpMethod.value());
+                    RequiredAccess rightAnnotation = method.getAnnotation(RequiredAccess.class);
+                    if (rightAnnotation != null) {
+                        Right right = Right.toRight(rightAnnotation.value());
+                        this.restricted.computeIfAbsent(right, k -> new HashSet<>()).add(httpMethod.value());
+                    } else {
+                        this.unrestricted.add(httpMethod.value());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the HTTP methods allowed for a granted right.
+     *
+     * @param grantedRight the right granted for the current user on the entity being accessed, may be {@code null}, in
+     *            which case all the methods are allowed
+     * @return an unmodifiable set of HTTP methods
+     */
+    public Set<String> resolve(final Right grantedRight)
+    {
+        String key = grantedRight == null ? NO_RIGHT : grantedRight.getName();
+        return this.resolved.computeIfAbsent(key, k -> compute(grantedRight));
+    }
+
+    private Set<String> compute(Right grantedRight)
+    {
+        if (grantedRight == null) {
+            return Collections.unmodifiableSet(this.all);
+        }
+        Set<String> result = new HashSet<>(this.unrestricted);
+        for (Map.Entry<Right, Set<String>> entry : this.restricted.entrySet()) {
+            Right right = entry.getKey();
+            if (right == grantedRight || grantedRight.getImpliedRights() != null
+                && grantedRight.getImpliedRights().contains(right)) {
+                result.addAll(entry.getValue());
+            }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+}
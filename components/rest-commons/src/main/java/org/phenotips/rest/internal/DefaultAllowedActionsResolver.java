@@ -18,21 +18,18 @@
 package org.phenotips.rest.internal;
 
 import org.phenotips.rest.AllowedActionsResolver;
-import org.phenotips.rest.RequiredAccess;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.security.authorization.Right;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Method;
-import java.util.HashSet;
 import java.util.Set;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
-import javax.ws.rs.HttpMethod;
 
 /**
- * Default implementation of the {@link AllowedActionsResolver}.
+ * Default implementation of the {@link AllowedActionsResolver}. The annotations of each REST interface are only read
+ * once, and the result is cached by the {@link ResourceLinkRegistry}.
  *
  * @version $Id$
  * @since 1.3M2
@@ -41,28 +38,12 @@
 @Singleton
 public class DefaultAllowedActionsResolver implements AllowedActionsResolver
 {
+    @Inject
+    private ResourceLinkRegistry registry;
+
     @Override
     public Set<String> resolveActions(Class<?> restInterface, Right grantedRight)
     {
-        Method[] methods = restInterface.getMethods();
-        Set<String> result = new HashSet<>();
-        for (Method method : methods) {
-            for (Annotation annotation : method.getAnnotations()) {
-                HttpMethod httpMethod = annotation.annotationType().getAnnotation(HttpMethod.class);
-                if (httpMethod != null) {
-                    RequiredAccess rightAnnotation = method.getAnnotation(RequiredAccess.class);
-                    if (grantedRight != null && rightAnnotation != null) {
-                        Right right = Right.toRight(rightAnnotation.value());
-                        if (right == grantedRight || grantedRight.getImpliedRights() != null
-                            && grantedRight.getImpliedRights().contains(right)) {
-                            result.add(httpMethod.value());
-                        }
-                    } else {
-                        result.add(httpMethod.value());
-                    }
-                }
-            }
-        }
-        return result;
+        return this.registry.getAllowedMethods(restInterface).resolve(grantedRight);
     }
 }
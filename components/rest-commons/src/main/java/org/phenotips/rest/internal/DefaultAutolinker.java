@@ -19,19 +19,14 @@
 
 import org.phenotips.rest.AllowedActionsResolver;
 import org.phenotips.rest.Autolinker;
-import org.phenotips.rest.ParentResource;
-import org.phenotips.rest.RelatedResources;
-import org.phenotips.rest.Relation;
 import org.phenotips.rest.model.Link;
 
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.InstantiationStrategy;
 import org.xwiki.component.descriptor.ComponentInstantiationStrategy;
-import org.xwiki.rest.XWikiRestComponent;
 import org.xwiki.security.authorization.Right;
 
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
@@ -41,13 +36,12 @@
 import java.util.Set;
 
 import javax.inject.Inject;
-import javax.inject.Provider;
-import javax.ws.rs.Path;
 import javax.ws.rs.core.UriInfo;
 
 /**
  * An improved factory class for automatically creating links between resources, depending on the permissions that the
- * current user has.
+ * current user has. The reflective metadata of the linked resources is precomputed and cached by the
+ * {@link ResourceLinkRegistry}, so building a link only expands the path template of the target resource.
  *
  * @version $Id$
  * @since 1.3M2
@@ -60,13 +54,13 @@ public class DefaultAutolinker implements Autolinker
     private AllowedActionsResolver actionResolver;
 
     @Inject
-    private Provider<List<XWikiRestComponent>> resources;
+    private ResourceLinkRegistry registry;
 
     private UriInfo uriInfo;
 
     private boolean subresource;
 
-    private Class<?> baseResource;
+    private ResourceLinkDescriptor baseResource;
 
     private Right grantedRight;
 
@@ -77,7 +71,7 @@ public class DefaultAutolinker implements Autolinker
     @Override
     public DefaultAutolinker forResource(Class<?> baseResource, UriInfo uriInfo)
     {
-        this.baseResource = findResourceInterface(baseResource);
+        this.baseResource = this.registry.getDescriptor(baseResource);
         this.uriInfo = uriInfo;
         for (Entry<String, List<String>> entry : this.uriInfo.getPathParameters().entrySet()) {
             if (!entry.getValue().isEmpty() && !this.extraParameters.containsKey(entry.getKey())) {
@@ -132,19 +126,22 @@ public Collection<Link> build()
         if (this.subresource) {
             return buildForSecondaryResource();
         }
+        Set<ResourceLinkDescriptor> endpoints = new LinkedHashSet<>();
         if (this.baseResource != null) {
             links.add(this.getActionableLinkToSelf());
+            endpoints.addAll(this.registry.getChildResources(this.baseResource));
+            addEndpoint(endpoints, this.baseResource.getParent());
         }
-        Set<Class<?>> endpoints = new LinkedHashSet<>(findChildResources());
-        endpoints.add(getParentResource());
-        endpoints.addAll(this.linkedActionableInterfaces);
-        endpoints.addAll(getRelatedResources());
-        for (Class<?> endpoint : endpoints) {
-            if (endpoint != null) {
-                Link link = this.getActionableLink(endpoint);
-                if (link != null) {
-                    links.add(link);
-                }
+        addActionableEndpoints(endpoints);
+        if (this.baseResource != null) {
+            for (Class<?> related : this.baseResource.getRelated()) {
+                addEndpoint(endpoints, related);
+            }
+        }
+        for (ResourceLinkDescriptor endpoint : endpoints) {
+            Link link = this.getActionableLink(endpoint);
+            if (link != null) {
+                links.add(link);
             }
         }
         return links;
@@ -153,28 +150,41 @@ public Collection<Link> build()
     private Collection<Link> buildForSecondaryResource()
     {
         List<Link> links = new LinkedList<>();
-        Set<Class<?>> endpoints = new LinkedHashSet<>();
+        Set<ResourceLinkDescriptor> endpoints = new LinkedHashSet<>();
         if (this.baseResource != null) {
             endpoints.add(this.baseResource);
         }
-        endpoints.addAll(this.linkedActionableInterfaces);
-        for (Class<?> endpoint : endpoints) {
-            if (endpoint != null) {
-                Link link = this.getActionableLink(endpoint);
-                if (link != null) {
-                    links.add(link);
-                }
+        addActionableEndpoints(endpoints);
+        for (ResourceLinkDescriptor endpoint : endpoints) {
+            Link link = this.getActionableLink(endpoint);
+            if (link != null) {
+                links.add(link);
             }
         }
         return links;
     }
 
-    private Link getActionableLink(Class<?> endpoint)
+    private void addActionableEndpoints(Set<ResourceLinkDescriptor> endpoints)
+    {
+        for (Class<?> endpoint : this.linkedActionableInterfaces) {
+            addEndpoint(endpoints, endpoint);
+        }
+    }
+
+    private void addEndpoint(Set<ResourceLinkDescriptor> endpoints, Class<?> endpoint)
+    {
+        ResourceLinkDescriptor descriptor = this.registry.getDescriptor(endpoint);
+        if (descriptor != null) {
+            endpoints.add(descriptor);
+        }
+    }
+
+    private Link getActionableLink(ResourceLinkDescriptor endpoint)
     {
         try {
             Link link = new Link()
                 .withHref(this.getPath(endpoint))
-                .withRel(getRel(endpoint))
+                .withRel(endpoint.getRel())
                 .withAllowedMethods(this.getAllowedMethods(endpoint));
 
             return link;
@@ -184,14 +194,15 @@ private Link getActionableLink(Class<?> endpoint)
         }
     }
 
-    private String getPath(Class<?> restInterface)
+    private String getPath(ResourceLinkDescriptor endpoint)
     {
-        return this.uriInfo.getBaseUriBuilder().path(restInterface).buildFromMap(this.extraParameters).toString();
+        return this.uriInfo.getBaseUriBuilder().path(endpoint.getPathTemplate()).buildFromMap(this.extraParameters)
+            .toString();
     }
 
-    private Set<String> getAllowedMethods(Class<?> restInterface)
+    private Set<String> getAllowedMethods(ResourceLinkDescriptor endpoint)
     {
-        return this.actionResolver.resolveActions(restInterface, this.grantedRight);
+        return this.actionResolver.resolveActions(endpoint.getResourceInterface(), this.grantedRight);
     }
 
     private Link getActionableLinkToSelf()
@@ -201,92 +212,4 @@ private Link getActionableLinkToSelf()
             .withAllowedMethods(this.getAllowedMethods(this.baseResource))
             .withHref(this.uriInfo.getRequestUri().toString());
     }
-
-    private Class<?> getParentResource()
-    {
-        if (this.baseResource == null) {
-            return null;
-        }
-        ParentResource parent = this.baseResource.getAnnotation(ParentResource.class);
-        if (parent != null) {
-            return parent.value();
-        }
-        return null;
-    }
-
-    private Set<Class<?>> getRelatedResources()
-    {
-        if (this.baseResource == null) {
-            return Collections.emptySet();
-        }
-        Set<Class<?>> result = new LinkedHashSet<>();
-        RelatedResources related = this.baseResource.getAnnotation(RelatedResources.class);
-        if (related == null) {
-            return result;
-        }
-        for (Class<?> resource : related.value()) {
-            Class<?> clazz = findResourceInterface(resource);
-            if (clazz != null) {
-                result.add(findResourceInterface(resource));
-            }
-        }
-        return result;
-    }
-
-    private Set<Class<?>> findChildResources()
-    {
-        Set<Class<?>> result = new LinkedHashSet<>();
-        for (XWikiRestComponent resource : this.resources.get()) {
-            Class<?> clazz = resource.getClass();
-            while (clazz != null) {
-                for (Class<?> i : clazz.getInterfaces()) {
-                    ParentResource parentAnnotation = i.getAnnotation(ParentResource.class);
-                    if (parentAnnotation != null && parentAnnotation.value().equals(this.baseResource)) {
-                        result.add(findResourceInterface(resource));
-                    }
-                }
-                clazz = clazz.getSuperclass();
-            }
-        }
-        return result;
-    }
-
-    private Class<?> findResourceInterface(Object instance)
-    {
-        return findResourceInterface(instance.getClass());
-    }
-
-    private Class<?> findResourceInterface(Class<?> instance)
-    {
-        if (instance != null && instance.getAnnotation(Path.class) != null) {
-            return instance;
-        }
-        Class<?> clazz = instance;
-        while (clazz != null) {
-            for (Class<?> i : clazz.getInterfaces()) {
-                if (i.getAnnotation(Path.class) != null) {
-                    return i;
-                }
-            }
-            clazz = clazz.getSuperclass();
-        }
-        return null;
-    }
-
-    /**
-     * Get the relation type specified in the {@code @Relation} annotation on the target class or one of its implemented
-     * interfaces.
-     *
-     * @param resource the class of a REST resource, which must have a {@code @Relation} annotation
-     * @return the specified relation type, usually in the form of an URL, or {@code null} if not set
-     */
-    private String getRel(Class<?> resource)
-    {
-        String relation = null;
-        Relation relationAnnotation = resource.getAnnotation(Relation.class);
-        if (relationAnnotation != null) {
-            relation = relationAnnotation.value();
-        }
-        return relation;
-    }
 }
@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.rest.internal;
+
+import org.phenotips.rest.ParentResource;
+import org.phenotips.rest.RelatedResources;
+import org.phenotips.rest.Relation;
+
+import java.util.Collections;
+import java.util.List;
+
+import javax.ws.rs.Path;
+
+/**
+ * Precomputed link metadata for a REST resource interface: the path template, the relation type, the parent and
+ * related resources, and the allowed HTTP methods. Computing this once per resource avoids the reflection otherwise
+ * needed each time a link to the resource is built.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public final class ResourceLinkDescriptor
+{
+    private final Class<?> resourceInterface;
+
+    private final String pathTemplate;
+
+    private final String rel;
+
+    private final Class<?> parent;
+
+    private final List<Class<?>> related;
+
+    private final AllowedMethods allowedMethods;
+
+    /**
+     * Constructor reading the metadata from the annotations of a resource interface.
+     *
+     * @param resourceInterface the REST resource interface, annotated with {@link Path}
+     * @param related the related resources, already resolved to their resource interfaces
+     * @param allowedMethods the HTTP methods supported by the resource
+     */
+    ResourceLinkDescriptor(Class<?> resourceInterface, List<Class<?>> related, AllowedMethods allowedMethods)
+    {
+        this.resourceInterface = resourceInterface;
+        this.pathTemplate = resourceInterface.getAnnotation(Path.class).value();
+        Relation relation = resourceInterface.getAnnotation(Relation.class);
+        this.rel = relation != null ? relation.value() : null;
+        ParentResource parentAnnotation = resourceInterface.getAnnotation(ParentResource.class);
+        this.parent = parentAnnotation != null ? parentAnnotation.value() : null;
+        this.related = Collections.unmodifiableList(related);
+        this.allowedMethods = allowedMethods;
+    }
+
+    /**
+     * The resource interface described.
+     *
+     * @return an interface annotated with {@link Path}
+     */
+    public Class<?> getResourceInterface()
+    {
+        return this.resourceInterface;
+    }
+
+    /**
+     * The path template declared by the resource, relative to the base REST URI.
+     *
+     * @return the value of the {@link Path} annotation, for example {@code /vocabularies/{vocabulary-id}}
+     */
+    public String getPathTemplate()
+    {
+        return this.pathTemplate;
+    }
+
+    /**
+     * The relation type declared in the {@link Relation} annotation.
+     *
+     * @return the relation type, usually in the form of an URL, or {@code null} if not set
+     */
+    public String getRel()
+    {
+        return this.rel;
+    }
+
+    /**
+     * The parent resource declared in the {@link ParentResource} annotation.
+     *
+     * @return the parent resource class, or {@code null} if not set
+     */
+    public Class<?> getParent()
+    {
+        return this.parent;
+    }
+
+    /**
+     * The resources declared in the {@link RelatedResources} annotation.
+     *
+     * @return the related resource interfaces, may be empty
+     */
+    public List<Class<?>> getRelated()
+    {
+        return this.related;
+    }
+
+    /**
+     * The HTTP methods supported by the resource.
+     *
+     * @return the allowed methods, grouped by the right they require
+     */
+    public AllowedMethods getAllowedMethods()
+    {
+        return this.allowedMethods;
+    }
+}
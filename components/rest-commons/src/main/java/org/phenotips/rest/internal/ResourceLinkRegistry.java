@@ -0,0 +1,189 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.rest.internal;
+
+import org.phenotips.rest.ParentResource;
+import org.phenotips.rest.RelatedResources;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rest.XWikiRestComponent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.ws.rs.Path;
+
+/**
+ * Caches the link metadata of all the REST resources, so that building links doesn't have to look up all the REST
+ * components and reflect over their classes and annotations each time. The cache is filled lazily, and is
+ * {@link #invalidate() cleared} whenever REST components are registered or unregistered, for example when an
+ * extension is installed.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component(roles = { ResourceLinkRegistry.class })
+@Singleton
+public class ResourceLinkRegistry
+{
+    /** Placeholder for classes that don't implement a REST resource interface, since maps can't hold nulls. */
+    private static final Object NOT_A_RESOURCE = new Object();
+
+    @Inject
+    private Provider<List<XWikiRestComponent>> resources;
+
+    /** Resource descriptors, or {@link #NOT_A_RESOURCE}, indexed by the resource interface or implementation class. */
+    private final ConcurrentMap<Class<?>, Object> descriptors = new ConcurrentHashMap<>();
+
+    /** Allowed methods for any class passed to {@link #getAllowedMethods(Class)}. */
+    private final ConcurrentMap<Class<?>, AllowedMethods> allowedMethods = new ConcurrentHashMap<>();
+
+    /** The child resources of each resource interface, {@code null} until needed. */
+    private volatile Map<Class<?>, Set<ResourceLinkDescriptor>> children;
+
+    /**
+     * Get the link metadata for a REST resource.
+     *
+     * @param resource a REST resource interface, or a class implementing one
+     * @return the descriptor of the resource interface, or {@code null} if the class isn't a REST resource
+     */
+    public ResourceLinkDescriptor getDescriptor(Class<?> resource)
+    {
+        if (resource == null) {
+            return null;
+        }
+        Object result = this.descriptors.get(resource);
+        if (result == null) {
+            result = computeDescriptor(resource);
+            Object previous = this.descriptors.putIfAbsent(resource, result);
+            if (previous != null) {
+                result = previous;
+            }
+        }
+        return result == NOT_A_RESOURCE ? null : (ResourceLinkDescriptor) result;
+    }
+
+    /**
+     * Get the resources that declare a resource as their {@link ParentResource parent}.
+     *
+     * @param parent the descriptor of the parent resource
+     * @return the descriptors of the child resources, may be empty
+     */
+    public Collection<ResourceLinkDescriptor> getChildResources(ResourceLinkDescriptor parent)
+    {
+        Map<Class<?>, Set<ResourceLinkDescriptor>> index = this.children;
+        if (index == null) {
+            index = computeChildren();
+            this.children = index;
+        }
+        Set<ResourceLinkDescriptor> result = index.get(parent.getResourceInterface());
+        return result != null ? result : Collections.<ResourceLinkDescriptor>emptySet();
+    }
+
+    /**
+     * Get the HTTP methods declared by a REST interface.
+     *
+     * @param restInterface the interface defining the RESTful endpoint
+     * @return the allowed methods, grouped by the right they require
+     */
+    public AllowedMethods getAllowedMethods(Class<?> restInterface)
+    {
+        return this.allowedMethods.computeIfAbsent(restInterface, AllowedMethods::new);
+    }
+
+    /** Clears all the cached metadata, which will be recomputed when needed. */
+    public void invalidate()
+    {
+        this.children = null;
+        this.descriptors.clear();
+        this.allowedMethods.clear();
+    }
+
+    private Object computeDescriptor(Class<?> resource)
+    {
+        Class<?> resourceInterface = findResourceInterface(resource);
+        if (resourceInterface == null) {
+            return NOT_A_RESOURCE;
+        }
+        if (resourceInterface != resource) {
+            ResourceLinkDescriptor result = getDescriptor(resourceInterface);
+            return result != null ? result : NOT_A_RESOURCE;
+        }
+        List<Class<?>> related = new ArrayList<>();
+        RelatedResources relatedAnnotation = resourceInterface.getAnnotation(RelatedResources.class);
+        if (relatedAnnotation != null) {
+            for (Class<?> relatedResource : relatedAnnotation.value()) {
+                Class<?> clazz = findResourceInterface(relatedResource);
+                if (clazz != null && !related.contains(clazz)) {
+                    related.add(clazz);
+                }
+            }
+        }
+        return new ResourceLinkDescriptor(resourceInterface, related, getAllowedMethods(resourceInterface));
+    }
+
+    private Map<Class<?>, Set<ResourceLinkDescriptor>> computeChildren()
+    {
+        Map<Class<?>, Set<ResourceLinkDescriptor>> result = new HashMap<>();
+        for (XWikiRestComponent resource : this.resources.get()) {
+            Class<?> clazz = resource.getClass();
+            ResourceLinkDescriptor descriptor = getDescriptor(clazz);
+            if (descriptor == null) {
+                continue;
+            }
+            while (clazz != null) {
+                for (Class<?> i : clazz.getInterfaces()) {
+                    ParentResource parentAnnotation = i.getAnnotation(ParentResource.class);
+                    if (parentAnnotation != null) {
+                        result.computeIfAbsent(parentAnnotation.value(), k -> new LinkedHashSet<>()).add(descriptor);
+                    }
+                }
+                clazz = clazz.getSuperclass();
+            }
+        }
+        return result;
+    }
+
+    private Class<?> findResourceInterface(Class<?> instance)
+    {
+        if (instance != null && instance.getAnnotation(Path.class) != null) {
+            return instance;
+        }
+        Class<?> clazz = instance;
+        while (clazz != null) {
+            for (Class<?> i : clazz.getInterfaces()) {
+                if (i.getAnnotation(Path.class) != null) {
+                    return i;
+                }
+            }
+            clazz = clazz.getSuperclass();
+        }
+        return null;
+    }
+}
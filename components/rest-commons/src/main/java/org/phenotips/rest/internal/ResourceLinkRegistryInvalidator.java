@@ -0,0 +1,59 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.rest.internal;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.event.Event;
+import org.xwiki.rest.XWikiRestComponent;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+/**
+ * Clears the {@link ResourceLinkRegistry cached link metadata} when REST resources are registered or unregistered.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Named("rest-link-metadata-invalidator")
+@Singleton
+public class ResourceLinkRegistryInvalidator extends AbstractEventListener
+{
+    /** Looked up lazily, since event listeners are instantiated early, when the observation manager starts. */
+    @Inject
+    private Provider<ResourceLinkRegistry> registry;
+
+    /** Basic constructor. */
+    public ResourceLinkRegistryInvalidator()
+    {
+        super("rest-link-metadata-invalidator", new ComponentDescriptorAddedEvent(XWikiRestComponent.class),
+            new ComponentDescriptorRemovedEvent(XWikiRestComponent.class));
+    }
+
+    @Override
+    public void onEvent(Event event, Object source, Object data)
+    {
+        this.registry.get().invalidate();
+    }
+}
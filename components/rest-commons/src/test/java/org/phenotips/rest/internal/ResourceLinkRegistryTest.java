@@ -0,0 +1,172 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.rest.internal;
+
+import org.phenotips.rest.ParentResource;
+import org.phenotips.rest.Relation;
+import org.phenotips.rest.RequiredAccess;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.util.DefaultParameterizedType;
+import org.xwiki.rest.XWikiRestComponent;
+import org.xwiki.security.authorization.Right;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.lang.reflect.ParameterizedType;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import javax.inject.Provider;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.GET;
+import javax.ws.rs.PUT;
+import javax.ws.rs.Path;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link ResourceLinkRegistry} component.
+ *
+ * @version $Id$
+ */
+public class ResourceLinkRegistryTest
+{
+    @Rule
+    public MockitoComponentMockingRule<ResourceLinkRegistry> mocker =
+        new MockitoComponentMockingRule<>(ResourceLinkRegistry.class);
+
+    private Provider<List<XWikiRestComponent>> resources;
+
+    @Path("/things")
+    @Relation("https://phenotips.org/rel/things")
+    public interface ThingsResource
+    {
+        @GET
+        Object list();
+    }
+
+    @Path("/things/{thing-id}")
+    @Relation("https://phenotips.org/rel/thing")
+    @ParentResource(ThingsResource.class)
+    public interface ThingResource
+    {
+        @GET
+        @RequiredAccess("view")
+        Object get();
+
+        @PUT
+        @RequiredAccess("edit")
+        Object update();
+
+        @DELETE
+        @RequiredAccess("delete")
+        Object delete();
+    }
+
+    public static class DefaultThingsResource implements ThingsResource, XWikiRestComponent
+    {
+        @Override
+        public Object list()
+        {
+            return null;
+        }
+    }
+
+    public static class DefaultThingResource implements ThingResource, XWikiRestComponent
+    {
+        @Override
+        public Object get()
+        {
+            return null;
+        }
+
+        @Override
+        public Object update()
+        {
+            return null;
+        }
+
+        @Override
+        public Object delete()
+        {
+            return null;
+        }
+    }
+
+    @Before
+    public void setup() throws ComponentLookupException
+    {
+        ParameterizedType listType = new DefaultParameterizedType(null, List.class, XWikiRestComponent.class);
+        ParameterizedType providerType = new DefaultParameterizedType(null, Provider.class, listType);
+        this.resources = this.mocker.getInstance(providerType);
+        when(this.resources.get()).thenReturn(
+            Arrays.<XWikiRestComponent>asList(new DefaultThingsResource(), new DefaultThingResource()));
+    }
+
+    @Test
+    public void descriptorsAreReadFromTheResourceInterface() throws ComponentLookupException
+    {
+        ResourceLinkDescriptor descriptor =
+            this.mocker.getComponentUnderTest().getDescriptor(DefaultThingResource.class);
+        Assert.assertSame(ThingResource.class, descriptor.getResourceInterface());
+        Assert.assertEquals("/things/{thing-id}", descriptor.getPathTemplate());
+        Assert.assertEquals("https://phenotips.org/rel/thing", descriptor.getRel());
+        Assert.assertSame(ThingsResource.class, descriptor.getParent());
+        Assert.assertTrue(descriptor.getRelated().isEmpty());
+        Assert.assertSame(descriptor, this.mocker.getComponentUnderTest().getDescriptor(ThingResource.class));
+        Assert.assertNull(this.mocker.getComponentUnderTest().getDescriptor(String.class));
+        Assert.assertNull(this.mocker.getComponentUnderTest().getDescriptor(null));
+    }
+
+    @Test
+    public void childResourcesAreIndexedOnce() throws ComponentLookupException
+    {
+        ResourceLinkRegistry registry = this.mocker.getComponentUnderTest();
+        ResourceLinkDescriptor parent = registry.getDescriptor(ThingsResource.class);
+        Assert.assertEquals(Collections.singleton(registry.getDescriptor(ThingResource.class)),
+            new HashSet<>(registry.getChildResources(parent)));
+        Assert.assertTrue(registry.getChildResources(registry.getDescriptor(ThingResource.class)).isEmpty());
+        registry.getChildResources(parent);
+        verify(this.resources, times(1)).get();
+
+        registry.invalidate();
+        registry.getChildResources(parent);
+        verify(this.resources, times(2)).get();
+    }
+
+    @Test
+    public void allowedMethodsDependOnTheGrantedRight() throws ComponentLookupException
+    {
+        AllowedMethods methods = this.mocker.getComponentUnderTest().getAllowedMethods(ThingResource.class);
+        Assert.assertEquals(new HashSet<>(Arrays.asList("GET", "PUT", "DELETE")), methods.resolve(null));
+        Assert.assertEquals(Collections.singleton("GET"), methods.resolve(Right.VIEW));
+        Assert.assertTrue(methods.resolve(Right.EDIT).contains("PUT"));
+        Assert.assertSame(methods.resolve(Right.VIEW), methods.resolve(Right.VIEW));
+        Assert.assertEquals(Collections.singleton("GET"),
+            this.mocker.getComponentUnderTest().getAllowedMethods(ThingsResource.class).resolve(Right.VIEW));
+    }
+}
@@ -23,6 +23,9 @@
 import org.xwiki.stability.Unstable;
 import org.xwiki.users.User;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Service which checks if a specific operation on an entity should be granted or not. The default implementation
  * forwards the decision to implementations of the {@link AuthorizationModule} role, in descending order of their
@@ -44,4 +47,16 @@
      * @return {@code true} if access is granted, {@code false} if access is denied
      */
     boolean hasAccess(User user, Right access, EntityReference entity);
+
+    /**
+     * Authorization usage statistics, to help identify which parts dominate the cost of authorization. The available
+     * values depend on the implementation.
+     *
+     * @return a map of statistics, suitable for serializing as JSON; the default implementation returns an empty map
+     * @since 1.4
+     */
+    default Map<String, Object> getStatistics()
+    {
+        return Collections.emptyMap();
+    }
 }
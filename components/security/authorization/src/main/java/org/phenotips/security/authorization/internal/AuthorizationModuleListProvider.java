@@ -20,13 +20,26 @@
 import org.phenotips.security.authorization.AuthorizationModule;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
+import org.xwiki.component.event.ComponentDescriptorRemovedEvent;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.ModelContext;
+import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -34,32 +47,93 @@
 import javax.inject.Singleton;
 
 /**
- * Provides an ordered list of authorization modules.
+ * Provides an ordered list of authorization modules. The modules are looked up in the current wiki's component
+ * manager, so the sorted list is computed once for each wiki, and recomputed only when an authorization module is
+ * registered or unregistered.
  *
  * @version $Id$
  * @since 1.2RC1
  */
 @Component
 @Singleton
-public class AuthorizationModuleListProvider implements Provider<List<AuthorizationModule>>
+public class AuthorizationModuleListProvider implements Provider<List<AuthorizationModule>>, Initializable
 {
     @Inject
     @Named("wiki")
     private ComponentManager componentManager;
 
+    @Inject
+    private ObservationManager observationManager;
+
+    /** Used for finding the current wiki, which determines the modules seen by the wiki component manager. */
+    @Inject
+    private ModelContext modelContext;
+
+    /** Incremented each time the available modules change. */
+    private final AtomicLong generation = new AtomicLong();
+
+    /** The last sorted modules for each wiki, valid only if they were computed for the current {@link #generation}. */
+    private final Map<String, SortedModules> modules = new ConcurrentHashMap<>();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.observationManager.addListener(new AbstractEventListener("phenotips-authorization-modules-updater",
+            new ComponentDescriptorAddedEvent(AuthorizationModule.class),
+            new ComponentDescriptorRemovedEvent(AuthorizationModule.class))
+        {
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                AuthorizationModuleListProvider.this.generation.incrementAndGet();
+                AuthorizationModuleListProvider.this.modules.clear();
+            }
+        });
+    }
+
     @Override
     public List<AuthorizationModule> get()
     {
+        long currentGeneration = this.generation.get();
+        String wiki = getCurrentWiki();
+        SortedModules cached = this.modules.get(wiki);
+        if (cached != null && cached.generation == currentGeneration) {
+            return cached.list;
+        }
         try {
-            List<AuthorizationModule> services = new LinkedList<>();
-            services.addAll(this.componentManager.<AuthorizationModule>getInstanceList(AuthorizationModule.class));
+            List<AuthorizationModule> services = new ArrayList<>(
+                this.componentManager.<AuthorizationModule>getInstanceList(AuthorizationModule.class));
             Collections.sort(services, AuthorizationModuleComparator.INSTANCE);
-            return services;
+            List<AuthorizationModule> result = Collections.unmodifiableList(services);
+            // If the modules changed in the meantime, the generation won't match and the list will be looked up again
+            this.modules.put(wiki, new SortedModules(currentGeneration, result));
+            return result;
         } catch (ComponentLookupException ex) {
             throw new RuntimeException("Failed to look up authorization modules", ex);
         }
     }
 
+    private String getCurrentWiki()
+    {
+        EntityReference current = this.modelContext.getCurrentEntityReference();
+        EntityReference wiki = current != null ? current.extractReference(EntityType.WIKI) : null;
+        return wiki != null ? wiki.getName() : "";
+    }
+
+    /** The sorted list of modules, along with the generation for which it was computed. */
+    private static final class SortedModules
+    {
+        private final long generation;
+
+        private final List<AuthorizationModule> list;
+
+        SortedModules(long generation, List<AuthorizationModule> list)
+        {
+            this.generation = generation;
+            this.list = list;
+        }
+    }
+
     /**
      * Sorts the available authorization modules in descending order of their priority, then alphabetically if two or
      * more modules have the same priority.
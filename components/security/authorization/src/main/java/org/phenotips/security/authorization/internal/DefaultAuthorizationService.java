@@ -20,12 +20,33 @@
 import org.phenotips.security.authorization.AuthorizationModule;
 import org.phenotips.security.authorization.AuthorizationService;
 
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.bridge.event.DocumentCreatedEvent;
+import org.xwiki.bridge.event.DocumentDeletedEvent;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Initializable;
+import org.xwiki.component.phase.InitializationException;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.model.EntityType;
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.EntityReference;
+import org.xwiki.observation.AbstractEventListener;
+import org.xwiki.observation.ObservationManager;
+import org.xwiki.observation.event.Event;
 import org.xwiki.security.authorization.Right;
 import org.xwiki.users.User;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
@@ -36,14 +57,23 @@
 /**
  * The default authorization service implementation, which queries all the individual {@link AuthorizationModule}s, in
  * descending order of priority, until one responds with a non-null decision.
+ * <p>
+ * Decisions are remembered for the duration of the current request, keyed by the user, the requested right and the
+ * target entity, so that listing or exporting many records doesn't query all the modules again for every repeated
+ * check. Since the rights, owner or collaborators of a record are stored in documents, the remembered decisions are
+ * forgotten whenever a document is created, changed or deleted during the request.
+ * </p>
  *
  * @version $Id$
  * @since 1.0M13
  */
 @Component
 @Singleton
-public class DefaultAuthorizationService implements AuthorizationService
+public class DefaultAuthorizationService implements AuthorizationService, Initializable
 {
+    /** The key under which the decisions taken during the current request are stored in the execution context. */
+    private static final String DECISIONS_KEY = "phenotips.authorization.decisions";
+
     /** Logging helper object. */
     @Inject
     private Logger logger;
@@ -52,22 +82,171 @@ public class DefaultAuthorizationService implements AuthorizationService
     @Inject
     private Provider<List<AuthorizationModule>> modules;
 
+    /** Provides access to the current request, where decisions are cached. */
+    @Inject
+    private Execution execution;
+
+    /** Used for checking if the target document exists. */
+    @Inject
+    private DocumentAccessBridge bridge;
+
+    /** Used for listening to document changes, which invalidate the cached decisions. */
+    @Inject
+    private ObservationManager observationManager;
+
+    /** Usage statistics for each module, keyed by the module class name. */
+    private final ConcurrentMap<String, ModuleStatistics> moduleStatistics = new ConcurrentHashMap<>();
+
+    private final LongAdder cacheHits = new LongAdder();
+
+    private final LongAdder cacheMisses = new LongAdder();
+
+    @Override
+    public void initialize() throws InitializationException
+    {
+        this.observationManager.addListener(new AbstractEventListener("phenotips-authorization-decisions-invalidator",
+            new DocumentCreatedEvent(), new DocumentUpdatedEvent(), new DocumentDeletedEvent())
+        {
+            @Override
+            public void onEvent(Event event, Object source, Object data)
+            {
+                ExecutionContext context = DefaultAuthorizationService.this.execution.getContext();
+                if (context != null) {
+                    context.removeProperty(DECISIONS_KEY);
+                }
+            }
+        });
+    }
+
     @Override
     public boolean hasAccess(User user, Right access, EntityReference entity)
+    {
+        Map<Object, Boolean> decisions = getCachedDecisions();
+        Object key = (decisions == null || entity == null) ? null : getDecisionKey(user, access, entity);
+        if (key != null) {
+            Boolean cached = decisions.get(key);
+            if (cached != null) {
+                this.cacheHits.increment();
+                return cached;
+            }
+            this.cacheMisses.increment();
+        }
+
+        boolean result = computeAccess(user, access, entity);
+        if (key != null && isCacheable(entity)) {
+            decisions.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The statistics are: the number of {@code cacheHits} and {@code cacheMisses}, and for each module, in the
+     * {@code modules} map, how many times it was {@code invoked}, how many of those invocations returned a
+     * {@code decision}, and the {@code totalMs} spent in it.
+     * </p>
+     */
+    @Override
+    public Map<String, Object> getStatistics()
+    {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("cacheHits", this.cacheHits.sum());
+        result.put("cacheMisses", this.cacheMisses.sum());
+        Map<String, Object> modulesResult = new LinkedHashMap<>();
+        for (Map.Entry<String, ModuleStatistics> module : this.moduleStatistics.entrySet()) {
+            Map<String, Object> moduleResult = new LinkedHashMap<>();
+            moduleResult.put("invoked", module.getValue().invoked.sum());
+            moduleResult.put("decisions", module.getValue().decisions.sum());
+            moduleResult.put("totalMs", TimeUnit.NANOSECONDS.toMillis(module.getValue().totalNanos.sum()));
+            modulesResult.put(module.getKey(), moduleResult);
+        }
+        result.put("modules", modulesResult);
+        return result;
+    }
+
+    private boolean computeAccess(User user, Right access, EntityReference entity)
     {
         for (AuthorizationModule service : this.modules.get()) {
+            ModuleStatistics statistics = this.moduleStatistics
+                .computeIfAbsent(service.getClass().getName(), k -> new ModuleStatistics());
+            long start = System.nanoTime();
             try {
                 Boolean decision = service.hasAccess(user, access, entity);
                 if (decision != null) {
+                    statistics.decisions.increment();
                     return decision;
                 }
             } catch (Exception ex) {
                 // Don't fail because of bad authorization modules
                 this.logger.warn("Failed to invoke authorization service [{}]: {}",
                     service.getClass().getCanonicalName(), ex.getMessage());
+            } finally {
+                statistics.invoked.increment();
+                statistics.totalNanos.add(System.nanoTime() - start);
             }
         }
 
         return false;
     }
+
+    /**
+     * Returns the decisions already taken during the current request.
+     *
+     * @return a modifiable map, or {@code null} if there's no current request, in which case decisions are not cached
+     */
+    @SuppressWarnings("unchecked")
+    private Map<Object, Boolean> getCachedDecisions()
+    {
+        ExecutionContext context = this.execution.getContext();
+        if (context == null) {
+            return null;
+        }
+        Map<Object, Boolean> result = (Map<Object, Boolean>) context.getProperty(DECISIONS_KEY);
+        if (result == null) {
+            result = new HashMap<>();
+            context.setProperty(DECISIONS_KEY, result);
+        }
+        return result;
+    }
+
+    /**
+     * Builds the key identifying an access check.
+     *
+     * @return a key, not {@code null}
+     */
+    private Object getDecisionKey(User user, Right access, EntityReference entity)
+    {
+        return Arrays.asList(user == null ? null : user.getProfileDocument(), access, entity);
+    }
+
+    /**
+     * Checks if a decision can be remembered. Decisions on documents that don't exist yet are not remembered, since
+     * creating the document usually grants rights to its creator. This is only called when a decision was computed, not
+     * when a remembered decision is reused.
+     *
+     * @return {@code false} if the target document doesn't exist, or if this cannot be checked, {@code true} otherwise
+     */
+    private boolean isCacheable(EntityReference entity)
+    {
+        EntityReference documentPart = entity.extractReference(EntityType.DOCUMENT);
+        if (documentPart == null) {
+            return true;
+        }
+        try {
+            return this.bridge.exists(new DocumentReference(documentPart));
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    /** Usage counters for one authorization module. */
+    private static final class ModuleStatistics
+    {
+        private final LongAdder invoked = new LongAdder();
+
+        private final LongAdder decisions = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+    }
 }
@@ -0,0 +1,61 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.security.authorization.script;
+
+import org.phenotips.security.authorization.AuthorizationService;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.stability.Unstable;
+
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Service for monitoring the cost of authorization checks.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable
+@Component
+@Named("authorization")
+@Singleton
+public class AuthorizationScriptService implements ScriptService
+{
+    /** The authorization service being monitored. */
+    @Inject
+    private AuthorizationService authorizationService;
+
+    /**
+     * Get authorization usage statistics, useful for identifying which authorization module dominates the cost of
+     * rights checking. The default authorization service reports the number of {@code cacheHits} and
+     * {@code cacheMisses} of the decisions remembered during each request, and for each module, in the {@code modules}
+     * map, how many times it was {@code invoked}, how many of those invocations returned a {@code decision}, and the
+     * {@code totalMs} spent in it.
+     *
+     * @return a map of statistic names and their current values
+     */
+    public Map<String, Object> getStatistics()
+    {
+        return this.authorizationService.getStatistics();
+    }
+}
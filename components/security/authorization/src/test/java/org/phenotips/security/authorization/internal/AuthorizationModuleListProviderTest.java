@@ -19,9 +19,14 @@
 
 import org.phenotips.security.authorization.AuthorizationModule;
 
+import org.xwiki.component.event.ComponentDescriptorAddedEvent;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.model.ModelContext;
 import org.xwiki.model.reference.EntityReference;
+import org.xwiki.model.reference.WikiReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.security.authorization.Right;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 import org.xwiki.users.User;
@@ -36,12 +41,15 @@
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -115,6 +123,46 @@ public void modulesWithSamePriorityGetSortedByName() throws Exception
         Assert.assertThat(actualList, is(expectedList));
     }
 
+    @Test
+    public void sortedModulesAreReusedUntilModulesChange() throws Exception
+    {
+        this.moduleList.add(this.lowPriorityModule);
+        Provider<List<AuthorizationModule>> provider = this.mocker.getComponentUnderTest();
+        Assert.assertThat(provider.get(), is(Arrays.asList(this.lowPriorityModule)));
+
+        this.moduleList.add(this.highPriorityModule);
+        Assert.assertThat(provider.get(), is(Arrays.asList(this.lowPriorityModule)));
+        verify(this.componentManager, times(1)).getInstanceList(AuthorizationModule.class);
+
+        ArgumentCaptor<EventListener> listener = ArgumentCaptor.forClass(EventListener.class);
+        verify(this.mocker.<ObservationManager>getInstance(ObservationManager.class)).addListener(listener.capture());
+        Assert.assertTrue(listener.getValue().getEvents().get(0)
+            .matches(new ComponentDescriptorAddedEvent(AuthorizationModule.class)));
+        listener.getValue().onEvent(new ComponentDescriptorAddedEvent(AuthorizationModule.class), null, null);
+
+        Assert.assertThat(provider.get(), is(Arrays.asList(this.highPriorityModule, this.lowPriorityModule)));
+        verify(this.componentManager, times(2)).getInstanceList(AuthorizationModule.class);
+    }
+
+    @Test
+    public void sortedModulesAreKeptSeparatelyForEachWiki() throws Exception
+    {
+        ModelContext modelContext = this.mocker.getInstance(ModelContext.class);
+        when(modelContext.getCurrentEntityReference()).thenReturn(new WikiReference("xwiki"));
+        this.moduleList.add(this.lowPriorityModule);
+        Provider<List<AuthorizationModule>> provider = this.mocker.getComponentUnderTest();
+        Assert.assertThat(provider.get(), is(Arrays.asList(this.lowPriorityModule)));
+
+        when(modelContext.getCurrentEntityReference()).thenReturn(new WikiReference("other"));
+        doReturn(Arrays.asList(this.highPriorityModule, this.lowPriorityModule)).when(this.componentManager)
+            .getInstanceList(AuthorizationModule.class);
+        Assert.assertThat(provider.get(), is(Arrays.asList(this.highPriorityModule, this.lowPriorityModule)));
+
+        when(modelContext.getCurrentEntityReference()).thenReturn(new WikiReference("xwiki"));
+        Assert.assertThat(provider.get(), is(Arrays.asList(this.lowPriorityModule)));
+        verify(this.componentManager, times(2)).getInstanceList(AuthorizationModule.class);
+    }
+
     @Test(expected = RuntimeException.class)
     public void componentLookupExceptionIsCaughtAndRuntimeExceptionIsThrown() throws ComponentLookupException
     {
@@ -20,9 +20,15 @@
 import org.phenotips.security.authorization.AuthorizationModule;
 import org.phenotips.security.authorization.AuthorizationService;
 
+import org.xwiki.bridge.DocumentAccessBridge;
+import org.xwiki.bridge.event.DocumentUpdatedEvent;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
 import org.xwiki.model.reference.DocumentReference;
+import org.xwiki.observation.EventListener;
+import org.xwiki.observation.ObservationManager;
 import org.xwiki.security.authorization.Right;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 import org.xwiki.users.User;
@@ -31,6 +37,7 @@
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Provider;
 
@@ -38,6 +45,7 @@
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.Mockito;
@@ -180,6 +188,108 @@ public void exceptionsInModulesAreIgnored() throws Exception
         Assert.assertTrue(this.mocker.getComponentUnderTest().hasAccess(this.user, this.access, this.document));
     }
 
+    @Test
+    public void decisionsAreCachedInTheCurrentRequestUntilADocumentChanges() throws Exception
+    {
+        DocumentReference target = new DocumentReference("xwiki", "data", "P0000001");
+        Execution execution = this.mocker.getInstance(Execution.class);
+        when(execution.getContext()).thenReturn(new ExecutionContext());
+        DocumentAccessBridge bridge = this.mocker.getInstance(DocumentAccessBridge.class);
+        when(bridge.exists(target)).thenReturn(true);
+        this.moduleList = Arrays.asList(this.moduleOne, this.moduleTwo);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.moduleOne.hasAccess(this.user, this.access, target)).thenReturn(null);
+        when(this.moduleTwo.hasAccess(this.user, this.access, target)).thenReturn(true);
+
+        AuthorizationService service = this.mocker.getComponentUnderTest();
+        Assert.assertTrue(service.hasAccess(this.user, this.access, target));
+        Assert.assertTrue(service.hasAccess(this.user, this.access, target));
+        Mockito.verify(this.moduleTwo, Mockito.times(1)).hasAccess(this.user, this.access, target);
+        // The target document is only checked when the decision is computed, not when it is reused
+        Mockito.verify(bridge, Mockito.times(1)).exists(target);
+        Mockito.verify(bridge, never()).getDocumentInstance(target);
+
+        ArgumentCaptor<EventListener> listener = ArgumentCaptor.forClass(EventListener.class);
+        Mockito.verify(this.mocker.<ObservationManager>getInstance(ObservationManager.class))
+            .addListener(listener.capture());
+        listener.getValue().onEvent(new DocumentUpdatedEvent(target), null, null);
+        when(this.moduleTwo.hasAccess(this.user, this.access, target)).thenReturn(false);
+        Assert.assertFalse(service.hasAccess(this.user, this.access, target));
+        Mockito.verify(this.moduleTwo, Mockito.times(2)).hasAccess(this.user, this.access, target);
+
+        Map<String, Object> statistics = service.getStatistics();
+        Assert.assertEquals(1L, statistics.get("cacheHits"));
+        Assert.assertEquals(2L, statistics.get("cacheMisses"));
+    }
+
+    @Test
+    public void decisionsAreKeyedOnTheUserRightAndEntity() throws Exception
+    {
+        DocumentReference target = new DocumentReference("xwiki", "data", "P0000001");
+        DocumentReference other = new DocumentReference("xwiki", "data", "P0000002");
+        Execution execution = this.mocker.getInstance(Execution.class);
+        when(execution.getContext()).thenReturn(new ExecutionContext());
+        DocumentAccessBridge bridge = this.mocker.getInstance(DocumentAccessBridge.class);
+        when(bridge.exists(target)).thenReturn(true);
+        when(bridge.exists(other)).thenReturn(true);
+        this.moduleList = Collections.singletonList(this.moduleOne);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.moduleOne.hasAccess(this.user, Right.VIEW, target)).thenReturn(true);
+        when(this.moduleOne.hasAccess(this.user, Right.EDIT, target)).thenReturn(false);
+        when(this.moduleOne.hasAccess(this.user, Right.VIEW, other)).thenReturn(false);
+
+        AuthorizationService service = this.mocker.getComponentUnderTest();
+        for (int i = 0; i < 2; ++i) {
+            Assert.assertTrue(service.hasAccess(this.user, Right.VIEW, target));
+            Assert.assertFalse(service.hasAccess(this.user, Right.EDIT, target));
+            Assert.assertFalse(service.hasAccess(this.user, Right.VIEW, other));
+        }
+        Mockito.verify(this.moduleOne, Mockito.times(1)).hasAccess(this.user, Right.VIEW, target);
+        Mockito.verify(this.moduleOne, Mockito.times(1)).hasAccess(this.user, Right.EDIT, target);
+        Mockito.verify(this.moduleOne, Mockito.times(1)).hasAccess(this.user, Right.VIEW, other);
+    }
+
+    @Test
+    public void decisionsAreNotCachedForMissingDocuments() throws Exception
+    {
+        DocumentReference target = new DocumentReference("xwiki", "data", "P0000001");
+        Execution execution = this.mocker.getInstance(Execution.class);
+        when(execution.getContext()).thenReturn(new ExecutionContext());
+        this.moduleList = Collections.singletonList(this.moduleOne);
+        doReturn(this.moduleList).when(this.modules).get();
+
+        AuthorizationService service = this.mocker.getComponentUnderTest();
+        Assert.assertFalse(service.hasAccess(this.user, this.access, target));
+        Assert.assertFalse(service.hasAccess(this.user, this.access, target));
+        Mockito.verify(this.moduleOne, Mockito.times(2)).hasAccess(this.user, this.access, target);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void moduleUsageIsCounted() throws Exception
+    {
+        this.moduleList = Arrays.asList(this.moduleOne, this.moduleTwo);
+        doReturn(this.moduleList).when(this.modules).get();
+        when(this.moduleTwo.hasAccess(this.user, this.access, this.document)).thenReturn(true);
+
+        AuthorizationService service = this.mocker.getComponentUnderTest();
+        service.hasAccess(this.user, this.access, this.document);
+        service.hasAccess(this.user, this.access, this.document);
+
+        Map<String, Object> modulesStatistics =
+            (Map<String, Object>) service.getStatistics().get("modules");
+        // Mocks may share the same class, so only the totals are checked
+        long invoked = 0;
+        long decisions = 0;
+        for (Object moduleStatistics : modulesStatistics.values()) {
+            invoked += (Long) ((Map<String, Object>) moduleStatistics).get("invoked");
+            decisions += (Long) ((Map<String, Object>) moduleStatistics).get("decisions");
+            Assert.assertNotNull(((Map<String, Object>) moduleStatistics).get("totalMs"));
+        }
+        Assert.assertEquals(4L, invoked);
+        Assert.assertEquals(2L, decisions);
+    }
+
     private void resetMocks()
     {
         Mockito.reset(this.moduleOne, this.moduleTwo, this.moduleThree);
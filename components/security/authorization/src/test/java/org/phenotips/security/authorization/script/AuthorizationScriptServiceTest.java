@@ -0,0 +1,53 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.security.authorization.script;
+
+import org.phenotips.security.authorization.AuthorizationService;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link AuthorizationScriptService} component.
+ *
+ * @version $Id$
+ */
+public class AuthorizationScriptServiceTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<AuthorizationScriptService> mocker =
+        new MockitoComponentMockingRule<>(AuthorizationScriptService.class);
+
+    @Test
+    public void getStatisticsReturnsTheAuthorizationServiceStatistics() throws ComponentLookupException
+    {
+        Map<String, Object> statistics = Collections.<String, Object>singletonMap("cacheHits", 5L);
+        AuthorizationService authorizationService = this.mocker.getInstance(AuthorizationService.class);
+        when(authorizationService.getStatistics()).thenReturn(statistics);
+        Assert.assertSame(statistics, this.mocker.getComponentUnderTest().getStatistics());
+    }
+}
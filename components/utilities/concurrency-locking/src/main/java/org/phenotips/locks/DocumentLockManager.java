@@ -21,6 +21,9 @@
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.stability.Unstable;
 
+import java.util.Collections;
+import java.util.Map;
+
 import javax.annotation.Nonnull;
 
 /**
@@ -48,4 +51,39 @@
      * @param document the document to unlock
      */
     void unlock(@Nonnull DocumentReference document);
+
+    /**
+     * Lock a document for reading. Several shared locks can be held at the same time on a document, but not together
+     * with an {@link #lock(DocumentReference) exclusive lock}. This method will block until the lock is successfully
+     * obtained. Implementations not supporting shared locks take an exclusive lock instead.
+     *
+     * @param document the document to lock
+     * @since 1.4
+     */
+    default void lockShared(@Nonnull DocumentReference document)
+    {
+        lock(document);
+    }
+
+    /**
+     * Unlock a document locked with {@link #lockShared(DocumentReference)}.
+     *
+     * @param document the document to unlock
+     * @since 1.4
+     */
+    default void unlockShared(@Nonnull DocumentReference document)
+    {
+        unlock(document);
+    }
+
+    /**
+     * Lock usage statistics, to help identify contention. The available values depend on the implementation.
+     *
+     * @return a map of statistics, suitable for serializing as JSON; the default implementation returns an empty map
+     * @since 1.4
+     */
+    default Map<String, Object> getStatistics()
+    {
+        return Collections.emptyMap();
+    }
 }
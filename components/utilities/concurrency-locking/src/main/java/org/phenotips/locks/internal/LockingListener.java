@@ -23,6 +23,7 @@
 import org.xwiki.bridge.event.ActionExecutingEvent;
 import org.xwiki.bridge.event.ActionExecutionEvent;
 import org.xwiki.component.annotation.Component;
+import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.observation.AbstractEventListener;
 import org.xwiki.observation.event.Event;
 
@@ -37,17 +38,19 @@
 import com.xpn.xwiki.doc.XWikiDocument;
 
 /**
- * An event listener that only allows one action request to proceed at a time for the same document. When an action
- * starts executing, a lock is aquired for the affected document, and when the action terminates, the lock is released.
- * If a lock is already held by an action execution, the subsequent actions will block while waiting for the lock to be
- * released. The purpose of this mechanism is to prevent concurrent document updates, which may cause inconsistent data,
- * hibernate stale state exceptions, unique key conflicts, or other storage errors. This isn't the best way to prevent
- * such errors, but properly fixing the concurrency problems of XWiki requires much deeper and broader fixes throughout
- * the old core and any custom code updating documents.
+ * An event listener that only allows one modifying action request to proceed at a time for the same document. When an
+ * action starts executing, a lock is aquired for the affected document, and when the action terminates, the lock is
+ * released. Actions that only read the document take a shared lock, and may run together, while actions that modify the
+ * document take an exclusive lock. If a conflicting lock is already held by an action execution, the subsequent actions
+ * will block while waiting for the lock to be released. The purpose of this mechanism is to prevent concurrent document
+ * updates, which may cause inconsistent data, hibernate stale state exceptions, unique key conflicts, or other storage
+ * errors. This isn't the best way to prevent such errors, but properly fixing the concurrency problems of XWiki
+ * requires much deeper and broader fixes throughout the old core and any custom code updating documents.
  * <p>
- * Implementation note: the {@code get} and {@code view} methods should theoretically not be locked, since they don't
- * normally modify data, but at the moment there are still legacy scripts that are accessed in view mode but do modify
- * their or other documents' data, such as {@code OpenPatientRecord}, so these actions must also be locked.
+ * Implementation note: the {@code get} and {@code view} methods should theoretically not be locked at all, since they
+ * don't normally modify data, but at the moment there are still legacy scripts that are accessed in view mode but do
+ * modify their or other documents' data, such as {@code OpenPatientRecord}, so these actions still take a shared lock,
+ * which makes them wait for running modifications of the same document.
  * </p>
  *
  * @version $Id$
@@ -62,6 +65,10 @@ public class LockingListener extends AbstractEventListener
     private static final List<String> SUPPORTED_EVENTS = Collections.unmodifiableList(
         Arrays.asList("get", "view", "save", "saveandcontinue", "preview", "objectadd", "objectremove", "rollback"));
 
+    /** The actions which don't modify the document, and only need a shared lock. */
+    private static final List<String> READ_EVENTS =
+        Collections.unmodifiableList(Arrays.asList("get", "view", "preview"));
+
     @Inject
     private DocumentLockManager lockManager;
 
@@ -81,10 +88,20 @@ public void onEvent(Event event, Object source, Object data)
         if (!SUPPORTED_EVENTS.contains(name)) {
             return;
         }
+        DocumentReference document = ((XWikiDocument) source).getDocumentReference();
+        boolean shared = READ_EVENTS.contains(name);
         if (event instanceof ActionExecutingEvent) {
-            this.lockManager.lock(((XWikiDocument) source).getDocumentReference());
+            if (shared) {
+                this.lockManager.lockShared(document);
+            } else {
+                this.lockManager.lock(document);
+            }
         } else if (event instanceof ActionExecutedEvent) {
-            this.lockManager.unlock(((XWikiDocument) source).getDocumentReference());
+            if (shared) {
+                this.lockManager.unlockShared(document);
+            } else {
+                this.lockManager.unlock(document);
+            }
         }
     }
 }
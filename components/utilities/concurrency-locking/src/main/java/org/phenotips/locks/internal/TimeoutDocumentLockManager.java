@@ -20,22 +20,37 @@
 import org.phenotips.locks.DocumentLockManager;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.model.reference.DocumentReference;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.StampedLock;
 
 import javax.annotation.Nonnull;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.slf4j.Logger;
 
 /**
  * Implementation for the {@link DocumentLockManager} role which will accept a lock request even if the lock couldn't be
- * obtained when a timeout interval (10 seconds) has ellapsed.
+ * obtained when a timeout interval has ellapsed. The timeout is configured, in seconds, by the
+ * {@code phenotips.locks.timeout} property of {@code xwiki.properties}, by default 10 seconds.
+ * <p>
+ * Locks are only kept while they are held or waited for, so that the lock table doesn't grow with each document ever
+ * accessed. A lock must be released by the thread that requested it; releasing a lock that wasn't obtained because of a
+ * timeout has no effect.
+ * </p>
  *
  * @version $Id$
  * @since 1.3.7
@@ -45,38 +60,179 @@
 @Singleton
 public class TimeoutDocumentLockManager implements DocumentLockManager
 {
+    private static final long DEFAULT_TIMEOUT_SECONDS = 10;
+
     @Inject
     private Logger logger;
 
-    private final ConcurrentHashMap<DocumentReference, Lock> locks = new ConcurrentHashMap<>();
+    /** Provides the configured timeout. */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    private final ConcurrentHashMap<DocumentReference, Entry> locks = new ConcurrentHashMap<>();
+
+    /** The locks requested by the current thread and not yet released, most recent last. */
+    private final ThreadLocal<Map<DocumentReference, Deque<Hold>>> holds = ThreadLocal.withInitial(HashMap::new);
+
+    private final AtomicLong acquired = new AtomicLong();
+
+    private final AtomicLong contended = new AtomicLong();
+
+    private final AtomicLong timeouts = new AtomicLong();
+
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+
+    /** The longest wait so far, and the document it was for. */
+    private final AtomicReference<Wait> longestWait = new AtomicReference<>(new Wait(null, 0));
 
     @Override
     public void lock(@Nonnull final DocumentReference document)
     {
+        acquire(document, true);
+    }
+
+    @Override
+    public void unlock(@Nonnull final DocumentReference document)
+    {
+        release(document);
+    }
+
+    @Override
+    public void lockShared(@Nonnull final DocumentReference document)
+    {
+        acquire(document, false);
+    }
+
+    @Override
+    public void unlockShared(@Nonnull final DocumentReference document)
+    {
+        release(document);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The statistics are: how many locks were {@code acquired}, how many of them were {@code contended} (had to wait),
+     * how many {@code timeouts} occurred, the {@code totalWaitMs} and {@code longestWaitMs} spent waiting, the
+     * {@code longestWaitDocument}, and how many documents currently have {@code activeLocks}.
+     * </p>
+     */
+    @Override
+    public Map<String, Object> getStatistics()
+    {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("acquired", this.acquired.get());
+        result.put("contended", this.contended.get());
+        result.put("timeouts", this.timeouts.get());
+        result.put("totalWaitMs", TimeUnit.NANOSECONDS.toMillis(this.totalWaitNanos.get()));
+        Wait longest = this.longestWait.get();
+        result.put("longestWaitMs", TimeUnit.NANOSECONDS.toMillis(longest.nanos));
+        result.put("longestWaitDocument", longest.document == null ? null : longest.document.toString());
+        result.put("activeLocks", this.locks.size());
+        return result;
+    }
+
+    private void acquire(DocumentReference document, boolean exclusive)
+    {
+        // Count the new user before trying to lock, so that the entry isn't evicted in the meantime
+        Entry entry = this.locks.compute(document, (k, e) -> {
+            Entry result = (e == null) ? new Entry() : e;
+            ++result.users;
+            return result;
+        });
+        Lock lock = exclusive ? entry.lock.asWriteLock() : entry.lock.asReadLock();
+        boolean obtained = lock.tryLock();
+        if (!obtained) {
+            obtained = waitFor(document, lock);
+        }
+        this.acquired.incrementAndGet();
+        this.holds.get().computeIfAbsent(document, k -> new ArrayDeque<>()).addLast(new Hold(entry, lock, obtained));
+    }
+
+    private boolean waitFor(DocumentReference document, Lock lock)
+    {
+        this.contended.incrementAndGet();
+        long start = System.nanoTime();
+        boolean obtained = false;
         try {
-            final Lock lock = this.locks.computeIfAbsent(document, k -> new StampedLock().asWriteLock());
-            final boolean cleanLock = lock.tryLock(10, TimeUnit.SECONDS);
-            if (!cleanLock) {
+            obtained = lock.tryLock(getTimeout(), TimeUnit.SECONDS);
+            if (!obtained) {
+                this.timeouts.incrementAndGet();
                 this.logger.debug("Timed out while waiting for lock on [{}], proceeding anyway", document);
             }
         } catch (InterruptedException ex) {
             // We don't expect any interruptions
             this.logger.error("Unexpected interruption why waiting for lock: {}", ex.getMessage(), ex);
         }
+        long waited = System.nanoTime() - start;
+        this.totalWaitNanos.addAndGet(waited);
+        this.longestWait.accumulateAndGet(new Wait(document, waited), (a, b) -> a.nanos >= b.nanos ? a : b);
+        return obtained;
     }
 
-    @Override
-    public void unlock(@Nonnull final DocumentReference document)
+    private long getTimeout()
+    {
+        Long configured = this.configuration.getProperty("phenotips.locks.timeout", Long.class);
+        return configured != null && configured > 0 ? configured : DEFAULT_TIMEOUT_SECONDS;
+    }
+
+    private void release(DocumentReference document)
     {
-        Lock lock = this.locks.get(document);
-        if (lock == null) {
+        Map<DocumentReference, Deque<Hold>> threadHolds = this.holds.get();
+        Deque<Hold> documentHolds = threadHolds.get(document);
+        if (documentHolds == null) {
+            this.logger.debug("Lock on [{}] was unexpectedly unlocked already", document);
             return;
         }
-        try {
-            lock.unlock();
-        } catch (IllegalMonitorStateException ex) {
-            // Unlocking may fail if a lock timeout resulted in an unclean lock, and then two requests try to unlock
-            this.logger.debug("Lock was unexpectedly unlocked already: {}", ex.getMessage(), ex);
+        Hold hold = documentHolds.removeLast();
+        if (documentHolds.isEmpty()) {
+            threadHolds.remove(document);
+        }
+        if (hold.obtained) {
+            hold.lock.unlock();
+        }
+        // Evict the entry once no thread holds or waits for it
+        this.locks.computeIfPresent(document, (k, e) -> (e == hold.entry && --e.users == 0) ? null : e);
+    }
+
+    /** A lock in use, with the number of threads holding it or waiting for it. */
+    private static final class Entry
+    {
+        private final StampedLock lock = new StampedLock();
+
+        /** Guarded by the lock table, only changed inside its atomic compute operations. */
+        private int users;
+    }
+
+    /** A lock requested by a thread. */
+    private static final class Hold
+    {
+        private final Entry entry;
+
+        private final Lock lock;
+
+        private final boolean obtained;
+
+        Hold(Entry entry, Lock lock, boolean obtained)
+        {
+            this.entry = entry;
+            this.lock = lock;
+            this.obtained = obtained;
+        }
+    }
+
+    /** A time spent waiting for the lock of a document. */
+    private static final class Wait
+    {
+        private final DocumentReference document;
+
+        private final long nanos;
+
+        Wait(DocumentReference document, long nanos)
+        {
+            this.document = document;
+            this.nanos = nanos;
         }
     }
 }
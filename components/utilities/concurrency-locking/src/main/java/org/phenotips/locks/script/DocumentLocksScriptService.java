@@ -0,0 +1,60 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.locks.script;
+
+import org.phenotips.locks.DocumentLockManager;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.script.service.ScriptService;
+import org.xwiki.stability.Unstable;
+
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Singleton;
+
+/**
+ * Service for monitoring the document locks taken while handling requests.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable
+@Component
+@Named("documentLocks")
+@Singleton
+public class DocumentLocksScriptService implements ScriptService
+{
+    /** The lock manager being monitored. */
+    @Inject
+    private DocumentLockManager lockManager;
+
+    /**
+     * Get lock usage statistics, useful for identifying contention. The default lock manager reports how many locks
+     * were {@code acquired}, how many of them were {@code contended}, how many {@code timeouts} occurred, the
+     * {@code totalWaitMs} and {@code longestWaitMs} spent waiting, the {@code longestWaitDocument}, and how many
+     * documents currently have {@code activeLocks}.
+     *
+     * @return a map of statistic names and their current values
+     */
+    public Map<String, Object> getStatistics()
+    {
+        return this.lockManager.getStatistics();
+    }
+}
@@ -125,4 +125,15 @@ public void unlocksOnActionExecutedEvent()
         this.listener.onEvent(new ActionExecutedEvent("save"), this.doc, null);
         Mockito.verify(this.lockManager).unlock(this.docRef);
     }
+
+    @Test
+    public void readActionsUseSharedLocks()
+    {
+        this.listener.onEvent(new ActionExecutingEvent("view"), this.doc, null);
+        Mockito.verify(this.lockManager).lockShared(this.docRef);
+        this.listener.onEvent(new ActionExecutedEvent("view"), this.doc, null);
+        Mockito.verify(this.lockManager).unlockShared(this.docRef);
+        Mockito.verify(this.lockManager, Mockito.never()).lock(this.docRef);
+        Mockito.verify(this.lockManager, Mockito.never()).unlock(this.docRef);
+    }
 }
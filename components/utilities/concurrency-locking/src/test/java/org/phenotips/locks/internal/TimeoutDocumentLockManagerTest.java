@@ -20,15 +20,20 @@
 import org.phenotips.locks.DocumentLockManager;
 
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import java.util.Map;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.MockitoAnnotations;
 
+import static org.mockito.Mockito.when;
+
 /**
  * Tests for the {@link TimeoutDocumentLockManager} component.
  *
@@ -159,4 +164,50 @@ public void unlockingBeforeLockingDoesntThrowException() throws ComponentLookupE
     {
         this.lockManager.unlock(this.docRef);
     }
+
+    @Test
+    public void sharedLocksDoNotDelay() throws ComponentLookupException
+    {
+        long start = System.currentTimeMillis();
+        this.lockManager.lockShared(this.docRef);
+        this.lockManager.lockShared(this.docRef);
+        this.lockManager.lockShared(this.docRef);
+        long time = System.currentTimeMillis() - start;
+        Assert.assertTrue(time < 5 * 1000);
+    }
+
+    @Test
+    public void exclusiveLockWaitsForSharedLocks() throws ComponentLookupException
+    {
+        ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty("phenotips.locks.timeout", Long.class)).thenReturn(1L);
+        long start = System.currentTimeMillis();
+        this.lockManager.lockShared(this.docRef);
+        this.lockManager.lock(this.docRef);
+        long time = System.currentTimeMillis() - start;
+        Assert.assertTrue(time >= 1000);
+        Assert.assertTrue(time < 5 * 1000);
+        Assert.assertEquals(1L, getStatistics().get("timeouts"));
+        Assert.assertEquals(1L, getStatistics().get("contended"));
+        Assert.assertEquals(this.docRef.toString(), getStatistics().get("longestWaitDocument"));
+    }
+
+    @Test
+    public void releasedLocksAreEvicted() throws ComponentLookupException
+    {
+        this.lockManager.lock(this.docRef);
+        this.lockManager.lockShared(new DocumentReference("xwiki", "data", "P0000002"));
+        Assert.assertEquals(2, getStatistics().get("activeLocks"));
+        this.lockManager.unlock(this.docRef);
+        Assert.assertEquals(1, getStatistics().get("activeLocks"));
+        this.lockManager.unlockShared(new DocumentReference("xwiki", "data", "P0000002"));
+        Assert.assertEquals(0, getStatistics().get("activeLocks"));
+        Assert.assertEquals(2L, getStatistics().get("acquired"));
+        Assert.assertEquals(0L, getStatistics().get("contended"));
+    }
+
+    private Map<String, Object> getStatistics()
+    {
+        return this.lockManager.getStatistics();
+    }
 }
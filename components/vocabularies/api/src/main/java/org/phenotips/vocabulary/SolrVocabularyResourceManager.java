@@ -22,6 +22,9 @@
 import org.xwiki.component.phase.InitializationException;
 import org.xwiki.stability.Unstable;
 
+import java.io.File;
+import java.util.Map;
+
 import org.apache.solr.client.solrj.SolrClient;
 
 /**
@@ -42,6 +45,20 @@
      */
     Cache<VocabularyTerm> getTermCache(String vocabularyId);
 
+    /**
+     * Get usage statistics for the term cache of a vocabulary, such as the number of hits, misses and evictions. The
+     * cache size limits are configured in {@code xwiki.properties} with {@code phenotips.ontologies.cache.*} settings
+     * applying to all vocabularies, and {@code phenotips.ontologies.<vocabularyId>.cache.*} settings overriding them
+     * for a specific vocabulary; the supported settings are {@code maxEntries}, {@code negativeMaxEntries} (the number
+     * of remembered missing terms), {@code eviction} ({@code LRU} or another algorithm supported by the cache
+     * provider) and {@code timeToLive} (in seconds).
+     *
+     * @param vocabularyId the identifier of the target vocabulary
+     * @return a map of statistic names and their current values, empty if the vocabulary's cache wasn't initialized yet
+     * @since 1.4
+     */
+    Map<String, Long> getTermCacheStatistics(String vocabularyId);
+
     /**
      * Get the Solr core used for a vocabulary.
      *
@@ -80,6 +97,16 @@
      */
     SolrClient getReplacementSolrConnection(String vocabularyId);
 
+    /**
+     * Get the directory holding the Solr core of a vocabulary, where other data derived from the vocabulary index can
+     * be stored. The directory is kept when the core is {@link #replaceCore(String) replaced} after reindexing.
+     *
+     * @param vocabularyId the identifier of the target vocabulary
+     * @return the core directory, which may not exist yet
+     * @since 1.4
+     */
+    File getCoreDirectory(String vocabularyId);
+
     /**
      * Delete the temporary core, if one was already created by {@link #createReplacementCore(String)}. If no temporary
      * core was created, nothing happens.
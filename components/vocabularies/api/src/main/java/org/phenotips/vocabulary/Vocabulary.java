@@ -125,6 +125,35 @@ default List<VocabularyTerm> search(String input, String category, int maxResult
         return search(input, maxResults, sort, customFilter);
     }
 
+    /**
+     * Suggest terms whose name, synonym or identifier, or a word inside their name or synonyms, starts with the user's
+     * input. Vocabularies may answer this from a fast in-memory prefix index instead of running a full text search,
+     * which is faster but doesn't support misspelled input; the default implementation simply
+     * {@link #search(String, int, String, String) performs a search}.
+     *
+     * @param input the text that the user entered
+     * @param maxResults the maximum number of terms to be returned
+     * @return a list of suggestions, possibly empty
+     * @since 1.4
+     */
+    default List<VocabularyTerm> suggest(String input, int maxResults)
+    {
+        return search(input, maxResults, null, null);
+    }
+
+    /**
+     * Get counters showing how often searches in this vocabulary are repeated with the query corrected by the
+     * spellchecker, useful for tuning the {@code phenotips.ontologies.spellcheck.*} settings against real traffic.
+     *
+     * @return a map of counter names, such as {@code searches}, {@code requeries} or {@code skipped}, and their values;
+     *         the default implementation returns an empty map, meant for vocabularies that don't use the spellchecker
+     * @since 1.4
+     */
+    default Map<String, Long> getSpellcheckStatistics()
+    {
+        return Collections.emptyMap();
+    }
+
     /**
      * Get the number of terms that match a specific query.
      *
@@ -19,11 +19,14 @@
 
 import org.xwiki.stability.Unstable;
 
+import java.io.IOException;
 import java.util.Collection;
 import java.util.Set;
 
 import org.json.JSONObject;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 /**
  * A term from a {@link Vocabulary}. A few common properties are available as explicit individual methods, and any
  * property defined for the term can be accessed using the generic {@link #get(String)} method. As a minimum, each term
@@ -165,4 +168,22 @@
      * @since 1.1-rc1
      */
     JSONObject toJSON();
+
+    /**
+     * Writes the same information as {@link #toJSON()} directly into a JSON stream, as fields of the JSON object that
+     * is currently being written, so that many terms can be serialized without building a {@link JSONObject} for each
+     * of them. The default implementation writes the fields of {@link #toJSON()}.
+     *
+     * @param generator the generator where the fields are written, positioned inside a JSON object
+     * @throws IOException if writing fails
+     * @since 1.4
+     */
+    default void writeJSONFields(JsonGenerator generator) throws IOException
+    {
+        JSONObject json = toJSON();
+        for (String key : json.keySet()) {
+            generator.writeFieldName(key);
+            generator.writeRawValue(JSONObject.valueToString(json.get(key)));
+        }
+    }
 }
@@ -17,33 +17,50 @@
  */
 package org.phenotips.vocabulary.internal;
 
+import org.phenotips.entities.internal.XWikiContextSnapshot;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyManager;
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.component.annotation.Component;
+import org.xwiki.component.phase.Disposable;
 import org.xwiki.component.phase.Initializable;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 
+import com.xpn.xwiki.XWikiContext;
+
 /**
  * Default implementation of the {@link VocabularyManager} component, which uses all the {@link Vocabulary vocabularies}
  * registered in the component manager.
@@ -53,10 +70,23 @@
  */
 @Component
 @Singleton
-public class DefaultVocabularyManager implements VocabularyManager, Initializable
+public class DefaultVocabularyManager implements VocabularyManager, Initializable, Disposable
 {
     private static final String SCORE_LABEL = "score";
 
+    /** Configuration property holding the number of threads used for searching in several vocabularies at once. */
+    private static final String SEARCH_THREADS_CONFIGURATION = "phenotips.ontologies.search.threads";
+
+    /** Configuration property holding how long, in milliseconds, to wait for the results of a category search. */
+    private static final String SEARCH_TIMEOUT_CONFIGURATION = "phenotips.ontologies.search.timeout";
+
+    private static final int DEFAULT_SEARCH_THREADS = 8;
+
+    private static final int DEFAULT_SEARCH_TIMEOUT = 5000;
+
+    /** How many vocabulary searches can wait for a free thread; when full, searches run on the calling thread. */
+    private static final int SEARCH_QUEUE_SIZE = 100;
+
     /** The currently available vocabularies. */
     @Inject
     private Map<String, Vocabulary> vocabularies;
@@ -65,6 +95,17 @@ public class DefaultVocabularyManager implements VocabularyManager, Initializabl
     @Inject
     private Logger logger;
 
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /** Used for passing the context of the caller, including the current locale, to the search threads. */
+    @Inject
+    private Execution execution;
+
+    /** Runs the searches in the vocabularies of a category concurrently. */
+    private ExecutorService searchThreads;
+
     /** The available vocabularies, including keys for each of their aliases. */
     private Map<String, Vocabulary> aliasVocabularies;
 
@@ -81,6 +122,22 @@ public void initialize() throws InitializationException
             }
         }
         this.vocabulariesByCategory = constructVocabulariesByCategory();
+
+        final int threads = getConfiguredValue(SEARCH_THREADS_CONFIGURATION, DEFAULT_SEARCH_THREADS);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(SEARCH_QUEUE_SIZE), runnable -> {
+                final Thread thread = new Thread(runnable, "Vocabulary search");
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        this.searchThreads = executor;
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.searchThreads.shutdownNow();
     }
 
     /**
@@ -191,7 +248,9 @@ public boolean hasCategory(final String category)
 
     /**
      * Performs a search for {@code input query string} using the provided set of {@code categorizedVocabularies}, and
-     * returns the specified {@code maxResults number of results}, sorted by score (in descending order).
+     * returns the specified {@code maxResults number of results}, sorted by score (in descending order). The
+     * vocabularies are searched concurrently, and vocabularies that fail or don't respond before the configured
+     * timeout are left out, so that one slow vocabulary doesn't block the whole search.
      *
      * @param input the input query string
      * @param maxResults the maximum number of results to return
@@ -202,33 +261,142 @@ public boolean hasCategory(final String category)
     private List<VocabularyTerm> search(@Nonnull final String input, final int maxResults,
         @Nonnull final String category, @Nonnull final Set<Vocabulary> categorizedVocabularies)
     {
-        final List<VocabularyTerm> results = new ArrayList<>();
+        // The head of the queue is the lowest scoring of the best results found so far
+        final PriorityQueue<VocabularyTerm> best =
+            new PriorityQueue<>(Math.max(1, maxResults + 1), (o1, o2) -> compareScores(o2, o1));
+        if (categorizedVocabularies.size() == 1) {
+            // No need to switch threads
+            addTopResults(best, categorizedVocabularies.iterator().next().search(input, category, maxResults, null,
+                null), maxResults);
+        } else {
+            collectResults(best, submitSearches(input, category, maxResults, categorizedVocabularies), maxResults);
+        }
+
+        final List<VocabularyTerm> results = new ArrayList<>(best.size());
+        while (!best.isEmpty()) {
+            results.add(best.poll());
+        }
+        Collections.reverse(results);
+        return results;
+    }
+
+    /**
+     * Starts searching in each of the vocabularies. Each search gets its own copy of the caller's XWiki context, so
+     * that vocabularies and their extensions see the same locale, wiki and user as a search done on the caller thread.
+     * The copies don't hold the request, the response, or the database session of the caller thread.
+     *
+     * @param input the input query string
+     * @param category the vocabulary category
+     * @param maxResults the maximum number of results to return from each vocabulary
+     * @param categorizedVocabularies the {@link Vocabulary} objects to search {@code input} in
+     * @return the pending searches, with the vocabulary being searched as the key
+     */
+    private Map<Vocabulary, Future<List<VocabularyTerm>>> submitSearches(@Nonnull final String input,
+        @Nonnull final String category, final int maxResults, @Nonnull final Set<Vocabulary> categorizedVocabularies)
+    {
+        final Map<Vocabulary, Future<List<VocabularyTerm>>> searches = new LinkedHashMap<>();
+        final XWikiContext xcontext = getXWikiContext();
         for (final Vocabulary vocabulary : categorizedVocabularies) {
-            results.addAll(vocabulary.search(input, category, maxResults, null, null));
+            final XWikiContext searchContext = xcontext != null ? XWikiContextSnapshot.copy(xcontext) : null;
+            searches.put(vocabulary, this.searchThreads.submit(
+                () -> callInContext(searchContext, () -> vocabulary.search(input, category, maxResults, null, null))));
         }
+        return searches;
+    }
 
-        sortTermsByScore(results);
+    /**
+     * Runs a task in a new execution context holding the given XWiki context. The context is pushed on top of any
+     * existing one and removed afterwards, since the task may also run on the caller thread when the search threads
+     * are all busy.
+     *
+     * @param <T> the type of the task result
+     * @param xcontext the XWiki context to use, may be {@code null}
+     * @param task the task to run
+     * @return the result of the task
+     * @throws Exception if the task fails
+     */
+    private <T> T callInContext(@Nullable final XWikiContext xcontext, @Nonnull final Callable<T> task)
+        throws Exception
+    {
+        final ExecutionContext context = new ExecutionContext();
+        if (xcontext != null) {
+            context.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, xcontext);
+        }
+        this.execution.pushContext(context);
+        try {
+            return task.call();
+        } finally {
+            this.execution.popContext();
+        }
+    }
 
-        final int resultsSize = results.size();
-        final int rows = maxResults <= resultsSize ? maxResults : resultsSize;
-        return results.subList(0, rows);
+    private XWikiContext getXWikiContext()
+    {
+        final ExecutionContext context = this.execution.getContext();
+        return context != null ? (XWikiContext) context.getProperty(XWikiContext.EXECUTIONCONTEXT_KEY) : null;
     }
 
     /**
-     * Sorts the provided list of {@code results} by score, in descending order.
+     * Waits for the pending searches to finish, keeping only the best results. Searches that fail are skipped, and
+     * searches that are still running when the deadline passes are cancelled.
      *
-     * @param results a list of {@link VocabularyTerm vocabulary terms} that will be sorted by score, in place
+     * @param best the best results found so far
+     * @param searches the pending searches, with the vocabulary being searched as the key
+     * @param maxResults the maximum number of results to keep
      */
-    private void sortTermsByScore(@Nonnull final List<VocabularyTerm> results)
+    private void collectResults(@Nonnull final PriorityQueue<VocabularyTerm> best,
+        @Nonnull final Map<Vocabulary, Future<List<VocabularyTerm>>> searches, final int maxResults)
     {
-        Collections.sort(results, new Comparator<VocabularyTerm>()
-        {
-            @Override
-            public int compare(final VocabularyTerm o1, final VocabularyTerm o2)
-            {
-                return compareScores(o1, o2);
+        final long deadline =
+            System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(
+                getConfiguredValue(SEARCH_TIMEOUT_CONFIGURATION, DEFAULT_SEARCH_TIMEOUT));
+        for (final Map.Entry<Vocabulary, Future<List<VocabularyTerm>>> search : searches.entrySet()) {
+            final Future<List<VocabularyTerm>> result = search.getValue();
+            try {
+                addTopResults(best, result.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS),
+                    maxResults);
+            } catch (final TimeoutException ex) {
+                result.cancel(true);
+                this.logger.warn("Search in vocabulary [{}] timed out, its results were skipped",
+                    search.getKey().getIdentifier());
+            } catch (final ExecutionException ex) {
+                this.logger.warn("Search in vocabulary [{}] failed: {}", search.getKey().getIdentifier(),
+                    ex.getCause() != null ? ex.getCause().getMessage() : ex.getMessage());
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                for (final Future<List<VocabularyTerm>> pending : searches.values()) {
+                    pending.cancel(true);
+                }
+                return;
             }
-        });
+        }
+    }
+
+    /**
+     * Adds the {@code results} to the {@code best} results found so far, keeping at most {@code maxResults} terms.
+     *
+     * @param best the best results found so far, lowest scoring first
+     * @param results the new results to add
+     * @param maxResults the maximum number of results to keep
+     */
+    private void addTopResults(@Nonnull final PriorityQueue<VocabularyTerm> best,
+        @Nullable final List<VocabularyTerm> results, final int maxResults)
+    {
+        if (results == null) {
+            return;
+        }
+        for (final VocabularyTerm term : results) {
+            best.offer(term);
+            if (best.size() > maxResults) {
+                best.poll();
+            }
+        }
+    }
+
+    private int getConfiguredValue(@Nonnull final String key, final int defaultValue)
+    {
+        final Integer value = this.configuration.getProperty(key, Integer.class);
+        return value != null && value > 0 ? value : defaultValue;
     }
 
     /**
@@ -25,8 +25,6 @@
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -80,22 +78,7 @@ protected int index(String sourceUrl)
             return 2;
         }
         try {
-            Collection<SolrInputDocument> termBatch = new HashSet<>();
-            Iterator<SolrInputDocument> dataIterator = data.iterator();
-            int batchCounter = 0;
-            while (dataIterator.hasNext()) {
-                /* Resetting when the batch fills */
-                if (batchCounter == getSolrDocsPerBatch()) {
-                    commitTerms(termBatch);
-                    termBatch = new HashSet<>();
-                    batchCounter = 0;
-                }
-                SolrInputDocument item = dataIterator.next();
-                extendTerm(new SolrVocabularyInputTerm(item, this));
-                termBatch.add(item);
-                batchCounter++;
-            }
-            commitTerms(termBatch);
+            indexTerms(data.iterator(), getSolrDocsPerBatch());
             return 0;
         } catch (SolrServerException ex) {
             this.logger.warn("Failed to index vocabulary: {}", ex.getMessage());
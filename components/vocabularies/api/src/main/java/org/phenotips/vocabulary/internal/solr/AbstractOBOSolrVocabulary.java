@@ -19,12 +19,12 @@
 
 import org.phenotips.obo2solr.SolrUpdateGenerator;
 import org.phenotips.obo2solr.TermData;
+import org.phenotips.obo2solr.TermDataStream;
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -83,7 +83,9 @@ public VocabularyTerm getTerm(String id)
      *
      * @param sourceUrl the address from where to get the vocabulary source file
      * @return vocabulary data, if exists
+     * @deprecated since 1.4, use {@link #stream(String)} instead, which doesn't hold the whole vocabulary in memory
      */
+    @Deprecated
     protected Map<String, TermData> load(final String sourceUrl)
     {
         SolrUpdateGenerator generator = new SolrUpdateGenerator();
@@ -91,6 +93,20 @@ protected Map<String, TermData> load(final String sourceUrl)
         return generator.transform(sourceUrl, fieldSelection);
     }
 
+    /**
+     * Stream vocabulary data from a provided source url, without loading the whole vocabulary in memory.
+     *
+     * @param sourceUrl the address from where to get the vocabulary source file
+     * @return a stream of vocabulary terms, which must be closed after use, or {@code null} if the source is invalid
+     * @since 1.4
+     */
+    protected TermDataStream stream(final String sourceUrl)
+    {
+        SolrUpdateGenerator generator = new SolrUpdateGenerator();
+        Map<String, Double> fieldSelection = new HashMap<>();
+        return generator.stream(sourceUrl, fieldSelection);
+    }
+
     /**
      * Add a vocabulary to the index.
      *
@@ -102,35 +118,36 @@ protected Map<String, TermData> load(final String sourceUrl)
     protected int index(String sourceUrl)
     {
         String url = StringUtils.defaultIfBlank(sourceUrl, getDefaultSourceLocation());
-        Map<String, TermData> data = load(url);
+        final TermDataStream data = stream(url);
 
-        if (data == null || data.isEmpty()) {
+        if (data == null) {
             return 2;
         }
         try {
-            Collection<SolrInputDocument> termBatch = new HashSet<>();
-            Iterator<Map.Entry<String, TermData>> dataIterator = data.entrySet().iterator();
-            int batchCounter = 0;
-            while (dataIterator.hasNext()) {
-                /* Resetting when the batch fills */
-                if (batchCounter == getSolrDocsPerBatch()) {
-                    commitTerms(termBatch);
-                    termBatch = new HashSet<>();
-                    batchCounter = 0;
+            if (!data.hasNext()) {
+                return 2;
+            }
+            indexTerms(new Iterator<SolrInputDocument>()
+            {
+                @Override
+                public boolean hasNext()
+                {
+                    return data.hasNext();
                 }
-                Map.Entry<String, TermData> item = dataIterator.next();
-                SolrInputDocument doc = new SolrInputDocument();
-                for (Map.Entry<String, Collection<String>> property : item.getValue().entrySet()) {
-                    String name = property.getKey();
-                    for (String value : property.getValue()) {
-                        doc.addField(name, value);
+
+                @Override
+                public SolrInputDocument next()
+                {
+                    SolrInputDocument doc = new SolrInputDocument();
+                    for (Map.Entry<String, Collection<String>> property : data.next().entrySet()) {
+                        String name = property.getKey();
+                        for (String value : property.getValue()) {
+                            doc.addField(name, value);
+                        }
                     }
+                    return doc;
                 }
-                extendTerm(new SolrVocabularyInputTerm(doc, this));
-                termBatch.add(doc);
-                batchCounter++;
-            }
-            commitTerms(termBatch);
+            }, getSolrDocsPerBatch());
             return 0;
         } catch (SolrServerException ex) {
             this.logger.warn("Failed to index vocabulary: {}", ex.getMessage());
@@ -139,6 +156,12 @@ protected int index(String sourceUrl)
                 ex.getMessage());
         } catch (OutOfMemoryError ex) {
             this.logger.warn("Failed to add terms to the Solr. Ran out of memory. {}", ex.getMessage());
+        } finally {
+            try {
+                data.close();
+            } catch (IOException ex) {
+                this.logger.debug("Failed to close the vocabulary source: {}", ex.getMessage());
+            }
         }
         return 1;
     }
@@ -161,6 +184,12 @@ protected int clear()
         return 1;
     }
 
+    @Override
+    protected boolean isHierarchical()
+    {
+        return true;
+    }
+
     @Override
     public String getVersion()
     {
@@ -20,9 +20,14 @@
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
@@ -33,8 +38,12 @@
 import org.apache.jena.ontology.OntModelSpec;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
 import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
 import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+import org.apache.jena.vocabulary.RDFS;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -124,36 +133,19 @@ protected int clear()
     protected int index(@Nullable final String sourceUrl)
     {
         final String url = StringUtils.defaultIfBlank(sourceUrl, getDefaultSourceLocation());
+        final OntModelSpec spec = getOntModelSpec();
         // Fetch the ontology. If this is over the network, it may take a while.
-        final OntModel ontModel = ModelFactory.createOntologyModel(OntModelSpec.OWL_DL_MEM_TRANS_INF);
-        ontModel.read(url);
-        // Get the root classes of the ontology that we can start the parsing with.
-        final Collection<OntClass> roots = getRootClasses(ontModel);
-        // Reusing doc for speed (see http://wiki.apache.org/lucene-java/ImproveIndexingSpeed).
-        final SolrInputDocument doc = new SolrInputDocument();
+        final OntModel ontModel = ModelFactory.createOntologyModel(spec);
         try {
-            Collection<SolrInputDocument> termBatch = new HashSet<>();
+            ontModel.read(url);
+            // Only used by the parser thread of this indexing run, so it is never shared between runs
+            final OntologyGraph classHierarchy = spec.getReasoner() == null ? buildClassHierarchy(ontModel) : null;
+            // Get the root classes of the ontology that we can start the parsing with.
+            final Collection<OntClass> roots = getRootClasses(ontModel);
+            final SolrInputDocument doc = new SolrInputDocument();
             // Set the ontology model version.
             setVersion(doc, ontModel);
-            // Create and add solr documents for each of the roots.
-            for (final OntClass root : roots) {
-                // Don't want to add Solr documents for general root categories, so start adding children.
-                // Get all the subclasses of ontClass, and add a Solr document for each of them.
-                final ExtendedIterator<OntClass> subClasses = root.listSubClasses();
-                int batchCounter = 0;
-                while (subClasses.hasNext()) {
-                    if (batchCounter == getSolrDocsPerBatch()) {
-                        commitTerms(termBatch);
-                        termBatch = new HashSet<>();
-                        batchCounter = 0;
-                    }
-                    final OntClass subClass = subClasses.next();
-                    addDoc(doc, subClass, root, termBatch);
-                    batchCounter++;
-                }
-                subClasses.close();
-            }
-            commitTerms(termBatch);
+            indexTerms(new OntClassDocumentIterator(roots, classHierarchy), getSolrDocsPerBatch());
             return 0;
         } catch (SolrServerException ex) {
             this.logger.warn("Failed to index ontology: {}", ex.getMessage());
@@ -161,26 +153,160 @@ protected int index(@Nullable final String sourceUrl)
             this.logger.warn("Failed to communicate with the Solr server while indexing ontology: {}", ex.getMessage());
         } catch (OutOfMemoryError ex) {
             this.logger.warn("Failed to add terms to the Solr. Ran out of memory. {}", ex.getMessage());
+        } finally {
+            ontModel.close();
         }
         return 1;
     }
 
     /**
-     * Create a document for the ontology class, and add it to the index.
+     * The specification of the ontology model used for parsing the vocabulary source. By default, a plain in-memory
+     * model without a reasoner is used, and the transitive closure of the class hierarchy is computed from the asserted
+     * {@code rdfs:subClassOf} statements between named classes, which needs much less memory than materializing all the
+     * inferred statements. Vocabularies that do need OWL inference can return a specification with a reasoner, such as
+     * {@link OntModelSpec#OWL_DL_MEM_TRANS_INF}.
+     *
+     * @return an ontology model specification
+     */
+    protected OntModelSpec getOntModelSpec()
+    {
+        return OntModelSpec.OWL_MEM;
+    }
+
+    /**
+     * Collects the asserted {@code rdfs:subClassOf} relations between named classes.
+     *
+     * @param ontModel the parsed ontology model
+     * @return the class hierarchy, with class URIs as identifiers
+     */
+    private OntologyGraph buildClassHierarchy(@Nonnull final OntModel ontModel)
+    {
+        final Map<String, List<String>> parents = new HashMap<>();
+        final StmtIterator statements = ontModel.listStatements(null, RDFS.subClassOf, (RDFNode) null);
+        try {
+            while (statements.hasNext()) {
+                final Statement statement = statements.next();
+                final Resource subject = statement.getSubject();
+                final RDFNode object = statement.getObject();
+                if (subject.isURIResource() && object.isURIResource()) {
+                    List<String> classParents = parents.get(subject.getURI());
+                    if (classParents == null) {
+                        classParents = new ArrayList<>(2);
+                        parents.put(subject.getURI(), classParents);
+                    }
+                    classParents.add(object.asResource().getURI());
+                }
+            }
+        } finally {
+            statements.close();
+        }
+        return new OntologyGraph(parents);
+    }
+
+    /**
+     * Lists all the subclasses of a class, at any depth. Without a reasoner, only named subclasses are listed.
+     *
+     * @param ontClass the target class
+     * @param classHierarchy the asserted hierarchy of named classes, or {@code null} if the model uses a reasoner
+     * @return an iterator over the subclasses, which must be closed after use
+     */
+    ExtendedIterator<OntClass> listAllSubClasses(@Nonnull final OntClass ontClass,
+        @Nullable final OntologyGraph classHierarchy)
+    {
+        if (classHierarchy == null) {
+            return ontClass.listSubClasses(!DIRECT);
+        }
+        final OntModel ontModel = ontClass.getOntModel();
+        return WrappedIterator.create(classHierarchy.getDescendants(ontClass.getURI()).iterator())
+            .mapWith(ontModel::getOntClass)
+            .filterDrop(Objects::isNull);
+    }
+
+    /**
+     * Checks if a class is a subclass of another class, at any depth.
+     *
+     * @param ontClass the potential subclass
+     * @param ancestor the potential superclass
+     * @param classHierarchy the asserted hierarchy of named classes, or {@code null} if the model uses a reasoner
+     * @return {@code true} if {@code ancestor} is a strict superclass of {@code ontClass}
+     */
+    boolean hasAncestor(@Nonnull final OntClass ontClass, @Nonnull final OntClass ancestor,
+        @Nullable final OntologyGraph classHierarchy)
+    {
+        if (classHierarchy == null || ontClass.isAnon() || ancestor.isAnon()) {
+            return ontClass.hasSuperClass(ancestor, !DIRECT);
+        }
+        return classHierarchy.isAncestor(ancestor.getURI(), ontClass.getURI());
+    }
+
+    /**
+     * Create a document for the ontology class.
      *
-     * @param doc the reusable Solr input document
      * @param ontClass the ontology class that should be parsed
      * @param root the top root category for ontClass
-     * @param termBatch the batch of newly-processed documents to commit later
+     * @param classHierarchy the asserted hierarchy of named classes, or {@code null} if the model uses a reasoner
+     * @return the parsed document, not yet extended
      */
-    private void addDoc(@Nonnull final SolrInputDocument doc, @Nonnull final OntClass ontClass,
-        @Nonnull final OntClass root, Collection<SolrInputDocument> termBatch)
+    private SolrInputDocument toDoc(@Nonnull final OntClass ontClass, @Nonnull final OntClass root,
+        @Nullable final OntologyGraph classHierarchy)
     {
+        final SolrInputDocument doc = new SolrInputDocument();
         parseSolrDocumentFromOntClass(doc, ontClass, root);
-        parseSolrDocumentFromOntParentClasses(doc, ontClass);
-        extendTerm(new SolrVocabularyInputTerm(doc, this));
-        termBatch.add(new SolrInputDocument(doc));
-        doc.clear();
+        parseSolrDocumentFromOntParentClasses(doc, ontClass, classHierarchy);
+        return doc;
+    }
+
+    /**
+     * Lists the documents for all the subclasses of the root classes, parsing them on demand. Root classes are general
+     * categories, so no documents are created for them.
+     */
+    private final class OntClassDocumentIterator implements Iterator<SolrInputDocument>
+    {
+        private final Iterator<OntClass> roots;
+
+        private final OntologyGraph classHierarchy;
+
+        private OntClass root;
+
+        private ExtendedIterator<OntClass> subClasses;
+
+        OntClassDocumentIterator(Collection<OntClass> roots, OntologyGraph classHierarchy)
+        {
+            this.roots = roots.iterator();
+            this.classHierarchy = classHierarchy;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (this.subClasses == null || !this.subClasses.hasNext()) {
+                if (this.subClasses != null) {
+                    this.subClasses.close();
+                    this.subClasses = null;
+                }
+                if (!this.roots.hasNext()) {
+                    return false;
+                }
+                this.root = this.roots.next();
+                this.subClasses = listAllSubClasses(this.root, this.classHierarchy);
+            }
+            return true;
+        }
+
+        @Override
+        public SolrInputDocument next()
+        {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return toDoc(this.subClasses.next(), this.root, this.classHierarchy);
+        }
+    }
+
+    @Override
+    protected boolean isHierarchical()
+    {
+        return true;
     }
 
     @Override
@@ -243,10 +369,30 @@ private void parseSolrDocumentFromOntClass(@Nonnull final SolrInputDocument doc,
      *
      * @param doc Solr input document
      * @param ontClass the ontology class
+     * @param classHierarchy the asserted hierarchy of named classes, or {@code null} if the model uses a reasoner
      */
     private void parseSolrDocumentFromOntParentClasses(@Nonnull final SolrInputDocument doc,
-        @Nonnull final OntClass ontClass)
+        @Nonnull final OntClass ontClass, @Nullable final OntologyGraph classHierarchy)
     {
+        if (classHierarchy != null) {
+            // Named ancestors (these are parent disorders) are taken from the class hierarchy. Without a reasoner only
+            // the asserted superclasses are listed, and the anonymous ones among them are the class properties.
+            for (final String ancestor : classHierarchy.getAncestors(ontClass.getURI())) {
+                final OntClass parent = ontClass.getOntModel().getOntClass(ancestor);
+                if (parent != null) {
+                    extractClassData(doc, ontClass, parent, classHierarchy);
+                }
+            }
+            final ExtendedIterator<OntClass> assertedParents = ontClass.listSuperClasses(!DIRECT);
+            while (assertedParents.hasNext()) {
+                final OntClass parent = assertedParents.next();
+                if (parent.isAnon()) {
+                    extractClassData(doc, ontClass, parent, classHierarchy);
+                }
+            }
+            assertedParents.close();
+            return;
+        }
         // This will list all superclasses for ontClass.
         final ExtendedIterator<OntClass> allParents = ontClass.listSuperClasses(!DIRECT);
         // For anonymous classes, we're only interested in the direct parents.
@@ -256,7 +402,7 @@ private void parseSolrDocumentFromOntParentClasses(@Nonnull final SolrInputDocum
             // We're interested in all non-anonymous parents (these are parent disorders), but only the direct anonymous
             // parents (these are the class properties).
             if (!parent.isAnon() || directParents.contains(parent)) {
-                extractClassData(doc, ontClass, parent);
+                extractClassData(doc, ontClass, parent, classHierarchy);
             }
         }
         allParents.close();
@@ -296,9 +442,11 @@ private void extractProperties(@Nonnull final SolrInputDocument doc, @Nonnull fi
      * @param doc the Solr input document
      * @param ontClass the ontology class of interest
      * @param parent the parent of ontClass
+     * @param classHierarchy the asserted hierarchy of named classes, to be passed to
+     *            {@link #hasAncestor(OntClass, OntClass, OntologyGraph)}, or {@code null} if the model uses a reasoner
      */
     abstract void extractClassData(@Nonnull SolrInputDocument doc,
-        @Nonnull OntClass ontClass, @Nonnull OntClass parent);
+        @Nonnull OntClass ontClass, @Nonnull OntClass parent, @Nullable OntologyGraph classHierarchy);
 
     /**
      * Get a numerical id string from a localName. Assuming the localName is in the form "Orphanet_XXX". If localName is
@@ -26,20 +26,27 @@
 
 import org.xwiki.cache.Cache;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Provider;
 
 import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
 import org.apache.solr.client.solrj.SolrServerException;
 import org.apache.solr.client.solrj.response.QueryResponse;
@@ -47,6 +54,7 @@
 import org.apache.solr.common.SolrDocument;
 import org.apache.solr.common.SolrDocumentList;
 import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CursorMarkParams;
 import org.slf4j.Logger;
 
 /**
@@ -62,6 +70,18 @@ public abstract class AbstractSolrVocabulary implements Vocabulary
     /** The name of the ID field. */
     protected static final String ID_FIELD_NAME = "id";
 
+    /** The name of the field holding the direct parents of a term. */
+    protected static final String PARENTS_FIELD_NAME = "is_a";
+
+    /** The name of the field holding the synonyms of a term. */
+    protected static final String SYNONYM_FIELD_NAME = "synonym";
+
+    /** How many documents are fetched at once when reading a whole vocabulary from the index. */
+    private static final int DOCUMENTS_PER_PAGE = 5000;
+
+    /** The file, inside the core directory, where the suggestion index is persisted. */
+    private static final String SUGGESTION_INDEX_FILE = "suggestions.idx.gz";
+
     /**
      * Object used to mark in the cache that a term doesn't exist, since null means that the cache doesn't contain the
      * requested entry.
@@ -83,6 +103,22 @@ public abstract class AbstractSolrVocabulary implements Vocabulary
     @Inject
     protected VocabularySourceRelocationService relocationService;
 
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    /** Decides when misspelled searches are run again with the spellchecked query, lazily created. */
+    private volatile SpellcheckFallback spellcheckFallback;
+
+    /** The in-memory term hierarchy, lazily loaded. */
+    private volatile OntologyGraph ontologyGraph;
+
+    /** The in-memory prefix index used for suggestions, built while reindexing or lazily loaded. */
+    private volatile SuggestionIndex suggestionIndex;
+
+    /** Collects the labels of the indexed terms during reindexing, {@code null} otherwise. */
+    private SuggestionIndex.Builder pendingSuggestions;
+
     // Dilemma:
     // In an ideal world there should be a getter methods for server and cache instances.
     // However the point of splitting up the server was to lessen the number of imports
@@ -121,6 +157,7 @@ public Set<VocabularyTerm> getTerms(Collection<String> ids)
     {
         Map<String, VocabularyTerm> rawResult = new HashMap<>();
         StringBuilder query = new StringBuilder("id:(");
+        int uncached = 0;
         Cache<VocabularyTerm> cache = this.externalServicesAccess.getTermCache(getCoreName());
         for (String id : ids) {
             VocabularyTerm cachedTerm = cache.get(id);
@@ -131,13 +168,17 @@ public Set<VocabularyTerm> getTerms(Collection<String> ids)
             } else {
                 query.append(ClientUtils.escapeQueryChars(id));
                 query.append(' ');
+                ++uncached;
             }
         }
         query.append(')');
 
         // There's at least one more term not found in the cache
-        if (query.length() > 5) {
-            for (SolrDocument doc : this.search(new SolrQuery(query.toString()))) {
+        if (uncached > 0) {
+            // Without an explicit number of rows, Solr only returns the default number of rows configured for the core
+            SolrQuery solrQuery = new SolrQuery(query.toString());
+            solrQuery.setRows(uncached);
+            for (SolrDocument doc : this.search(solrQuery)) {
                 String id = (String) doc.getFieldValue(ID_FIELD_NAME);
                 VocabularyTerm term = cacheTerm(id, doc);
                 rawResult.put(term.getId(), term);
@@ -194,6 +235,7 @@ public int reindex(String sourceUrl)
                         ext.indexingStarted(this);
                     }
                 }
+                this.pendingSuggestions = hasSuggestionIndex() ? new SuggestionIndex.Builder() : null;
                 retval = this.index(sourceUrl);
             } finally {
                 for (VocabularyExtension ext : this.extensions.get()) {
@@ -205,11 +247,14 @@ public int reindex(String sourceUrl)
             if (retval == 0) {
                 this.externalServicesAccess.replaceCore(getCoreName());
                 this.externalServicesAccess.getTermCache(getCoreName()).removeAll();
+                this.ontologyGraph = null;
+                replaceSuggestionIndex();
             }
             return retval;
         } catch (InitializationException ex) {
             this.logger.warn("Failed to reindex. {}", ex.getMessage());
         } finally {
+            this.pendingSuggestions = null;
             this.externalServicesAccess.discardReplacementCore(getCoreName());
         }
         return retval;
@@ -224,6 +269,10 @@ public String getVersion()
     @Override
     public long getDistance(String fromTermId, String toTermId)
     {
+        OntologyGraph graph = getOntologyGraph();
+        if (graph != null && graph.contains(fromTermId) && graph.contains(toTermId)) {
+            return graph.getDistance(fromTermId, toTermId);
+        }
         return getDistance(getTerm(fromTermId), getTerm(toTermId));
     }
 
@@ -248,6 +297,26 @@ public List<VocabularyTerm> search(String input, int maxResults, String sort, St
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * If this vocabulary {@link #hasSuggestionIndex() has a suggestion index}, it is used for finding the terms, and
+     * Solr is only queried for input that doesn't match the start of any label, which may be misspelled.
+     * </p>
+     */
+    @Override
+    public List<VocabularyTerm> suggest(String input, int maxResults)
+    {
+        SuggestionIndex index = getSuggestionIndex();
+        if (index != null && StringUtils.isNotBlank(input)) {
+            List<String> ids = index.suggest(input, maxResults);
+            if (!ids.isEmpty()) {
+                return new ArrayList<>(getTerms(ids));
+            }
+        }
+        return search(input, maxResults, null, null);
+    }
+
     @Override
     public String getSourceLocation()
     {
@@ -266,6 +335,233 @@ public List<VocabularyExtension> getExtensions()
         return result;
     }
 
+    /**
+     * Whether the terms of this vocabulary form a hierarchy through the {@code is_a} field, which should be loaded in
+     * memory for fast hierarchy queries.
+     *
+     * @return {@code false} by default, subclasses holding ontologies should return {@code true}
+     * @see #getOntologyGraph()
+     */
+    protected boolean isHierarchical()
+    {
+        return false;
+    }
+
+    /**
+     * Get the in-memory term hierarchy of this vocabulary, loading it from the index the first time it is needed, and
+     * again after each reindexing.
+     *
+     * @return the term hierarchy, or {@code null} if this vocabulary {@link #isHierarchical() isn't hierarchical} or
+     *         the hierarchy cannot be loaded
+     */
+    protected OntologyGraph getOntologyGraph()
+    {
+        if (!isHierarchical()) {
+            return null;
+        }
+        OntologyGraph result = this.ontologyGraph;
+        if (result == null) {
+            synchronized (this) {
+                result = this.ontologyGraph;
+                if (result == null) {
+                    result = loadOntologyGraph();
+                    this.ontologyGraph = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Whether this vocabulary should keep an in-memory prefix index of term names, synonyms and identifiers, for fast
+     * {@link #suggest(String, int) suggestions}. The index is built while reindexing, from the terms that pass through
+     * {@link #indexTerms(Iterator, int)}, and persisted next to the Solr core.
+     *
+     * @return {@code false} by default, subclasses that serve autocomplete requests should return {@code true}
+     */
+    protected boolean hasSuggestionIndex()
+    {
+        return false;
+    }
+
+    /**
+     * Whether a term should be included in the suggestion index, for example only terms in the category searched by
+     * default. Subclasses should override this when suggestions must be restricted.
+     *
+     * @param term the term to check
+     * @return {@code true} by default
+     */
+    protected boolean isSuggestible(VocabularyTerm term)
+    {
+        return true;
+    }
+
+    /**
+     * Get the in-memory prefix index of this vocabulary, reading it from disk or building it from the Solr index the
+     * first time it is needed.
+     *
+     * @return the suggestion index, or {@code null} if this vocabulary {@link #hasSuggestionIndex() doesn't have one}
+     *         or it cannot be loaded
+     */
+    protected SuggestionIndex getSuggestionIndex()
+    {
+        if (!hasSuggestionIndex()) {
+            return null;
+        }
+        SuggestionIndex result = this.suggestionIndex;
+        if (result == null) {
+            synchronized (this) {
+                result = this.suggestionIndex;
+                if (result == null) {
+                    result = loadSuggestionIndex();
+                    this.suggestionIndex = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private void addSuggestions(SuggestionIndex.Builder builder, VocabularyTerm term)
+    {
+        if (StringUtils.isBlank(term.getId()) || !isSuggestible(term)) {
+            return;
+        }
+        builder.add(term.getId(), term.getId(), SuggestionIndex.NAME);
+        builder.add(term.getId(), term.getName(), SuggestionIndex.NAME);
+        Object synonyms = term.get(SYNONYM_FIELD_NAME);
+        if (synonyms instanceof Collection) {
+            for (Object synonym : (Collection<?>) synonyms) {
+                builder.add(term.getId(), String.valueOf(synonym), SuggestionIndex.SYNONYM);
+            }
+        } else if (synonyms != null) {
+            builder.add(term.getId(), String.valueOf(synonyms), SuggestionIndex.SYNONYM);
+        }
+    }
+
+    /** Installs and persists the suggestion index collected while reindexing. */
+    private void replaceSuggestionIndex()
+    {
+        SuggestionIndex.Builder builder = this.pendingSuggestions;
+        File file = getSuggestionIndexFile();
+        if (builder == null || builder.isEmpty()) {
+            // The terms weren't indexed through indexTerms, the index will be rebuilt from Solr when needed
+            this.suggestionIndex = null;
+            if (file != null) {
+                file.delete();
+            }
+            return;
+        }
+        SuggestionIndex index = builder.build();
+        this.suggestionIndex = index;
+        storeSuggestionIndex(index, file);
+    }
+
+    private SuggestionIndex loadSuggestionIndex()
+    {
+        File file = getSuggestionIndexFile();
+        if (file != null && file.isFile()) {
+            try {
+                return SuggestionIndex.readFrom(file);
+            } catch (IOException ex) {
+                this.logger.warn("Failed to read the suggestion index of [{}], rebuilding it: {}", getCoreName(),
+                    ex.getMessage());
+            }
+        }
+
+        if (size() <= 0) {
+            return null;
+        }
+        try {
+            this.logger.debug("Building the suggestion index of [{}]", getCoreName());
+            SuggestionIndex.Builder builder = new SuggestionIndex.Builder();
+            forEachDocument(new SolrQuery("*:*"), doc -> addSuggestions(builder, new SolrVocabularyTerm(doc, this)));
+            SuggestionIndex result = builder.build();
+            storeSuggestionIndex(result, file);
+            return result;
+        } catch (Exception ex) {
+            this.logger.warn("Failed to build the suggestion index of [{}]: {}", getCoreName(), ex.getMessage());
+        }
+        return null;
+    }
+
+    private void storeSuggestionIndex(SuggestionIndex index, File file)
+    {
+        if (file == null) {
+            return;
+        }
+        try {
+            index.writeTo(file);
+        } catch (IOException ex) {
+            this.logger.warn("Failed to store the suggestion index of [{}]: {}", getCoreName(), ex.getMessage());
+        }
+    }
+
+    private File getSuggestionIndexFile()
+    {
+        File directory = this.externalServicesAccess.getCoreDirectory(getCoreName());
+        return directory != null ? new File(directory, SUGGESTION_INDEX_FILE) : null;
+    }
+
+    private OntologyGraph loadOntologyGraph()
+    {
+        long termCount = size();
+        if (termCount <= 0) {
+            return null;
+        }
+        SolrQuery query = new SolrQuery("*:*");
+        query.setFields(ID_FIELD_NAME, PARENTS_FIELD_NAME);
+        try {
+            this.logger.debug("Loading the term hierarchy of [{}]", getCoreName());
+            Map<String, Collection<String>> parents = new HashMap<>((int) Math.min(termCount * 2, Integer.MAX_VALUE));
+            forEachDocument(query, doc -> {
+                Collection<Object> values = doc.getFieldValues(PARENTS_FIELD_NAME);
+                Collection<String> termParents = new LinkedList<>();
+                if (values != null) {
+                    for (Object value : values) {
+                        termParents.add(StringUtils.substringBefore(String.valueOf(value), " "));
+                    }
+                }
+                parents.put((String) doc.getFieldValue(ID_FIELD_NAME), termParents);
+            });
+            OntologyGraph result = new OntologyGraph(parents);
+            this.logger.debug("Loaded [{}] terms in the hierarchy of [{}]", result.size(), getCoreName());
+            return result;
+        } catch (Exception ex) {
+            this.logger.warn("Failed to load the term hierarchy of [{}]: {}", getCoreName(), ex.getMessage());
+        }
+        return null;
+    }
+
+    /**
+     * Reads all the documents matching a query, one page at a time, so that large vocabularies don't have to be
+     * fetched in a single response. A cursor sorted on the term identifier is used, so that deep pages cost as much as
+     * the first one.
+     *
+     * @param query the query to run; its sort and paging parameters are overwritten
+     * @param action what to do with each matching document
+     * @throws SolrServerException if the query fails
+     * @throws IOException if communicating with the Solr server fails
+     */
+    private void forEachDocument(SolrQuery query, Consumer<SolrDocument> action)
+        throws SolrServerException, IOException
+    {
+        SolrClient client = this.externalServicesAccess.getSolrConnection(getCoreName());
+        query.setStart(0);
+        query.setRows(DOCUMENTS_PER_PAGE);
+        query.setSort(ID_FIELD_NAME, SolrQuery.ORDER.asc);
+        String cursor = CursorMarkParams.CURSOR_MARK_START;
+        while (true) {
+            query.set(CursorMarkParams.CURSOR_MARK_PARAM, cursor);
+            QueryResponse response = client.query(query);
+            response.getResults().forEach(action);
+            String next = response.getNextCursorMark();
+            if (next == null || next.equals(cursor)) {
+                return;
+            }
+            cursor = next;
+        }
+    }
+
     /**
      * Perform a search, falling back on the suggested spellchecked query if the original query fails to return any
      * results.
@@ -290,8 +586,11 @@ protected SolrDocumentList search(SolrQuery query)
             this.logger.debug("Searching [{}] with query [{}]", getCoreName(), query);
             QueryResponse response = this.externalServicesAccess.getSolrConnection(getCoreName()).query(query);
             SolrDocumentList results = response.getResults();
+            SpellcheckFallback fallback = getSpellcheckFallback();
+            fallback.searched();
             if (response.getSpellCheckResponse() != null && !response.getSpellCheckResponse().isCorrectlySpelled()
-                && StringUtils.isNotEmpty(response.getSpellCheckResponse().getCollatedResult())) {
+                && StringUtils.isNotEmpty(response.getSpellCheckResponse().getCollatedResult())
+                && fallback.shouldRequery(results, query.getRows())) {
                 SolrQueryUtils.applySpellcheckSuggestion(query,
                     response.getSpellCheckResponse().getCollatedResult());
                 this.logger.debug("Searching [{}] with spellchecked query [{}]", getCoreName(), query);
@@ -299,6 +598,7 @@ protected SolrDocumentList search(SolrQuery query)
                     this.externalServicesAccess.getSolrConnection(getCoreName()).query(query).getResults();
                 if (results.getMaxScore() < spellcheckResults.getMaxScore()) {
                     results = spellcheckResults;
+                    fallback.improved();
                 }
             }
             return results;
@@ -308,6 +608,33 @@ protected SolrDocumentList search(SolrQuery query)
         return new SolrDocumentList();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The counters are described in {@link SpellcheckFallback#getStatistics()}.
+     * </p>
+     */
+    @Override
+    public Map<String, Long> getSpellcheckStatistics()
+    {
+        return getSpellcheckFallback().getStatistics();
+    }
+
+    private SpellcheckFallback getSpellcheckFallback()
+    {
+        SpellcheckFallback result = this.spellcheckFallback;
+        if (result == null) {
+            synchronized (this) {
+                result = this.spellcheckFallback;
+                if (result == null) {
+                    result = new SpellcheckFallback(this.configuration, getCoreName());
+                    this.spellcheckFallback = result;
+                }
+            }
+        }
+        return result;
+    }
+
     /**
      * Get the number of entries that match a specific Lucene query.
      *
@@ -380,9 +707,39 @@ protected void extendTerm(VocabularyInputTerm term)
         }
     }
 
+    /**
+     * Indexes terms in the {@link SolrVocabularyResourceManager#getReplacementSolrConnection(String) replacement core}
+     * using an {@link IndexingPipeline}: the source is read on a separate thread, the vocabulary extensions are run on
+     * the current thread, and batches are sent to Solr on another thread. The index is committed once, at the end.
+     *
+     * @param source the terms to index
+     * @param batchSize the number of terms to send to Solr at once, or a negative number to send all terms at once
+     * @return the number of terms indexed
+     * @throws SolrServerException if adding or committing the terms fails
+     * @throws IOException if reading the source or communicating with the Solr server fails
+     * @since 1.4
+     */
+    protected int indexTerms(Iterator<SolrInputDocument> source, int batchSize)
+        throws SolrServerException, IOException
+    {
+        IndexingPipeline pipeline = new IndexingPipeline(getCoreName(),
+            this.externalServicesAccess.getReplacementSolrConnection(getCoreName()), batchSize, this.logger);
+        final SuggestionIndex.Builder suggestions = this.pendingSuggestions;
+        return pipeline.run(source, doc -> {
+            VocabularyInputTerm term = new SolrVocabularyInputTerm(doc, this);
+            extendTerm(term);
+            if (suggestions != null) {
+                addSuggestions(suggestions, term);
+            }
+        });
+    }
+
     /**
      * Commits the batch of newly-processed documents.
+     *
+     * @deprecated since 1.4, use {@link #indexTerms(Iterator, int)} instead, which commits only once at the end
      */
+    @Deprecated
     protected void commitTerms(Collection<SolrInputDocument> batch)
         throws SolrServerException, IOException, OutOfMemoryError
     {
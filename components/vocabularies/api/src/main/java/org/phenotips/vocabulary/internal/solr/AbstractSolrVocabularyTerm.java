@@ -23,6 +23,7 @@
 
 import org.xwiki.localization.LocalizationContext;
 
+import java.io.IOException;
 import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.Collections;
@@ -41,6 +42,8 @@
 import org.json.JSONArray;
 import org.json.JSONObject;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
 /**
  * Abstract implementation of common functionality of {@link VocabularyTerm} for Solr documents.
  *
@@ -98,6 +101,9 @@ public abstract class AbstractSolrVocabularyTerm implements VocabularyTerm
      */
     protected static final String PARENTS_KEY = "is_a";
 
+    /** The name of the JSON field holding the names of the direct parents of a term. */
+    private static final String PARENTS_JSON_KEY = "parents";
+
     /**
      * The owner vocabulary.
      *
@@ -219,18 +225,30 @@ public Collection<?> getTranslatedValues(String property)
     @Override
     public Set<VocabularyTerm> getParents()
     {
+        OntologyGraph graph = getOntologyGraph();
+        if (graph != null) {
+            return new OntologyGraphTermSet(graph.getParents(getId()), graph, this.vocabulary);
+        }
         return this.parents != null ? this.parents : Collections.<VocabularyTerm>emptySet();
     }
 
     @Override
     public Set<VocabularyTerm> getAncestors()
     {
+        OntologyGraph graph = getOntologyGraph();
+        if (graph != null) {
+            return new OntologyGraphTermSet(graph.getAncestors(getId()), graph, this.vocabulary);
+        }
         return this.ancestors != null ? this.ancestors : Collections.<VocabularyTerm>emptySet();
     }
 
     @Override
     public Set<VocabularyTerm> getAncestorsAndSelf()
     {
+        OntologyGraph graph = getOntologyGraph();
+        if (graph != null) {
+            return new OntologyGraphTermSet(graph.getAncestorsAndSelf(getId()), graph, this.vocabulary);
+        }
         return this.ancestorsAndSelf != null ? this.ancestorsAndSelf : Collections.<VocabularyTerm>emptySet();
     }
 
@@ -265,6 +283,11 @@ public long getDistanceTo(final VocabularyTerm other)
             return 0;
         }
 
+        OntologyGraph graph = getOntologyGraph();
+        if (graph != null && this.vocabulary.equals(other.getVocabulary()) && graph.contains(other.getId())) {
+            return graph.getDistance(getId(), other.getId());
+        }
+
         long distance = Long.MAX_VALUE;
 
         Map<String, Integer> myLevelMap = new HashMap<>();
@@ -317,21 +340,47 @@ public JSONObject toJSON()
         }
         json.put(TRANSLATED_NAME_KEY, getTranslatedName());
         json.put(TRANSLATED_DESCRIPTION_KEY, getTranslatedDescription());
-        if (this.parents != null && !this.parents.isEmpty()) {
+        Set<VocabularyTerm> termParents = getParents();
+        if (!termParents.isEmpty()) {
             JSONArray parentsJson = new JSONArray();
-            for (VocabularyTerm parent : this.parents) {
+            for (VocabularyTerm parent : termParents) {
                 JSONObject parentJSON = new JSONObject();
                 parentJSON.put(ID_KEY, parent.getId());
                 parentJSON.put(NAME_KEY, parent.getName());
                 parentJSON.put(TRANSLATED_NAME_KEY, parent.getTranslatedName());
                 parentsJson.put(parentJSON);
             }
-            json.put("parents", parentsJson);
+            json.put(PARENTS_JSON_KEY, parentsJson);
         }
 
         return json;
     }
 
+    @Override
+    public void writeJSONFields(JsonGenerator generator) throws IOException
+    {
+        for (Map.Entry<String, ? extends Object> field : getEntrySet()) {
+            if (field.getValue() != null) {
+                generator.writeFieldName(field.getKey());
+                writeValue(generator, field.getValue());
+            }
+        }
+        writeStringField(generator, TRANSLATED_NAME_KEY, getTranslatedName());
+        writeStringField(generator, TRANSLATED_DESCRIPTION_KEY, getTranslatedDescription());
+        Set<VocabularyTerm> termParents = getParents();
+        if (!termParents.isEmpty()) {
+            generator.writeArrayFieldStart(PARENTS_JSON_KEY);
+            for (VocabularyTerm parent : termParents) {
+                generator.writeStartObject();
+                writeStringField(generator, ID_KEY, parent.getId());
+                writeStringField(generator, NAME_KEY, parent.getName());
+                writeStringField(generator, TRANSLATED_NAME_KEY, parent.getTranslatedName());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        }
+    }
+
     /**
      * Get all the entries in this document.
      *
@@ -363,6 +412,34 @@ private void addAsCorrectType(JSONObject json, String name, Object toAdd)
         }
     }
 
+    /** Writes a field value the same way {@link #toJSON()} adds it to a {@link JSONObject}. */
+    private void writeValue(JsonGenerator generator, Object value) throws IOException
+    {
+        if (value instanceof Collection) {
+            generator.writeStartArray();
+            for (Object item : Collection.class.cast(value)) {
+                writeValue(generator, item);
+            }
+            generator.writeEndArray();
+        } else if (value instanceof Boolean) {
+            generator.writeBoolean((Boolean) value);
+        } else if (value instanceof Number) {
+            generator.writeNumber(value.toString());
+        } else if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+
+    /** Writes a string field, leaving it out if it has no value, just like {@link JSONObject#put} does. */
+    private void writeStringField(JsonGenerator generator, String name, String value) throws IOException
+    {
+        if (value != null) {
+            generator.writeStringField(name, value);
+        }
+    }
+
     @Override
     public int hashCode()
     {
@@ -455,6 +532,20 @@ protected Set<VocabularyTerm> getUncachedAncestorsAndSelf()
         return new LazySolrTermSet(termSet, this.vocabulary);
     }
 
+    /**
+     * The in-memory hierarchy of the owner vocabulary, used for answering hierarchy queries without querying the index.
+     *
+     * @return the hierarchy, or {@code null} if the vocabulary doesn't keep one, or if it doesn't list this term
+     */
+    private OntologyGraph getOntologyGraph()
+    {
+        if (isNull() || !(this.vocabulary instanceof AbstractSolrVocabulary)) {
+            return null;
+        }
+        OntologyGraph graph = ((AbstractSolrVocabulary) this.vocabulary).getOntologyGraph();
+        return graph != null && graph.contains(getId()) ? graph : null;
+    }
+
     protected Locale getCurrentLocale()
     {
         try {
@@ -25,8 +25,11 @@
 import org.xwiki.cache.CacheException;
 import org.xwiki.cache.CacheManager;
 import org.xwiki.cache.config.CacheConfiguration;
+import org.xwiki.cache.eviction.EntryEvictionConfiguration;
+import org.xwiki.cache.eviction.LRUEvictionConfiguration;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
 import org.xwiki.environment.Environment;
 import org.xwiki.extension.distribution.internal.DistributionManager;
 
@@ -39,9 +42,11 @@
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import javax.inject.Inject;
+import javax.inject.Named;
 import javax.inject.Singleton;
 
 import org.apache.commons.io.FileUtils;
@@ -49,6 +54,7 @@
 import org.apache.solr.client.solrj.embedded.EmbeddedSolrServer;
 import org.apache.solr.core.CoreContainer;
 import org.apache.solr.core.SolrCore;
+import org.slf4j.Logger;
 
 /**
  * Default implementation for the {@link SolrVocabularyResourceManager} component.
@@ -69,11 +75,30 @@ public class DefaultSolrVocabularyResourceManager implements SolrVocabularyResou
         "/conf/solrcore.properties", "/conf/protwords.txt", "/conf/stopwords.txt", "/conf/synonyms.txt",
         "/conf/managed-schema.xml", "/core.properties");
 
+    /** Prefix for the configuration properties, either vocabulary-specific or global, controlling the term caches. */
+    private static final String CONFIGURATION_PREFIX = "phenotips.ontologies.";
+
+    private static final String CACHE_CONFIGURATION = ".cache.";
+
+    private static final String GLOBAL_CACHE_CONFIGURATION = CONFIGURATION_PREFIX + "cache.";
+
+    private static final String MAX_ENTRIES = "maxEntries";
+
+    private static final String NEGATIVE_MAX_ENTRIES = "negativeMaxEntries";
+
+    private static final String EVICTION = "eviction";
+
+    private static final String TIME_TO_LIVE = "timeToLive";
+
+    private static final int DEFAULT_MAX_ENTRIES = 5000;
+
+    private static final int DEFAULT_NEGATIVE_MAX_ENTRIES = 1000;
+
     /** @see #getSolrConnection() */
     private Map<String, SolrClient> cores = new HashMap<>();
 
     /** @see #getTermCache() */
-    private Map<String, Cache<VocabularyTerm>> caches = new HashMap<>();
+    private Map<String, MonitoredTermCache> caches = new HashMap<>();
 
     /** Provides access to the Solr cores. */
     @Inject
@@ -89,6 +114,14 @@ public class DefaultSolrVocabularyResourceManager implements SolrVocabularyResou
     @Inject
     private DistributionManager distribution;
 
+    /** Holds the term cache settings. */
+    @Inject
+    @Named("xwikiproperties")
+    private ConfigurationSource configuration;
+
+    @Inject
+    private Logger logger;
+
     private void initialize(String vocabularyName) throws InitializationException
     {
         CoreContainer container = this.coreContainer.getContainer();
@@ -127,8 +160,7 @@ private void initialize(String vocabularyName) throws InitializationException
 
             SolrClient core = new EmbeddedSolrServer(container, vocabularyName);
             this.cores.put(vocabularyName, core);
-            Cache<VocabularyTerm> cache = this.cacheFactory.createNewLocalCache(new CacheConfiguration());
-            this.caches.put(vocabularyName, cache);
+            this.caches.put(vocabularyName, createTermCache(vocabularyName));
         } catch (final CacheException ex) {
             throw new InitializationException("Cannot create cache: " + ex.getMessage(), ex);
         } catch (IOException ex) {
@@ -153,6 +185,13 @@ public Cache<VocabularyTerm> getTermCache(String vocabularyId)
         return this.caches.get(vocabularyId);
     }
 
+    @Override
+    public Map<String, Long> getTermCacheStatistics(String vocabularyId)
+    {
+        MonitoredTermCache cache = this.caches.get(vocabularyId);
+        return cache != null ? cache.getStatistics() : Collections.<String, Long>emptyMap();
+    }
+
     @Override
     public SolrClient getSolrConnection(String vocabularyId)
     {
@@ -212,6 +251,12 @@ public void replaceCore(String vocabularyId) throws InitializationException
         }
     }
 
+    @Override
+    public File getCoreDirectory(String vocabularyId)
+    {
+        return new File(this.environment.getPermanentDirectory(), SOLR + vocabularyId);
+    }
+
     @Override
     public SolrClient getReplacementSolrConnection(String vocabularyId)
     {
@@ -232,4 +277,61 @@ public void discardReplacementCore(String vocabularyId)
             this.caches.remove(vocabularyId + TEMP);
         }
     }
+
+    /**
+     * Create the term cache for a vocabulary, using the {@code phenotips.ontologies.<vocabulary>.cache.*} settings, and
+     * falling back on the global {@code phenotips.ontologies.cache.*} settings when there's no vocabulary-specific
+     * value configured.
+     *
+     * @param vocabularyName the name of the vocabulary core
+     * @return the new cache, with separate limits for existing terms and negative lookups
+     * @throws CacheException if creating the underlying caches fails
+     */
+    private MonitoredTermCache createTermCache(String vocabularyName) throws CacheException
+    {
+        int maxEntries = getCacheSetting(vocabularyName, MAX_ENTRIES, DEFAULT_MAX_ENTRIES);
+        int negativeMaxEntries = getCacheSetting(vocabularyName, NEGATIVE_MAX_ENTRIES, DEFAULT_NEGATIVE_MAX_ENTRIES);
+        int timeToLive = getCacheSetting(vocabularyName, TIME_TO_LIVE, 0);
+        EntryEvictionConfiguration.Algorithm algorithm = getEvictionAlgorithm(vocabularyName);
+
+        Cache<VocabularyTerm> terms = this.cacheFactory.createNewLocalCache(
+            getCacheConfiguration(vocabularyName + ".terms", algorithm, maxEntries, timeToLive));
+        Cache<VocabularyTerm> missing = this.cacheFactory.createNewLocalCache(
+            getCacheConfiguration(vocabularyName + ".missing", algorithm, negativeMaxEntries, timeToLive));
+        return new MonitoredTermCache(terms, maxEntries, missing, negativeMaxEntries);
+    }
+
+    private CacheConfiguration getCacheConfiguration(String name, EntryEvictionConfiguration.Algorithm algorithm,
+        int maxEntries, int timeToLive)
+    {
+        LRUEvictionConfiguration eviction = new LRUEvictionConfiguration(maxEntries);
+        eviction.setAlgorithm(algorithm);
+        if (timeToLive > 0) {
+            eviction.setTimeToLive(timeToLive);
+        }
+        CacheConfiguration result = new CacheConfiguration(eviction);
+        result.setConfigurationId("vocabulary." + name);
+        return result;
+    }
+
+    private EntryEvictionConfiguration.Algorithm getEvictionAlgorithm(String vocabularyName)
+    {
+        String name = this.configuration.getProperty(CONFIGURATION_PREFIX + vocabularyName + CACHE_CONFIGURATION
+            + EVICTION, this.configuration.getProperty(GLOBAL_CACHE_CONFIGURATION + EVICTION, "LRU"));
+        try {
+            return EntryEvictionConfiguration.Algorithm.valueOf(name.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            this.logger.warn("Unsupported cache eviction algorithm [{}] for vocabulary [{}], using LRU instead",
+                name, vocabularyName);
+            return EntryEvictionConfiguration.Algorithm.LRU;
+        }
+    }
+
+    private int getCacheSetting(String vocabularyName, String setting, int defaultValue)
+    {
+        Integer globalValue =
+            this.configuration.getProperty(GLOBAL_CACHE_CONFIGURATION + setting, Integer.valueOf(defaultValue));
+        return this.configuration
+            .getProperty(CONFIGURATION_PREFIX + vocabularyName + CACHE_CONFIGURATION + setting, globalValue);
+    }
 }
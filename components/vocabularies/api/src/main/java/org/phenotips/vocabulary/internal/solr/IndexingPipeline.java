@@ -0,0 +1,250 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+import org.slf4j.Logger;
+
+/**
+ * Indexes vocabulary terms in three pipelined stages: a parser thread pulls documents from the source, the calling
+ * thread runs the vocabulary extensions on them, since extensions may need the current execution context, and a
+ * writer thread sends full batches to Solr. Stages communicate through bounded queues, so memory use doesn't depend on
+ * the size of the vocabulary, and the index is committed only once, after all the terms were added.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class IndexingPipeline
+{
+    /** How many parsed documents can wait for the extension stage. */
+    private static final int DOCUMENT_QUEUE_SIZE = 1000;
+
+    /** How many full batches can wait for the writer stage. */
+    private static final int BATCH_QUEUE_SIZE = 2;
+
+    /** End of stream marker for the documents queue. */
+    private static final SolrInputDocument END = new SolrInputDocument();
+
+    /** End of stream marker for the batches queue. */
+    private static final List<SolrInputDocument> END_BATCH = new ArrayList<>(0);
+
+    private static final long POLL_TIMEOUT = 1;
+
+    private final String name;
+
+    private final SolrClient client;
+
+    private final int batchSize;
+
+    private final Logger logger;
+
+    private final BlockingQueue<SolrInputDocument> documents = new ArrayBlockingQueue<>(DOCUMENT_QUEUE_SIZE);
+
+    private final BlockingQueue<List<SolrInputDocument>> batches = new ArrayBlockingQueue<>(BATCH_QUEUE_SIZE);
+
+    private final AtomicInteger writtenTerms = new AtomicInteger();
+
+    private final AtomicInteger writtenBatches = new AtomicInteger();
+
+    private long startTime;
+
+    /**
+     * Constructor passing the pipeline settings.
+     *
+     * @param name the name of the vocabulary being indexed, used in progress reports
+     * @param client the Solr core where the terms are written
+     * @param batchSize the number of terms sent to Solr at once; a negative number or {@code 0} sends all the terms in
+     *            one batch
+     * @param logger the logger used for reporting progress
+     */
+    public IndexingPipeline(String name, SolrClient client, int batchSize, Logger logger)
+    {
+        this.name = name;
+        this.client = client;
+        this.batchSize = batchSize;
+        this.logger = logger;
+    }
+
+    /**
+     * Index all the terms from the source.
+     *
+     * @param source the parsed terms; it will be consumed on a separate thread, and may throw
+     *            {@link UncheckedIOException} if reading the source fails
+     * @param extender processes each term before it is indexed, usually by running the vocabulary extensions on it
+     * @return the number of terms indexed
+     * @throws SolrServerException if adding or committing terms fails
+     * @throws IOException if reading the source or communicating with the Solr server fails
+     */
+    public int run(Iterator<SolrInputDocument> source, Consumer<SolrInputDocument> extender)
+        throws SolrServerException, IOException
+    {
+        ExecutorService threads = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "Vocabulary indexing: " + this.name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.startTime = System.currentTimeMillis();
+        try {
+            Future<?> parser = threads.submit(() -> {
+                parse(source);
+                return null;
+            });
+            Future<?> writer = threads.submit(() -> {
+                write();
+                return null;
+            });
+
+            int count = 0;
+            List<SolrInputDocument> batch = new ArrayList<>();
+            SolrInputDocument doc;
+            while ((doc = take(parser)) != END) {
+                extender.accept(doc);
+                batch.add(doc);
+                ++count;
+                if (this.batchSize > 0 && batch.size() >= this.batchSize) {
+                    put(batch, writer);
+                    batch = new ArrayList<>();
+                }
+            }
+            if (!batch.isEmpty()) {
+                put(batch, writer);
+            }
+            put(END_BATCH, writer);
+            await(writer);
+
+            this.client.commit();
+            this.logger.info("[{}] indexing: {} terms indexed in {} batches in {} ms ({} terms/s)", this.name, count,
+                this.writtenBatches.get(), System.currentTimeMillis() - this.startTime, getRate());
+            return count;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Indexing was interrupted", ex);
+        } finally {
+            threads.shutdownNow();
+        }
+    }
+
+    private void parse(Iterator<SolrInputDocument> source) throws InterruptedException
+    {
+        while (source.hasNext()) {
+            this.documents.put(source.next());
+        }
+        this.documents.put(END);
+    }
+
+    private void write() throws InterruptedException, SolrServerException, IOException
+    {
+        List<SolrInputDocument> batch;
+        while ((batch = this.batches.take()) != END_BATCH) {
+            this.client.add(batch);
+            int terms = this.writtenTerms.addAndGet(batch.size());
+            int count = this.writtenBatches.incrementAndGet();
+            this.logger.info("[{}] indexing: {} terms written in {} batches ({} terms/s)", this.name, terms, count,
+                getRate());
+        }
+    }
+
+    /**
+     * Wait for the next parsed document, failing early if the parser stopped with an error.
+     *
+     * @param parser the parser stage
+     * @return the next document, or {@link #END} when all documents were parsed
+     */
+    private SolrInputDocument take(Future<?> parser)
+        throws InterruptedException, SolrServerException, IOException
+    {
+        while (true) {
+            SolrInputDocument result = this.documents.poll(POLL_TIMEOUT, TimeUnit.SECONDS);
+            if (result != null) {
+                return result;
+            }
+            if (parser.isDone()) {
+                await(parser);
+                // The parser finished normally, so everything it produced, including the end marker, is already queued
+                result = this.documents.poll();
+                return result != null ? result : END;
+            }
+        }
+    }
+
+    /**
+     * Queue a batch for writing, failing early if the writer stopped with an error.
+     *
+     * @param batch the batch to write
+     * @param writer the writer stage
+     */
+    private void put(List<SolrInputDocument> batch, Future<?> writer)
+        throws InterruptedException, SolrServerException, IOException
+    {
+        while (!this.batches.offer(batch, POLL_TIMEOUT, TimeUnit.SECONDS)) {
+            if (writer.isDone()) {
+                await(writer);
+                throw new IOException("The indexing writer stopped unexpectedly");
+            }
+        }
+    }
+
+    /**
+     * Wait for a stage to finish, rethrowing any exception it failed with.
+     *
+     * @param stage the stage to wait for
+     */
+    private void await(Future<?> stage) throws InterruptedException, SolrServerException, IOException
+    {
+        try {
+            stage.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof SolrServerException) {
+                throw (SolrServerException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private long getRate()
+    {
+        long elapsed = Math.max(1, System.currentTimeMillis() - this.startTime);
+        return this.writtenTerms.get() * 1000L / elapsed;
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.event.CacheEntryEvent;
+import org.xwiki.cache.event.CacheEntryListener;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Term cache which keeps statistics about its usage, and stores negative lookups, i.e. the markers used for remembering
+ * that a term doesn't exist, in a separate cache so that they don't push out real terms. A term is considered a
+ * negative marker if it doesn't have an identifier.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class MonitoredTermCache implements Cache<VocabularyTerm>
+{
+    /** The cache holding real terms. */
+    private final Cache<VocabularyTerm> terms;
+
+    /** The cache holding negative lookup markers. */
+    private final Cache<VocabularyTerm> missing;
+
+    private final int maxEntries;
+
+    private final int maxMissingEntries;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong missingHits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong removals = new AtomicLong();
+
+    private final AtomicLong removedEntries = new AtomicLong();
+
+    private final AtomicLong removedMissingEntries = new AtomicLong();
+
+    /**
+     * Simple constructor passing the two backing caches.
+     *
+     * @param terms the cache to use for storing real terms
+     * @param maxEntries the configured capacity of the terms cache, only used for reporting
+     * @param missing the cache to use for storing negative lookup markers
+     * @param maxMissingEntries the configured capacity of the negative lookups cache, only used for reporting
+     */
+    public MonitoredTermCache(Cache<VocabularyTerm> terms, int maxEntries, Cache<VocabularyTerm> missing,
+        int maxMissingEntries)
+    {
+        this.terms = terms;
+        this.maxEntries = maxEntries;
+        this.missing = missing;
+        this.maxMissingEntries = maxMissingEntries;
+        this.terms.addCacheEntryListener(new RemovalCounter(this.removedEntries));
+        this.missing.addCacheEntryListener(new RemovalCounter(this.removedMissingEntries));
+    }
+
+    @Override
+    public void set(String key, VocabularyTerm value)
+    {
+        if (isMissingMarker(value)) {
+            this.missing.set(key, value);
+        } else {
+            this.terms.set(key, value);
+        }
+    }
+
+    @Override
+    public VocabularyTerm get(String key)
+    {
+        VocabularyTerm result = this.terms.get(key);
+        if (result != null) {
+            this.hits.incrementAndGet();
+            return result;
+        }
+        result = this.missing.get(key);
+        if (result != null) {
+            this.missingHits.incrementAndGet();
+        } else {
+            this.misses.incrementAndGet();
+        }
+        return result;
+    }
+
+    @Override
+    public void remove(String key)
+    {
+        this.removals.incrementAndGet();
+        this.terms.remove(key);
+        this.missing.remove(key);
+    }
+
+    /** Clears the cache. Since the cache is only cleared when the vocabulary is reindexed, statistics are reset too. */
+    @Override
+    public void removeAll()
+    {
+        this.terms.removeAll();
+        this.missing.removeAll();
+        this.hits.set(0);
+        this.missingHits.set(0);
+        this.misses.set(0);
+        this.removals.set(0);
+        this.removedEntries.set(0);
+        this.removedMissingEntries.set(0);
+    }
+
+    @Override
+    public void addCacheEntryListener(CacheEntryListener<VocabularyTerm> listener)
+    {
+        this.terms.addCacheEntryListener(listener);
+        this.missing.addCacheEntryListener(listener);
+    }
+
+    @Override
+    public void removeCacheEntryListener(CacheEntryListener<VocabularyTerm> listener)
+    {
+        this.terms.removeCacheEntryListener(listener);
+        this.missing.removeCacheEntryListener(listener);
+    }
+
+    @Override
+    public void dispose()
+    {
+        this.terms.dispose();
+        this.missing.dispose();
+    }
+
+    /**
+     * Get a snapshot of the usage statistics of this cache. The returned map contains the following keys:
+     * <dl>
+     * <dt>{@code hits}</dt>
+     * <dd>the number of lookups which found an existing term</dd>
+     * <dt>{@code negativeHits}</dt>
+     * <dd>the number of lookups which found a marker for a term known not to exist</dd>
+     * <dt>{@code misses}</dt>
+     * <dd>the number of lookups which didn't find anything in the cache</dd>
+     * <dt>{@code hitRatio}</dt>
+     * <dd>the percentage of lookups answered from the cache, including negative hits</dd>
+     * <dt>{@code evictions}</dt>
+     * <dd>the number of terms pushed out of the cache because of the size or time limits</dd>
+     * <dt>{@code negativeEvictions}</dt>
+     * <dd>the number of negative markers pushed out of the cache</dd>
+     * <dt>{@code maxEntries}, {@code negativeMaxEntries}</dt>
+     * <dd>the configured capacities</dd>
+     * </dl>
+     *
+     * @return a map with the current statistics values
+     */
+    public Map<String, Long> getStatistics()
+    {
+        Map<String, Long> result = new LinkedHashMap<>();
+        long hitCount = this.hits.get();
+        long missingHitCount = this.missingHits.get();
+        long missCount = this.misses.get();
+        long total = hitCount + missingHitCount + missCount;
+        result.put("hits", hitCount);
+        result.put("negativeHits", missingHitCount);
+        result.put("misses", missCount);
+        result.put("hitRatio", total == 0 ? 0 : (hitCount + missingHitCount) * 100 / total);
+        // Explicit removals are counted in both caches, since we don't know where the key is stored
+        long explicitRemovals = this.removals.get();
+        result.put("evictions", Math.max(0, this.removedEntries.get() - explicitRemovals));
+        result.put("negativeEvictions", Math.max(0, this.removedMissingEntries.get() - explicitRemovals));
+        result.put("maxEntries", (long) this.maxEntries);
+        result.put("negativeMaxEntries", (long) this.maxMissingEntries);
+        return result;
+    }
+
+    private boolean isMissingMarker(VocabularyTerm term)
+    {
+        return term != null && term.getId() == null;
+    }
+
+    /** Counts entries removed from a cache, either explicitly or by the eviction policy. */
+    private static final class RemovalCounter implements CacheEntryListener<VocabularyTerm>
+    {
+        private final AtomicLong counter;
+
+        RemovalCounter(AtomicLong counter)
+        {
+            this.counter = counter;
+        }
+
+        @Override
+        public void cacheEntryAdded(CacheEntryEvent<VocabularyTerm> event)
+        {
+            // Nothing to do
+        }
+
+        @Override
+        public void cacheEntryRemoved(CacheEntryEvent<VocabularyTerm> event)
+        {
+            this.counter.incrementAndGet();
+        }
+
+        @Override
+        public void cacheEntryModified(CacheEntryEvent<VocabularyTerm> event)
+        {
+            // Nothing to do
+        }
+    }
+}
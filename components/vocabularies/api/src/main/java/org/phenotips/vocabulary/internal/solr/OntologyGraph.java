@@ -0,0 +1,367 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact, immutable, in-memory representation of the {@code is_a} hierarchy of a vocabulary. Terms are mapped to
+ * consecutive integer indexes, and parents, children and the full ancestor closure of each term are stored as sorted
+ * primitive arrays, so that hierarchy queries can be answered without querying the Solr index or loading the terms.
+ * Sorted arrays are used for the closure instead of bitsets, since ontology terms only have a few dozen ancestors, and
+ * one bitset per term would need memory quadratic in the size of the vocabulary.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public final class OntologyGraph
+{
+    private static final int[] NONE = new int[0];
+
+    /** The term identifiers, indexed by their position in the graph. */
+    private final String[] ids;
+
+    /** Reverse lookup for {@link #ids}. */
+    private final Map<String, Integer> indexes;
+
+    /** The direct parents of each term, as sorted indexes. */
+    private final int[][] parents;
+
+    /** The direct children of each term, as sorted indexes. */
+    private final int[][] children;
+
+    /** The ancestors of each term, excluding the term itself, as sorted indexes. */
+    private final int[][] ancestors;
+
+    /**
+     * Builds the graph from the direct parents of each term. Parents which aren't themselves listed as terms are added
+     * as root terms. Cycles, which aren't valid in an ontology, are broken arbitrarily.
+     *
+     * @param parentsById a map with term identifiers as keys and the identifiers of their direct parents as values
+     */
+    public OntologyGraph(Map<String, ? extends Collection<String>> parentsById)
+    {
+        Map<String, Integer> index = new LinkedHashMap<>(parentsById.size() * 2);
+        for (Map.Entry<String, ? extends Collection<String>> entry : parentsById.entrySet()) {
+            indexOf(index, entry.getKey());
+            for (String parent : entry.getValue()) {
+                indexOf(index, parent);
+            }
+        }
+        int size = index.size();
+        this.ids = index.keySet().toArray(new String[size]);
+        this.indexes = new HashMap<>(index);
+
+        this.parents = new int[size][];
+        Arrays.fill(this.parents, NONE);
+        int[] childCount = new int[size];
+        for (Map.Entry<String, ? extends Collection<String>> entry : parentsById.entrySet()) {
+            Set<Integer> termParents = new LinkedHashSet<>();
+            for (String parent : entry.getValue()) {
+                termParents.add(index.get(parent));
+            }
+            int term = index.get(entry.getKey());
+            termParents.remove(term);
+            this.parents[term] = toSortedArray(termParents);
+            for (int parent : this.parents[term]) {
+                ++childCount[parent];
+            }
+        }
+
+        this.children = new int[size][];
+        for (int i = 0; i < size; ++i) {
+            this.children[i] = childCount[i] == 0 ? NONE : new int[childCount[i]];
+            childCount[i] = 0;
+        }
+        // Terms are processed in increasing order, so the children arrays are filled already sorted
+        for (int i = 0; i < size; ++i) {
+            for (int parent : this.parents[i]) {
+                this.children[parent][childCount[parent]++] = i;
+            }
+        }
+
+        this.ancestors = new int[size][];
+        byte[] state = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            computeAncestors(i, state);
+        }
+    }
+
+    /**
+     * The number of terms in the graph.
+     *
+     * @return a positive number, or {@code 0} if the graph is empty
+     */
+    public int size()
+    {
+        return this.ids.length;
+    }
+
+    /**
+     * Checks if a term is part of the graph.
+     *
+     * @param id the identifier of the term to check
+     * @return {@code true} if the term is known
+     */
+    public boolean contains(String id)
+    {
+        return this.indexes.containsKey(id);
+    }
+
+    /**
+     * Get the direct parents of a term.
+     *
+     * @param id the identifier of the target term
+     * @return the identifiers of the parents, or an empty list if the term is a root or isn't known
+     */
+    public List<String> getParents(String id)
+    {
+        return toIds(this.parents, id);
+    }
+
+    /**
+     * Get all the ancestors of a term, excluding the term itself.
+     *
+     * @param id the identifier of the target term
+     * @return the identifiers of the ancestors, or an empty list if the term is a root or isn't known
+     */
+    public List<String> getAncestors(String id)
+    {
+        return toIds(this.ancestors, id);
+    }
+
+    /**
+     * Get all the descendants of a term, excluding the term itself.
+     *
+     * @param id the identifier of the target term
+     * @return the identifiers of the descendants, in breadth-first order, or an empty list if the term is a leaf or
+     *         isn't known
+     */
+    public List<String> getDescendants(String id)
+    {
+        Integer term = this.indexes.get(id);
+        if (term == null) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        Set<Integer> visited = new HashSet<>();
+        visited.add(term);
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(term);
+        while (!queue.isEmpty()) {
+            for (int child : this.children[queue.poll()]) {
+                if (visited.add(child)) {
+                    result.add(this.ids[child]);
+                    queue.add(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the term itself and all its ancestors.
+     *
+     * @param id the identifier of the target term
+     * @return the identifiers of the term and its ancestors, or an empty list if the term isn't known
+     */
+    public List<String> getAncestorsAndSelf(String id)
+    {
+        Integer term = this.indexes.get(id);
+        if (term == null) {
+            return Collections.emptyList();
+        }
+        final int[] termAncestors = this.ancestors[term];
+        final String self = this.ids[term];
+        return new AbstractList<String>()
+        {
+            @Override
+            public String get(int index)
+            {
+                return index == 0 ? self : OntologyGraph.this.ids[termAncestors[index - 1]];
+            }
+
+            @Override
+            public int size()
+            {
+                return termAncestors.length + 1;
+            }
+        };
+    }
+
+    /**
+     * Checks if a term is an ancestor of another term.
+     *
+     * @param ancestorId the identifier of the potential ancestor
+     * @param descendantId the identifier of the potential descendant
+     * @return {@code true} if both terms are known, and the first one is a strict ancestor of the second one
+     */
+    public boolean isAncestor(String ancestorId, String descendantId)
+    {
+        Integer ancestor = this.indexes.get(ancestorId);
+        Integer descendant = this.indexes.get(descendantId);
+        return ancestor != null && descendant != null
+            && Arrays.binarySearch(this.ancestors[descendant], ancestor) >= 0;
+    }
+
+    /**
+     * Computes the distance between two terms, as the minimum number of {@code is_a} edges that must be traversed to
+     * get from one term to the other through a common ancestor.
+     *
+     * @param fromId the identifier of the first term
+     * @param toId the identifier of the second term
+     * @return the distance between the two terms, {@code 0} if they are the same term, or {@code -1} if one of the
+     *         terms is unknown or they don't have a common ancestor
+     */
+    public long getDistance(String fromId, String toId)
+    {
+        Integer from = this.indexes.get(fromId);
+        Integer to = this.indexes.get(toId);
+        if (from == null || to == null) {
+            return -1;
+        }
+        if (from.intValue() == to.intValue()) {
+            return 0;
+        }
+        Map<Integer, Integer> fromLevels = getAncestorLevels(from);
+        Map<Integer, Integer> toLevels = getAncestorLevels(to);
+        long result = Long.MAX_VALUE;
+        for (Map.Entry<Integer, Integer> level : fromLevels.entrySet()) {
+            Integer otherLevel = toLevels.get(level.getKey());
+            if (otherLevel != null) {
+                result = Math.min(result, level.getValue() + otherLevel);
+            }
+        }
+        return result == Long.MAX_VALUE ? -1 : result;
+    }
+
+    /**
+     * Breadth-first traversal of the ancestors of a term, computing the minimum distance to each ancestor.
+     *
+     * @param term the index of the term
+     * @return a map from ancestor indexes, including the term itself, to their distance from the term
+     */
+    private Map<Integer, Integer> getAncestorLevels(int term)
+    {
+        Map<Integer, Integer> levels = new HashMap<>(this.ancestors[term].length * 2 + 2);
+        levels.put(term, 0);
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(term);
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            int nextLevel = levels.get(current) + 1;
+            for (int parent : this.parents[current]) {
+                if (!levels.containsKey(parent)) {
+                    levels.put(parent, nextLevel);
+                    queue.add(parent);
+                }
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * Memoized depth-first computation of the ancestor closure of a term.
+     *
+     * @param term the index of the term to process
+     * @param state {@code 0} for unprocessed terms, {@code 1} for terms currently being processed, and {@code 2} for
+     *            terms whose ancestors are already computed
+     */
+    private void computeAncestors(int term, byte[] state)
+    {
+        if (state[term] != 0) {
+            return;
+        }
+        state[term] = 1;
+        Set<Integer> result = new LinkedHashSet<>();
+        for (int parent : this.parents[term]) {
+            if (state[parent] == 1) {
+                // Cycle, ignore this edge
+                continue;
+            }
+            computeAncestors(parent, state);
+            result.add(parent);
+            for (int ancestor : this.ancestors[parent]) {
+                result.add(ancestor);
+            }
+        }
+        result.remove(term);
+        this.ancestors[term] = toSortedArray(result);
+        state[term] = 2;
+    }
+
+    private List<String> toIds(final int[][] relation, String id)
+    {
+        Integer term = this.indexes.get(id);
+        if (term == null) {
+            return Collections.emptyList();
+        }
+        final int[] related = relation[term];
+        return new AbstractList<String>()
+        {
+            @Override
+            public String get(int index)
+            {
+                return OntologyGraph.this.ids[related[index]];
+            }
+
+            @Override
+            public int size()
+            {
+                return related.length;
+            }
+        };
+    }
+
+    private static int indexOf(Map<String, Integer> index, String id)
+    {
+        Integer result = index.get(id);
+        if (result == null) {
+            result = index.size();
+            index.put(id, result);
+        }
+        return result;
+    }
+
+    private static int[] toSortedArray(Collection<Integer> values)
+    {
+        if (values.isEmpty()) {
+            return NONE;
+        }
+        int[] result = new int[values.size()];
+        int i = 0;
+        for (Integer value : values) {
+            result[i++] = value;
+        }
+        Arrays.sort(result);
+        return result;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * A term listed in the hierarchy of a vocabulary. Its identifier and its place in the hierarchy are known from the
+ * {@link OntologyGraph}, and the actual term is only loaded from the vocabulary when other data is needed.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class OntologyGraphTerm implements VocabularyTerm
+{
+    private final String id;
+
+    private final OntologyGraph graph;
+
+    private final Vocabulary vocabulary;
+
+    /** The set this term was listed in, if any, which loads the actual terms of all its members at once. */
+    private final OntologyGraphTermSet set;
+
+    /** The actual term, loaded when needed. */
+    private VocabularyTerm term;
+
+    /** Whether {@link #term} was already looked up, since it may be {@code null}. */
+    private boolean loaded;
+
+    /**
+     * Simple constructor.
+     *
+     * @param id the identifier of the term
+     * @param graph the hierarchy of the vocabulary, which lists the term
+     * @param vocabulary the vocabulary owning the term
+     */
+    OntologyGraphTerm(String id, OntologyGraph graph, Vocabulary vocabulary)
+    {
+        this(id, graph, vocabulary, null);
+    }
+
+    /**
+     * Constructor for a term listed in a set of terms, which loads the actual term together with the other terms of the
+     * set.
+     *
+     * @param id the identifier of the term
+     * @param graph the hierarchy of the vocabulary, which lists the term
+     * @param vocabulary the vocabulary owning the term
+     * @param set the set listing the term, may be {@code null}
+     */
+    OntologyGraphTerm(String id, OntologyGraph graph, Vocabulary vocabulary, OntologyGraphTermSet set)
+    {
+        this.id = id;
+        this.graph = graph;
+        this.vocabulary = vocabulary;
+        this.set = set;
+    }
+
+    @Override
+    public String getId()
+    {
+        return this.id;
+    }
+
+    @Override
+    public String getName()
+    {
+        VocabularyTerm actual = getActualTerm();
+        return actual != null ? actual.getName() : null;
+    }
+
+    @Override
+    public String getTranslatedName()
+    {
+        VocabularyTerm actual = getActualTerm();
+        return actual != null ? actual.getTranslatedName() : null;
+    }
+
+    @Override
+    public String getDescription()
+    {
+        VocabularyTerm actual = getActualTerm();
+        return actual != null ? actual.getDescription() : null;
+    }
+
+    @Override
+    public String getTranslatedDescription()
+    {
+        VocabularyTerm actual = getActualTerm();
+        return actual != null ? actual.getTranslatedDescription() : null;
+    }
+
+    @Override
+    public Set<VocabularyTerm> getParents()
+    {
+        return new OntologyGraphTermSet(this.graph.getParents(this.id), this.graph, this.vocabulary);
+    }
+
+    @Override
+    public Set<VocabularyTerm> getAncestors()
+    {
+        return new OntologyGraphTermSet(this.graph.getAncestors(this.id), this.graph, this.vocabulary);
+    }
+
+    @Override
+    public Set<VocabularyTerm> getAncestorsAndSelf()
+    {
+        return new OntologyGraphTermSet(this.graph.getAncestorsAndSelf(this.id), this.graph, this.vocabulary);
+    }
+
+    @Override
+    public long getDistanceTo(VocabularyTerm other)
+    {
+        if (other == null) {
+            return -1;
+        }
+        if (this.vocabulary.equals(other.getVocabulary()) && this.graph.contains(other.getId())) {
+            return this.graph.getDistance(this.id, other.getId());
+        }
+        VocabularyTerm actual = getActualTerm();
+        return actual != null ? actual.getDistanceTo(other) : -1;
+    }
+
+    @Override
+    public Object get(String name)
+    {
+        VocabularyTerm actual = getActualTerm();
+        return actual != null ? actual.get(name) : null;
+    }
+
+    @Override
+    public Collection<?> getTranslatedValues(String name)
+    {
+        VocabularyTerm actual = getActualTerm();
+        return actual != null ? actual.getTranslatedValues(name) : Collections.emptyList();
+    }
+
+    @Override
+    public Vocabulary getVocabulary()
+    {
+        return this.vocabulary;
+    }
+
+    @Override
+    public JSONObject toJSON()
+    {
+        VocabularyTerm actual = getActualTerm();
+        return actual != null ? actual.toJSON() : new JSONObject().put("id", this.id);
+    }
+
+    @Override
+    public void writeJSONFields(JsonGenerator generator) throws IOException
+    {
+        VocabularyTerm actual = getActualTerm();
+        if (actual != null) {
+            actual.writeJSONFields(generator);
+        } else {
+            generator.writeStringField("id", this.id);
+        }
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return this.id.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof VocabularyTerm)) {
+            return false;
+        }
+        return StringUtils.equals(this.id, ((VocabularyTerm) obj).getId());
+    }
+
+    @Override
+    public String toString()
+    {
+        return "[" + this.id + "] " + getName();
+    }
+
+    private synchronized VocabularyTerm getActualTerm()
+    {
+        if (!this.loaded) {
+            this.term = this.set != null ? this.set.getActualTerm(this.id) : this.vocabulary.getTerm(this.id);
+            this.loaded = true;
+        }
+        return this.term;
+    }
+}
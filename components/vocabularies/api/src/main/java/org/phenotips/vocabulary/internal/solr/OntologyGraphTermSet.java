@@ -0,0 +1,121 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read-only set of terms backed by the identifiers listed in an {@link OntologyGraph}. The size and membership of the
+ * set are answered from the graph, and iterating it returns {@link OntologyGraphTerm lightweight terms}, so walking the
+ * hierarchy doesn't query the Solr index. When the data of one of these terms is needed, the actual terms of the whole
+ * set are loaded at once, since displaying a term usually needs the names of all its parents.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+final class OntologyGraphTermSet extends AbstractSet<VocabularyTerm>
+{
+    /** The identifiers of the terms in this set, as listed in the graph. */
+    private final List<String> identifiers;
+
+    private final OntologyGraph graph;
+
+    private final Vocabulary vocabulary;
+
+    /** The actual terms of this set, indexed by their identifier, loaded the first time one of them is needed. */
+    private Map<String, VocabularyTerm> terms;
+
+    /**
+     * Simple constructor.
+     *
+     * @param identifiers the identifiers of the terms in this set, as returned by the graph
+     * @param graph the hierarchy of the vocabulary
+     * @param vocabulary the vocabulary owning the terms, used for loading their data when needed
+     */
+    OntologyGraphTermSet(List<String> identifiers, OntologyGraph graph, Vocabulary vocabulary)
+    {
+        this.identifiers = identifiers;
+        this.graph = graph;
+        this.vocabulary = vocabulary;
+    }
+
+    @Override
+    public int size()
+    {
+        return this.identifiers.size();
+    }
+
+    @Override
+    public boolean contains(Object o)
+    {
+        if (o instanceof String) {
+            return this.identifiers.contains(o);
+        } else if (o instanceof VocabularyTerm) {
+            return this.identifiers.contains(((VocabularyTerm) o).getId());
+        }
+        return false;
+    }
+
+    @Override
+    public Iterator<VocabularyTerm> iterator()
+    {
+        final Iterator<String> ids = this.identifiers.iterator();
+        return new Iterator<VocabularyTerm>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return ids.hasNext();
+            }
+
+            @Override
+            public VocabularyTerm next()
+            {
+                return new OntologyGraphTerm(ids.next(), OntologyGraphTermSet.this.graph,
+                    OntologyGraphTermSet.this.vocabulary, OntologyGraphTermSet.this);
+            }
+        };
+    }
+
+    /**
+     * Returns the actual term for one of the members of this set, loading all the members with a single query the first
+     * time this is called.
+     *
+     * @param id the identifier of the requested term
+     * @return the term loaded from the vocabulary, or {@code null} if the vocabulary doesn't have it
+     */
+    synchronized VocabularyTerm getActualTerm(String id)
+    {
+        if (this.terms == null) {
+            this.terms = new HashMap<>();
+            for (VocabularyTerm term : this.vocabulary.getTerms(this.identifiers)) {
+                if (term != null) {
+                    this.terms.put(term.getId(), term);
+                }
+            }
+        }
+        return this.terms.get(id);
+    }
+}
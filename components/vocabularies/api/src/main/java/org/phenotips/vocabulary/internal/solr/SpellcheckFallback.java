@@ -0,0 +1,200 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.xwiki.configuration.ConfigurationSource;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.solr.common.SolrDocumentList;
+
+/**
+ * Decides whether a search reported as misspelled by Solr should be run again with the spellchecked query, and counts
+ * how often this happens. Partial words typed in a suggestion field are almost always reported as misspelled, so by
+ * default the spellchecked query is only run when the original query didn't already find enough good matches.
+ * <p>
+ * The behavior is configured in {@code xwiki.properties} with {@code phenotips.ontologies.spellcheck.*} settings
+ * applying to all vocabularies, and {@code phenotips.ontologies.<vocabularyId>.spellcheck.*} settings overriding them
+ * for a specific vocabulary:
+ * </p>
+ * <dl>
+ * <dt>{@code mode}</dt>
+ * <dd>{@code weak} (the default) re-queries only weak results, {@code always} re-queries every misspelled search, and
+ * {@code never} disables the spellchecked query</dd>
+ * <dt>{@code minHits}</dt>
+ * <dd>the number of results, capped by the number of requested rows, that make a result list strong; 10 by
+ * default</dd>
+ * <dt>{@code minScore}</dt>
+ * <dd>the score that the last of these results must reach; 0 by default, i.e. only the number of results counts</dd>
+ * </dl>
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public class SpellcheckFallback
+{
+    /** The supported strategies. */
+    public enum Mode
+    {
+        /** Always run the spellchecked query when Solr suggests a correction. */
+        ALWAYS,
+        /** Only run the spellchecked query when the original results are weak. */
+        WEAK,
+        /** Never run the spellchecked query. */
+        NEVER
+    }
+
+    private static final String CONFIGURATION_PREFIX = "phenotips.ontologies.";
+
+    private static final String SPELLCHECK_CONFIGURATION = "spellcheck.";
+
+    private static final String SCORE_FIELD_NAME = "score";
+
+    private static final int DEFAULT_MIN_HITS = 10;
+
+    private final Mode mode;
+
+    private final int minHits;
+
+    private final float minScore;
+
+    private final AtomicLong searches = new AtomicLong();
+
+    private final AtomicLong misspelled = new AtomicLong();
+
+    private final AtomicLong requeries = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong improved = new AtomicLong();
+
+    /**
+     * Constructor reading the settings for a vocabulary.
+     *
+     * @param configuration the configuration source, may be {@code null} in which case the defaults are used
+     * @param vocabularyId the identifier of the vocabulary, used for reading vocabulary-specific settings
+     */
+    public SpellcheckFallback(ConfigurationSource configuration, String vocabularyId)
+    {
+        String modeName = getSetting(configuration, vocabularyId, "mode", String.class);
+        Mode configuredMode = Mode.WEAK;
+        if (StringUtils.isNotBlank(modeName)) {
+            try {
+                configuredMode = Mode.valueOf(modeName.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ex) {
+                // Unknown mode, keep the default
+            }
+        }
+        this.mode = configuredMode;
+        Integer configuredHits = getSetting(configuration, vocabularyId, "minHits", Integer.class);
+        this.minHits = configuredHits != null && configuredHits > 0 ? configuredHits : DEFAULT_MIN_HITS;
+        Float configuredScore = getSetting(configuration, vocabularyId, "minScore", Float.class);
+        this.minScore = configuredScore != null ? configuredScore : 0;
+    }
+
+    /**
+     * Records a search.
+     */
+    public void searched()
+    {
+        this.searches.incrementAndGet();
+    }
+
+    /**
+     * Decides whether a misspelled search should be run again with the spellchecked query.
+     *
+     * @param results the results of the original query
+     * @param rows the number of requested results, may be {@code null} if not specified
+     * @return {@code true} if the spellchecked query should be run
+     */
+    public boolean shouldRequery(SolrDocumentList results, Integer rows)
+    {
+        this.misspelled.incrementAndGet();
+        boolean result;
+        if (this.mode == Mode.ALWAYS) {
+            result = true;
+        } else if (this.mode == Mode.NEVER) {
+            result = false;
+        } else {
+            result = isWeak(results, rows);
+        }
+        if (result) {
+            this.requeries.incrementAndGet();
+        } else {
+            this.skipped.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * Records that the results of the spellchecked query were better, and replaced the original results.
+     */
+    public void improved()
+    {
+        this.improved.incrementAndGet();
+    }
+
+    /**
+     * Get a snapshot of the counters: {@code searches}, the total number of searches, {@code misspelled}, how many of
+     * them Solr suggested a correction for, {@code requeries}, how many times the spellchecked query was run,
+     * {@code skipped}, how many times it was skipped, and {@code improved}, how many times its results were better.
+     *
+     * @return a map with the current counter values
+     */
+    public Map<String, Long> getStatistics()
+    {
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("searches", this.searches.get());
+        result.put("misspelled", this.misspelled.get());
+        result.put("requeries", this.requeries.get());
+        result.put("skipped", this.skipped.get());
+        result.put("improved", this.improved.get());
+        return result;
+    }
+
+    private boolean isWeak(SolrDocumentList results, Integer rows)
+    {
+        int wanted = rows != null && rows > 0 ? Math.min(this.minHits, rows) : this.minHits;
+        if (results == null || results.size() < wanted) {
+            return true;
+        }
+        if (this.minScore <= 0) {
+            return false;
+        }
+        Object score = results.get(wanted - 1).getFieldValue(SCORE_FIELD_NAME);
+        return !(score instanceof Number) || ((Number) score).floatValue() < this.minScore;
+    }
+
+    private static <T> T getSetting(ConfigurationSource configuration, String vocabularyId, String setting,
+        Class<T> type)
+    {
+        if (configuration == null) {
+            return null;
+        }
+        T result = configuration.getProperty(CONFIGURATION_PREFIX + vocabularyId + '.' + SPELLCHECK_CONFIGURATION
+            + setting, type);
+        if (result == null) {
+            result = configuration.getProperty(CONFIGURATION_PREFIX + SPELLCHECK_CONFIGURATION + setting, type);
+        }
+        return result;
+    }
+}
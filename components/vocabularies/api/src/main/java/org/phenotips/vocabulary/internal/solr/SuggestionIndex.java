@@ -0,0 +1,418 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Compact, immutable, in-memory prefix index over the names, synonyms and identifiers of vocabulary terms, used for
+ * answering autocomplete requests without querying Solr. Each term is indexed under its full labels and under every
+ * word suffix of its labels, so that typing any word of a name finds the term. Keys are stored in a sorted array, so
+ * that all the keys starting with a prefix form a contiguous range found with two binary searches, and a tree of range
+ * maximums over the key weights allows extracting the best matches of a range without scanning all of it, which keeps
+ * even one letter prefixes fast. In the serialized form, keys are front-coded, i.e. only the part that differs from the
+ * previous key is written.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+public final class SuggestionIndex
+{
+    /** Priority of matches at the start of the term name or identifier. */
+    public static final int NAME = 4;
+
+    /** Priority of matches at the start of a synonym. */
+    public static final int SYNONYM = 3;
+
+    /** Priority of matches at the start of a word inside the term name. */
+    public static final int NAME_WORD = 2;
+
+    /** Priority of matches at the start of a word inside a synonym. */
+    public static final int SYNONYM_WORD = 1;
+
+    private static final int FORMAT_VERSION = 1;
+
+    /** Shorter keys are preferred among keys of the same priority, up to this length. */
+    private static final int MAX_LENGTH_PENALTY = 1023;
+
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{L}\\p{N}:]+");
+
+    private static final String SPACE = " ";
+
+    /** The identifiers of the indexed terms. */
+    private final String[] terms;
+
+    /** The normalized keys, sorted. */
+    private final String[] keys;
+
+    /** The index, in {@link #terms}, of the term matched by each key. */
+    private final int[] keyTerms;
+
+    /** The weight of each key; higher is better. */
+    private final int[] weights;
+
+    /**
+     * Range maximum tree: leaves, starting at position {@code leaves}, hold key indexes, and each inner node holds the
+     * best key of its two children, or {@code -1} if it has no keys.
+     */
+    private final int[] tree;
+
+    private final int leaves;
+
+    private SuggestionIndex(String[] terms, String[] keys, int[] keyTerms, int[] weights)
+    {
+        this.terms = terms;
+        this.keys = keys;
+        this.keyTerms = keyTerms;
+        this.weights = weights;
+
+        int capacity = 1;
+        while (capacity < keys.length) {
+            capacity <<= 1;
+        }
+        this.leaves = capacity;
+        this.tree = new int[2 * capacity];
+        Arrays.fill(this.tree, -1);
+        for (int i = 0; i < keys.length; ++i) {
+            this.tree[capacity + i] = i;
+        }
+        for (int node = capacity - 1; node > 0; --node) {
+            this.tree[node] = best(this.tree[2 * node], this.tree[2 * node + 1]);
+        }
+    }
+
+    /**
+     * The number of keys in the index.
+     *
+     * @return a positive number, or {@code 0} if the index is empty
+     */
+    public int size()
+    {
+        return this.keys.length;
+    }
+
+    /**
+     * Find the terms which have a label or identifier, or a word inside a label, starting with the input.
+     *
+     * @param input the text that the user entered
+     * @param maxResults the maximum number of terms to return
+     * @return the identifiers of the best matching terms, best first, or an empty list if nothing matches
+     */
+    public List<String> suggest(String input, int maxResults)
+    {
+        String prefix = normalize(input);
+        if (prefix.isEmpty() || maxResults <= 0) {
+            return Collections.emptyList();
+        }
+        int from = lowerBound(prefix);
+        int to = lowerBound(prefix + Character.MAX_VALUE);
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+
+        // Best-first traversal of the tree nodes covering the [from, to) range
+        PriorityQueue<Integer> nodes = new PriorityQueue<>((a, b) -> compare(this.tree[a], this.tree[b]));
+        for (int left = from + this.leaves, right = to + this.leaves; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                nodes.add(left++);
+            }
+            if ((right & 1) == 1) {
+                nodes.add(--right);
+            }
+        }
+        List<String> result = new ArrayList<>(maxResults);
+        Set<Integer> seen = new HashSet<>();
+        while (!nodes.isEmpty() && result.size() < maxResults) {
+            int node = nodes.poll();
+            if (node >= this.leaves) {
+                int term = this.keyTerms[this.tree[node]];
+                if (seen.add(term)) {
+                    result.add(this.terms[term]);
+                }
+                continue;
+            }
+            for (int child = 2 * node; child <= 2 * node + 1; ++child) {
+                if (this.tree[child] >= 0) {
+                    nodes.add(child);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Serialize this index.
+     *
+     * @param out the stream where the index is written; it is not closed
+     * @throws IOException if writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException
+    {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(FORMAT_VERSION);
+        data.writeInt(this.terms.length);
+        for (String term : this.terms) {
+            data.writeUTF(term);
+        }
+        data.writeInt(this.keys.length);
+        String previous = StringUtils.EMPTY;
+        for (int i = 0; i < this.keys.length; ++i) {
+            int common = StringUtils.indexOfDifference(previous, this.keys[i]);
+            common = common < 0 ? previous.length() : common;
+            data.writeShort(common);
+            data.writeUTF(this.keys[i].substring(common));
+            data.writeInt(this.keyTerms[i]);
+            data.writeInt(this.weights[i]);
+            previous = this.keys[i];
+        }
+        data.flush();
+    }
+
+    /**
+     * Store this index in a compressed file. The index is first written to a temporary file, which then replaces the
+     * target file, so that readers never see a partially written index.
+     *
+     * @param file the target file; missing parent directories are created
+     * @throws IOException if writing fails
+     */
+    public void writeTo(File file) throws IOException
+    {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParentFile().toPath());
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                writeTo(out);
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp.toPath());
+        }
+    }
+
+    /**
+     * Read an index previously stored with {@link #writeTo(File)}.
+     *
+     * @param file the file to read
+     * @return the index
+     * @throws IOException if reading fails or the file doesn't hold a valid index
+     */
+    public static SuggestionIndex readFrom(File file) throws IOException
+    {
+        try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return readFrom(in);
+        }
+    }
+
+    /**
+     * Read an index previously serialized with {@link #writeTo(OutputStream)}.
+     *
+     * @param in the stream to read from; it is not closed
+     * @return the index
+     * @throws IOException if reading fails or the stream doesn't hold a valid index
+     */
+    public static SuggestionIndex readFrom(InputStream in) throws IOException
+    {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != FORMAT_VERSION) {
+            throw new IOException("Unsupported suggestion index format");
+        }
+        String[] terms = new String[data.readInt()];
+        for (int i = 0; i < terms.length; ++i) {
+            terms[i] = data.readUTF();
+        }
+        int size = data.readInt();
+        String[] keys = new String[size];
+        int[] keyTerms = new int[size];
+        int[] weights = new int[size];
+        String previous = StringUtils.EMPTY;
+        for (int i = 0; i < size; ++i) {
+            int common = data.readUnsignedShort();
+            keys[i] = previous.substring(0, common) + data.readUTF();
+            keyTerms[i] = data.readInt();
+            if (keyTerms[i] < 0 || keyTerms[i] >= terms.length) {
+                throw new IOException("Corrupted suggestion index");
+            }
+            weights[i] = data.readInt();
+            previous = keys[i];
+        }
+        return new SuggestionIndex(terms, keys, keyTerms, weights);
+    }
+
+    /**
+     * Normalizes text for indexing and lookup: accents and punctuation are removed, and letters are lowercased.
+     *
+     * @param text the text to normalize
+     * @return the normalized text, may be empty
+     */
+    static String normalize(String text)
+    {
+        if (text == null) {
+            return StringUtils.EMPTY;
+        }
+        return SEPARATORS.matcher(StringUtils.stripAccents(text).toLowerCase(Locale.ROOT)).replaceAll(SPACE).trim();
+    }
+
+    private int lowerBound(String key)
+    {
+        int low = 0;
+        int high = this.keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.keys[middle].compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int best(int a, int b)
+    {
+        if (a < 0) {
+            return b;
+        }
+        if (b < 0) {
+            return a;
+        }
+        return compare(a, b) <= 0 ? a : b;
+    }
+
+    /** Orders keys by decreasing weight, and alphabetically for equal weights. */
+    private int compare(int a, int b)
+    {
+        int result = Integer.compare(this.weights[b], this.weights[a]);
+        return result != 0 ? result : Integer.compare(a, b);
+    }
+
+    /**
+     * Collects the labels of the terms to index.
+     */
+    public static final class Builder
+    {
+        private final Map<String, Integer> terms = new LinkedHashMap<>();
+
+        /** The best weight and term for each distinct key and term pair, sorted by key. */
+        private final Map<String, Map<Integer, Integer>> keys = new TreeMap<>();
+
+        /**
+         * Index a label of a term.
+         *
+         * @param termId the identifier of the term
+         * @param label a name, synonym or identifier of the term
+         * @param priority one of {@link #NAME} or {@link #SYNONYM}; matches inside the label get a lower priority
+         * @return this builder
+         */
+        public Builder add(String termId, String label, int priority)
+        {
+            String key = normalize(label);
+            if (StringUtils.isBlank(termId) || key.isEmpty()) {
+                return this;
+            }
+            Integer term = this.terms.get(termId);
+            if (term == null) {
+                term = this.terms.size();
+                this.terms.put(termId, term);
+            }
+            addKey(key, term, priority);
+            int wordPriority = priority == NAME ? NAME_WORD : SYNONYM_WORD;
+            for (int i = key.indexOf(' '); i >= 0; i = key.indexOf(' ', i + 1)) {
+                addKey(key.substring(i + 1), term, wordPriority);
+            }
+            return this;
+        }
+
+        /**
+         * Checks if any labels were added.
+         *
+         * @return {@code true} if the index would be empty
+         */
+        public boolean isEmpty()
+        {
+            return this.keys.isEmpty();
+        }
+
+        /**
+         * Build the index.
+         *
+         * @return the index
+         */
+        public SuggestionIndex build()
+        {
+            int size = 0;
+            for (Map<Integer, Integer> keyTerms : this.keys.values()) {
+                size += keyTerms.size();
+            }
+            String[] sortedKeys = new String[size];
+            int[] keyTerms = new int[size];
+            int[] weights = new int[size];
+            int i = 0;
+            for (Map.Entry<String, Map<Integer, Integer>> key : this.keys.entrySet()) {
+                for (Map.Entry<Integer, Integer> term : key.getValue().entrySet()) {
+                    sortedKeys[i] = key.getKey();
+                    keyTerms[i] = term.getKey();
+                    weights[i] = term.getValue();
+                    ++i;
+                }
+            }
+            String[] termIds = this.terms.keySet().toArray(new String[this.terms.size()]);
+            return new SuggestionIndex(termIds, sortedKeys, keyTerms, weights);
+        }
+
+        private void addKey(String key, int term, int priority)
+        {
+            int weight = priority * (MAX_LENGTH_PENALTY + 1) - Math.min(key.length(), MAX_LENGTH_PENALTY);
+            Map<Integer, Integer> keyTerms = this.keys.get(key);
+            if (keyTerms == null) {
+                keyTerms = new LinkedHashMap<>(2);
+                this.keys.put(key, keyTerms);
+            }
+            Integer existing = keyTerms.get(term);
+            if (existing == null || existing < weight) {
+                keyTerms.put(term, weight);
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@
  */
 package org.phenotips.vocabulary.script;
 
+import org.phenotips.vocabulary.SolrVocabularyResourceManager;
 import org.phenotips.vocabulary.Vocabulary;
 import org.phenotips.vocabulary.VocabularyManager;
 import org.phenotips.vocabulary.VocabularyTerm;
@@ -25,7 +26,9 @@
 import org.xwiki.script.service.ScriptService;
 import org.xwiki.stability.Unstable;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Named;
@@ -47,6 +50,10 @@ public class VocabularyScriptService implements ScriptService
     @Inject
     private VocabularyManager manager;
 
+    /** Provides access to the term caches. */
+    @Inject
+    private SolrVocabularyResourceManager resources;
+
     /**
      * Retrieve a term from its owner vocabulary. For this to work properly, the term identifier must contain a known
      * vocabulary prefix.
@@ -113,4 +120,37 @@ public List<VocabularyTerm> search(String input, String category, int maxResults
     {
         return this.manager.search(input, category, maxResults);
     }
+
+    /**
+     * Get usage statistics for the term cache of a vocabulary, useful for sizing the cache against real traffic.
+     *
+     * @param vocabularyId the vocabulary identifier, or a {@link Vocabulary#getAliases() known alias} for it
+     * @return a map of statistic names, such as {@code hits}, {@code misses} or {@code evictions}, and their values;
+     *         an empty map if the vocabulary doesn't exist or doesn't use a term cache
+     * @since 1.4
+     * @see SolrVocabularyResourceManager#getTermCacheStatistics(String)
+     */
+    public Map<String, Long> getCacheStatistics(String vocabularyId)
+    {
+        Vocabulary vocabulary = this.manager.getVocabulary(vocabularyId);
+        if (vocabulary == null) {
+            return Collections.emptyMap();
+        }
+        return this.resources.getTermCacheStatistics(vocabulary.getIdentifier());
+    }
+
+    /**
+     * Get counters showing how often searches in a vocabulary are repeated with the query corrected by the
+     * spellchecker, useful for tuning the {@code phenotips.ontologies.spellcheck.*} settings against real traffic.
+     *
+     * @param vocabularyId the vocabulary identifier, or a {@link Vocabulary#getAliases() known alias} for it
+     * @return a map of counter names, such as {@code searches}, {@code requeries} or {@code skipped}, and their
+     *         values; an empty map if the vocabulary doesn't exist or doesn't use the spellchecker
+     * @since 1.4
+     */
+    public Map<String, Long> getSpellcheckStatistics(String vocabularyId)
+    {
+        Vocabulary vocabulary = this.manager.getVocabulary(vocabularyId);
+        return vocabulary != null ? vocabulary.getSpellcheckStatistics() : Collections.<String, Long>emptyMap();
+    }
 }
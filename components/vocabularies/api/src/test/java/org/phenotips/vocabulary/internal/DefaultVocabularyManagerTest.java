@@ -22,13 +22,19 @@
 import org.phenotips.vocabulary.VocabularyTerm;
 
 import org.xwiki.component.phase.InitializationException;
+import org.xwiki.configuration.ConfigurationSource;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.internal.DefaultExecution;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
 
@@ -39,8 +45,11 @@
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.stubbing.Answer;
 import org.slf4j.Logger;
 
+import com.xpn.xwiki.XWikiContext;
+
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -100,6 +109,8 @@
 
     private Logger logger;
 
+    private Execution execution;
+
     @Mock
     private Vocabulary hgnc;
 
@@ -190,6 +201,9 @@ public void setUp() throws Exception
         this.mocker.registerComponent(Vocabulary.class, "ethnicity", this.ethnicity);
         this.mocker.registerComponent(Vocabulary.class, "omim", this.omim);
 
+        this.execution = new DefaultExecution();
+        this.mocker.registerComponent(Execution.class, this.execution);
+
         this.vocabularyManager = this.mocker.getComponentUnderTest();
         this.logger = this.mocker.getMockedLogger();
     }
@@ -358,4 +372,72 @@ public void searchReturnsCorrectSortedListOfTermsIfOneVocabHasTermsWithNullForSc
         Assert.assertEquals(this.result4, terms.get(1));
         Assert.assertEquals(this.result6, terms.get(2));
     }
+
+    @Test
+    public void searchSkipsFailedVocabularies()
+    {
+        when(this.result4.get(SCORE_LABEL)).thenReturn((float) 3.2353);
+        when(this.result5.get(SCORE_LABEL)).thenReturn((float) 3.27893);
+        when(this.hgnc.getIdentifier()).thenReturn(HGNC_LABEL);
+        when(this.hgnc.search(SEARCH_QUERY_A_LABEL, GENE_CATEGORY, 3, null, null))
+            .thenThrow(new IllegalStateException("Solr is down"));
+        when(this.omim.search(SEARCH_QUERY_A_LABEL, GENE_CATEGORY, 3, null, null)).thenReturn(
+            Arrays.asList(this.result4, this.result5));
+        final List<VocabularyTerm> terms = this.vocabularyManager.search(SEARCH_QUERY_A_LABEL, GENE_CATEGORY, 3);
+        Assert.assertEquals(Arrays.asList(this.result5, this.result4), terms);
+        verify(this.logger).warn("Search in vocabulary [{}] failed: {}", HGNC_LABEL, "Solr is down");
+    }
+
+    @Test
+    public void searchReturnsPartialResultsWhenAVocabularyTimesOut() throws Exception
+    {
+        final ConfigurationSource configuration = this.mocker.getInstance(ConfigurationSource.class, "xwikiproperties");
+        when(configuration.getProperty("phenotips.ontologies.search.timeout", Integer.class)).thenReturn(200);
+        when(this.result6.get(SCORE_LABEL)).thenReturn((float) 1.28793);
+        when(this.hgnc.getIdentifier()).thenReturn(HGNC_LABEL);
+        when(this.hgnc.search(SEARCH_QUERY_A_LABEL, GENE_CATEGORY, 3, null, null)).thenAnswer(invocation -> {
+            Thread.sleep(10000);
+            return Collections.singletonList(this.result1);
+        });
+        when(this.omim.search(SEARCH_QUERY_A_LABEL, GENE_CATEGORY, 3, null, null)).thenReturn(
+            Collections.singletonList(this.result6));
+        final long start = System.currentTimeMillis();
+        final List<VocabularyTerm> terms = this.vocabularyManager.search(SEARCH_QUERY_A_LABEL, GENE_CATEGORY, 3);
+        Assert.assertTrue(System.currentTimeMillis() - start < 5000);
+        Assert.assertEquals(Collections.singletonList(this.result6), terms);
+        verify(this.logger).warn("Search in vocabulary [{}] timed out, its results were skipped", HGNC_LABEL);
+    }
+
+    @Test
+    public void searchesInSeveralVocabulariesUseTheCallerLocale()
+    {
+        final XWikiContext xcontext = new XWikiContext();
+        xcontext.setLocale(Locale.FRENCH);
+        xcontext.put("hibsession", new Object());
+        final ExecutionContext context = new ExecutionContext();
+        context.setProperty(XWikiContext.EXECUTIONCONTEXT_KEY, xcontext);
+        this.execution.setContext(context);
+
+        final List<Locale> locales = Collections.synchronizedList(new ArrayList<Locale>());
+        final List<Boolean> sessions = Collections.synchronizedList(new ArrayList<Boolean>());
+        final Answer<List<VocabularyTerm>> recordLocale = invocation -> {
+            XWikiContext searchContext =
+                (XWikiContext) this.execution.getContext().getProperty(XWikiContext.EXECUTIONCONTEXT_KEY);
+            locales.add(searchContext.getLocale());
+            sessions.add(searchContext.containsKey("hibsession"));
+            return Collections.emptyList();
+        };
+        when(this.hgnc.search(SEARCH_QUERY_A_LABEL, GENE_CATEGORY, 3, null, null)).thenAnswer(recordLocale);
+        when(this.omim.search(SEARCH_QUERY_A_LABEL, GENE_CATEGORY, 3, null, null)).thenAnswer(recordLocale);
+
+        this.vocabularyManager.search(SEARCH_QUERY_A_LABEL, GENE_CATEGORY, 3);
+
+        Assert.assertEquals(Arrays.asList(Locale.FRENCH, Locale.FRENCH), locales);
+        // The database session of the caller thread is not shared
+        Assert.assertEquals(Arrays.asList(false, false), sessions);
+        // The caller's own context is left in place
+        Assert.assertSame(context, this.execution.getContext());
+        Assert.assertTrue(xcontext.containsKey("hibsession"));
+        this.execution.removeContext();
+    }
 }
@@ -0,0 +1,144 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrServerException;
+import org.apache.solr.common.SolrInputDocument;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.slf4j.Logger;
+
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link IndexingPipeline}.
+ */
+public class IndexingPipelineTest
+{
+    @Mock
+    private SolrClient client;
+
+    @Mock
+    private Logger logger;
+
+    @Before
+    public void setup()
+    {
+        MockitoAnnotations.initMocks(this);
+    }
+
+    @Test
+    public void termsAreExtendedBatchedAndCommittedOnce() throws Exception
+    {
+        IndexingPipeline pipeline = new IndexingPipeline("test", this.client, 10, this.logger);
+        List<String> extended = new ArrayList<>();
+        int count = pipeline.run(documents(25), doc -> extended.add((String) doc.getFieldValue("id")));
+
+        Assert.assertEquals(25, count);
+        Assert.assertEquals(25, extended.size());
+        Assert.assertEquals("0", extended.get(0));
+        Assert.assertEquals("24", extended.get(24));
+        verify(this.client, times(3)).add(anyCollectionOf(SolrInputDocument.class));
+        verify(this.client, times(1)).commit();
+    }
+
+    @Test
+    public void negativeBatchSizeSendsEverythingAtOnce() throws Exception
+    {
+        IndexingPipeline pipeline = new IndexingPipeline("test", this.client, -1, this.logger);
+        Assert.assertEquals(25, pipeline.run(documents(25), doc -> {
+        }));
+        verify(this.client, times(1)).add(anyCollectionOf(SolrInputDocument.class));
+        verify(this.client, times(1)).commit();
+    }
+
+    @Test
+    public void emptySourceIsCommitted() throws Exception
+    {
+        IndexingPipeline pipeline = new IndexingPipeline("test", this.client, 10, this.logger);
+        Assert.assertEquals(0, pipeline.run(documents(0), doc -> {
+        }));
+        verify(this.client, never()).add(anyCollectionOf(SolrInputDocument.class));
+        verify(this.client, times(1)).commit();
+    }
+
+    @Test(expected = SolrServerException.class)
+    public void writerFailuresAreRethrown() throws Exception
+    {
+        when(this.client.add(anyCollectionOf(SolrInputDocument.class))).thenThrow(new SolrServerException("fail"));
+        IndexingPipeline pipeline = new IndexingPipeline("test", this.client, 10, this.logger);
+        try {
+            pipeline.run(documents(5000), doc -> {
+            });
+        } finally {
+            verify(this.client, never()).commit();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void parserFailuresAreRethrown() throws Exception
+    {
+        IndexingPipeline pipeline = new IndexingPipeline("test", this.client, 10, this.logger);
+        Iterator<SolrInputDocument> failing = new Iterator<SolrInputDocument>()
+        {
+            @Override
+            public boolean hasNext()
+            {
+                return true;
+            }
+
+            @Override
+            public SolrInputDocument next()
+            {
+                throw new UncheckedIOException(new IOException("fail"));
+            }
+        };
+        try {
+            pipeline.run(failing, doc -> {
+            });
+        } finally {
+            verify(this.client, never()).commit();
+        }
+    }
+
+    private Iterator<SolrInputDocument> documents(int count)
+    {
+        Collection<SolrInputDocument> result = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            SolrInputDocument doc = new SolrInputDocument();
+            doc.addField("id", String.valueOf(i));
+            result.add(doc);
+        }
+        return result.iterator();
+    }
+}
@@ -0,0 +1,139 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.cache.event.CacheEntryListener;
+
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link MonitoredTermCache}.
+ */
+public class MonitoredTermCacheTest
+{
+    @Mock
+    private Cache<VocabularyTerm> terms;
+
+    @Mock
+    private Cache<VocabularyTerm> missing;
+
+    @Mock
+    private VocabularyTerm term;
+
+    @Mock
+    private VocabularyTerm marker;
+
+    private MonitoredTermCache cache;
+
+    @Before
+    public void setup()
+    {
+        MockitoAnnotations.initMocks(this);
+        when(this.term.getId()).thenReturn("HP:0000001");
+        when(this.terms.get("HP:0000001")).thenReturn(this.term);
+        when(this.missing.get("HP:9999999")).thenReturn(this.marker);
+        this.cache = new MonitoredTermCache(this.terms, 10, this.missing, 5);
+    }
+
+    @Test
+    public void termsAndMarkersAreStoredSeparately()
+    {
+        this.cache.set("HP:0000001", this.term);
+        this.cache.set("HP:9999999", this.marker);
+        verify(this.terms).set("HP:0000001", this.term);
+        verify(this.missing).set("HP:9999999", this.marker);
+        verify(this.terms, never()).set("HP:9999999", this.marker);
+        verify(this.missing, never()).set("HP:0000001", this.term);
+    }
+
+    @Test
+    public void lookupsAreCounted()
+    {
+        assertSame(this.term, this.cache.get("HP:0000001"));
+        assertSame(this.term, this.cache.get("HP:0000001"));
+        assertSame(this.marker, this.cache.get("HP:9999999"));
+        assertNull(this.cache.get("HP:0000002"));
+
+        Map<String, Long> stats = this.cache.getStatistics();
+        assertEquals(2L, stats.get("hits").longValue());
+        assertEquals(1L, stats.get("negativeHits").longValue());
+        assertEquals(1L, stats.get("misses").longValue());
+        assertEquals(75L, stats.get("hitRatio").longValue());
+        assertEquals(10L, stats.get("maxEntries").longValue());
+        assertEquals(5L, stats.get("negativeMaxEntries").longValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void evictionsExcludeExplicitRemovals()
+    {
+        ArgumentCaptor<CacheEntryListener<VocabularyTerm>> listener =
+            ArgumentCaptor.forClass((Class<CacheEntryListener<VocabularyTerm>>) (Class<?>) CacheEntryListener.class);
+        Cache<VocabularyTerm> backing = mock(Cache.class);
+        this.cache = new MonitoredTermCache(backing, 10, this.missing, 5);
+        verify(backing).addCacheEntryListener(listener.capture());
+
+        this.cache.remove("HP:0000001");
+        listener.getValue().cacheEntryRemoved(null);
+        listener.getValue().cacheEntryRemoved(null);
+        listener.getValue().cacheEntryRemoved(null);
+
+        Map<String, Long> stats = this.cache.getStatistics();
+        assertEquals(2L, stats.get("evictions").longValue());
+        assertEquals(0L, stats.get("negativeEvictions").longValue());
+    }
+
+    @Test
+    public void removeAllClearsBothCachesAndResetsStatistics()
+    {
+        this.cache.get("HP:0000001");
+        this.cache.removeAll();
+        verify(this.terms).removeAll();
+        verify(this.missing).removeAll();
+        assertEquals(0L, this.cache.getStatistics().get("hits").longValue());
+    }
+
+    @Test
+    public void listenersAreRegisteredOnBothCaches()
+    {
+        @SuppressWarnings("unchecked")
+        CacheEntryListener<VocabularyTerm> listener = mock(CacheEntryListener.class);
+        this.cache.addCacheEntryListener(listener);
+        verify(this.terms).addCacheEntryListener(listener);
+        verify(this.missing).addCacheEntryListener(listener);
+        verify(this.terms, never()).removeCacheEntryListener(any(CacheEntryListener.class));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link OntologyGraphTerm} and {@link OntologyGraphTermSet}.
+ */
+public class OntologyGraphTermTest
+{
+    private OntologyGraph graph;
+
+    private Vocabulary vocabulary;
+
+    /**
+     * Uses the hierarchy {@code C -> B -> A} and {@code C -> A}, with edges going up from child to parent.
+     */
+    @Before
+    public void setup()
+    {
+        Map<String, Collection<String>> parents = new LinkedHashMap<>();
+        parents.put("C", Arrays.asList("B", "A"));
+        parents.put("B", Arrays.asList("A"));
+        parents.put("A", Arrays.<String>asList());
+        this.graph = new OntologyGraph(parents);
+        this.vocabulary = mock(Vocabulary.class);
+    }
+
+    @Test
+    public void hierarchyIsWalkedWithoutLoadingTerms()
+    {
+        VocabularyTerm term = new OntologyGraphTerm("C", this.graph, this.vocabulary);
+
+        Set<VocabularyTerm> ancestors = term.getAncestors();
+        assertEquals(2, ancestors.size());
+        assertTrue(ancestors.contains("A"));
+        assertTrue(ancestors.contains(new OntologyGraphTerm("B", this.graph, this.vocabulary)));
+        assertFalse(ancestors.contains("C"));
+        assertTrue(term.getAncestorsAndSelf().contains("C"));
+
+        Set<String> grandParents = new HashSet<>();
+        for (VocabularyTerm parent : term.getParents()) {
+            for (VocabularyTerm grandParent : parent.getParents()) {
+                grandParents.add(grandParent.getId());
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList("A")), grandParents);
+        assertEquals(1, term.getDistanceTo(new OntologyGraphTerm("B", this.graph, this.vocabulary)));
+
+        verify(this.vocabulary, never()).getTerm(anyString());
+        verify(this.vocabulary, never()).getTerms(anyCollectionOf(String.class));
+    }
+
+    @Test
+    public void termDataIsLoadedOnceWhenNeeded()
+    {
+        VocabularyTerm actual = mock(VocabularyTerm.class);
+        when(actual.getName()).thenReturn("Term B");
+        when(actual.getDescription()).thenReturn("The B term");
+        when(this.vocabulary.getTerm("B")).thenReturn(actual);
+
+        VocabularyTerm term = new OntologyGraphTerm("B", this.graph, this.vocabulary);
+        assertEquals("Term B", term.getName());
+        assertEquals("The B term", term.getDescription());
+        verify(this.vocabulary).getTerm("B");
+    }
+
+    @Test
+    public void termsOfASetAreLoadedTogether()
+    {
+        VocabularyTerm a = mock(VocabularyTerm.class);
+        when(a.getId()).thenReturn("A");
+        when(a.getName()).thenReturn("Term A");
+        VocabularyTerm b = mock(VocabularyTerm.class);
+        when(b.getId()).thenReturn("B");
+        when(b.getName()).thenReturn("Term B");
+        when(this.vocabulary.getTerms(Arrays.asList("B", "A"))).thenReturn(new HashSet<>(Arrays.asList(a, b)));
+
+        Set<String> names = new HashSet<>();
+        for (VocabularyTerm parent : new OntologyGraphTerm("C", this.graph, this.vocabulary).getParents()) {
+            names.add(parent.getName());
+        }
+
+        assertEquals(new HashSet<>(Arrays.asList("Term A", "Term B")), names);
+        verify(this.vocabulary).getTerms(Arrays.asList("B", "A"));
+        verify(this.vocabulary, never()).getTerm(anyString());
+    }
+
+    @Test
+    public void missingTermsHaveNoData()
+    {
+        VocabularyTerm term = new OntologyGraphTerm("A", this.graph, this.vocabulary);
+        assertNull(term.getName());
+        assertTrue(term.getTranslatedValues("name").isEmpty());
+        assertEquals("A", term.toJSON().getString("id"));
+    }
+}
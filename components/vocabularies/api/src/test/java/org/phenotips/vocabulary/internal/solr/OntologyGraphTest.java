@@ -0,0 +1,132 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link OntologyGraph}.
+ */
+public class OntologyGraphTest
+{
+    private OntologyGraph graph;
+
+    /**
+     * Builds the following hierarchy, with edges going up from child to parent.
+     *
+     * <pre>
+     *         A
+     *       /   \
+     *      B     C
+     *      |   /   \
+     *      D  E     F
+     *       \ |
+     *         G
+     * </pre>
+     */
+    @Before
+    public void setup()
+    {
+        Map<String, Collection<String>> parents = new LinkedHashMap<>();
+        parents.put("G", Arrays.asList("D", "E"));
+        parents.put("A", Collections.<String>emptyList());
+        parents.put("B", Arrays.asList("A"));
+        parents.put("C", Arrays.asList("A"));
+        parents.put("D", Arrays.asList("B"));
+        parents.put("E", Arrays.asList("C"));
+        parents.put("F", Arrays.asList("C"));
+        this.graph = new OntologyGraph(parents);
+    }
+
+    @Test
+    public void relationsAreComputed()
+    {
+        assertEquals(7, this.graph.size());
+        assertEquals(new HashSet<>(Arrays.asList("D", "E")), new HashSet<>(this.graph.getParents("G")));
+        assertEquals(new HashSet<>(Arrays.asList("A", "B", "C", "D", "E")),
+            new HashSet<>(this.graph.getAncestors("G")));
+        assertEquals(new HashSet<>(Arrays.asList("F", "C", "A")),
+            new HashSet<>(this.graph.getAncestorsAndSelf("F")));
+        assertEquals("F", this.graph.getAncestorsAndSelf("F").get(0));
+        assertTrue(this.graph.getAncestors("A").isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList("E", "F", "G")), new HashSet<>(this.graph.getDescendants("C")));
+        assertEquals(6, this.graph.getDescendants("A").size());
+        assertTrue(this.graph.getDescendants("G").isEmpty());
+    }
+
+    @Test
+    public void ancestorChecks()
+    {
+        assertTrue(this.graph.isAncestor("A", "G"));
+        assertTrue(this.graph.isAncestor("C", "E"));
+        assertFalse(this.graph.isAncestor("G", "A"));
+        assertFalse(this.graph.isAncestor("B", "F"));
+        assertFalse(this.graph.isAncestor("F", "F"));
+        assertFalse(this.graph.isAncestor("X", "F"));
+    }
+
+    @Test
+    public void distances()
+    {
+        assertEquals(0, this.graph.getDistance("G", "G"));
+        assertEquals(1, this.graph.getDistance("G", "E"));
+        assertEquals(2, this.graph.getDistance("E", "F"));
+        assertEquals(3, this.graph.getDistance("G", "F"));
+        assertEquals(3, this.graph.getDistance("F", "G"));
+        assertEquals(2, this.graph.getDistance("B", "C"));
+        assertEquals(3, this.graph.getDistance("G", "A"));
+        assertEquals(-1, this.graph.getDistance("G", "X"));
+    }
+
+    @Test
+    public void unknownTermsAndMissingParents()
+    {
+        Map<String, Collection<String>> parents = new LinkedHashMap<>();
+        parents.put("B", Arrays.asList("A"));
+        parents.put("C", Arrays.asList("C", "Z"));
+        OntologyGraph other = new OntologyGraph(parents);
+        assertEquals(4, other.size());
+        assertTrue(other.contains("A"));
+        assertEquals(Arrays.asList("Z"), other.getParents("C"));
+        assertTrue(other.getParents("X").isEmpty());
+        assertEquals(-1, other.getDistance("B", "C"));
+    }
+
+    @Test
+    public void cyclesAreTolerated()
+    {
+        Map<String, Collection<String>> parents = new LinkedHashMap<>();
+        parents.put("A", Arrays.asList("B"));
+        parents.put("B", Arrays.asList("A"));
+        OntologyGraph other = new OntologyGraph(parents);
+        assertEquals(1, other.getDistance("A", "B"));
+        assertEquals(1, other.getDistance("B", "A"));
+    }
+}
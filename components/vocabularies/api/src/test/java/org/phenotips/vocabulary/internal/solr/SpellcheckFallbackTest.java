@@ -0,0 +1,128 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.xwiki.configuration.ConfigurationSource;
+
+import java.util.Map;
+
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link SpellcheckFallback}.
+ */
+public class SpellcheckFallbackTest
+{
+    private ConfigurationSource configuration;
+
+    @Before
+    public void setup()
+    {
+        this.configuration = mock(ConfigurationSource.class);
+    }
+
+    @Test
+    public void weakResultsAreRequeriedByDefault()
+    {
+        SpellcheckFallback fallback = new SpellcheckFallback(null, "hpo");
+        assertTrue(fallback.shouldRequery(results(3), 10));
+        assertFalse(fallback.shouldRequery(results(10), 10));
+        assertFalse(fallback.shouldRequery(results(12), 20));
+        assertTrue(fallback.shouldRequery(null, null));
+    }
+
+    @Test
+    public void minHitsIsCappedByTheRequestedRows()
+    {
+        SpellcheckFallback fallback = new SpellcheckFallback(this.configuration, "hpo");
+        assertFalse(fallback.shouldRequery(results(3), 3));
+        assertTrue(fallback.shouldRequery(results(2), 3));
+    }
+
+    @Test
+    public void vocabularySettingsOverrideGlobalSettings()
+    {
+        when(this.configuration.getProperty("phenotips.ontologies.spellcheck.mode", String.class)).thenReturn("never");
+        when(this.configuration.getProperty("phenotips.ontologies.hpo.spellcheck.mode", String.class))
+            .thenReturn("Always");
+        assertTrue(new SpellcheckFallback(this.configuration, "hpo").shouldRequery(results(50), 10));
+        assertFalse(new SpellcheckFallback(this.configuration, "omim").shouldRequery(results(0), 10));
+    }
+
+    @Test
+    public void unknownModeFallsBackToWeak()
+    {
+        when(this.configuration.getProperty("phenotips.ontologies.spellcheck.mode", String.class)).thenReturn("maybe");
+        SpellcheckFallback fallback = new SpellcheckFallback(this.configuration, "hpo");
+        assertTrue(fallback.shouldRequery(results(1), 10));
+        assertFalse(fallback.shouldRequery(results(10), 10));
+    }
+
+    @Test
+    public void lowScoresAreWeak()
+    {
+        when(this.configuration.getProperty("phenotips.ontologies.spellcheck.minHits", Integer.class)).thenReturn(2);
+        when(this.configuration.getProperty("phenotips.ontologies.spellcheck.minScore", Float.class)).thenReturn(5f);
+        SpellcheckFallback fallback = new SpellcheckFallback(this.configuration, "hpo");
+        // The second result has the score 8, the third one 7
+        assertFalse(fallback.shouldRequery(results(3), 10));
+        when(this.configuration.getProperty("phenotips.ontologies.spellcheck.minScore", Float.class)).thenReturn(9f);
+        fallback = new SpellcheckFallback(this.configuration, "hpo");
+        assertTrue(fallback.shouldRequery(results(3), 10));
+    }
+
+    @Test
+    public void countersAreUpdated()
+    {
+        SpellcheckFallback fallback = new SpellcheckFallback(this.configuration, "hpo");
+        fallback.searched();
+        fallback.searched();
+        fallback.searched();
+        fallback.shouldRequery(results(1), 10);
+        fallback.improved();
+        fallback.shouldRequery(results(10), 10);
+        Map<String, Long> statistics = fallback.getStatistics();
+        assertEquals(3L, (long) statistics.get("searches"));
+        assertEquals(2L, (long) statistics.get("misspelled"));
+        assertEquals(1L, (long) statistics.get("requeries"));
+        assertEquals(1L, (long) statistics.get("skipped"));
+        assertEquals(1L, (long) statistics.get("improved"));
+    }
+
+    /** Builds a result list with decreasing scores, starting at 9. */
+    private SolrDocumentList results(int count)
+    {
+        SolrDocumentList result = new SolrDocumentList();
+        for (int i = 0; i < count; ++i) {
+            SolrDocument document = new SolrDocument();
+            document.setField("id", "HP:" + i);
+            document.setField("score", 9f - i);
+            result.add(document);
+        }
+        return result;
+    }
+}
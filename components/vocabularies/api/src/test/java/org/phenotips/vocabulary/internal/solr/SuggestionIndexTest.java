@@ -0,0 +1,134 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SuggestionIndex}.
+ */
+public class SuggestionIndexTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private SuggestionIndex index;
+
+    @Before
+    public void setup()
+    {
+        this.index = new SuggestionIndex.Builder()
+            .add("HP:0000001", "HP:0000001", SuggestionIndex.NAME)
+            .add("HP:0000001", "All", SuggestionIndex.NAME)
+            .add("HP:0001627", "HP:0001627", SuggestionIndex.NAME)
+            .add("HP:0001627", "Abnormal heart morphology", SuggestionIndex.NAME)
+            .add("HP:0001627", "Abnormality of cardiac morphology", SuggestionIndex.SYNONYM)
+            .add("HP:0000478", "HP:0000478", SuggestionIndex.NAME)
+            .add("HP:0000478", "Abnormality of the eye", SuggestionIndex.NAME)
+            .add("HP:0000478", "Eye disease", SuggestionIndex.SYNONYM)
+            .add("HP:0000365", "HP:0000365", SuggestionIndex.NAME)
+            .add("HP:0000365", "Hearing impairment", SuggestionIndex.NAME)
+            .add("HP:0000365", "Deafness", SuggestionIndex.SYNONYM)
+            .add("HP:0012372", "HP:0012372", SuggestionIndex.NAME)
+            .add("HP:0012372", "Abnormal eye morphology", SuggestionIndex.NAME)
+            .build();
+    }
+
+    @Test
+    public void namesAreMatchedByPrefix()
+    {
+        assertEquals(Arrays.asList("HP:0000478", "HP:0012372"), this.index.suggest("abnormal ", 2));
+        assertEquals(Arrays.asList("HP:0000365"), this.index.suggest("Heari", 10));
+        assertEquals(Arrays.asList("HP:0000365"), this.index.suggest("deaf", 10));
+    }
+
+    @Test
+    public void namesAreBetterThanSynonymsAndInnerWords()
+    {
+        // "Eye disease" is a synonym, "Abnormal eye morphology" only has "eye" inside its name
+        assertEquals(Arrays.asList("HP:0000478", "HP:0012372"), this.index.suggest("eye", 10));
+        // Heart is inside a name, hearing starts a name
+        assertEquals(Arrays.asList("HP:0000365", "HP:0001627"), this.index.suggest("hear", 10));
+    }
+
+    @Test
+    public void eachTermIsReturnedOnce()
+    {
+        assertEquals(4, this.index.suggest("a", 10).size());
+        assertEquals(Collections.singletonList("HP:0001627"), this.index.suggest("morphology", 1));
+        assertEquals(2, this.index.suggest("morphology", 10).size());
+    }
+
+    @Test
+    public void identifiersAreMatched()
+    {
+        assertEquals(Collections.singletonList("HP:0001627"), this.index.suggest("HP:0001627", 10));
+        assertEquals(5, this.index.suggest("hp:", 10).size());
+    }
+
+    @Test
+    public void accentsCaseAndPunctuationAreIgnored()
+    {
+        assertEquals(Collections.singletonList("HP:0000365"), this.index.suggest("  H\u00c9ARING, imp", 10));
+    }
+
+    @Test
+    public void noMatches()
+    {
+        assertTrue(this.index.suggest("xyz", 10).isEmpty());
+        assertTrue(this.index.suggest(" ", 10).isEmpty());
+        assertTrue(this.index.suggest(null, 10).isEmpty());
+        assertTrue(this.index.suggest("abn", 0).isEmpty());
+    }
+
+    @Test
+    public void serializationPreservesTheIndex() throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.index.writeTo(out);
+        SuggestionIndex copy = SuggestionIndex.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(this.index.size(), copy.size());
+        for (String prefix : Arrays.asList("a", "abnormal", "eye", "hp:", "deaf", "heart")) {
+            assertEquals(this.index.suggest(prefix, 10), copy.suggest(prefix, 10));
+        }
+    }
+
+    @Test
+    public void storeInFile() throws IOException
+    {
+        File file = new File(this.folder.getRoot(), "hpo/suggestions.idx.gz");
+        this.index.writeTo(file);
+        assertTrue(file.isFile());
+        assertEquals(1, file.getParentFile().list().length);
+        SuggestionIndex copy = SuggestionIndex.readFrom(file);
+        assertEquals(this.index.suggest("abn", 10), copy.suggest("abn", 10));
+    }
+}
@@ -26,6 +26,8 @@
 import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.localization.LocalizationContext;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashSet;
@@ -42,6 +44,9 @@
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
 import net.jcip.annotations.NotThreadSafe;
 
 import static org.junit.Assert.assertEquals;
@@ -152,6 +157,38 @@ public void toJSONContainsParents()
                 new JSONObject("{\"id\":\"T2\",\"name\":\"Term 2\",\"name_translated\":\"Term 2\"}")));
     }
 
+    @Test
+    public void writeJSONFieldsWritesTheSameFieldsAsToJSON() throws IOException
+    {
+        Vocabulary vocabulary = mock(Vocabulary.class);
+        SolrDocument parentDoc = new SolrDocument();
+        parentDoc.setField("id", "T0");
+        parentDoc.setField("name", "Root");
+        VocabularyTerm parentTerm = new SolrVocabularyTerm(parentDoc, vocabulary);
+        when(vocabulary.getTerms(Collections.singleton("T0"))).thenReturn(Collections.singleton(parentTerm));
+
+        SolrDocument doc = new SolrDocument();
+        doc.setField("id", "T1");
+        doc.setField("name", "Term");
+        doc.setField("name_es", "El Term");
+        doc.setField("synonym", Arrays.asList("First", "Second"));
+        doc.setField("score", 3);
+        doc.setField("obsolete", false);
+        doc.setField("is_a", Collections.singleton("T0"));
+        VocabularyTerm term = new SolrVocabularyTerm(doc, vocabulary);
+
+        StringWriter out = new StringWriter();
+        try (JsonGenerator generator = new JsonFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            term.writeJSONFields(generator);
+            generator.writeEndObject();
+        }
+        JSONObject written = new JSONObject(out.toString());
+        Assert.assertTrue(written.similar(term.toJSON()));
+        Assert.assertEquals("El Term", written.getString("name_translated"));
+        Assert.assertEquals("Root", written.getJSONArray("parents").getJSONObject(0).getString("name"));
+    }
+
     @Test
     public void toJSONContainsNoParentsWhenTermHasNoParents()
     {
@@ -65,6 +65,11 @@ public class HumanPhenotypeOntology extends AbstractOBOSolrVocabulary
     /** For determining if a query is a an id. */
     private static final Pattern ID_PATTERN = Pattern.compile("^HP:[0-9]+$", Pattern.CASE_INSENSITIVE);
 
+    /** The root of the phenotypic abnormality branch, the only terms offered as suggestions by default. */
+    private static final String PHENOTYPE_ROOT = "HP:0000118";
+
+    private static final String TERM_CATEGORY_FIELD_NAME = "term_category";
+
     /** The default filter for phenotype vocabulary searches. */
     private static final String DEFAULT_PHENOTYPE_FILTER = "term_category:HP\\:0000118";
 
@@ -132,6 +137,22 @@ public String getCitation()
             + " et al. Nucl. Acids Res. (1 January 2014) 42 (D1): D966-D974 doi:10.1093/nar/gkt1026";
     }
 
+    @Override
+    protected boolean hasSuggestionIndex()
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean isSuggestible(VocabularyTerm term)
+    {
+        Object categories = term.get(TERM_CATEGORY_FIELD_NAME);
+        if (categories instanceof Collection) {
+            return ((Collection<?>) categories).contains(PHENOTYPE_ROOT);
+        }
+        return PHENOTYPE_ROOT.equals(categories);
+    }
+
     @Override
     public List<VocabularyTerm> search(String input, int maxResults, String sort, String customFilter)
     {
@@ -24,9 +24,13 @@
 import org.xwiki.cache.Cache;
 import org.xwiki.cache.CacheException;
 import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.util.ReflectionUtils;
 import org.xwiki.test.mockito.MockitoComponentMockingRule;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
 
 import org.apache.solr.client.solrj.SolrClient;
 import org.apache.solr.client.solrj.SolrQuery;
@@ -45,6 +49,8 @@
 import org.mockito.ArgumentMatcher;
 import org.mockito.Matchers;
 import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
@@ -169,6 +175,74 @@ public void testHumanPhenotypeOntologySuggestTermsMultipleWords() throws Compone
         verify(this.server).query(argThat(new IsDisMaxQuery()));
     }
 
+    @Test
+    public void getTermsReturnsMoreTermsThanTheDefaultNumberOfRows() throws ComponentLookupException,
+        SolrServerException, IOException
+    {
+        List<String> ids = termIds(12);
+        mockRowLimitedIndex(ids);
+
+        Set<VocabularyTerm> terms = this.mocker.getComponentUnderTest().getTerms(ids);
+
+        Assert.assertEquals(12, terms.size());
+        Assert.assertEquals("HP:0000012", new ArrayList<>(terms).get(11).getId());
+    }
+
+    @Test
+    public void suggestReturnsMoreThanTheDefaultNumberOfRows() throws ComponentLookupException,
+        SolrServerException, IOException
+    {
+        List<String> ids = termIds(15);
+        mockRowLimitedIndex(ids);
+        SuggestionIndex.Builder builder = new SuggestionIndex.Builder();
+        for (String id : ids) {
+            builder.add(id, "Abnormality " + id, SuggestionIndex.NAME);
+        }
+        ReflectionUtils.setFieldValue(this.mocker.getComponentUnderTest(), "suggestionIndex", builder.build());
+
+        List<VocabularyTerm> suggestions = this.mocker.getComponentUnderTest().suggest("abnormality", 15);
+
+        Assert.assertEquals(15, suggestions.size());
+    }
+
+    private List<String> termIds(int count)
+    {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 1; i <= count; ++i) {
+            ids.add(String.format("HP:%07d", i));
+        }
+        return ids;
+    }
+
+    /**
+     * Mocks an index holding the given terms, which, just like the real Solr cores, returns only 10 rows unless a
+     * different number of rows is requested.
+     */
+    private void mockRowLimitedIndex(final List<String> ids) throws SolrServerException, IOException
+    {
+        when(this.server.query(any(SolrParams.class))).thenAnswer(new Answer<QueryResponse>()
+        {
+            @Override
+            public QueryResponse answer(InvocationOnMock invocation) throws Throwable
+            {
+                SolrParams params = (SolrParams) invocation.getArguments()[0];
+                int rows = params.getInt(CommonParams.ROWS, 10);
+                SolrDocumentList results = new SolrDocumentList();
+                for (String id : ids) {
+                    if (results.size() < rows && params.get(CommonParams.Q).contains(id.replace(":", "\\:"))) {
+                        SolrDocument doc = new SolrDocument();
+                        doc.setField("id", id);
+                        doc.setField("name", "Abnormality " + id);
+                        results.add(doc);
+                    }
+                }
+                QueryResponse response = mock(QueryResponse.class);
+                when(response.getResults()).thenReturn(results);
+                return response;
+            }
+        });
+    }
+
     class IsDisMaxQuery extends ArgumentMatcher<SolrParams>
     {
         @Override
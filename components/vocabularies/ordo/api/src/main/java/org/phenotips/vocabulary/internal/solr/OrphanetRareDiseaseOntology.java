@@ -190,16 +190,16 @@ Collection<OntClass> getRootClasses(@Nonnull final OntModel ontModel)
 
     @Override
     void extractClassData(@Nonnull final SolrInputDocument doc, @Nonnull final OntClass ontClass,
-        @Nonnull final OntClass parent)
+        @Nonnull final OntClass parent, @Nullable final OntologyGraph classHierarchy)
     {
         if (parent.isRestriction()) {
-            extractRestrictionData(doc, parent);
+            extractRestrictionData(doc, parent, classHierarchy);
         } else if (parent.isIntersectionClass()) {
             // For ORDO, an intersection class only contains one or several related restrictions.
-            extractIntersectionData(doc, ontClass, parent);
+            extractIntersectionData(doc, ontClass, parent, classHierarchy);
         } else if (!parent.isAnon()) {
             // If not a restriction, nor an intersection class, then try to extract as a named class (if not anonymous).
-            extractNamedClassData(doc, ontClass, parent);
+            extractNamedClassData(doc, ontClass, parent, classHierarchy);
         } else {
             this.logger.warn("Parent class {} of {} is an anonymous class that is neither restriction nor intersection",
                 parent.getId(), ontClass.getLocalName());
@@ -213,12 +213,13 @@ void extractClassData(@Nonnull final SolrInputDocument doc, @Nonnull final OntCl
      * @param doc the Solr input document
      * @param ontClass the ontology class
      * @param parent the parent of the ontology class
+     * @param classHierarchy the asserted hierarchy of named classes, or {@code null} if the model uses a reasoner
      */
     private void extractNamedClassData(@Nonnull final SolrInputDocument doc, @Nonnull final OntClass ontClass,
-        @Nonnull final OntClass parent)
+        @Nonnull final OntClass parent, @Nullable final OntologyGraph classHierarchy)
     {
         // Note: in ORDO, a subclass cannot have parents from different top categories (e.g. phenome and geography).
-        if (!this.hierarchyRoots.contains(parent) && !hasHierarchyRootAsParent(parent, DIRECT)) {
+        if (!this.hierarchyRoots.contains(parent) && !hasHierarchyRootAsParent(parent, DIRECT, classHierarchy)) {
             // This will not be null, since only anonymous classes have no local name. This check is performed in
             // the calling method (extractClassData).
             final String ordoId = getFormattedOntClassId(parent.getLocalName());
@@ -239,9 +240,10 @@ private void extractNamedClassData(@Nonnull final SolrInputDocument doc, @Nonnul
      *
      * @param doc the Solr input document
      * @param parent the parent class that contains the intersection class data for the ontologyClass
+     * @param classHierarchy the asserted hierarchy of named classes, or {@code null} if the model uses a reasoner
      */
     private void extractIntersectionData(@Nonnull final SolrInputDocument doc, @Nonnull final OntClass ontClass,
-        @Nonnull final OntClass parent)
+        @Nonnull final OntClass parent, @Nullable final OntologyGraph classHierarchy)
     {
         this.isIntersection = true;
         final IntersectionClass intersection = parent.asIntersectionClass();
@@ -250,7 +252,7 @@ private void extractIntersectionData(@Nonnull final SolrInputDocument doc, @Nonn
         while (operands.hasNext()) {
             final OntClass operand = operands.next();
             // For ORDO, there should only be restrictions in intersection classes.
-            extractClassData(doc, ontClass, operand);
+            extractClassData(doc, ontClass, operand, classHierarchy);
         }
         this.region = StringUtils.EMPTY;
         this.isIntersection = false;
@@ -263,14 +265,16 @@ private void extractIntersectionData(@Nonnull final SolrInputDocument doc, @Nonn
      *
      * @param doc the Solr input document
      * @param parent the parent class that contains restriction data for the ontologyClass
+     * @param classHierarchy the asserted hierarchy of named classes, or {@code null} if the model uses a reasoner
      */
-    private void extractRestrictionData(@Nonnull final SolrInputDocument doc, @Nonnull final OntClass parent)
+    private void extractRestrictionData(@Nonnull final SolrInputDocument doc, @Nonnull final OntClass parent,
+        @Nullable final OntologyGraph classHierarchy)
     {
         final Restriction restriction = parent.asRestriction();
 
         // Restrictions can be someValuesFrom, hasValue, allValuesFrom, etc. ORDO appears to only use the first two.
         if (restriction.isSomeValuesFromRestriction()) {
-            extractSomeValuesFromRestriction(doc, restriction);
+            extractSomeValuesFromRestriction(doc, restriction, classHierarchy);
         } else if (restriction.isHasValueRestriction()) {
             extractHasValueRestriction(doc, restriction);
         } else {
@@ -286,14 +290,15 @@ private void extractRestrictionData(@Nonnull final SolrInputDocument doc, @Nonnu
      *
      * @param doc the input Solr document
      * @param restriction the restriction
+     * @param classHierarchy the asserted hierarchy of named classes, or {@code null} if the model uses a reasoner
      */
     private void extractSomeValuesFromRestriction(@Nonnull final SolrInputDocument doc,
-        @Nonnull final Restriction restriction)
+        @Nonnull final Restriction restriction, @Nullable final OntologyGraph classHierarchy)
     {
         // someValuesFrom restrictions refer to the other "modifier" classes such as inheritance, geography, etc.
         // If a disease is part of a group of disorders, it will also be indicated here under a "part_of" property.
         final String fieldName = getOnPropertyFromRestriction(restriction);
-        final String fieldValue = getSomeValuesFromRestriction(restriction);
+        final String fieldValue = getSomeValuesFromRestriction(restriction, classHierarchy);
 
         if (StringUtils.isNotBlank(fieldName) && StringUtils.isNotBlank(fieldValue)) {
             if ("present_in".equals(fieldName)) {
@@ -364,12 +369,14 @@ private String getOnPropertyFromRestriction(@Nonnull final Restriction restricti
      * Obtains the label for the {@link Restriction} of type {@link org.apache.jena.ontology.SomeValuesFromRestriction}.
      *
      * @param restriction the restriction being examined
+     * @param classHierarchy the asserted hierarchy of named classes, or {@code null} if the model uses a reasoner
      * @return the someValuesFrom restriction value as a string
      */
-    private String getSomeValuesFromRestriction(@Nonnull final Restriction restriction)
+    private String getSomeValuesFromRestriction(@Nonnull final Restriction restriction,
+        @Nullable final OntologyGraph classHierarchy)
     {
         final OntClass ontClass = restriction.asSomeValuesFromRestriction().getSomeValuesFrom().as(OntClass.class);
-        return !hasHierarchyRootAsParent(ontClass, !DIRECT)
+        return !hasHierarchyRootAsParent(ontClass, !DIRECT, classHierarchy)
             ? ontClass.getLabel(null)
             : getFormattedOntClassId(ontClass.getLocalName());
     }
@@ -379,12 +386,15 @@ private String getSomeValuesFromRestriction(@Nonnull final Restriction restricti
      *
      * @param ontClass the restriction class
      * @param level specifies the level to search: direct iff true, traverse entire tree otherwise
+     * @param classHierarchy the asserted hierarchy of named classes, or {@code null} if the model uses a reasoner
      * @return true iff the someValuesFrom restriction value should be stored as a name
      */
-    private Boolean hasHierarchyRootAsParent(@Nonnull final OntClass ontClass, @Nonnull final Boolean level)
+    private Boolean hasHierarchyRootAsParent(@Nonnull final OntClass ontClass, @Nonnull final Boolean level,
+        @Nullable final OntologyGraph classHierarchy)
     {
         for (final OntClass hierarchyRoot : this.hierarchyRoots) {
-            if (ontClass.hasSuperClass(hierarchyRoot, level)) {
+            if (level ? ontClass.hasSuperClass(hierarchyRoot, DIRECT)
+                : hasAncestor(ontClass, hierarchyRoot, classHierarchy)) {
                 return true;
             }
         }
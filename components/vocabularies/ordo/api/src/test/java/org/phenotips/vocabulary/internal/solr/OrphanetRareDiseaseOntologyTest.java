@@ -0,0 +1,136 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabulary.internal.solr;
+
+import org.phenotips.vocabulary.SolrVocabularyResourceManager;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.cache.Cache;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.util.Collection;
+
+import org.apache.solr.client.solrj.SolrClient;
+import org.apache.solr.client.solrj.SolrQuery;
+import org.apache.solr.client.solrj.response.QueryResponse;
+import org.apache.solr.common.SolrDocument;
+import org.apache.solr.common.SolrDocumentList;
+import org.apache.solr.common.SolrInputDocument;
+import org.apache.solr.common.params.CursorMarkParams;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the ORDO implementation of the {@link Vocabulary}, {@link OrphanetRareDiseaseOntology}.
+ */
+public class OrphanetRareDiseaseOntologyTest
+{
+    @Rule
+    public final MockitoComponentMockingRule<Vocabulary> mocker =
+        new MockitoComponentMockingRule<>(OrphanetRareDiseaseOntology.class);
+
+    private SolrClient server;
+
+    private Vocabulary ontologyService;
+
+    @Before
+    public void setUpOntology() throws Exception
+    {
+        SolrVocabularyResourceManager externalServicesAccess =
+            this.mocker.getInstance(SolrVocabularyResourceManager.class);
+        @SuppressWarnings("unchecked")
+        Cache<VocabularyTerm> cache = mock(Cache.class);
+        when(externalServicesAccess.getTermCache("ordo")).thenReturn(cache);
+        this.server = mock(SolrClient.class);
+        when(externalServicesAccess.getReplacementSolrConnection("ordo")).thenReturn(this.server);
+        when(externalServicesAccess.getSolrConnection("ordo")).thenReturn(this.server);
+        this.ontologyService = this.mocker.getComponentUnderTest();
+    }
+
+    @Test
+    public void hierarchyIsLoadedInMemory() throws Exception
+    {
+        SolrDocumentList documents = new SolrDocumentList();
+        documents.add(document("ORDO:1"));
+        documents.add(document("ORDO:2", "ORDO:1"));
+        documents.add(document("ORDO:3", "ORDO:2 Child"));
+        documents.setNumFound(documents.size());
+        QueryResponse response = mock(QueryResponse.class);
+        when(response.getResults()).thenReturn(documents);
+        when(response.getNextCursorMark()).thenReturn(CursorMarkParams.CURSOR_MARK_START);
+        when(this.server.query(any(SolrQuery.class))).thenReturn(response);
+
+        Assert.assertEquals(2, this.ontologyService.getDistance("ORDO:3", "ORDO:1"));
+        Assert.assertEquals(1, this.ontologyService.getDistance("ORDO:2", "ORDO:3"));
+        Assert.assertEquals(0, this.ontologyService.getDistance("ORDO:2", "ORDO:2"));
+        // One query for counting the terms, one for reading the single page of terms, none for the distances
+        verify(this.server, times(2)).query(any(SolrQuery.class));
+    }
+
+    @Test
+    public void restrictionValuesAreIdentifiersOnlyForDescendantsOfTheHierarchyRoots() throws Exception
+    {
+        Assert.assertEquals(0, this.ontologyService.reindex(getClass().getResource("/orphanet-test.owl").toString()));
+        SolrInputDocument doc = getIndexedDocument("ORDO:1000");
+
+        // Orphanet_90642 is a grandchild of the phenome root, which is only known through the transitive hierarchy
+        Assert.assertTrue(doc.getFieldValues("part_of").contains("ORDO:90642"));
+        // Orphanet_409991 is in the geography category, which isn't a hierarchy root, so its label is used
+        Assert.assertTrue(doc.getFieldValues("present_in").contains("Worldwide"));
+        // The direct children of the hierarchy roots are categories, not parent disorders
+        Collection<Object> categories = doc.getFieldValues("term_category");
+        Assert.assertTrue(categories == null || !categories.contains("ORDO:377788"));
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private SolrInputDocument getIndexedDocument(String id) throws Exception
+    {
+        ArgumentCaptor<Collection> batches = ArgumentCaptor.forClass(Collection.class);
+        verify(this.server, atLeastOnce()).add(batches.capture());
+        for (Collection<SolrInputDocument> batch : batches.getAllValues()) {
+            for (SolrInputDocument doc : batch) {
+                if (id.equals(doc.getFieldValue("id"))) {
+                    return doc;
+                }
+            }
+        }
+        Assert.fail("Term " + id + " was not indexed");
+        return null;
+    }
+
+    private SolrDocument document(String id, String... parents)
+    {
+        SolrDocument result = new SolrDocument();
+        result.setField("id", id);
+        for (String parent : parents) {
+            result.addField("is_a", parent);
+        }
+        return result;
+    }
+}
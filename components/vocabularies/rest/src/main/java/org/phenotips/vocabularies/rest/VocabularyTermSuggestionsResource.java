@@ -54,6 +54,10 @@
      * @param customFilter a custom filter query to further restrict which terms may be returned, in a format that
      *            depends on the actual engine that stores the vocabulary; some vocabularies may not support a filter
      *            query; may be empty
+     * @param prefixIndex whether to use the vocabulary's in-memory prefix index, if it has one, which is much faster
+     *            than a full text search, but only finds terms with a name, synonym or identifier starting with the
+     *            input; input that doesn't match anything is still searched normally, and the index isn't used when a
+     *            sort or a custom filter is requested
      * @return A {@link Response} JSON object with a list of suggestions.
      */
     @GET
@@ -62,5 +66,6 @@ Response suggest(@PathParam("vocabulary-id") String vocabularyId,
         @QueryParam("input") String input,
         @QueryParam("maxResults") @DefaultValue("10") int maxResults,
         @QueryParam("sort") String sort,
-        @QueryParam("customFilter") String customFilter);
+        @QueryParam("customFilter") String customFilter,
+        @QueryParam("prefixIndex") @DefaultValue("false") boolean prefixIndex);
 }
@@ -0,0 +1,59 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabularies.rest;
+
+import org.phenotips.rest.ParentResource;
+import org.phenotips.rest.Relation;
+
+import org.xwiki.stability.Unstable;
+
+import java.util.List;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Resource for resolving many {@link org.phenotips.vocabulary.VocabularyTerm vocabulary terms} at once, possibly from
+ * different vocabularies, when the containing vocabularies are not known.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Unstable("New API introduced in 1.4")
+@Path("/vocabularies/terms/fetch")
+@ParentResource(VocabulariesResource.class)
+@Relation("https://phenotips.org/rel/vocabularyTerms")
+public interface VocabularyTermsResolveResource
+{
+    /**
+     * Retrieves the JSON representations of multiple {@link org.phenotips.vocabulary.VocabularyTerm vocabulary terms},
+     * each identified in the format {@code <vocabulary prefix>:<term id>}, for example {@code HP:0002066}. The terms
+     * are grouped by vocabulary, and each vocabulary is queried only once. Terms that cannot be resolved are excluded
+     * from the response.
+     *
+     * @param termIds the identifiers of the terms to resolve, one for each {@code term-id} request parameter
+     * @return the resolved terms, in a {@code rows} array, grouped by vocabulary
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    Response resolveTerms(@QueryParam("term-id") List<String> termIds);
+}
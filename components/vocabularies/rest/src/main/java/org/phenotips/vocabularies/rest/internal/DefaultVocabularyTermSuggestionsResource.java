@@ -64,7 +64,7 @@ public class DefaultVocabularyTermSuggestionsResource extends XWikiResource impl
 
     @Override
     public Response suggest(String vocabularyId, String input, @DefaultValue("10") int maxResults, String sort,
-        String customFilter)
+        String customFilter, @DefaultValue("false") boolean prefixIndex)
     {
         if (StringUtils.isEmpty(input) || StringUtils.isEmpty(vocabularyId)) {
             throw new WebApplicationException(Response.Status.BAD_REQUEST);
@@ -73,7 +73,12 @@ public Response suggest(String vocabularyId, String input, @DefaultValue("10") i
         if (vocabulary == null) {
             throw new WebApplicationException(Response.Status.NOT_FOUND);
         }
-        List<VocabularyTerm> termSuggestions = vocabulary.search(input, maxResults, sort, customFilter);
+        List<VocabularyTerm> termSuggestions;
+        if (prefixIndex && StringUtils.isAllBlank(sort, customFilter)) {
+            termSuggestions = vocabulary.suggest(input, maxResults);
+        } else {
+            termSuggestions = vocabulary.search(input, maxResults, sort, customFilter);
+        }
 
         JSONObject rep = new JSONObject();
         JSONArray trms = new JSONArray();
@@ -0,0 +1,159 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabularies.rest.internal;
+
+import org.phenotips.rest.Autolinker;
+import org.phenotips.vocabularies.rest.VocabularyTermResource;
+import org.phenotips.vocabularies.rest.VocabularyTermsResolveResource;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.annotation.Component;
+import org.xwiki.rest.XWikiResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.inject.Inject;
+import javax.inject.Named;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+
+import org.apache.commons.lang3.StringUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Default implementation of the {@link VocabularyTermsResolveResource}. Requested terms are grouped by their prefix,
+ * and each group is resolved with a single {@link Vocabulary#getTerms(Collection)} call. The terms are resolved while
+ * the response is written, and each term is written directly with a JSON generator, so neither the response nor the
+ * terms are held in memory as {@link JSONObject}s.
+ *
+ * @version $Id$
+ * @since 1.4
+ */
+@Component
+@Named("org.phenotips.vocabularies.rest.internal.DefaultVocabularyTermsResolveResource")
+@Singleton
+public class DefaultVocabularyTermsResolveResource extends XWikiResource implements VocabularyTermsResolveResource
+{
+    private static final String LINKS = "links";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    @Inject
+    private VocabularyManager vm;
+
+    @Inject
+    private Provider<Autolinker> autolinker;
+
+    @Override
+    public Response resolveTerms(List<String> termIds)
+    {
+        if (termIds == null || termIds.isEmpty()) {
+            throw new WebApplicationException(Response.Status.BAD_REQUEST);
+        }
+
+        final Map<Vocabulary, Set<String>> groups = groupByVocabulary(termIds);
+        // All the terms in a vocabulary share the same links, so they are only computed once per vocabulary
+        final Map<Vocabulary, String> termLinks = new HashMap<>();
+        for (Vocabulary vocabulary : groups.keySet()) {
+            termLinks.put(vocabulary, new JSONArray(this.autolinker.get()
+                .forSecondaryResource(VocabularyTermResource.class, this.uriInfo)
+                .withExtraParameters("vocabulary-id", vocabulary.getIdentifier())
+                .build()).toString());
+        }
+        final String links = new JSONArray(this.autolinker.get().forResource(getClass(), this.uriInfo).build())
+            .toString();
+
+        StreamingOutput output = out -> writeTerms(out, groups, termLinks, links);
+        return Response.ok(output, MediaType.APPLICATION_JSON_TYPE).build();
+    }
+
+    /**
+     * Groups the requested term identifiers by the vocabulary they belong to, identified by their prefix. Identifiers
+     * with an unknown prefix are ignored, and duplicates are removed.
+     *
+     * @param termIds the requested term identifiers
+     * @return the identifiers to resolve, grouped by vocabulary, in the order in which vocabularies were first
+     *         requested
+     */
+    private Map<Vocabulary, Set<String>> groupByVocabulary(List<String> termIds)
+    {
+        Map<Vocabulary, Set<String>> result = new LinkedHashMap<>();
+        Map<String, Vocabulary> vocabulariesByPrefix = new LinkedHashMap<>();
+        for (String termId : termIds) {
+            String id = StringUtils.trim(termId);
+            String prefix = StringUtils.substringBefore(id, ":");
+            if (StringUtils.isBlank(prefix) || StringUtils.equals(prefix, id)) {
+                continue;
+            }
+            Vocabulary vocabulary = vocabulariesByPrefix.computeIfAbsent(prefix, this.vm::getVocabulary);
+            if (vocabulary != null) {
+                result.computeIfAbsent(vocabulary, k -> new LinkedHashSet<>()).add(id);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Resolves the terms of each vocabulary and writes them as they are read, without building the whole response, or
+     * even a {@link JSONObject} for each term, in memory.
+     */
+    private void writeTerms(OutputStream out, Map<Vocabulary, Set<String>> groups, Map<Vocabulary, String> termLinks,
+        String links) throws IOException
+    {
+        try (JsonGenerator generator = JSON_FACTORY.createGenerator(out, JsonEncoding.UTF8)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("rows");
+            for (Map.Entry<Vocabulary, Set<String>> group : groups.entrySet()) {
+                Set<VocabularyTerm> terms = group.getKey().getTerms(group.getValue());
+                if (terms == null) {
+                    continue;
+                }
+                for (VocabularyTerm term : terms) {
+                    generator.writeStartObject();
+                    term.writeJSONFields(generator);
+                    generator.writeFieldName(LINKS);
+                    generator.writeRawValue(termLinks.get(group.getKey()));
+                    generator.writeEndObject();
+                }
+            }
+            generator.writeEndArray();
+            generator.writeFieldName(LINKS);
+            generator.writeRawValue(links);
+            generator.writeEndObject();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/
+ */
+package org.phenotips.vocabularies.rest.internal;
+
+import org.phenotips.rest.Autolinker;
+import org.phenotips.vocabularies.rest.VocabularyTermsResolveResource;
+import org.phenotips.vocabulary.Vocabulary;
+import org.phenotips.vocabulary.VocabularyManager;
+import org.phenotips.vocabulary.VocabularyTerm;
+
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.component.util.ReflectionUtils;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.test.mockito.MockitoComponentMockingRule;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import javax.ws.rs.core.UriInfo;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.xpn.xwiki.XWikiContext;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the {@link DefaultVocabularyTermsResolveResource} class.
+ */
+public class DefaultVocabularyTermsResolveResourceTest
+{
+    @Rule
+    public MockitoComponentMockingRule<VocabularyTermsResolveResource> mocker =
+        new MockitoComponentMockingRule<>(DefaultVocabularyTermsResolveResource.class);
+
+    private VocabularyTermsResolveResource component;
+
+    @Mock
+    private Vocabulary hpo;
+
+    @Mock
+    private Vocabulary omim;
+
+    @Mock
+    private VocabularyTerm term1;
+
+    @Mock
+    private VocabularyTerm term2;
+
+    @Mock
+    private VocabularyTerm term3;
+
+    @Mock
+    private UriInfo uriInfo;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        MockitoAnnotations.initMocks(this);
+
+        final Execution execution = mock(Execution.class);
+        final ExecutionContext executionContext = mock(ExecutionContext.class);
+        final ComponentManager componentManager = this.mocker.getInstance(ComponentManager.class, "context");
+        when(componentManager.getInstance(Execution.class)).thenReturn(execution);
+        when(execution.getContext()).thenReturn(executionContext);
+        when(executionContext.getProperty("xwikicontext")).thenReturn(mock(XWikiContext.class));
+
+        ReflectionUtils.setFieldValue(this.mocker.getComponentUnderTest(), "uriInfo", this.uriInfo);
+        this.component = this.mocker.getComponentUnderTest();
+
+        final VocabularyManager vm = this.mocker.getInstance(VocabularyManager.class);
+        when(vm.getVocabulary("HP")).thenReturn(this.hpo);
+        when(vm.getVocabulary("MIM")).thenReturn(this.omim);
+        when(this.hpo.getIdentifier()).thenReturn("hpo");
+        when(this.omim.getIdentifier()).thenReturn("omim");
+
+        mockFields(this.term1, "HP:0000001");
+        mockFields(this.term2, "HP:0000002");
+        mockFields(this.term3, "MIM:100000");
+
+        final Autolinker autolinker = this.mocker.getInstance(Autolinker.class);
+        when(autolinker.forSecondaryResource(any(Class.class), eq(this.uriInfo))).thenReturn(autolinker);
+        when(autolinker.forResource(any(Class.class), eq(this.uriInfo))).thenReturn(autolinker);
+        when(autolinker.withExtraParameters(anyString(), anyString())).thenReturn(autolinker);
+        when(autolinker.build()).thenReturn(Collections.emptyList());
+    }
+
+    @Test
+    public void missingTermIdsAreRejected()
+    {
+        for (List<String> termIds : Arrays.asList(null, Collections.<String>emptyList())) {
+            try {
+                this.component.resolveTerms(termIds);
+                Assert.fail("An exception should be thrown when no term is requested");
+            } catch (WebApplicationException ex) {
+                Assert.assertEquals(Response.Status.BAD_REQUEST.getStatusCode(), ex.getResponse().getStatus());
+            }
+        }
+    }
+
+    @Test
+    public void termsAreResolvedOncePerVocabulary() throws Exception
+    {
+        when(this.hpo.getTerms(set("HP:0000001", "HP:0000002"))).thenReturn(set(this.term1, this.term2));
+        when(this.omim.getTerms(set("MIM:100000"))).thenReturn(set(this.term3));
+
+        final Response response = this.component.resolveTerms(Arrays.asList("HP:0000001", "MIM:100000",
+            " HP:0000002 ", "HP:0000001", "XYZ:123", "nonsense"));
+        // Terms are only resolved and serialized while the response is written
+        verify(this.hpo, never()).getTerms(anyCollectionOf(String.class));
+
+        final JSONObject result = write(response);
+        verify(this.hpo).getTerms(set("HP:0000001", "HP:0000002"));
+        verify(this.omim).getTerms(set("MIM:100000"));
+        verify(this.term1, never()).toJSON();
+        final JSONArray rows = result.getJSONArray("rows");
+        Assert.assertEquals(3, rows.length());
+        Assert.assertEquals("HP:0000001", rows.getJSONObject(0).getString("id"));
+        Assert.assertEquals("HP:0000002", rows.getJSONObject(1).getString("id"));
+        Assert.assertEquals("MIM:100000", rows.getJSONObject(2).getString("id"));
+        Assert.assertEquals("synonym of HP:0000001", rows.getJSONObject(0).getJSONArray("synonym").getString(0));
+        Assert.assertEquals(0, rows.getJSONObject(0).getJSONArray("links").length());
+        Assert.assertEquals(0, result.getJSONArray("links").length());
+    }
+
+    @Test
+    public void unresolvedTermsAreLeftOut() throws Exception
+    {
+        when(this.hpo.getTerms(set("HP:0000001"))).thenReturn(Collections.<VocabularyTerm>emptySet());
+        when(this.omim.getTerms(set("MIM:100000"))).thenReturn(set(this.term3));
+
+        final JSONObject result = write(this.component.resolveTerms(Arrays.asList("HP:0000001", "MIM:100000")));
+        final JSONArray rows = result.getJSONArray("rows");
+        Assert.assertEquals(1, rows.length());
+        Assert.assertEquals("MIM:100000", rows.getJSONObject(0).getString("id"));
+        verify(this.term1, never()).writeJSONFields(any(JsonGenerator.class));
+    }
+
+    private void mockFields(VocabularyTerm term, final String id) throws IOException
+    {
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable
+            {
+                JsonGenerator generator = (JsonGenerator) invocation.getArguments()[0];
+                generator.writeStringField("id", id);
+                generator.writeArrayFieldStart("synonym");
+                generator.writeString("synonym of " + id);
+                generator.writeEndArray();
+                return null;
+            }
+        }).when(term).writeJSONFields(any(JsonGenerator.class));
+    }
+
+    private JSONObject write(Response response) throws Exception
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ((StreamingOutput) response.getEntity()).write(out);
+        return new JSONObject(out.toString("UTF-8"));
+    }
+
+    @SafeVarargs
+    private static <T> Set<T> set(T... items)
+    {
+        return new LinkedHashSet<>(Arrays.asList(items));
+    }
+}